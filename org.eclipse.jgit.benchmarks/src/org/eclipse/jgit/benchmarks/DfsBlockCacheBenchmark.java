@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.internal.storage.dfs.DfsBlockCache;
+import org.eclipse.jgit.internal.storage.dfs.DfsBlockCacheConfig;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reads objects from a DFS repository through the {@link DfsBlockCache}, with
+ * a cache large enough to hold the whole pack ("hit") or so small that most
+ * reads load their blocks again ("miss").
+ */
+@State(Scope.Thread)
+public class DfsBlockCacheBenchmark {
+
+	@Param({ "hit", "miss" })
+	String cache;
+
+	@Param({ "1000" })
+	int commits;
+
+	@Param({ "2000" })
+	int files;
+
+	InMemoryRepository repo;
+
+	ObjectReader reader;
+
+	ObjectId[] blobs;
+
+	int next;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		byte[] pack;
+		try (GeneratedRepository gen = GeneratedRepository
+				.create(Shape.LINEAR, commits, files, true)) {
+			pack = gen.packAll();
+			blobs = GeneratedRepository.sample(gen.blobs, 4096);
+		}
+		DfsBlockCacheConfig cfg = new DfsBlockCacheConfig().setBlockSize(4096);
+		if ("hit".equals(cache)) {
+			cfg.setBlockLimit(256 * 1024 * 1024);
+		} else {
+			cfg.setBlockLimit(64 * 4096).setConcurrencyLevel(1);
+		}
+		// Packs bind to the cache current when they are scanned, so the
+		// cache must be configured before the repository is created.
+		DfsBlockCache.reconfigure(cfg);
+		repo = GeneratedRepository.inMemory(pack);
+		reader = repo.newObjectReader();
+		for (ObjectId id : blobs) {
+			reader.open(id).getCachedBytes();
+		}
+	}
+
+	@TearDown
+	public void teardown() {
+		reader.close();
+		repo.close();
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig());
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public byte[] openBlob() throws IOException {
+		return reader.open(blobs[next++ & 4095]).getCachedBytes();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public boolean has() throws IOException {
+		return reader.has(blobs[next++ & 4095]);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(DfsBlockCacheBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
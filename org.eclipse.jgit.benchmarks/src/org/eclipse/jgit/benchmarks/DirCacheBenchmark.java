@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.FS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reads and writes a {@link DirCache} holding the files of a generated
+ * repository.
+ */
+@State(Scope.Thread)
+public class DirCacheBenchmark {
+
+	@Param({ "10000", "100000" })
+	int files;
+
+	GeneratedRepository repo;
+
+	DirCache index;
+
+	File indexFile;
+
+	File writeFile;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		repo = GeneratedRepository.create(Shape.LINEAR, 1, files, false);
+		try (ObjectReader reader = repo.repo.newObjectReader();
+				RevWalk rw = new RevWalk(reader)) {
+			index = DirCache.read(reader,
+					rw.parseCommit(repo.head()).getTree());
+		}
+		indexFile = new File(repo.dir, "index.read");
+		writeFile = new File(repo.dir, "index.write");
+		writeIndex(index, indexFile);
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		repo.close();
+	}
+
+	private static void writeIndex(DirCache src, File file)
+			throws IOException {
+		DirCache dc = DirCache.lock(file, FS.DETECTED);
+		try {
+			// The builder replaces all entries read from the file.
+			DirCacheBuilder b = dc.builder();
+			for (int i = 0; i < src.getEntryCount(); i++) {
+				b.add(src.getEntry(i));
+			}
+			b.finish();
+			dc.write();
+			dc.commit();
+		} finally {
+			dc.unlock();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int read() throws CorruptObjectException, IOException {
+		return DirCache.read(indexFile, FS.DETECTED).getEntryCount();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public File write() throws IOException {
+		writeIndex(index, writeFile);
+		return writeFile;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(DirCacheBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
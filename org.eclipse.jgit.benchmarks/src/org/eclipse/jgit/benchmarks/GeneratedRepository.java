@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * Repository with a generated history, for benchmarks.
+ * <p>
+ * The history is built from a fixed seed, so two repositories generated with
+ * the same parameters have the same objects. Files are spread over
+ * directories of 32 files; each commit rewrites a few lines of a few files,
+ * which gives delta search realistic candidates.
+ */
+final class GeneratedRepository implements AutoCloseable {
+	/** Shape of the generated history. */
+	enum Shape {
+		/** Every commit has one parent. */
+		LINEAR,
+
+		/** Every fourth commit merges a side branch. */
+		MERGES
+	}
+
+	private static final int FILES_PER_DIR = 32;
+
+	private static final int LINES = 40;
+
+	final File dir;
+
+	final FileRepository repo;
+
+	/** Commits, oldest first. */
+	final List<ObjectId> commits = new ArrayList<>();
+
+	/** Blobs of the last commit. */
+	final List<ObjectId> blobs = new ArrayList<>();
+
+	private final Random rng = new Random(42);
+
+	private final Map<String, String[]> content = new TreeMap<>();
+
+	private final Map<String, ObjectId> tree = new TreeMap<>();
+
+	private final PersonIdent ident = new PersonIdent("Bench", //$NON-NLS-1$
+			"bench@example.com", 1_500_000_000_000L, 0); //$NON-NLS-1$
+
+	/**
+	 * Generate a repository in a temporary directory.
+	 *
+	 * @param shape
+	 *            shape of the history.
+	 * @param commitCount
+	 *            number of commits on the main branch.
+	 * @param fileCount
+	 *            number of files in each commit.
+	 * @param pack
+	 *            whether to pack the objects, including a bitmap index.
+	 * @return the repository; close it to delete it.
+	 * @throws IOException
+	 *             the repository could not be written.
+	 */
+	static GeneratedRepository create(Shape shape, int commitCount,
+			int fileCount, boolean pack) throws IOException {
+		File dir = Files.createTempDirectory("jgit-bench").toFile(); //$NON-NLS-1$
+		GeneratedRepository r = new GeneratedRepository(dir);
+		try {
+			r.generate(shape, commitCount, fileCount);
+			if (pack) {
+				GC gc = new GC(r.repo);
+				gc.setAuto(false);
+				gc.gc();
+			}
+			return r;
+		} catch (IOException | RuntimeException e) {
+			r.close();
+			throw e;
+		} catch (Exception e) {
+			r.close();
+			throw new IOException(e);
+		}
+	}
+
+	private GeneratedRepository(File dir) throws IOException {
+		this.dir = dir;
+		repo = new FileRepository(new File(dir, Constants.DOT_GIT));
+		repo.create(true);
+	}
+
+	private void generate(Shape shape, int commitCount, int fileCount)
+			throws IOException {
+		try (ObjectInserter ins = repo.newObjectInserter()) {
+			for (int i = 0; i < fileCount; i++) {
+				String[] lines = new String[LINES];
+				for (int l = 0; l < LINES; l++) {
+					lines[l] = line();
+				}
+				write(ins, path(i), lines);
+			}
+
+			ObjectId main = null;
+			ObjectId side = null;
+			for (int c = 0; c < commitCount; c++) {
+				for (int k = 0; k < 3; k++) {
+					String path = path(rng.nextInt(fileCount));
+					String[] lines = content.get(path).clone();
+					lines[rng.nextInt(LINES)] = line();
+					write(ins, path, lines);
+				}
+				if (shape == Shape.MERGES && c % 4 == 3 && side != null) {
+					main = commit(ins, "merge " + c, main, side); //$NON-NLS-1$
+					side = null;
+				} else if (shape == Shape.MERGES && c % 4 != 0
+						&& main != null) {
+					side = commit(ins, "side " + c, //$NON-NLS-1$
+							side != null ? side : main);
+				} else {
+					main = commit(ins, "commit " + c, main); //$NON-NLS-1$
+				}
+			}
+			if (side != null) {
+				main = commit(ins, "merge", main, side); //$NON-NLS-1$
+			}
+			ins.flush();
+
+			RefUpdate u = repo.updateRef(Constants.R_HEADS + Constants.MASTER);
+			u.setNewObjectId(main);
+			u.forceUpdate();
+		}
+		blobs.addAll(tree.values());
+	}
+
+	private String line() {
+		return Long.toHexString(rng.nextLong()) + ' '
+				+ Long.toHexString(rng.nextLong()) + '\n';
+	}
+
+	private static String path(int i) {
+		return String.format("d%03d/f%03d.txt", //$NON-NLS-1$
+				Integer.valueOf(i / FILES_PER_DIR),
+				Integer.valueOf(i % FILES_PER_DIR));
+	}
+
+	private void write(ObjectInserter ins, String path, String[] lines)
+			throws IOException {
+		content.put(path, lines);
+		tree.put(path, ins.insert(Constants.OBJ_BLOB,
+				String.join("", lines).getBytes(UTF_8))); //$NON-NLS-1$
+	}
+
+	private ObjectId commit(ObjectInserter ins, String msg,
+			ObjectId... parents) throws IOException {
+		TreeFormatter root = new TreeFormatter();
+		TreeFormatter sub = null;
+		String subDir = null;
+		for (Map.Entry<String, ObjectId> e : tree.entrySet()) {
+			int slash = e.getKey().indexOf('/');
+			String d = e.getKey().substring(0, slash);
+			if (!d.equals(subDir)) {
+				if (sub != null) {
+					root.append(subDir, FileMode.TREE, ins.insert(sub));
+				}
+				sub = new TreeFormatter();
+				subDir = d;
+			}
+			sub.append(e.getKey().substring(slash + 1), FileMode.REGULAR_FILE,
+					e.getValue());
+		}
+		if (sub != null) {
+			root.append(subDir, FileMode.TREE, ins.insert(sub));
+		}
+
+		CommitBuilder cb = new CommitBuilder();
+		cb.setTreeId(ins.insert(root));
+		for (ObjectId p : parents) {
+			if (p != null) {
+				cb.addParentId(p);
+			}
+		}
+		PersonIdent who = new PersonIdent(ident,
+				ident.getWhen().getTime() + commits.size() * 1000L, 0);
+		cb.setAuthor(who);
+		cb.setCommitter(who);
+		cb.setMessage(msg);
+		ObjectId id = ins.insert(cb);
+		commits.add(id);
+		return id;
+	}
+
+	/**
+	 * Get the tip of the main branch.
+	 *
+	 * @return the last commit of the main branch.
+	 * @throws IOException
+	 *             the ref cannot be read.
+	 */
+	ObjectId head() throws IOException {
+		return repo.resolve(Constants.MASTER);
+	}
+
+	/**
+	 * Write a pack of all objects reachable from the main branch, as sent to
+	 * a cloning client.
+	 *
+	 * @return the pack.
+	 * @throws IOException
+	 *             the objects cannot be read.
+	 */
+	byte[] packAll() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (PackWriter pw = new PackWriter(repo)) {
+			pw.preparePack(NullProgressMonitor.INSTANCE,
+					Collections.singleton(head()), PackWriter.NONE);
+			pw.writePack(NullProgressMonitor.INSTANCE,
+					NullProgressMonitor.INSTANCE, out);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Parse a pack into a new in-memory DFS repository.
+	 *
+	 * @param pack
+	 *            the pack, as returned by {@link #packAll()}.
+	 * @return the repository.
+	 * @throws IOException
+	 *             the pack cannot be parsed.
+	 */
+	static InMemoryRepository inMemory(byte[] pack) throws IOException {
+		InMemoryRepository r = new InMemoryRepository(
+				new DfsRepositoryDescription("bench")); //$NON-NLS-1$
+		try (ObjectInserter ins = r.newObjectInserter()) {
+			PackParser p = ins.newPackParser(new ByteArrayInputStream(pack));
+			p.parse(NullProgressMonitor.INSTANCE);
+			ins.flush();
+		}
+		return r;
+	}
+
+	/**
+	 * Pick objects at random, reproducibly.
+	 *
+	 * @param from
+	 *            objects to pick from.
+	 * @param count
+	 *            number of objects to pick.
+	 * @return the picked objects, possibly with repetitions.
+	 */
+	static ObjectId[] sample(List<ObjectId> from, int count) {
+		Random r = new Random(7);
+		ObjectId[] ids = new ObjectId[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = from.get(r.nextInt(from.size()));
+		}
+		return ids;
+	}
+
+	@Override
+	public void close() throws IOException {
+		repo.close();
+		FileUtils.delete(dir, FileUtils.RECURSIVE | FileUtils.RETRY);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.transport.PackParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ingests a pack received from a clone: {@link PackParser} inflates every
+ * object, resolves the deltas and computes the object ids.
+ * <p>
+ * Each invocation parses into a new in-memory repository, so the measurement
+ * is not disturbed by disk writes.
+ */
+@State(Scope.Benchmark)
+public class PackParserBenchmark {
+
+	@Param({ "1000" })
+	int commits;
+
+	@Param({ "2000" })
+	int files;
+
+	byte[] pack;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		try (GeneratedRepository gen = GeneratedRepository
+				.create(Shape.LINEAR, commits, files, true)) {
+			pack = gen.packAll();
+		}
+	}
+
+	@TearDown
+	public void teardown() {
+		pack = null;
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long parse() throws IOException {
+		try (InMemoryRepository repo = new InMemoryRepository(
+				new DfsRepositoryDescription("parse"));
+				ObjectInserter ins = repo.newObjectInserter()) {
+			PackParser p = ins.newPackParser(new ByteArrayInputStream(pack));
+			p.parse(NullProgressMonitor.INSTANCE);
+			ins.flush();
+			return p.getObjectCount();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(PackParserBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reads objects from a packed file repository: object lookup and inflation
+ * through {@code WindowCursor}, and offset lookup in a version 2 pack index.
+ */
+@State(Scope.Thread)
+public class PackReadBenchmark {
+
+	@Param({ "1000" })
+	int commits;
+
+	@Param({ "2000" })
+	int files;
+
+	GeneratedRepository repo;
+
+	ObjectReader reader;
+
+	PackIndex index;
+
+	ObjectId[] blobs;
+
+	ObjectId[] commitIds;
+
+	int next;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		repo = GeneratedRepository.create(Shape.LINEAR, commits, files, true);
+		reader = repo.repo.newObjectReader();
+		PackFile pack = repo.repo.getObjectDatabase().getPacks().iterator()
+				.next();
+		String name = pack.getPackFile().getName();
+		index = PackIndex.open(new File(pack.getPackFile().getParentFile(),
+				name.substring(0, name.length() - 4) + "idx"));
+		blobs = GeneratedRepository.sample(repo.blobs, 4096);
+		commitIds = GeneratedRepository.sample(repo.commits, 4096);
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		reader.close();
+		repo.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public byte[] openBlob() throws IOException {
+		// Blobs are mostly stored as deltas, so this includes inflating the
+		// delta chain.
+		return reader.open(blobs[next++ & 4095]).getCachedBytes();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public byte[] openCommit() throws IOException {
+		return reader.open(commitIds[next++ & 4095]).getCachedBytes();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long findOffset() {
+		return index.findOffset(blobs[next++ & 4095]);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(PackReadBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.util.io.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Prepares and writes the pack of a clone with {@link PackWriter}.
+ * <p>
+ * {@link #count()} measures object enumeration without bitmaps, on one or
+ * several threads. {@link #deltaSearch()} writes the pack without reusing
+ * stored deltas, so that every delta is searched for again.
+ */
+@State(Scope.Thread)
+public class PackWriterBenchmark {
+
+	@Param({ "1", "4" })
+	int countingThreads;
+
+	@Param({ "2000" })
+	int commits;
+
+	@Param({ "2000" })
+	int files;
+
+	GeneratedRepository repo;
+
+	Set<ObjectId> want;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		repo = GeneratedRepository.create(Shape.MERGES, commits, files, true);
+		want = Collections.singleton(repo.head());
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		repo.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long count() throws IOException {
+		PackConfig cfg = new PackConfig(repo.repo);
+		cfg.setCountingThreads(countingThreads);
+		try (PackWriter pw = new PackWriter(cfg,
+				repo.repo.newObjectReader())) {
+			pw.setUseBitmaps(false);
+			pw.preparePack(NullProgressMonitor.INSTANCE, want,
+					PackWriter.NONE);
+			return pw.getObjectCount();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long deltaSearch() throws IOException {
+		PackConfig cfg = new PackConfig(repo.repo);
+		cfg.setReuseDeltas(false);
+		cfg.setReuseObjects(false);
+		try (PackWriter pw = new PackWriter(cfg,
+				repo.repo.newObjectReader())) {
+			pw.preparePack(NullProgressMonitor.INSTANCE, want,
+					PackWriter.NONE);
+			pw.writePack(NullProgressMonitor.INSTANCE,
+					NullProgressMonitor.INSTANCE, NullOutputStream.INSTANCE);
+			return pw.getObjectCount();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(PackWriterBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Walks the whole history of a packed repository with {@link RevWalk}, over a
+ * linear history and over one where every fourth commit is a merge.
+ */
+@State(Scope.Thread)
+public class RevWalkBenchmark {
+
+	@Param({ "LINEAR", "MERGES" })
+	Shape shape;
+
+	@Param({ "10000" })
+	int commits;
+
+	@Param({ "100" })
+	int files;
+
+	GeneratedRepository repo;
+
+	ObjectId head;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		repo = GeneratedRepository.create(shape, commits, files, true);
+		head = repo.head();
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		repo.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int walk() throws IOException {
+		try (RevWalk rw = new RevWalk(repo.repo)) {
+			rw.markStart(rw.parseCommit(head));
+			int n = 0;
+			for (RevCommit c = rw.next(); c != null; c = rw.next()) {
+				n++;
+			}
+			return n;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int walkTopo() throws IOException {
+		try (RevWalk rw = new RevWalk(repo.repo)) {
+			rw.sort(RevSort.TOPO);
+			rw.markStart(rw.parseCommit(head));
+			int n = 0;
+			for (RevCommit c = rw.next(); c != null; c = rw.next()) {
+				n++;
+			}
+			return n;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(RevWalkBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
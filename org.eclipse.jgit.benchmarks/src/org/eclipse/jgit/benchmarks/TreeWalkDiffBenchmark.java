@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package org.eclipse.jgit.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.benchmarks.GeneratedRepository.Shape;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Diffs two trees of a packed repository with a recursive {@link TreeWalk}
+ * filtered by {@link TreeFilter#ANY_DIFF}, as done to list the files changed
+ * between two commits.
+ */
+@State(Scope.Thread)
+public class TreeWalkDiffBenchmark {
+
+	@Param({ "1", "100" })
+	int distance;
+
+	@Param({ "1000" })
+	int commits;
+
+	@Param({ "10000" })
+	int files;
+
+	GeneratedRepository repo;
+
+	ObjectReader reader;
+
+	RevTree oldTree;
+
+	RevTree newTree;
+
+	@Setup
+	public void setupBenchmark() throws IOException {
+		repo = GeneratedRepository.create(Shape.LINEAR, commits, files, true);
+		reader = repo.repo.newObjectReader();
+		try (RevWalk rw = new RevWalk(reader)) {
+			int last = repo.commits.size() - 1;
+			oldTree = rw.parseCommit(repo.commits.get(last - distance))
+					.getTree();
+			newTree = rw.parseCommit(repo.commits.get(last)).getTree();
+		}
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		reader.close();
+		repo.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode({ Mode.AverageTime })
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int diff() throws IOException {
+		try (TreeWalk tw = new TreeWalk(reader)) {
+			tw.setRecursive(true);
+			tw.setFilter(TreeFilter.ANY_DIFF);
+			tw.addTree(oldTree);
+			tw.addTree(newTree);
+			int n = 0;
+			while (tw.next()) {
+				n++;
+			}
+			return n;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(TreeWalkDiffBenchmark.class.getSimpleName())
+				// .addProfiler(StackProfiler.class)
+				// .addProfiler(GCProfiler.class)
+				.forks(1).jvmArgs("-ea").build();
+		new Runner(opt).run();
+	}
+}
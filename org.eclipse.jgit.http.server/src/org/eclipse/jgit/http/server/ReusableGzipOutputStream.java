@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.http.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a gzip stream using a {@link Deflater} shared between requests.
+ * <p>
+ * {@link java.util.zip.GZIPOutputStream} allocates a new deflater, including
+ * its native buffers of several hundred KiB, for every response. This stream
+ * borrows one from a small pool per compression level instead, and returns it
+ * when closed. It also measures the time spent compressing.
+ */
+final class ReusableGzipOutputStream extends DeflaterOutputStream {
+	private static final int POOL_SIZE = 16;
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED,
+			0, 0, 0, 0, 0, 0, 0 };
+
+	/** Pools of idle deflaters, indexed by compression level + 1. */
+	private static final List<ArrayBlockingQueue<Deflater>> POOLS;
+
+	static {
+		int n = Deflater.BEST_COMPRESSION - Deflater.DEFAULT_COMPRESSION + 1;
+		POOLS = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			POOLS.add(new ArrayBlockingQueue<>(POOL_SIZE));
+		}
+	}
+
+	private final int level;
+
+	private final CRC32 crc = new CRC32();
+
+	private long compressionNanos;
+
+	private boolean finished;
+
+	private boolean closed;
+
+	/**
+	 * Create a gzip stream.
+	 *
+	 * @param out
+	 *            destination of the compressed data.
+	 * @param level
+	 *            compression level, {@link Deflater#DEFAULT_COMPRESSION} or
+	 *            between {@link Deflater#NO_COMPRESSION} and
+	 *            {@link Deflater#BEST_COMPRESSION}.
+	 * @throws IOException
+	 *             the header cannot be written.
+	 */
+	ReusableGzipOutputStream(OutputStream out, int level) throws IOException {
+		super(out, acquire(level), 8192);
+		this.level = level;
+		out.write(HEADER);
+	}
+
+	static boolean isValidLevel(int level) {
+		return Deflater.DEFAULT_COMPRESSION <= level
+				&& level <= Deflater.BEST_COMPRESSION;
+	}
+
+	private static Deflater acquire(int level) {
+		Deflater d = POOLS.get(level + 1).poll();
+		return d != null ? d : new Deflater(level, true);
+	}
+
+	private static void release(int level, Deflater d) {
+		d.reset();
+		if (!POOLS.get(level + 1).offer(d)) {
+			d.end();
+		}
+	}
+
+	/**
+	 * Get the time spent compressing.
+	 *
+	 * @return nanoseconds spent in the deflater so far.
+	 */
+	long getCompressionNanos() {
+		return compressionNanos;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		long start = System.nanoTime();
+		super.write(b, off, len);
+		crc.update(b, off, len);
+		compressionNanos += System.nanoTime() - start;
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		long start = System.nanoTime();
+		super.finish();
+		finished = true;
+		compressionNanos += System.nanoTime() - start;
+
+		byte[] trailer = new byte[8];
+		writeInt(trailer, 0, (int) crc.getValue());
+		writeInt(trailer, 4, (int) def.getBytesRead());
+		out.write(trailer);
+	}
+
+	private static void writeInt(byte[] buf, int off, int v) {
+		buf[off] = (byte) v;
+		buf[off + 1] = (byte) (v >>> 8);
+		buf[off + 2] = (byte) (v >>> 16);
+		buf[off + 3] = (byte) (v >>> 24);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			finish();
+			out.close();
+		} finally {
+			release(level, def);
+		}
+	}
+}
@@ -45,6 +45,17 @@ public final class ServletUtils {
 	/** Request attribute storing either UploadPack or ReceivePack. */
 	public static final String ATTRIBUTE_HANDLER = "org.eclipse.jgit.transport.UploadPackOrReceivePack";
 
+	/**
+	 * Request attribute storing the time spent compressing the response, as a
+	 * {@link Long} in nanoseconds.
+	 * <p>
+	 * Set once a compressed response has been written, for filters that log
+	 * request statistics.
+	 *
+	 * @since 5.8
+	 */
+	public static final String ATTRIBUTE_COMPRESSION_TIME = "org.eclipse.jgit.http.server.compressionTime";
+
 	/**
 	 * Get the selected repository from the request.
 	 *
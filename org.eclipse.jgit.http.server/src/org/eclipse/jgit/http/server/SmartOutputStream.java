@@ -10,17 +10,23 @@
 
 package org.eclipse.jgit.http.server;
 
+import static org.eclipse.jgit.http.server.ServletUtils.ATTRIBUTE_COMPRESSION_TIME;
+import static org.eclipse.jgit.http.server.ServletUtils.ATTRIBUTE_REPOSITORY;
 import static org.eclipse.jgit.http.server.ServletUtils.acceptsGzipEncoding;
 import static org.eclipse.jgit.util.HttpSupport.ENCODING_GZIP;
 import static org.eclipse.jgit.util.HttpSupport.HDR_CONTENT_ENCODING;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Config.SectionParser;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.util.TemporaryBuffer;
 
 /**
@@ -32,22 +38,54 @@
  * smaller payloads are primarily pure text that compresses well, while much
  * larger payloads are heavily compressed binary data. {@link UploadPackServlet}
  * is one such servlet.
+ * <p>
+ * The compression level is taken from {@code http.compressionLevel} in the
+ * repository configuration, defaulting to {@code core.compression}; level 0
+ * disables compression. If {@code http.streamCompression} is set, compressed
+ * responses are streamed to the client as soon as a single block is buffered,
+ * reducing the latency of large ref advertisements. The time spent
+ * compressing is stored in the {@link ServletUtils#ATTRIBUTE_COMPRESSION_TIME}
+ * request attribute.
  */
 class SmartOutputStream extends TemporaryBuffer {
 	private static final int LIMIT = 32 * 1024;
 
+	/** In-core limit when compressed responses are streamed. */
+	private static final int STREAM_LIMIT = 8 * 1024;
+
 	private final HttpServletRequest req;
 	private final HttpServletResponse rsp;
-	private boolean compressStream;
+	private final boolean compressStream;
+	private final int compressionLevel;
 	private boolean startedOutput;
+	private ReusableGzipOutputStream gzip;
+	private long compressionNanos;
 
 	SmartOutputStream(final HttpServletRequest req,
 			final HttpServletResponse rsp,
 			boolean compressStream) {
-		super(LIMIT);
+		this(req, rsp, compressStream,
+				compressStream ? CompressionConfig.of(req) : null);
+	}
+
+	private SmartOutputStream(HttpServletRequest req, HttpServletResponse rsp,
+			boolean compressStream, CompressionConfig cfg) {
+		super(limit(req, cfg), limit(req, cfg));
 		this.req = req;
 		this.rsp = rsp;
-		this.compressStream = compressStream;
+		this.compressionLevel = cfg != null ? cfg.level
+				: Deflater.DEFAULT_COMPRESSION;
+		this.compressStream = compressStream
+				&& compressionLevel != Deflater.NO_COMPRESSION;
+	}
+
+	private static int limit(HttpServletRequest req, CompressionConfig cfg) {
+		if (cfg != null && cfg.stream
+				&& cfg.level != Deflater.NO_COMPRESSION
+				&& acceptsGzipEncoding(req)) {
+			return STREAM_LIMIT;
+		}
+		return LIMIT;
 	}
 
 	/** {@inheritDoc} */
@@ -58,7 +96,8 @@ protected OutputStream overflow() throws IOException {
 		OutputStream out = rsp.getOutputStream();
 		if (compressStream && acceptsGzipEncoding(req)) {
 			rsp.setHeader(HDR_CONTENT_ENCODING, ENCODING_GZIP);
-			out = new GZIPOutputStream(out);
+			gzip = new ReusableGzipOutputStream(out, compressionLevel);
+			out = gzip;
 		}
 		return out;
 	}
@@ -66,17 +105,30 @@ protected OutputStream overflow() throws IOException {
 	/** {@inheritDoc} */
 	@Override
 	public void close() throws IOException {
-		super.close();
+		try {
+			super.close();
+		} finally {
+			if (gzip != null) {
+				recordCompressionTime(gzip);
+				gzip = null;
+			}
+		}
 
 		if (!startedOutput) {
 			// If output hasn't started yet, the entire thing fit into our
 			// buffer. Try to use a proper Content-Length header, and also
 			// deflate the response with gzip if it will be smaller.
-			if (256 < this.length() && acceptsGzipEncoding(req)) {
+			if (compressionLevel != Deflater.NO_COMPRESSION
+					&& 256 < this.length() && acceptsGzipEncoding(req)) {
 				TemporaryBuffer gzbuf = new TemporaryBuffer.Heap(LIMIT);
 				try {
-					try (GZIPOutputStream gzip = new GZIPOutputStream(gzbuf)) {
-						this.writeTo(gzip, null);
+					ReusableGzipOutputStream z = new ReusableGzipOutputStream(
+							gzbuf, compressionLevel);
+					try {
+						this.writeTo(z, null);
+					} finally {
+						z.close();
+						recordCompressionTime(z);
 					}
 					if (gzbuf.length() < this.length()) {
 						rsp.setHeader(HDR_CONTENT_ENCODING, ENCODING_GZIP);
@@ -93,6 +145,12 @@ public void close() throws IOException {
 		}
 	}
 
+	private void recordCompressionTime(ReusableGzipOutputStream z) {
+		compressionNanos += z.getCompressionNanos();
+		req.setAttribute(ATTRIBUTE_COMPRESSION_TIME,
+				Long.valueOf(compressionNanos));
+	}
+
 	private void writeResponse(TemporaryBuffer out) throws IOException {
 		// The Content-Length cannot overflow when cast to an int, our
 		// hardcoded LIMIT constant above assures us we wouldn't store
@@ -103,4 +161,25 @@ private void writeResponse(TemporaryBuffer out) throws IOException {
 			os.flush();
 		}
 	}
+
+	private static class CompressionConfig {
+		static final SectionParser<CompressionConfig> KEY = CompressionConfig::new;
+
+		final int level;
+
+		final boolean stream;
+
+		private CompressionConfig(Config cfg) {
+			int l = cfg.getInt("http", "compressionLevel", //$NON-NLS-1$ //$NON-NLS-2$
+					cfg.get(CoreConfig.KEY).getCompression());
+			level = ReusableGzipOutputStream.isValidLevel(l) ? l
+					: Deflater.DEFAULT_COMPRESSION;
+			stream = cfg.getBoolean("http", "streamCompression", false); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		static CompressionConfig of(HttpServletRequest req) {
+			Repository db = (Repository) req.getAttribute(ATTRIBUTE_REPOSITORY);
+			return db != null ? db.getConfig().get(KEY) : null;
+		}
+	}
 }
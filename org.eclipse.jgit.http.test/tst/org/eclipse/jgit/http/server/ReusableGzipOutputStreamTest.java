@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.http.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ReusableGzipOutputStreamTest {
+	@Test
+	public void testRoundTrip() throws IOException {
+		byte[] data = sample();
+		for (int level = -1; level <= 9; level++) {
+			// Twice to use a deflater returned to the pool.
+			assertArrayEquals(data, gunzip(gzip(data, level)));
+			assertArrayEquals(data, gunzip(gzip(data, level)));
+		}
+	}
+
+	@Test
+	public void testSingleBytes() throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (ReusableGzipOutputStream out = new ReusableGzipOutputStream(buf,
+				Deflater.BEST_SPEED)) {
+			for (byte b : "hello".getBytes(UTF_8)) {
+				out.write(b);
+			}
+		}
+		assertArrayEquals("hello".getBytes(UTF_8), gunzip(buf.toByteArray()));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		assertArrayEquals(new byte[0],
+				gunzip(gzip(new byte[0], Deflater.DEFAULT_COMPRESSION)));
+	}
+
+	@Test
+	public void testCompressionTimeIsMeasured() throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		ReusableGzipOutputStream out = new ReusableGzipOutputStream(buf,
+				Deflater.BEST_COMPRESSION);
+		out.write(sample());
+		out.close();
+		assertTrue(out.getCompressionNanos() > 0);
+	}
+
+	@Test
+	public void testValidLevels() {
+		assertTrue(ReusableGzipOutputStream.isValidLevel(-1));
+		assertTrue(ReusableGzipOutputStream.isValidLevel(0));
+		assertTrue(ReusableGzipOutputStream.isValidLevel(9));
+		assertFalse(ReusableGzipOutputStream.isValidLevel(-2));
+		assertFalse(ReusableGzipOutputStream.isValidLevel(10));
+	}
+
+	private static byte[] sample() {
+		StringBuilder b = new StringBuilder();
+		Random rng = new Random(1);
+		for (int i = 0; i < 5000; i++) {
+			b.append(Long.toHexString(rng.nextLong()))
+					.append(" refs/heads/branch-").append(i).append('\n');
+		}
+		return b.toString().getBytes(UTF_8);
+	}
+
+	private static byte[] gzip(byte[] data, int level) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (ReusableGzipOutputStream out = new ReusableGzipOutputStream(buf,
+				level)) {
+			out.write(data, 0, data.length / 2);
+			out.write(data, data.length / 2, data.length - data.length / 2);
+		}
+		return buf.toByteArray();
+	}
+
+	private static byte[] gunzip(byte[] data) throws IOException {
+		try (GZIPInputStream in = new GZIPInputStream(
+				new ByteArrayInputStream(data))) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.http.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.http.server.GitServlet;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.http.HttpTestCase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompressedAdvertisementTest extends HttpTestCase {
+	private Repository repo;
+
+	private URL infoRefs;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		TestRepository<Repository> src = createTestRepository();
+		repo = src.getRepository();
+		String srcName = repo.getDirectory().getName();
+
+		ServletContextHandler app = server.addContext("/git");
+		GitServlet gs = new GitServlet();
+		gs.setRepositoryResolver((HttpServletRequest req, String name) -> {
+			if (!name.equals(srcName)) {
+				throw new RepositoryNotFoundException(name);
+			}
+			repo.incrementOpen();
+			return repo;
+		});
+		app.addServlet(new ServletHolder(gs), "/*");
+		server.setUp();
+
+		infoRefs = new URL(toURIish(app, srcName).toString()
+				+ "/info/refs?service=git-upload-pack");
+
+		// About 20 KiB of advertisement, between the streaming limit and
+		// the in-core limit of SmartOutputStream.
+		RevCommit c = src.commit().create();
+		Random rng = new Random(42);
+		byte[] raw = new byte[20];
+		for (int i = 0; i < 300; i++) {
+			rng.nextBytes(raw);
+			src.update("refs/heads/" + ObjectId.fromRaw(raw).name(), c);
+		}
+	}
+
+	@Test
+	public void testBufferedByDefault() throws Exception {
+		HttpURLConnection c = get();
+		assertEquals("gzip", c.getHeaderField("Content-Encoding"));
+		assertNotNull(c.getHeaderField("Content-Length"));
+		assertNull(c.getHeaderField("Transfer-Encoding"));
+		assertArrayEquals(identity(), gunzip(c));
+	}
+
+	@Test
+	public void testStreamCompression() throws Exception {
+		StoredConfig cfg = repo.getConfig();
+		cfg.setBoolean("http", null, "streamCompression", true);
+		cfg.save();
+
+		HttpURLConnection c = get();
+		assertEquals("gzip", c.getHeaderField("Content-Encoding"));
+		assertNull(c.getHeaderField("Content-Length"));
+		assertEquals("chunked", c.getHeaderField("Transfer-Encoding"));
+		assertArrayEquals(identity(), gunzip(c));
+	}
+
+	@Test
+	public void testCompressionLevel() throws Exception {
+		StoredConfig cfg = repo.getConfig();
+		cfg.setInt("http", null, "compressionLevel", 1);
+		cfg.save();
+		HttpURLConnection c = get();
+		int fast = c.getContentLength();
+		assertArrayEquals(identity(), gunzip(c));
+
+		cfg.setInt("http", null, "compressionLevel", 9);
+		cfg.save();
+		c = get();
+		int best = c.getContentLength();
+		assertArrayEquals(identity(), gunzip(c));
+		assertTrue(best + " < " + fast, best < fast);
+
+		cfg.setInt("http", null, "compressionLevel", 0);
+		cfg.save();
+		c = get();
+		assertNull(c.getHeaderField("Content-Encoding"));
+	}
+
+	private HttpURLConnection get() throws IOException {
+		HttpURLConnection c = (HttpURLConnection) infoRefs.openConnection();
+		c.setRequestProperty("Accept-Encoding", "gzip");
+		assertEquals(200, c.getResponseCode());
+		return c;
+	}
+
+	private byte[] identity() throws IOException {
+		HttpURLConnection c = (HttpURLConnection) infoRefs.openConnection();
+		c.setRequestProperty("Accept-Encoding", "identity");
+		assertEquals(200, c.getResponseCode());
+		assertNull(c.getHeaderField("Content-Encoding"));
+		try (InputStream in = c.getInputStream()) {
+			return readAll(in);
+		}
+	}
+
+	private static byte[] gunzip(HttpURLConnection c) throws IOException {
+		try (InputStream in = new GZIPInputStream(c.getInputStream())) {
+			return readAll(in);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		for (int n; (n = in.read(buf)) > 0;) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
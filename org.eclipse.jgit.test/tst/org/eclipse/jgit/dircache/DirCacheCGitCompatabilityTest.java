@@ -14,6 +14,7 @@
 import static org.eclipse.jgit.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -22,8 +23,12 @@
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -188,6 +193,61 @@ public void testReadWriteV3() throws Exception {
 		assertArrayEquals(expectedBytes, indexBytes);
 	}
 
+	@Test
+	public void testReadWriteUntrackedCache() throws Exception {
+		final File file = pathOf("gitgit.index.untr");
+		final DirCache dc = new DirCache(file, FS.DETECTED);
+		dc.read();
+		assertEquals(2, dc.getEntryCount());
+
+		final UntrackedCache uc = dc.getUntrackedCache();
+		assertNotNull(uc);
+		assertEquals(Arrays.asList("top.txt", "build/"),
+				uc.root.getUntracked());
+		final UntrackedCache.Directory a = uc.root.getSubdirectory("src")
+				.getSubdirectory("a");
+		assertNotNull(a);
+		assertEquals(Collections.singletonList("u.c"), a.getUntracked());
+		assertTrue(a.isUntracked("u.c"));
+		assertFalse(a.isUntracked("v.o"));
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		dc.writeTo(null, bos);
+		final byte[] indexBytes = bos.toByteArray();
+		final byte[] expectedBytes = IO.readFully(file);
+		assertArrayEquals(expectedBytes, indexBytes);
+	}
+
+	@Test
+	public void testReadSplitIndex() throws Exception {
+		final File dir = createTempDirectory("split");
+		final File file = new File(dir, "index");
+		Files.copy(pathOf("gitgit.index.split").toPath(), file.toPath());
+		final DirCache dc = new DirCache(file, FS.DETECTED);
+		try {
+			dc.read();
+			fail("Shared index is missing");
+		} catch (IOException e) {
+			// expected
+		}
+
+		final String shared = "sharedindex."
+				+ "1acd6d2b49b04b8f89f54f04a09533d06623a13e";
+		Files.copy(pathOf("gitgit.index.shared").toPath(),
+				new File(dir, shared).toPath());
+		dc.read();
+		assertEquals(3, dc.getEntryCount());
+		assertEquals("a/x", dc.getEntry(0).getPathString());
+		assertEquals("d00491fd7e5bb6fa28c517a0bb32b8b506539d4d",
+				dc.getEntry(0).getObjectId().name());
+		assertEquals("b", dc.getEntry(1).getPathString());
+		assertEquals("2bd5a0a98a36cc08ada88b804d3be047e6aa5b8a",
+				dc.getEntry(1).getObjectId().name());
+		assertEquals("d", dc.getEntry(2).getPathString());
+		assertEquals("b8626c4cff2849624fb67f87cd0ad72b163671ad",
+				dc.getEntry(2).getObjectId().name());
+	}
+
 	private static void assertV3TreeEntry(int indexPosition, String path,
 			boolean skipWorkTree, boolean intentToAdd, DirCache dc) {
 		final DirCacheEntry entry = dc.getEntry(indexPosition);
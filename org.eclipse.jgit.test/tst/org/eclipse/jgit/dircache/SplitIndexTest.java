@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.dircache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.SystemReader;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SplitIndexTest extends RepositoryTestCase {
+	private Git git;
+
+	private Instant past;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		git = new Git(db);
+		FileBasedConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX, true);
+		config.save();
+
+		// Files older than the index are not racily clean, so that their
+		// entries are not rewritten smudged.
+		past = Instant.now().minusSeconds(10).truncatedTo(ChronoUnit.SECONDS);
+		for (int i = 0; i < 10; i++) {
+			writeOld("f" + i, "content " + i);
+		}
+		git.add().addFilepattern(".").call();
+	}
+
+	@Test
+	public void testWriteSplitIndex() throws Exception {
+		List<File> shared = sharedIndexes();
+		assertEquals(1, shared.size());
+		assertEquals(0, indexEntryCount());
+
+		writeOld("g", "g");
+		git.add().addFilepattern("g").call();
+		assertEquals(shared, sharedIndexes());
+		assertEquals(1, indexEntryCount());
+		assertTrue(db.getIndexFile().length() < shared.get(0).length());
+
+		DirCache dc = db.readDirCache();
+		assertEquals(11, dc.getEntryCount());
+		assertEquals("g", dc.getEntry(10).getPathString());
+		assertEquals(11, git.status().call().getAdded().size());
+	}
+
+	@Test
+	public void testReplaceAndDelete() throws Exception {
+		List<File> shared = sharedIndexes();
+		writeOld("f3", "modified");
+		git.add().addFilepattern("f3").call();
+		git.rm().setCached(true).addFilepattern("f5").call();
+		assertEquals(shared, sharedIndexes());
+		assertEquals(1, indexEntryCount());
+
+		DirCache dc = db.readDirCache();
+		assertEquals(9, dc.getEntryCount());
+		assertNull(dc.getEntry("f5"));
+		assertEquals(8, dc.getEntry("f3").getLength());
+		assertEquals("[f0, mode:100644, content:content 0]"
+				+ "[f1, mode:100644, content:content 1]"
+				+ "[f2, mode:100644, content:content 2]"
+				+ "[f3, mode:100644, content:modified]"
+				+ "[f4, mode:100644, content:content 4]"
+				+ "[f6, mode:100644, content:content 6]"
+				+ "[f7, mode:100644, content:content 7]"
+				+ "[f8, mode:100644, content:content 8]"
+				+ "[f9, mode:100644, content:content 9]",
+				indexState(CONTENT));
+	}
+
+	@Test
+	public void testNewSharedIndex() throws Exception {
+		FileBasedConfig config = db.getConfig();
+		config.setInt(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE, 10);
+		config.save();
+		List<File> shared = sharedIndexes();
+
+		writeOld("g", "g");
+		git.add().addFilepattern("g").call();
+		assertEquals(shared, sharedIndexes());
+		assertEquals(1, indexEntryCount());
+
+		// 2 of 12 entries are more than 10%.
+		writeOld("h", "h");
+		git.add().addFilepattern("h").call();
+		assertEquals(2, sharedIndexes().size());
+		assertEquals(0, indexEntryCount());
+		assertEquals(12, db.readDirCache().getEntryCount());
+	}
+
+	@Test
+	public void testExpireSharedIndex() throws Exception {
+		FileBasedConfig config = db.getConfig();
+		config.setInt(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION, null,
+				ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE, 0);
+		config.save();
+		File old = sharedIndexes().get(0);
+		Instant now = Instant
+				.ofEpochMilli(SystemReader.getInstance().getCurrentTime());
+		Files.setLastModifiedTime(old.toPath(),
+				FileTime.from(now.minus(30, ChronoUnit.DAYS)));
+
+		writeOld("g", "g");
+		git.add().addFilepattern("g").call();
+		List<File> shared = sharedIndexes();
+		assertEquals(1, shared.size());
+		assertNotEquals(old, shared.get(0));
+		assertEquals(11, db.readDirCache().getEntryCount());
+	}
+
+	@Test
+	public void testDisableSplitIndex() throws Exception {
+		FileBasedConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX, false);
+		config.save();
+
+		writeOld("g", "g");
+		git.add().addFilepattern("g").call();
+		assertEquals(11, indexEntryCount());
+		assertEquals(11, db.readDirCache().getEntryCount());
+	}
+
+	@Test
+	public void testKeepSplitIndexIfNotConfigured() throws Exception {
+		FileBasedConfig config = db.getConfig();
+		config.unset(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_SPLIT_INDEX);
+		config.save();
+
+		writeOld("g", "g");
+		git.add().addFilepattern("g").call();
+		assertEquals(1, indexEntryCount());
+		assertEquals(11, db.readDirCache().getEntryCount());
+	}
+
+	private void writeOld(String name, String content) throws IOException {
+		File f = writeTrashFile(name, content);
+		Files.setLastModifiedTime(f.toPath(), FileTime.from(past));
+	}
+
+	private int indexEntryCount() throws IOException {
+		return NB.decodeInt32(IO.readFully(db.getIndexFile()), 8);
+	}
+
+	private List<File> sharedIndexes() {
+		File[] files = db.getDirectory().listFiles(
+				(dir, name) -> name.startsWith(SplitIndex.SHARED_INDEX_PREFIX));
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+}
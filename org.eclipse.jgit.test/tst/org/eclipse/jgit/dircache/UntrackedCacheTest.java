@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.dircache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.NB;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UntrackedCacheTest extends RepositoryTestCase {
+	private Instant past;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		try (Git git = new Git(db)) {
+			writeTrashFile(".gitignore", "*.o\n");
+			writeTrashFile("src/a.c", "a");
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+		}
+		writeTrashFile(".git/info/exclude", "# none\n");
+		writeTrashFile("top.o", "top");
+		writeTrashFile("src/b.c", "b");
+		writeTrashFile("src/c.o", "c");
+
+		// Older than the index, which is written next.
+		past = Instant.now().minusSeconds(10).truncatedTo(ChronoUnit.SECONDS);
+		setLastModified(trash, past);
+		setLastModified(new File(trash, "src"), past);
+
+		// The cache claims that top.o is untracked although it is ignored,
+		// to show when it is used.
+		UntrackedCache.Directory root = directory("", trash,
+				idOf("*.o\n"), "top.o");
+		root.dirs.add(directory("src", new File(trash, "src"), null, "b.c"));
+		UntrackedCache cache = new UntrackedCache(UntrackedCache.ident(db),
+				new byte[36], new byte[36], 6, idOf("# none\n"),
+				ObjectId.zeroId(), Constants.encode(Constants.DOT_GIT_IGNORE),
+				root);
+		DirCache dc = db.lockDirCache();
+		dc.setUntrackedCache(cache);
+		dc.write();
+		assertTrue(dc.commit());
+	}
+
+	@Test
+	public void testIndexDiffUsesCache() throws Exception {
+		IndexDiff diff = diff();
+		assertEquals(set("top.o", "src/b.c"), diff.getUntracked());
+		assertEquals(set("src/c.o"), diff.getIgnoredNotInIndex());
+	}
+
+	@Test
+	public void testCacheDisabled() throws Exception {
+		FileBasedConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE, false);
+		config.save();
+		IndexDiff diff = diff();
+		assertEquals(set("src/b.c"), diff.getUntracked());
+		assertEquals(set("top.o", "src/c.o"), diff.getIgnoredNotInIndex());
+	}
+
+	@Test
+	public void testModifiedDirectory() throws Exception {
+		setLastModified(trash, past.plusSeconds(1));
+		IndexDiff diff = diff();
+		assertEquals(set("src/b.c"), diff.getUntracked());
+		assertEquals(set("top.o", "src/c.o"), diff.getIgnoredNotInIndex());
+	}
+
+	@Test
+	public void testModifiedGitignore() throws Exception {
+		writeTrashFile(".gitignore", "*.o\n*.x\n");
+		setLastModified(trash, past);
+		IndexDiff diff = diff();
+		assertEquals(set("src/b.c"), diff.getUntracked());
+		assertEquals(set("top.o", "src/c.o"), diff.getIgnoredNotInIndex());
+	}
+
+	@Test
+	public void testIndexChangeInvalidates() throws Exception {
+		DirCache dc = db.lockDirCache();
+		DirCacheEditor editor = dc.editor();
+		editor.add(new PathEdit("src/d.c") {
+			@Override
+			public void apply(DirCacheEntry ent) {
+				ent.setFileMode(FileMode.REGULAR_FILE);
+				ent.setObjectId(idOf("d"));
+			}
+		});
+		editor.commit();
+
+		UntrackedCache cache = db.readDirCache().getUntrackedCache();
+		assertNotNull(cache);
+		assertFalse(cache.root.valid);
+		assertFalse(cache.root.getSubdirectory("src").valid);
+		assertEquals(Collections.emptyList(), cache.root.getUntracked());
+
+		IndexDiff diff = diff();
+		assertEquals(set("src/b.c"), diff.getUntracked());
+		assertEquals(set("top.o", "src/c.o"), diff.getIgnoredNotInIndex());
+	}
+
+	@Test
+	public void testIndexDiffWritesCache() throws Exception {
+		FileBasedConfig config = db.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE, true);
+		config.save();
+		writeTrashFile("new/x.c", "x");
+		writeTrashFile("new/y.o", "y");
+		writeTrashFile("junk/z.o", "z");
+		Instant modified = past.plusSeconds(1);
+		setLastModified(trash, modified);
+
+		IndexDiff diff = diff();
+		assertEquals(set("src/b.c", "new/x.c"), diff.getUntracked());
+		assertEquals(set("top.o", "src/c.o", "new/y.o", "junk/z.o"),
+				diff.getIgnoredNotInIndex());
+
+		DirCache dc = db.readDirCache();
+		UntrackedCache cache = dc.getUntrackedCache();
+		assertNotNull(cache);
+		UntrackedCache.Directory root = cache.getRoot(db);
+		assertNotNull(root);
+		assertEquals(Arrays.asList("new/"), root.getUntracked());
+		assertEquals(idOf("*.o\n"), root.excludeId);
+		assertEquals(1, root.dirs.size());
+		UntrackedCache.Directory src = root.getSubdirectory("src");
+		assertEquals(Arrays.asList("b.c"), src.getUntracked());
+		assertTrue(src.isUpToDate(past,
+				db.getFS().getAttributes(new File(trash, "src")).getLength(),
+				null, 0));
+		File gitignore = new File(trash, Constants.DOT_GIT_IGNORE);
+		try (InputStream in = new FileInputStream(gitignore)) {
+			assertTrue(root.isUpToDate(modified,
+					db.getFS().getAttributes(trash).getLength(), in,
+					gitignore.length()));
+		}
+
+		// Nothing changed, so the index is not written again.
+		File index = db.getIndexFile();
+		Instant written = modified.plusSeconds(1);
+		setLastModified(index, written);
+		diff = diff();
+		assertEquals(set("src/b.c", "new/x.c"), diff.getUntracked());
+		assertEquals(written,
+				Files.getLastModifiedTime(index.toPath()).toInstant());
+	}
+
+	private IndexDiff diff() throws IOException {
+		IndexDiff diff = new IndexDiff(db, Constants.HEAD,
+				new FileTreeIterator(db));
+		diff.diff();
+		return diff;
+	}
+
+	private UntrackedCache.Directory directory(String name, File dir,
+			ObjectId gitignore, String... untracked) {
+		byte[] stat = new byte[36];
+		NB.encodeInt32(stat, 8, (int) past.getEpochSecond());
+		NB.encodeInt32(stat, 32,
+				(int) db.getFS().getAttributes(dir).getLength());
+		UntrackedCache.Directory d = new UntrackedCache.Directory(
+				Constants.encode(name), Instant.now());
+		d.valid = true;
+		d.stat = stat;
+		d.excludeId = gitignore;
+		d.untracked = new byte[untracked.length][];
+		for (int i = 0; i < untracked.length; i++) {
+			d.untracked[i] = Constants.encode(untracked[i]);
+		}
+		return d;
+	}
+
+	private static ObjectId idOf(String content) {
+		return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+				content.getBytes(UTF_8));
+	}
+
+	private static void setLastModified(File f, Instant time)
+			throws IOException {
+		Files.setLastModifiedTime(f.toPath(), FileTime.from(time));
+	}
+
+	private static Set<String> set(String... paths) {
+		return new HashSet<>(Arrays.asList(paths));
+	}
+}
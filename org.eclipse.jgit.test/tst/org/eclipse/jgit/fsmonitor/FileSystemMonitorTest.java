@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.fsmonitor;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.SystemReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemMonitorTest extends RepositoryTestCase {
+	private static class TestMonitor extends FileSystemMonitor {
+		final List<String> queried = new ArrayList<>();
+
+		final List<String> changed = new ArrayList<>();
+
+		private int next;
+
+		@Override
+		public Changes query(@Nullable String token) {
+			queried.add(token);
+			String t = "token" + next++;
+			if (token == null) {
+				return new Changes(t, null);
+			}
+			Changes c = new Changes(t, new ArrayList<>(changed));
+			changed.clear();
+			return c;
+		}
+	}
+
+	private TestMonitor monitor;
+
+	private Git git;
+
+	private Instant past;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		monitor = new TestMonitor();
+		FileSystemMonitor.setProvider(r -> monitor);
+		git = new Git(db);
+		past = Instant.now().minusSeconds(10).truncatedTo(ChronoUnit.SECONDS);
+		writeOld("a", "a");
+		writeOld("dir/b", "b");
+		writeOld("dir/c", "c");
+		git.add().addFilepattern(".").call();
+		git.commit().setMessage("initial").call();
+	}
+
+	@Override
+	@After
+	public void tearDown() throws Exception {
+		FileSystemMonitor.setProvider(null);
+		super.tearDown();
+	}
+
+	@Test
+	public void testWriteToken() throws Exception {
+		byte[] index = IO.readFully(db.getIndexFile());
+		String raw = new String(index, ISO_8859_1);
+		assertTrue(raw.contains("FSMN"));
+
+		DirCache dc = db.readDirCache();
+		String token = monitor.queried.get(monitor.queried.size() - 1);
+		assertNotNull(token);
+		assertTrue(raw.contains(token + '\0'));
+		assertFalse(dc.getEntry("a").isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testStatusIsReadOnly() throws Exception {
+		byte[] before = IO.readFully(db.getIndexFile());
+		assertTrue(git.status().call().isClean());
+		assertArrayEquals(before, IO.readFully(db.getIndexFile()));
+		assertFalse(db.readDirCache().getEntry("a")
+				.isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testStatusMarksUnchangedEntries() throws Exception {
+		assertTrue(status().isClean());
+
+		DirCache dc = db.readDirCache();
+		for (int i = 0; i < dc.getEntryCount(); i++) {
+			assertTrue(dc.getEntry(i).isFileSystemMonitorValid());
+		}
+		// Nothing more to record.
+		assertFalse(dc.writeFileSystemMonitorState());
+	}
+
+	@Test
+	public void testSkipUnreportedChange() throws Exception {
+		assertTrue(status().isClean());
+
+		writeOld("a", "modified");
+		assertTrue(status().isClean());
+
+		monitor.changed.add("a");
+		assertEquals(Collections.singleton("a"),
+				status().getModified());
+	}
+
+	@Test
+	public void testReportedDirectory() throws Exception {
+		assertTrue(status().isClean());
+
+		writeOld("a", "modified");
+		writeOld("dir/b", "modified");
+		monitor.changed.add("dir");
+		DirCache dc = db.readDirCache();
+		assertTrue(dc.getEntry("a").isFileSystemMonitorValid());
+		assertFalse(dc.getEntry("dir/b").isFileSystemMonitorValid());
+		assertFalse(dc.getEntry("dir/c").isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testQueryOncePerInstance() throws Exception {
+		assertTrue(status().isClean());
+
+		DirCache dc = db.readDirCache();
+		assertTrue(dc.getEntry("a").isFileSystemMonitorValid());
+		int queries = monitor.queried.size();
+		monitor.changed.add("a");
+		dc.read();
+		assertEquals(queries, monitor.queried.size());
+		// Without asking the monitor, any file may have changed.
+		assertFalse(dc.getEntry("a").isFileSystemMonitorValid());
+		assertFalse(dc.getEntry("dir/b").isFileSystemMonitorValid());
+
+		dc = db.readDirCache();
+		assertEquals(queries + 1, monitor.queried.size());
+		assertFalse(dc.getEntry("a").isFileSystemMonitorValid());
+		assertTrue(dc.getEntry("dir/b").isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testStatusWithLockedIndex() throws Exception {
+		DirCache locked = db.lockDirCache();
+		try {
+			assertTrue(status().isClean());
+		} finally {
+			locked.unlock();
+		}
+		assertFalse(db.readDirCache().getEntry("a")
+				.isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testEverythingChanged() throws Exception {
+		assertTrue(status().isClean());
+
+		writeOld("a", "modified");
+		FileSystemMonitor.setProvider(r -> new FileSystemMonitor() {
+			@Override
+			public Changes query(String token) {
+				return new Changes("other", null);
+			}
+		});
+		Status status = status();
+		assertEquals(Collections.singleton("a"), status.getModified());
+	}
+
+	@Test
+	public void testFailingMonitor() throws Exception {
+		assertTrue(status().isClean());
+
+		writeOld("a", "modified");
+		FileSystemMonitor.setProvider(r -> new FileSystemMonitor() {
+			@Override
+			public Changes query(String token) {
+				throw new IllegalStateException("broken");
+			}
+		});
+		Status status = status();
+		assertEquals(Collections.singleton("a"), status.getModified());
+	}
+
+	@Test
+	public void testNoMonitor() throws Exception {
+		FileSystemMonitor.setProvider(r -> null);
+		writeOld("a", "modified");
+		git.add().addFilepattern("a").call();
+		String raw = new String(IO.readFully(db.getIndexFile()), ISO_8859_1);
+		assertFalse(raw.contains("FSMN"));
+	}
+
+	@Test
+	public void testNotWatched() throws Exception {
+		FileSystemMonitor.setProvider(r -> null);
+		DirCache dc = db.readDirCache();
+		dc.getEntry("a").setFileSystemMonitorValid(true);
+		assertFalse(dc.getEntry("a").isFileSystemMonitorValid());
+	}
+
+	@Test
+	public void testHook() throws Exception {
+		assumeTrue(FS.DETECTED.supportsExecute()
+				&& !SystemReader.getInstance().isWindows());
+		File hook = writeTrashFile(".git/hooks/query-watchman",
+				"#!/bin/sh\n" //
+						+ "test \"$1\" = 2 || exit 1\n" //
+						+ "printf 'next\\0a\\0dir/b\\0'\n");
+		FS.DETECTED.setExecute(hook, true);
+		HookFileSystemMonitor hookMonitor = new HookFileSystemMonitor(db,
+				hook.getAbsolutePath());
+
+		FileSystemMonitor.Changes c = hookMonitor.query("previous");
+		assertEquals("next", c.getToken());
+		assertEquals(Arrays.asList("a", "dir/b"), c.getPaths());
+
+		c = hookMonitor.query(null);
+		assertEquals("next", c.getToken());
+		assertNull(c.getPaths());
+	}
+
+	@Test
+	public void testHookWithoutOutput() throws Exception {
+		assumeTrue(FS.DETECTED.supportsExecute()
+				&& !SystemReader.getInstance().isWindows());
+		File hook = writeTrashFile(".git/hooks/query-watchman",
+				"#!/bin/sh\n" //
+						+ "exit 0\n");
+		FS.DETECTED.setExecute(hook, true);
+		HookFileSystemMonitor hookMonitor = new HookFileSystemMonitor(db,
+				hook.getAbsolutePath());
+
+		FileSystemMonitor.Changes c = hookMonitor.query("previous");
+		assertEquals("previous", c.getToken());
+		assertNull(c.getPaths());
+
+		c = hookMonitor.query(null);
+		assertNull(c.getToken());
+		assertNull(c.getPaths());
+	}
+
+	@Test
+	public void testHookVersion1() throws Exception {
+		assumeTrue(FS.DETECTED.supportsExecute()
+				&& !SystemReader.getInstance().isWindows());
+		File hook = writeTrashFile(".git/hooks/query-watchman",
+				"#!/bin/sh\n" //
+						+ "test \"$1\" = 1 || exit 1\n" //
+						+ "printf 'a\\0'\n");
+		FS.DETECTED.setExecute(hook, true);
+		HookFileSystemMonitor hookMonitor = new HookFileSystemMonitor(db,
+				hook.getAbsolutePath());
+
+		FileSystemMonitor.Changes c = hookMonitor.query("1234");
+		assertNotNull(c.getToken());
+		assertEquals(Collections.singletonList("a"), c.getPaths());
+
+		// A token of version 2 cannot be passed to version 1.
+		c = hookMonitor.query("not-a-time");
+		assertNull(c.getPaths());
+	}
+
+	@Test
+	public void testWatchService() throws Exception {
+		try (WatchServiceFileSystemMonitor watcher = WatchServiceFileSystemMonitor
+				.get(db)) {
+			FileSystemMonitor.Changes c = watcher.query(null);
+			assertNull(c.getPaths());
+			String token = c.getToken();
+			assertNotNull(token);
+
+			writeTrashFile("a", "changed");
+			writeTrashFile("new/d", "d");
+			c = watcher.query(token);
+			Collection<String> paths = c.getPaths();
+			assumeTrue("watch service too slow", paths != null);
+			assertTrue(paths.contains("a"));
+			assertTrue(paths.contains("new") || paths.contains("new/d"));
+			assertFalse(paths.contains("dir/b"));
+
+			c = watcher.query(c.getToken());
+			assertEquals(Collections.emptyList(), c.getPaths());
+			assertNull(watcher.query("unknown").getPaths());
+		}
+	}
+
+	private Status status() throws Exception {
+		return git.status().setWriteFileSystemMonitorState(true).call();
+	}
+
+	private void writeOld(String name, String content) throws IOException {
+		File f = writeTrashFile(name, content);
+		Files.setLastModifiedTime(f.toPath(), FileTime.from(past));
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_COMMIT_DATA;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_EXTRA_EDGE_LIST;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_HEADER_SIZE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EXTRA_EDGES_NEEDED;
+import static org.eclipse.jgit.lib.Constants.OBJECT_ID_LENGTH;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.NB;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitGraphTest {
+	private TestRepository<InMemoryRepository> tr;
+
+	private InMemoryRepository repo;
+
+	@Before
+	public void setUp() throws Exception {
+		repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+		tr = new TestRepository<>(repo);
+	}
+
+	@Test
+	public void testEmptyGraph() throws Exception {
+		CommitGraph graph = writeAndRead(Collections.emptySet());
+		assertEquals(0, graph.getCommitCnt());
+		assertEquals(-1, graph.findGraphPosition(ObjectId.zeroId()));
+		assertNull(graph.getObjectId(0));
+		assertNull(graph.getCommitData(0));
+	}
+
+	@Test
+	public void testLinearHistory() throws Exception {
+		RevCommit a = tr.commit().add("a", "a").create();
+		RevCommit b = tr.commit().parent(a).add("b", "b").create();
+		RevCommit c = tr.commit().parent(b).add("c", "c").create();
+
+		CommitGraph graph = writeAndRead(Collections.singleton(c));
+		assertEquals(3, graph.getCommitCnt());
+		verifyCommit(graph, a, 1);
+		verifyCommit(graph, b, 2);
+		verifyCommit(graph, c, 3);
+	}
+
+	@Test
+	public void testMergesAndOctopus() throws Exception {
+		RevCommit root = tr.commit().create();
+		RevCommit b1 = tr.commit().parent(root).add("b1", "b1").create();
+		RevCommit b2 = tr.commit().parent(root).add("b2", "b2").create();
+		RevCommit b3 = tr.commit().parent(b2).add("b3", "b3").create();
+		RevCommit merge = tr.commit().parent(b1).parent(b2).create();
+		RevCommit octopus = tr.commit().parent(merge).parent(b1).parent(b3)
+				.parent(root).create();
+		RevCommit tip = tr.commit().parent(octopus).create();
+
+		CommitGraph graph = writeAndRead(Collections.singleton(tip));
+		assertEquals(7, graph.getCommitCnt());
+		verifyCommit(graph, root, 1);
+		verifyCommit(graph, b1, 2);
+		verifyCommit(graph, b2, 2);
+		verifyCommit(graph, b3, 3);
+		verifyCommit(graph, merge, 3);
+		verifyCommit(graph, octopus, 4);
+		verifyCommit(graph, tip, 5);
+	}
+
+	@Test
+	public void testUnreachableCommitsNotIncluded() throws Exception {
+		RevCommit a = tr.commit().create();
+		RevCommit b = tr.commit().parent(a).create();
+		RevCommit other = tr.commit().add("x", "x").create();
+
+		CommitGraph graph = writeAndRead(Collections.singleton(b));
+		assertEquals(2, graph.getCommitCnt());
+		assertEquals(-1, graph.findGraphPosition(other));
+	}
+
+	@Test
+	public void testChain() throws Exception {
+		RevCommit a = tr.commit().create();
+		RevCommit b = tr.commit().parent(a).create();
+		RevCommit c = tr.commit().parent(b).add("c", "c").create();
+		RevCommit d = tr.commit().parent(c).parent(a).create();
+		RevCommit e = tr.commit().parent(d).parent(b).parent(c).create();
+
+		ByteArrayOutputStream baseOut = new ByteArrayOutputStream();
+		ObjectId baseId = write(Collections.singleton(b), CommitGraph.EMPTY,
+				new ObjectId[0], baseOut);
+		CommitGraph base = CommitGraphLoader
+				.read(new ByteArrayInputStream(baseOut.toByteArray()));
+		assertEquals(2, base.getCommitCnt());
+
+		ObjectId[] baseIds = { baseId };
+		ByteArrayOutputStream layerOut = new ByteArrayOutputStream();
+		write(Collections.singleton(e), base, baseIds, layerOut);
+		CommitGraph chain = CommitGraphLoader.read(
+				new ByteArrayInputStream(layerOut.toByteArray()), base,
+				baseIds);
+
+		assertEquals(5, chain.getCommitCnt());
+		verifyCommit(chain, a, 1);
+		verifyCommit(chain, b, 2);
+		verifyCommit(chain, c, 3);
+		verifyCommit(chain, d, 4);
+		verifyCommit(chain, e, 5);
+		assertTrue(chain.findGraphPosition(a) < 2);
+		assertTrue(chain.findGraphPosition(c) >= 2);
+	}
+
+	@Test
+	public void testChainBaseMismatch() throws Exception {
+		RevCommit a = tr.commit().create();
+		RevCommit b = tr.commit().parent(a).create();
+
+		ByteArrayOutputStream baseOut = new ByteArrayOutputStream();
+		ObjectId baseId = write(Collections.singleton(a), CommitGraph.EMPTY,
+				new ObjectId[0], baseOut);
+		CommitGraph base = CommitGraphLoader
+				.read(new ByteArrayInputStream(baseOut.toByteArray()));
+
+		ByteArrayOutputStream layerOut = new ByteArrayOutputStream();
+		write(Collections.singleton(b), base, new ObjectId[] { baseId },
+				layerOut);
+		byte[] layer = layerOut.toByteArray();
+
+		assertThrows(CommitGraphFormatException.class,
+				() -> CommitGraphLoader.read(new ByteArrayInputStream(layer),
+						base, new ObjectId[] { ObjectId.zeroId() }));
+		assertThrows(CommitGraphFormatException.class,
+				() -> CommitGraphLoader
+						.read(new ByteArrayInputStream(layer)));
+	}
+
+	@Test
+	public void testNotACommitGraph() {
+		byte[] junk = new byte[64];
+		assertThrows(CommitGraphFormatException.class,
+				() -> CommitGraphLoader.read(new ByteArrayInputStream(junk)));
+	}
+
+	@Test
+	public void testFanoutNotMonotonic() throws Exception {
+		RevCommit a = tr.commit().create();
+		RevCommit b = tr.commit().parent(a).create();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(Collections.singleton(b), CommitGraph.EMPTY, new ObjectId[0],
+				out);
+		byte[] data = out.toByteArray();
+
+		// The first chunk is OIDF; its offset follows the 8 byte header and
+		// the 4 byte id of the first lookup table entry.
+		int fanout = (int) NB.decodeInt64(data, 12);
+		NB.encodeInt32(data, fanout, Integer.MAX_VALUE);
+		assertThrows(CommitGraphFormatException.class,
+				() -> CommitGraphLoader.read(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void testExtraEdgesMissing() throws Exception {
+		byte[] data = octopusGraph();
+		// Rename EDGE; unknown chunks are skipped as optional.
+		int entry = chunkEntry(data, CHUNK_ID_EXTRA_EDGE_LIST);
+		NB.encodeInt32(data, entry, 0x58585858);
+		assertThrows(CommitGraphFormatException.class,
+				() -> CommitGraphLoader.read(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void testExtraEdgeIndexOutOfRange() throws Exception {
+		byte[] data = octopusGraph();
+		int cdat = (int) NB.decodeInt64(data,
+				chunkEntry(data, CHUNK_ID_COMMIT_DATA) + 4);
+		int edge = (int) NB.decodeInt64(data,
+				chunkEntry(data, CHUNK_ID_EXTRA_EDGE_LIST) + 4);
+		int cnt = (edge - cdat) / CommitGraphV1.COMMIT_DATA_WIDTH;
+		for (int p = 0; p < cnt; p++) {
+			int ptr = cdat + p * CommitGraphV1.COMMIT_DATA_WIDTH
+					+ OBJECT_ID_LENGTH + 4;
+			if ((NB.decodeInt32(data, ptr) & GRAPH_EXTRA_EDGES_NEEDED) != 0) {
+				NB.encodeInt32(data, ptr, GRAPH_EXTRA_EDGES_NEEDED | 1000);
+			}
+		}
+		assertThrows(CommitGraphFormatException.class,
+				() -> CommitGraphLoader.read(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void testChecksumReturnedByWriter() throws Exception {
+		RevCommit a = tr.commit().create();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectId checksum = write(Collections.singleton(a), CommitGraph.EMPTY,
+				new ObjectId[0], out);
+		byte[] data = out.toByteArray();
+		assertEquals(checksum,
+				ObjectId.fromRaw(data, data.length - OBJECT_ID_LENGTH));
+	}
+
+	private void verifyCommit(CommitGraph graph, RevCommit commit,
+			int generation) throws IOException {
+		int pos = graph.findGraphPosition(commit);
+		assertTrue(pos >= 0);
+		assertEquals(commit, graph.getObjectId(pos));
+
+		CommitGraph.CommitData data = graph.getCommitData(pos);
+		assertNotNull(data);
+		try (RevWalk rw = new RevWalk(repo)) {
+			RevCommit c = rw.parseCommit(commit);
+			assertEquals(c.getTree(), data.getTree());
+			assertEquals(c.getCommitTime(), data.getCommitTime());
+
+			ObjectId[] expected = new ObjectId[c.getParentCount()];
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] = c.getParent(i).copy();
+			}
+			int[] parents = data.getParents();
+			ObjectId[] actual = new ObjectId[parents.length];
+			for (int i = 0; i < parents.length; i++) {
+				actual[i] = graph.getObjectId(parents[i]);
+			}
+			assertArrayEquals(expected, actual);
+		}
+		assertEquals(generation, data.getGeneration());
+	}
+
+	private byte[] octopusGraph() throws Exception {
+		RevCommit a = tr.commit().create();
+		RevCommit b = tr.commit().add("b", "b").create();
+		RevCommit c = tr.commit().add("c", "c").create();
+		RevCommit octopus = tr.commit().parent(a).parent(b).parent(c)
+				.create();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(Collections.singleton(octopus), CommitGraph.EMPTY,
+				new ObjectId[0], out);
+		byte[] data = out.toByteArray();
+		verifyCommit(CommitGraphLoader.read(new ByteArrayInputStream(data)),
+				octopus, 2);
+		return data;
+	}
+
+	private static int chunkEntry(byte[] data, int chunkId) {
+		for (int p = COMMIT_GRAPH_HEADER_SIZE;; p += CHUNK_LOOKUP_WIDTH) {
+			int id = NB.decodeInt32(data, p);
+			assertTrue(id != 0);
+			if (id == chunkId) {
+				return p;
+			}
+		}
+	}
+
+	private CommitGraph writeAndRead(Set<? extends ObjectId> wants)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(wants, CommitGraph.EMPTY, new ObjectId[0], out);
+		return CommitGraphLoader
+				.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private ObjectId write(Set<? extends ObjectId> wants, CommitGraph base,
+			ObjectId[] baseIds, ByteArrayOutputStream out) throws IOException {
+		try (RevWalk rw = new RevWalk(repo)) {
+			GraphCommits commits = GraphCommits.fromWalk(
+					NullProgressMonitor.INSTANCE, new HashSet<>(wants), rw,
+					base, baseIds);
+			return new CommitGraphWriter(commits)
+					.write(NullProgressMonitor.INSTANCE, out);
+		}
+	}
+}
@@ -38,11 +38,16 @@
 
 package org.eclipse.jgit.internal.storage.dfs;
 
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_CORE_SECTION;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_DFS_SECTION;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_CACHE_SHARDS;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_DIRECT_MEMORY;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThrows;
 
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Config;
 import org.junit.Test;
 
 public class DfsBlockCacheConfigTest {
@@ -80,4 +85,36 @@ public void validBlockSize() {
 
 		assertThat(config.getBlockSize(), is(65536));
 	}
+
+	@Test
+	public void nonPositiveCacheShardsExpectsException() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new DfsBlockCacheConfig().setCacheShards(0));
+	}
+
+	@Test
+	@SuppressWarnings("boxing")
+	public void cacheShardsFromConfig() {
+		Config rc = new Config();
+		rc.setInt(CONFIG_CORE_SECTION, CONFIG_DFS_SECTION,
+				CONFIG_KEY_CACHE_SHARDS, 8);
+		DfsBlockCacheConfig config = new DfsBlockCacheConfig();
+		assertThat(config.getCacheShards(), is(1));
+
+		config.fromConfig(rc);
+		assertThat(config.getCacheShards(), is(8));
+	}
+
+	@Test
+	@SuppressWarnings("boxing")
+	public void directMemoryFromConfig() {
+		Config rc = new Config();
+		rc.setBoolean(CONFIG_CORE_SECTION, CONFIG_DFS_SECTION,
+				CONFIG_KEY_DIRECT_MEMORY, true);
+		DfsBlockCacheConfig config = new DfsBlockCacheConfig();
+		assertThat(config.isDirectMemory(), is(false));
+
+		config.fromConfig(rc);
+		assertThat(config.isDirectMemory(), is(true));
+	}
 }
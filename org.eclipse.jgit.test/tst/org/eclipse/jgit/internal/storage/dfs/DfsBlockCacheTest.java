@@ -12,6 +12,8 @@
 
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -19,6 +21,7 @@
 import java.util.List;
 import java.util.stream.LongStream;
 
+import org.eclipse.jgit.internal.storage.pack.PackExt;
 import org.eclipse.jgit.junit.TestRng;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
@@ -103,6 +106,192 @@ public void weirdBlockSize() throws Exception {
 		}
 	}
 
+	@Test
+	public void shardedCacheEvictsWithinLimit() throws Exception {
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+				.setBlockSize(512)
+				.setBlockLimit(1 << 14)
+				.setCacheShards(4));
+		cache = DfsBlockCache.getInstance();
+		assertEquals(4, cache.getShardCount());
+
+		DfsStreamKey key = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-1.pack",
+				PackExt.PACK);
+		for (int i = 0; i < 100; i++) {
+			cache.put(key, i * 512L, 512, Integer.valueOf(i));
+		}
+		assertTrue(LongStream.of(cache.getEvictions()).sum() > 0);
+
+		long[] shardSize = cache.getShardCurrentSize();
+		assertEquals(4, shardSize.length);
+		for (long size : shardSize) {
+			assertTrue(size <= (1 << 14) / 4);
+		}
+		assertEquals(LongStream.of(cache.getCurrentSize()).sum(),
+				LongStream.of(shardSize).sum());
+		assertEquals(4, cache.getShardLockContention().length);
+		assertEquals(4, cache.getShardLockWaitTime().length);
+
+		// The most recently added block is still cached.
+		assertEquals(Integer.valueOf(99), cache.get(key, 99 * 512L));
+	}
+
+	@Test
+	public void entryLargerThanShard() throws Exception {
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+				.setBlockSize(512)
+				.setBlockLimit(1 << 14)
+				.setCacheShards(4));
+		cache = DfsBlockCache.getInstance();
+		int shardBytes = (1 << 14) / 4;
+
+		DfsStreamKey key = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-1.pack",
+				PackExt.PACK);
+		for (int i = 0; i < 100; i++) {
+			cache.put(key, i * 512L, 512, Integer.valueOf(i));
+		}
+		DfsStreamKey idx = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-1.idx",
+				PackExt.INDEX);
+		Object big = new Object();
+		DfsBlockCache.Ref<Object> ref = cache.getOrLoadRef(idx, 0,
+				() -> new DfsBlockCache.Ref<>(idx, 0, shardBytes + 1, big));
+		assertSame(big, ref.get());
+		assertFalse(cache.contains(idx, 0));
+
+		// A shard filled by a single entry still evicts it for the next.
+		for (int i = 0; i < 100; i++) {
+			cache.put(key, i * 512L, shardBytes, Integer.valueOf(i));
+			cache.put(key, i * 512L + 1, 512, Integer.valueOf(i));
+		}
+		for (long size : cache.getShardCurrentSize()) {
+			assertTrue(size <= shardBytes);
+		}
+		assertEquals(Integer.valueOf(99), cache.get(key, 99 * 512L + 1));
+	}
+
+	@Test
+	public void entryLargerThanSingleShard() throws Exception {
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+				.setBlockSize(512)
+				.setBlockLimit(1 << 14));
+		cache = DfsBlockCache.getInstance();
+		assertEquals(1, cache.getShardCount());
+
+		DfsStreamKey key = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-1.pack",
+				PackExt.PACK);
+		for (int i = 0; i < 10; i++) {
+			cache.put(key, i * 512L, 512, Integer.valueOf(i));
+		}
+		DfsStreamKey idx = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-1.idx",
+				PackExt.INDEX);
+		Object big = new Object();
+		DfsBlockCache.Ref<Object> ref = cache.getOrLoadRef(idx, 0,
+				() -> new DfsBlockCache.Ref<>(idx, 0, (1 << 14) + 1, big));
+		assertSame(big, ref.get());
+		assertTrue(cache.contains(idx, 0));
+		assertFalse(cache.contains(key, 0));
+
+		cache.put(key, 0, 512, Integer.valueOf(0));
+		assertFalse(cache.contains(idx, 0));
+		assertEquals(512, LongStream.of(cache.getCurrentSize()).sum());
+	}
+
+	@Test
+	public void shardedCacheKeepsFrequentBlocks() throws Exception {
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+				.setBlockSize(512)
+				.setBlockLimit(1 << 14)
+				.setCacheShards(2));
+		cache = DfsBlockCache.getInstance();
+		int shardBlocks = (1 << 14) / 2 / 512;
+
+		DfsStreamKey hot = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-hot.pack",
+				PackExt.PACK);
+		DfsStreamKey scan = DfsStreamKey.of(
+				new DfsRepositoryDescription("test"), "pack-scan.pack",
+				PackExt.PACK);
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 4; i++) {
+				if (cache.get(hot, i * 512L) == null) {
+					cache.put(hot, i * 512L, 512, Integer.valueOf(i));
+				}
+			}
+			// A scan of blocks used only once, larger than the cache.
+			for (int i = 0; i < 4 * shardBlocks; i++) {
+				long pos = (round * 4 * shardBlocks + i) * 512L;
+				cache.put(scan, pos, 512, Integer.valueOf(i));
+			}
+		}
+		for (int i = 0; i < 4; i++) {
+			assertTrue(cache.contains(hot, i * 512L));
+		}
+		for (long size : cache.getShardCurrentSize()) {
+			assertTrue(size <= (1 << 14) / 2);
+		}
+	}
+
+	@Test
+	public void shardsLimitedByBlockLimit() {
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+				.setBlockSize(512)
+				.setBlockLimit(2048)
+				.setCacheShards(16));
+		assertEquals(4, DfsBlockCache.getInstance().getShardCount());
+	}
+
+	@SuppressWarnings("resource")
+	@Test
+	public void directMemoryBlocks() throws Exception {
+		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+				.setBlockSize(512)
+				.setBlockLimit(1 << 20)
+				.setDirectMemory(true));
+		cache = DfsBlockCache.getInstance();
+
+		DfsRepositoryDescription repo = new DfsRepositoryDescription("test");
+		InMemoryRepository r1 = new InMemoryRepository(repo);
+		byte[] content1 = rng.nextBytes(424242);
+		byte[] content2 = rng.nextBytes(1000);
+		ObjectId id1;
+		ObjectId id2;
+		try (ObjectInserter ins = r1.newObjectInserter()) {
+			id1 = ins.insert(OBJ_BLOB, content1);
+			id2 = ins.insert(OBJ_BLOB, content2);
+			ins.flush();
+		}
+		List<DfsPackDescription> packs = r1.getObjectDatabase().listPacks();
+
+		// Blocks written by the inserter are moved to direct memory.
+		DfsBlock block0 = cache.get(
+				DfsStreamKey.of(repo, packs.get(0).getFileName(PackExt.PACK),
+						PackExt.PACK),
+				0);
+		assertTrue(block0.isDirect());
+
+		// Read back both cached blocks and blocks loaded by the cache.
+		for (int i = 0; i < 2; i++) {
+			InMemoryRepository r2 = new InMemoryRepository(repo);
+			r2.getObjectDatabase().commitPack(packs, Collections.emptyList());
+			try (ObjectReader rdr = r2.newObjectReader()) {
+				assertTrue(Arrays.equals(content1,
+						rdr.open(id1, OBJ_BLOB).getBytes()));
+				assertTrue(Arrays.equals(content2,
+						rdr.open(id2, OBJ_BLOB).getBytes()));
+			}
+			DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
+					.setBlockSize(512)
+					.setBlockLimit(1 << 20)
+					.setDirectMemory(true));
+			cache = DfsBlockCache.getInstance();
+		}
+	}
+
 	private void resetCache() {
 		DfsBlockCache.reconfigure(new DfsBlockCacheConfig()
 				.setBlockSize(512)
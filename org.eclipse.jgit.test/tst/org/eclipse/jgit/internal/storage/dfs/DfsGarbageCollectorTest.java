@@ -4,8 +4,10 @@
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.GC_REST;
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.INSERT;
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.UNREACHABLE_GARBAGE;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.COMMIT_GRAPH;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.REFTABLE;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.REVERSE_INDEX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -18,7 +20,10 @@
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.internal.storage.file.PackReverseIndex;
 import org.eclipse.jgit.internal.storage.reftable.RefCursor;
 import org.eclipse.jgit.internal.storage.reftable.ReftableConfig;
 import org.eclipse.jgit.internal.storage.reftable.ReftableReader;
@@ -976,6 +981,89 @@ public void reftableWithTombstoneNotResurrected() throws Exception {
 		assertNull(refdb.exactRef(NEXT));
 	}
 
+	@Test
+	public void produceCommitGraphOnlyForGcPack() throws Exception {
+		RevCommit commit0 = commit().message("0").create();
+		RevCommit commit1 = commit().message("1").parent(commit0).create();
+		git.update("master", commit1);
+		RevCommit other = commit().message("other").create();
+		git.update("refs/other", other);
+
+		DfsGarbageCollector gc = new DfsGarbageCollector(repo);
+		gc.setWriteCommitGraph(true);
+		run(gc);
+
+		assertEquals(2, odb.getPacks().length);
+		for (DfsPackFile pack : odb.getPacks()) {
+			DfsPackDescription desc = pack.getPackDescription();
+			assertEquals(desc.getPackSource() == GC,
+					desc.hasFileExt(COMMIT_GRAPH));
+		}
+
+		try (DfsReader reader = odb.newReader()) {
+			CommitGraph cg = reader.getCommitGraph().get();
+			assertEquals(3, cg.getCommitCnt());
+			int pos = cg.findGraphPosition(commit1);
+			assertTrue(pos >= 0);
+			assertEquals(2, cg.getCommitData(pos).getGeneration());
+			assertEquals(commit0, cg.getObjectId(
+					cg.getCommitData(pos).getParents()[0]));
+			assertTrue(cg.findGraphPosition(other) >= 0);
+		}
+	}
+
+	@Test
+	public void noCommitGraphByDefault() throws Exception {
+		RevCommit commit0 = commit().message("0").create();
+		git.update("master", commit0);
+
+		gcNoTtl();
+
+		assertEquals(1, odb.getPacks().length);
+		assertFalse(odb.getPacks()[0].getPackDescription()
+				.hasFileExt(COMMIT_GRAPH));
+		try (DfsReader reader = odb.newReader()) {
+			assertFalse(reader.getCommitGraph().isPresent());
+		}
+	}
+
+	@Test
+	public void produceReverseIndexWhenConfigured() throws Exception {
+		RevCommit commit0 = commit().message("0").create();
+		RevCommit commit1 = commit().message("1").parent(commit0).create();
+		git.update("master", commit1);
+
+		DfsGarbageCollector gc = new DfsGarbageCollector(repo);
+		gc.getPackConfig().setWriteReverseIndex(true);
+		run(gc);
+
+		assertEquals(1, odb.getPacks().length);
+		DfsPackFile pack = odb.getPacks()[0];
+		assertTrue(pack.getPackDescription().hasFileExt(REVERSE_INDEX));
+		try (DfsReader reader = odb.newReader()) {
+			PackIndex idx = pack.getPackIndex(reader);
+			PackReverseIndex rev = pack.getReverseIdx(reader);
+			assertEquals(1, reader.getIoStats().getReadReverseIndexCount());
+			for (PackIndex.MutableEntry me : idx) {
+				assertEquals(me.toObjectId(), rev.findObject(me.getOffset()));
+			}
+			assertEquals(commit1,
+					rev.findObject(pack.findOffset(reader, commit1)));
+		}
+	}
+
+	@Test
+	public void noReverseIndexByDefault() throws Exception {
+		RevCommit commit0 = commit().message("0").create();
+		git.update("master", commit0);
+
+		gcNoTtl();
+
+		assertEquals(1, odb.getPacks().length);
+		assertFalse(odb.getPacks()[0].getPackDescription()
+				.hasFileExt(REVERSE_INDEX));
+	}
+
 	private TestRepository<InMemoryRepository>.CommitBuilder commit() {
 		return git.commit();
 	}
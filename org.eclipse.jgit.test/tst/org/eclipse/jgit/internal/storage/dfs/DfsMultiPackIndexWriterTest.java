@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.dfs;
+
+import static org.eclipse.jgit.internal.storage.pack.PackExt.MULTI_PACK_INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackList;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DfsMultiPackIndexWriterTest {
+	private TestRepository<InMemoryRepository> git;
+
+	private InMemoryRepository repo;
+
+	private DfsObjDatabase odb;
+
+	@Before
+	public void setUp() throws IOException {
+		DfsRepositoryDescription desc = new DfsRepositoryDescription("test");
+		git = new TestRepository<>(new InMemoryRepository(desc));
+		repo = git.getRepository();
+		odb = repo.getObjectDatabase();
+	}
+
+	@Test
+	public void testNoPacks() throws Exception {
+		assertFalse(new DfsMultiPackIndexWriter(repo).write(null));
+		assertNull(odb.getPackList().midx);
+	}
+
+	@Test
+	public void testLookupThroughMultiPackIndex() throws Exception {
+		RevCommit c1 = git.commit().message("1").add("A", "A").create();
+		RevCommit c2 = git.commit().message("2").parent(c1).create();
+		int covered = odb.getPacks().length;
+		assertTrue(covered > 1);
+
+		DfsMultiPackIndexWriter writer = new DfsMultiPackIndexWriter(repo);
+		assertTrue(writer.write(null));
+		DfsPackDescription desc = writer.getNewMultiPackIndex();
+		assertTrue(desc.hasFileExt(MULTI_PACK_INDEX));
+		assertFalse(desc.hasFileExt(PACK));
+
+		RevCommit c3 = git.commit().message("3").parent(c2).create();
+		PackList list = odb.getPackList();
+		assertEquals(desc, list.midxDescription);
+		assertEquals(covered, list.midx.getPackNames().length);
+		assertEquals(covered + 1, list.packs.length);
+		assertEquals(1, list.uncovered.length);
+
+		try (DfsReader reader = odb.newReader()) {
+			for (RevCommit c : new RevCommit[] { c1, c2, c3 }) {
+				assertTrue(reader.has(c));
+				assertArrayEquals(c.getRawBuffer(),
+						reader.open(c, Constants.OBJ_COMMIT).getBytes());
+				assertEquals(c.getRawBuffer().length,
+						reader.getObjectSize(c, Constants.OBJ_COMMIT));
+			}
+			assertFalse(reader.has(ObjectId.zeroId()));
+		}
+	}
+
+	@Test
+	public void testReplacesPreviousIndex() throws Exception {
+		git.commit().message("1").create();
+		DfsMultiPackIndexWriter first = new DfsMultiPackIndexWriter(repo);
+		first.write(null);
+		git.commit().message("2").create();
+		DfsMultiPackIndexWriter second = new DfsMultiPackIndexWriter(repo);
+		second.write(null);
+
+		PackList list = odb.getPackList();
+		assertEquals(second.getNewMultiPackIndex(), list.midxDescription);
+		assertEquals(0, list.uncovered.length);
+		for (DfsPackDescription d : odb.listPacks()) {
+			assertFalse(d.equals(first.getNewMultiPackIndex()));
+		}
+	}
+
+	@Test
+	public void testStaleIndexAfterCompaction() throws Exception {
+		RevCommit c1 = git.commit().message("1").create();
+		RevCommit c2 = git.commit().message("2").parent(c1).create();
+		git.update("master", c2);
+		new DfsMultiPackIndexWriter(repo).write(null);
+
+		DfsPackCompactor compactor = new DfsPackCompactor(repo);
+		compactor.autoAdd();
+		compactor.compact(null);
+
+		PackList list = odb.getPackList();
+		assertNotNull(list.midx);
+		assertNull(list.getMultiPackIndexPack(list.findInMultiPackIndex(c1)));
+		try (DfsReader reader = odb.newReader()) {
+			assertTrue(reader.has(c1));
+			assertArrayEquals(c2.getRawBuffer(),
+					reader.open(c2, Constants.OBJ_COMMIT).getBytes());
+		}
+	}
+}
@@ -34,6 +34,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -842,6 +843,70 @@ public void atomicUpdateRespectsInProcessLock() throws Exception {
 		assertRefs("refs/heads/master", B, "refs/heads/branch", B);
 	}
 
+	@Test
+	public void concurrentAtomicUpdatesAreCommittedTogether() throws Exception {
+		assumeTrue(atomic);
+		assumeFalse(useReftable);
+
+		int n = 4;
+		List<List<ReceiveCommand>> batches = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			batches.add(Arrays.asList(
+					new ReceiveCommand(zeroId(), A, "refs/heads/a" + i, CREATE),
+					new ReceiveCommand(zeroId(), B, "refs/heads/b" + i,
+							CREATE)));
+		}
+		List<ReceiveCommand> rejected = Arrays.asList(
+				new ReceiveCommand(zeroId(), A, "refs/heads/c", CREATE),
+				new ReceiveCommand(A, B, "refs/heads/missing", UPDATE));
+		batches.add(rejected);
+
+		List<Thread> threads = new ArrayList<>();
+		for (List<ReceiveCommand> cmds : batches) {
+			threads.add(new Thread(() -> {
+				try {
+					execute(newBatchUpdate(cmds).setAllowNonFastForwards(true));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}));
+		}
+
+		ReentrantLock l = refdir.inProcessPackedRefsLock;
+		l.lock();
+		try {
+			threads.forEach(Thread::start);
+			long startNanos = System.nanoTime();
+			while (l.getQueueLength() < batches.size()) {
+				assertTrue("timed out waiting for batches to queue",
+						NANOSECONDS.toSeconds(System.nanoTime() - startNanos) < 10);
+				Thread.sleep(3);
+			}
+		} finally {
+			l.unlock();
+		}
+		for (Thread t : threads) {
+			t.join(SECONDS.toMillis(10));
+			assertFalse(t.isAlive());
+		}
+
+		for (int i = 0; i < n; i++) {
+			assertResults(batches.get(i), OK, OK);
+			assertEquals(A, diskRepo.exactRef("refs/heads/a" + i).getObjectId());
+			assertEquals(B, diskRepo.exactRef("refs/heads/b" + i).getObjectId());
+		}
+		assertResults(rejected, TRANSACTION_ABORTED, LOCK_FAILURE);
+		assertNull(diskRepo.exactRef("refs/heads/c"));
+
+		BatchRefUpdateStats stats = refdir.getBatchRefUpdateStats();
+		assertEquals(n, stats.getBatches());
+		assertEquals(1, stats.getRejectedBatches());
+		assertEquals(2 * n, stats.getUpdates());
+		assertEquals(1, stats.getGroups());
+		assertEquals(1, stats.getPackedRefsWrites());
+		assertTrue(stats.getUpdatesPerSecond() > 0);
+	}
+
 	private void setLogAllRefUpdates(boolean enable) throws Exception {
 		StoredConfig cfg = diskRepo.getConfig();
 		cfg.load();
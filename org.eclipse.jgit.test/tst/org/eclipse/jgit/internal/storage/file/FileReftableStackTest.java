@@ -12,6 +12,7 @@
 
 import static org.eclipse.jgit.lib.Ref.Storage.PACKED;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
@@ -21,12 +22,14 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.eclipse.jgit.internal.storage.file.FileReftableStack.Segment;
 import org.eclipse.jgit.internal.storage.reftable.MergedReftable;
 import org.eclipse.jgit.internal.storage.reftable.RefCursor;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.Ref;
@@ -164,4 +167,55 @@ public void testLog2() throws Exception {
 		assertEquals(10, FileReftableStack.log(1025));
 		assertEquals(10, FileReftableStack.log(2047));
 	}
+
+	@Test
+	public void testSegmentsWithFactor() {
+		long in[] = { 1024, 1024, 1536, 100, 64, 50, 25, 24 };
+		List<Segment> got = FileReftableStack.segmentSizes(in, 4);
+		Segment want[] = { new Segment(0, 3, 5, 3584),
+				new Segment(3, 5, 3, 164), new Segment(5, 8, 2, 99), };
+		assertEquals(got.size(), want.length);
+		for (int i = 0; i < want.length; i++) {
+			assertTrue(want[i].equals(got.get(i)));
+		}
+		assertEquals(5, FileReftableStack.log(1024, 4));
+		assertEquals(4, FileReftableStack.log(1023, 4));
+	}
+
+	@Test
+	public void testBackgroundCompaction() throws Exception {
+		Config cfg = new Config();
+		cfg.setBoolean(ConfigConstants.CONFIG_REFTABLE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_BACKGROUND_COMPACTION, true);
+		AtomicInteger scheduled = new AtomicInteger();
+		try (FileReftableStack stack = new FileReftableStack(
+				new File(reftableDir, "refs"), reftableDir, null, () -> cfg)) {
+			stack.setCompactionScheduler(scheduled::incrementAndGet);
+			writeBranches(stack, "refs/heads/branch%d", 0, 8);
+			assertEquals(8, scheduled.get());
+			assertEquals(0, stack.getStats().attempted);
+
+			try (FileReftableStack.Compaction c = stack
+					.prepareCompaction(true)) {
+				assertNotNull(c);
+				stack.writeCompaction(c);
+
+				// Tables added while compacting stay above the compacted one.
+				writeBranches(stack, "refs/heads/more%d", 0, 2);
+				assertTrue(stack.commitCompaction(c));
+			}
+
+			MergedReftable table = stack.getMergedReftable();
+			for (int i = 0; i < 8; i++) {
+				assertTrue(table.hasRef(String.format("refs/heads/branch%d",
+						Integer.valueOf(i))));
+			}
+			assertTrue(table.hasRef("refs/heads/more0"));
+			assertTrue(table.hasRef("refs/heads/more1"));
+			assertEquals(1, stack.getStats().attempted);
+			assertEquals(0, stack.getStats().failed);
+			assertEquals(3, reftableDir.listFiles(
+					(dir, name) -> name.endsWith(".ref")).length);
+		}
+	}
 }
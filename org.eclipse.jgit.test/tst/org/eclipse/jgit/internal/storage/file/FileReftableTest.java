@@ -28,9 +28,11 @@
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
@@ -204,6 +206,44 @@ public void testBatchrefUpdate() throws Exception {
 		assertEquals(prev, db.exactRef("refs/heads/batch2").getObjectId());
 	}
 
+	@Test
+	public void testIterateRefsByPrefix() throws Exception {
+		ObjectId cur = db.resolve("master");
+		List<ReceiveCommand> cmds = new ArrayList<>();
+		// More than one batch of the streaming iterator.
+		for (int i = 0; i < 5000; i++) {
+			cmds.add(new ReceiveCommand(ObjectId.zeroId(), cur,
+					String.format("refs/changes/%04d", Integer.valueOf(i))));
+		}
+		try (RevWalk rw = new RevWalk(db)) {
+			db.getRefDatabase().newBatchUpdate().addCommand(cmds)
+					.execute(rw, NullProgressMonitor.INSTANCE);
+		}
+
+		Iterator<Ref> it = db.getRefDatabase()
+				.iterateRefsByPrefix("refs/changes/");
+		for (ReceiveCommand cmd : cmds) {
+			assertTrue(it.hasNext());
+			Ref r = it.next();
+			assertEquals(cmd.getRefName(), r.getName());
+			assertEquals(cur, r.getObjectId());
+		}
+		assertFalse(it.hasNext());
+
+		List<String> names = new ArrayList<>();
+		db.getRefDatabase()
+				.iterateRefsByPrefix("refs/heads/", "refs/changes/001",
+						"refs/changes/0010", "refs/heads/a")
+				.forEachRemaining(r -> names.add(r.getName()));
+		List<String> expect = new ArrayList<>();
+		for (int i = 10; i < 20; i++) {
+			expect.add("refs/changes/00" + i);
+		}
+		db.getRefDatabase().getRefsByPrefix("refs/heads/")
+				.forEach(r -> expect.add(r.getName()));
+		assertEquals(expect, names);
+	}
+
 	@Test
 	public void testFastforwardStatus() throws Exception {
 		ObjectId cur = db.resolve("master");
@@ -573,6 +613,30 @@ public void compactFully() throws Exception {
 		assertTrue(randomStr.equals(refDb.getReflogReader(refName).getReverseEntry(1).getComment()));
 	}
 
+	@Test
+	public void testBackgroundCompaction() throws Exception {
+		db.getConfig().setBoolean(ConfigConstants.CONFIG_REFTABLE_SECTION,
+				null, ConfigConstants.CONFIG_KEY_BACKGROUND_COMPACTION, true);
+		db.getConfig().save();
+		FileReftableDatabase refDb = (FileReftableDatabase) db
+				.getRefDatabase();
+		ReflogReader log = db.getReflogReader("refs/heads/bg0");
+		for (int i = 0; i < 32; i++) {
+			// Neither writes nor reads are disturbed by the compactions.
+			assertEquals(Result.NEW, updateRef("refs/heads/bg" + i).update());
+			assertNotNull(db.resolve("refs/heads/bg" + i));
+			assertNotNull(log.getLastEntry());
+		}
+		refDb.awaitCompaction();
+
+		for (int i = 0; i < 32; i++) {
+			assertNotNull(refDb.exactRef("refs/heads/bg" + i));
+		}
+		File[] tables = new File(db.getDirectory(), Constants.REFTABLE)
+				.listFiles((dir, name) -> name.endsWith(".ref"));
+		assertTrue(tables.length < 10);
+	}
+
 	@Test
 	public void reftableRefsStorageClass() throws IOException {
 		Ref b = db.exactRef("refs/heads/b");
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+	@Test
+	public void testIncrement() {
+		FrequencySketch sketch = new FrequencySketch(512);
+		assertEquals(0, sketch.frequency(42));
+		sketch.increment(42);
+		assertEquals(1, sketch.frequency(42));
+		sketch.increment(42);
+		assertEquals(2, sketch.frequency(42));
+	}
+
+	@Test
+	public void testSaturates() {
+		FrequencySketch sketch = new FrequencySketch(512);
+		for (int i = 0; i < 100; i++) {
+			sketch.increment(7);
+		}
+		assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(7));
+	}
+
+	@Test
+	public void testAging() {
+		FrequencySketch sketch = new FrequencySketch(64);
+		for (int i = 0; i < 10; i++) {
+			sketch.increment(-1);
+		}
+		assertEquals(10, sketch.frequency(-1));
+
+		// Enough distinct keys to reach the sample size halves all counters.
+		for (int i = 0; i < 10 * 64; i++) {
+			sketch.increment(i);
+		}
+		assertTrue(sketch.frequency(-1) <= 5);
+	}
+
+	@Test
+	public void testHotKeysStandOut() {
+		FrequencySketch sketch = new FrequencySketch(1024);
+		for (int i = 0; i < 1024; i++) {
+			sketch.increment(i);
+			if (i % 4 == 0) {
+				sketch.increment(1000000);
+			}
+		}
+		int hot = sketch.frequency(1000000);
+		int cold = 0;
+		for (int i = 0; i < 1024; i++) {
+			cold = Math.max(cold, sketch.frequency(i));
+		}
+		assertEquals(FrequencySketch.MAX_FREQUENCY, hot);
+		assertTrue(cold < hot);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl.Representation;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.BitmapBuilder;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.junit.Test;
+
+public class GcBitmapRepresentationTest extends GcTestCase {
+
+	@Test
+	public void testEwahByDefault() throws Exception {
+		createHistory();
+		gc.gc();
+
+		assertEquals(Representation.EWAH, bitmapIndex().getRepresentation());
+	}
+
+	@Test
+	public void testRoaringWhenConfigured() throws Exception {
+		RevCommit tip = createHistory();
+		repo.getConfig().setBoolean("pack", null, "roaringbitmaps", true);
+		PackConfig pc = new PackConfig(repo);
+		assertTrue(pc.isRoaringBitmaps());
+		gc.setPackConfig(pc);
+		gc.gc();
+
+		// Readers build EWAH bitmaps; writers pick their own representation.
+		BitmapIndexImpl ewah = bitmapIndex();
+		assertEquals(Representation.EWAH, ewah.getRepresentation());
+		assertSame(ewah, ewah.withRepresentation(Representation.EWAH));
+		BitmapIndexImpl index = ewah
+				.withRepresentation(Representation.of(pc));
+		assertEquals(Representation.ROARING, index.getRepresentation());
+		BitmapBuilder b = index.newBitmapBuilder();
+		b.or(index.getBitmap(tip));
+		// Two commits, two trees and three blobs.
+		assertEquals(7, b.cardinality());
+	}
+
+	@Test
+	public void testPackWriterUsesRepresentationOfItsConfig()
+			throws Exception {
+		RevCommit tip = createHistory();
+		gc.gc();
+
+		PackConfig pc = new PackConfig(repo);
+		pc.setRoaringBitmaps(true);
+		AtomicReference<BitmapIndexImpl> used = new AtomicReference<>();
+		try (ObjectReader reader = recordingReader(used);
+				PackWriter pw = new PackWriter(pc, reader)) {
+			pw.setUseBitmaps(true);
+			pw.preparePack(NullProgressMonitor.INSTANCE,
+					Collections.singleton(tip),
+					Collections.<ObjectId> emptySet());
+			assertEquals(7, pw.getObjectCount());
+		}
+		assertNotNull(used.get());
+		assertEquals(Representation.ROARING, used.get().getRepresentation());
+	}
+
+	private ObjectReader recordingReader(
+			AtomicReference<BitmapIndexImpl> used) {
+		ObjectReader delegate = repo.newObjectReader();
+		return new ObjectReader.Filter() {
+			@Override
+			protected ObjectReader delegate() {
+				return delegate;
+			}
+
+			@Override
+			public BitmapIndex getBitmapIndex() throws IOException {
+				PackBitmapIndex packIndex = ((BitmapIndexImpl) delegate
+						.getBitmapIndex()).getPackBitmapIndex();
+				return new BitmapIndexImpl(packIndex) {
+					@Override
+					public BitmapIndexImpl withRepresentation(
+							Representation r) {
+						used.set(super.withRepresentation(r));
+						return used.get();
+					}
+				};
+			}
+
+			@Override
+			public void close() {
+				delegate.close();
+			}
+		};
+	}
+
+	private RevCommit createHistory() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		bb.commit().add("A", "A").add("B", "B").create();
+		return bb.commit().add("A", "A2").create();
+	}
+
+	private BitmapIndexImpl bitmapIndex() throws Exception {
+		try (ObjectReader reader = repo.newObjectReader()) {
+			return (BitmapIndexImpl) reader.getBitmapIndex();
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.transport.PackParser;
+import org.junit.Test;
+
+public class GcCommitGraphTest extends GcTestCase {
+
+	@Test
+	public void testWriteWhenGc() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		RevCommit c1 = bb.commit().add("A", "A").create();
+		RevCommit c2 = bb.commit().add("A", "A2").create();
+		enableCommitGraph(true);
+
+		gc.gc();
+
+		File graphFile = new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH);
+		assertTrue(graphFile.isFile());
+		try (ObjectReader reader = repo.newObjectReader()) {
+			CommitGraph graph = reader.getCommitGraph().get();
+			assertEquals(2, graph.getCommitCnt());
+			assertEquals(1, graph.getCommitData(graph.findGraphPosition(c1))
+					.getGeneration());
+			assertEquals(2, graph.getCommitData(graph.findGraphPosition(c2))
+					.getGeneration());
+		}
+	}
+
+	@Test
+	public void testNotWrittenByDefault() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		bb.commit().add("A", "A").create();
+
+		gc.gc();
+
+		assertFalse(new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH).exists());
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertFalse(reader.getCommitGraph().isPresent());
+		}
+	}
+
+	@Test
+	public void testNotReadWhenDisabled() throws Exception {
+		RevCommit tip = tr.branch("refs/heads/master").commit().create();
+		gc.writeCommitGraph(Collections.singleton(tip));
+		assertTrue(new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH).isFile());
+
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertFalse(reader.getCommitGraph().isPresent());
+		}
+		enableCommitGraph(false);
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertTrue(reader.getCommitGraph().isPresent());
+		}
+	}
+
+	@Test
+	public void testRewriteReplacesChain() throws Exception {
+		RevCommit tip = tr.branch("refs/heads/master").commit().create();
+		File graphsDir = new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPHS);
+		assertTrue(graphsDir.mkdirs());
+		assertTrue(new File(graphsDir, "commit-graph-chain").createNewFile());
+
+		gc.writeCommitGraph(Collections.singleton(tip));
+
+		assertFalse(graphsDir.exists());
+	}
+
+	@Test
+	public void testCorruptGraphIgnored() throws Exception {
+		RevCommit tip = tr.branch("refs/heads/master").commit().create();
+		enableCommitGraph(false);
+		File graphFile = new File(repo.getObjectsDirectory(),
+				Constants.INFO_COMMIT_GRAPH);
+		write(graphFile, "not a commit-graph");
+
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertFalse(reader.getCommitGraph().isPresent());
+		}
+		assertEquals(tip, repo.parseCommit(tip));
+	}
+
+	@Test
+	public void testAppendLayerConvertsSingleFile() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		RevCommit c1 = bb.commit().add("A", "A").create();
+		bb.commit().add("A", "A2").create();
+		RevCommit c3 = bb.commit().add("A", "A3").create();
+		gc.writeCommitGraph(Collections.singleton(c3));
+		RevCommit c4 = bb.commit().add("A", "A4").create();
+
+		FileCommitGraph fcg = repo.getObjectDatabase().getFileCommitGraph();
+		ObjectId layer;
+		try (ObjectReader reader = repo.newObjectReader()) {
+			layer = fcg.appendLayer(reader, Collections.singleton(c4));
+		}
+
+		assertNotNull(layer);
+		assertFalse(fcg.getGraphFile().exists());
+		assertEquals(2, fcg.getChain().size());
+		assertEquals(layer, fcg.getChain().get(1));
+		assertTrue(fcg.layerFile(layer).isFile());
+		CommitGraph graph = fcg.get();
+		assertEquals(4, graph.getCommitCnt());
+		assertEquals(1, graph.getCommitData(graph.findGraphPosition(c1))
+				.getGeneration());
+		assertEquals(4, graph.getCommitData(graph.findGraphPosition(c4))
+				.getGeneration());
+		assertEquals(3, graph.findGraphPosition(c4));
+	}
+
+	@Test
+	public void testAppendLayerMergesSingleFile() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		RevCommit c1 = bb.commit().add("A", "A").create();
+		gc.writeCommitGraph(Collections.singleton(c1));
+		bb.commit().add("A", "A2").create();
+		RevCommit c3 = bb.commit().add("A", "A3").create();
+
+		FileCommitGraph fcg = repo.getObjectDatabase().getFileCommitGraph();
+		ObjectId layer;
+		try (ObjectReader reader = repo.newObjectReader()) {
+			layer = fcg.appendLayer(reader, Collections.singleton(c3));
+		}
+
+		// One commit is not twice as many as the two new ones.
+		assertNotNull(layer);
+		assertFalse(fcg.getGraphFile().exists());
+		assertEquals(Collections.singletonList(layer), fcg.getChain());
+		CommitGraph graph = fcg.get();
+		assertEquals(3, graph.getCommitCnt());
+		assertEquals(3, graph.getCommitData(graph.findGraphPosition(c3))
+				.getGeneration());
+	}
+
+	@Test
+	public void testAppendLayerWithoutGraph() throws Exception {
+		RevCommit tip = tr.branch("refs/heads/master").commit().create();
+		FileCommitGraph fcg = repo.getObjectDatabase().getFileCommitGraph();
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertNotNull(fcg.appendLayer(reader, Collections.singleton(tip)));
+			assertNull(fcg.appendLayer(reader, Collections.singleton(tip)));
+		}
+		assertEquals(1, fcg.getChain().size());
+		assertEquals(1, fcg.get().getCommitCnt());
+	}
+
+	@Test
+	public void testAppendLayerMergesSmallLayers() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		FileCommitGraph fcg = repo.getObjectDatabase().getFileCommitGraph();
+		RevCommit tip = null;
+		try (ObjectReader reader = repo.newObjectReader()) {
+			for (int i = 0; i < 20; i++) {
+				tip = bb.commit().add("A", "A" + i).create();
+				assertNotNull(fcg.appendLayer(reader,
+						Collections.singleton(tip)));
+				assertTrue(fcg.getChain().size() <= 5);
+			}
+		}
+
+		CommitGraph graph = fcg.get();
+		assertEquals(20, graph.getCommitCnt());
+		assertEquals(20, graph.getCommitData(graph.findGraphPosition(tip))
+				.getGeneration());
+		File[] files = fcg.getGraphsDirectory().listFiles();
+		assertNotNull(files);
+		// Merged layers are removed; only the chain and its layers remain.
+		assertEquals(fcg.getChain().size() + 1, files.length);
+		for (ObjectId layer : fcg.getChain()) {
+			assertTrue(fcg.layerFile(layer).isFile());
+		}
+	}
+
+	@Test
+	public void testAppendLayerFailsWhileGraphLocked() throws Exception {
+		RevCommit tip = tr.branch("refs/heads/master").commit().create();
+		FileCommitGraph fcg = repo.getObjectDatabase().getFileCommitGraph();
+		LockFile lock = fcg.lock();
+		try (ObjectReader reader = repo.newObjectReader()) {
+			assertThrows(LockFailedException.class, () -> fcg
+					.appendLayer(reader, Collections.singleton(tip)));
+		} finally {
+			lock.unlock();
+		}
+		assertFalse(fcg.getGraphsDirectory().exists());
+	}
+
+	@Test
+	public void testAppendLayerConcurrentWithGc() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		List<RevCommit> commits = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			commits.add(bb.commit().add("A", "A" + i).create());
+		}
+		FileCommitGraph fcg = repo.getObjectDatabase().getFileCommitGraph();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> writer = pool.submit(() -> {
+				for (int i = 0; i < commits.size(); i += 2) {
+					try {
+						gc.writeCommitGraph(
+								Collections.singleton(commits.get(i)));
+					} catch (LockFailedException e) {
+						// A layer is being appended; GC will run again.
+					}
+					Thread.yield();
+				}
+				return null;
+			});
+			Future<?> appender = pool.submit(() -> {
+				try (ObjectReader reader = repo.newObjectReader()) {
+					for (RevCommit c : commits) {
+						try {
+							fcg.appendLayer(reader, Collections.singleton(c));
+						} catch (LockFailedException e) {
+							// GC holds the lock; the next layer catches up.
+						}
+					}
+				}
+				return null;
+			});
+			writer.get();
+			appender.get();
+		} finally {
+			pool.shutdownNow();
+		}
+
+		// Whatever the interleaving, the graph is readable and complete.
+		assertNotNull(fcg.get());
+		for (ObjectId layer : fcg.getChain()) {
+			assertTrue(fcg.layerFile(layer).isFile());
+		}
+		try (ObjectReader reader = repo.newObjectReader()) {
+			fcg.appendLayer(reader,
+					Collections.singleton(commits.get(commits.size() - 1)));
+		}
+		assertEquals(commits.size(), fcg.get().getCommitCnt());
+	}
+
+	@Test
+	public void testUpdatedOnReceive() throws Exception {
+		RevCommit base = tr.branch("refs/heads/master").commit().create();
+		enableCommitGraph(false);
+		gc.writeCommitGraph(Collections.singleton(base));
+		FileBasedConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_RECEIVE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, true);
+		config.save();
+
+		RevCommit tip;
+		try (TestRepository<InMemoryRepository> src = new TestRepository<>(
+				new InMemoryRepository(new DfsRepositoryDescription("src")))) {
+			tip = src.commit().add("B", "B").create();
+			byte[] pack = packFrom(src.getRepository(), tip);
+			try (ObjectInserter ins = repo.newObjectInserter()) {
+				PackParser p = ins.newPackParser(new ByteArrayInputStream(pack));
+				p.parse(NullProgressMonitor.INSTANCE);
+			}
+		}
+
+		try (ObjectReader reader = repo.newObjectReader()) {
+			CommitGraph graph = reader.getCommitGraph().get();
+			assertEquals(2, graph.getCommitCnt());
+			assertEquals(1, graph.getCommitData(graph.findGraphPosition(tip))
+					.getGeneration());
+		}
+	}
+
+	private static byte[] packFrom(Repository src, ObjectId tip)
+			throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (PackWriter pw = new PackWriter(src)) {
+			pw.preparePack(NullProgressMonitor.INSTANCE,
+					Collections.singleton(tip), Collections.emptySet());
+			pw.writePack(NullProgressMonitor.INSTANCE,
+					NullProgressMonitor.INSTANCE, out);
+		}
+		return out.toByteArray();
+	}
+
+	private void enableCommitGraph(boolean writeWhenGc) throws Exception {
+		FileBasedConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+		config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null,
+				ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, writeWhenGc);
+		config.save();
+	}
+}
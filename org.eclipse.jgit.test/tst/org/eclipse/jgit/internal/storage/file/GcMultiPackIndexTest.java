@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Collections;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory.PackList;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Test;
+
+public class GcMultiPackIndexTest extends GcTestCase {
+
+	@Test
+	public void testWriteWhenGc() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		bb.commit().add("A", "A").create();
+		enableMultiPackIndex();
+
+		gc.gc();
+
+		assertTrue(midxFile().isFile());
+		PackList list = reopen().packList.get();
+		assertNotNull(list.midx);
+		assertEquals(1, list.midx.getPackNames().length);
+		assertEquals(0, list.uncovered.length);
+	}
+
+	@Test
+	public void testNotWrittenByDefault() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		bb.commit().add("A", "A").create();
+
+		gc.gc();
+
+		assertFalse(midxFile().exists());
+	}
+
+	@Test
+	public void testLookupAcrossPacks() throws Exception {
+		enableMultiPackIndex();
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		RevCommit c1 = bb.commit().add("A", "A").create();
+		pack(c1);
+		RevCommit c2 = bb.commit().add("B", "B").create();
+		pack(c2);
+		gc.writeMultiPackIndex();
+		RevCommit c3 = bb.commit().add("C", "C").create();
+		pack(c3);
+
+		ObjectDirectory odb = reopen();
+		assertEquals(3, odb.getPacks().size());
+		PackList list = odb.packList.get();
+		assertNotNull(list.midx);
+		assertEquals(2, list.midx.getPackNames().length);
+		assertEquals(1, list.uncovered.length);
+
+		try (ObjectReader reader = odb.newReader()) {
+			for (RevCommit c : new RevCommit[] { c1, c2, c3 }) {
+				assertTrue(reader.has(c));
+				assertArrayEquals(c.getRawBuffer(),
+						reader.open(c, Constants.OBJ_COMMIT).getBytes());
+				assertTrue(reader.has(c.getTree()));
+				assertEquals(c.getRawBuffer().length,
+						reader.getObjectSize(c, Constants.OBJ_COMMIT));
+			}
+			assertFalse(reader.has(ObjectId.zeroId()));
+		}
+	}
+
+	@Test
+	public void testStaleMultiPackIndex() throws Exception {
+		enableMultiPackIndex();
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		RevCommit c1 = bb.commit().add("A", "A").create();
+		pack(c1);
+		RevCommit c2 = bb.commit().add("B", "B").create();
+		pack(c2);
+		gc.writeMultiPackIndex();
+		RevCommit c3 = bb.commit().add("C", "C").create();
+		pack(c3);
+
+		// The newest covered pack holds the copies recorded in the
+		// multi-pack-index; the uncovered pack holds them too.
+		PackFile newest = null;
+		for (PackFile p : repo.getObjectDatabase().getPacks()) {
+			if (p.hasObject(c2) && !p.hasObject(c3)) {
+				newest = p;
+			}
+		}
+		assertNotNull(newest);
+		File pack = newest.getPackFile();
+		newest.close();
+		FileUtils.delete(pack);
+		FileUtils.delete(new File(pack.getParentFile(),
+				pack.getName().replace(".pack", ".idx")));
+
+		ObjectDirectory odb = reopen();
+		assertEquals(2, odb.getPacks().size());
+		PackList list = odb.packList.get();
+		assertNotNull(list.midx);
+		assertNull(list.getMultiPackIndexPack(list.findInMultiPackIndex(c2)));
+		try (ObjectReader reader = odb.newReader()) {
+			for (RevCommit c : new RevCommit[] { c1, c2, c3 }) {
+				assertTrue(reader.has(c));
+				assertArrayEquals(c.getRawBuffer(),
+						reader.open(c, Constants.OBJ_COMMIT).getBytes());
+			}
+		}
+	}
+
+	private File midxFile() {
+		return new File(repo.getObjectsDirectory(),
+				Constants.PACK_MULTI_PACK_INDEX);
+	}
+
+	private ObjectDirectory reopen() throws Exception {
+		FileRepository r = new FileRepository(repo.getDirectory());
+		addRepoToClose(r);
+		ObjectDirectory odb = r.getObjectDatabase();
+		odb.getPacks();
+		return odb;
+	}
+
+	private void pack(RevCommit tip) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (PackWriter pw = new PackWriter(repo)) {
+			pw.preparePack(NullProgressMonitor.INSTANCE,
+					Collections.singleton(tip),
+					PackWriter.NONE);
+			pw.writePack(NullProgressMonitor.INSTANCE,
+					NullProgressMonitor.INSTANCE, out);
+		}
+		try (ObjectInserter ins = repo.newObjectInserter()) {
+			ins.newPackParser(new ByteArrayInputStream(out.toByteArray()))
+					.parse(NullProgressMonitor.INSTANCE);
+			ins.flush();
+		}
+		gc.prunePacked();
+	}
+
+	private void enableMultiPackIndex() throws Exception {
+		FileBasedConfig config = repo.getConfig();
+		config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_MULTI_PACK_INDEX, true);
+		config.save();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.internal.storage.file.PackIndex.MutableEntry;
+import org.eclipse.jgit.internal.storage.pack.PackExt;
+import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.junit.Test;
+
+public class GcReverseIndexTest extends GcTestCase {
+
+	@Test
+	public void testWrittenWhenConfigured() throws Exception {
+		createHistory();
+		PackConfig pc = new PackConfig(repo);
+		pc.setWriteReverseIndex(true);
+		gc.setPackConfig(pc);
+
+		gc.gc();
+
+		PackFile pack = singlePack();
+		assertTrue(revFile(pack).isFile());
+		assertFindsAllObjects(pack);
+	}
+
+	@Test
+	public void testNotWrittenByDefault() throws Exception {
+		createHistory();
+
+		gc.gc();
+
+		assertFalse(revFile(singlePack()).exists());
+	}
+
+	@Test
+	public void testCorruptReverseIndexIsIgnored() throws Exception {
+		createHistory();
+		PackConfig pc = new PackConfig(repo);
+		pc.setWriteReverseIndex(true);
+		gc.setPackConfig(pc);
+		gc.gc();
+
+		File rev = revFile(singlePack());
+		rev.setWritable(true);
+		Files.write(rev.toPath(), new byte[] { 'R', 'I', 'D', 'X' });
+		try (FileRepository reopened = new FileRepository(
+				repo.getDirectory())) {
+			assertFindsAllObjects(
+					reopened.getObjectDatabase().getPacks().iterator().next());
+		}
+	}
+
+	private void createHistory() throws Exception {
+		BranchBuilder bb = tr.branch("refs/heads/master");
+		bb.commit().add("A", "A").add("B", "B").create();
+		bb.commit().add("A", "A2").create();
+	}
+
+	private PackFile singlePack() {
+		assertEquals(1, repo.getObjectDatabase().getPacks().size());
+		return repo.getObjectDatabase().getPacks().iterator().next();
+	}
+
+	private static File revFile(PackFile pack) {
+		String name = pack.getPackFile().getName();
+		return new File(pack.getPackFile().getParentFile(),
+				name.substring(0, name.lastIndexOf('.') + 1)
+						+ PackExt.REVERSE_INDEX.getExtension());
+	}
+
+	private static void assertFindsAllObjects(PackFile pack) throws Exception {
+		for (MutableEntry me : pack) {
+			assertEquals(me.toObjectId(),
+					pack.findObjectForOffset(me.getOffset()));
+		}
+	}
+}
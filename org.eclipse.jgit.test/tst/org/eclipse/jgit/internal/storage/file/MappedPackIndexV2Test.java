@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.junit.JGitTestUtil;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.PackedObjectInfo;
+import org.junit.Test;
+
+public class MappedPackIndexV2Test extends PackIndexV2Test {
+	@Override
+	protected PackIndex open(File idxFile) throws IOException {
+		PackIndex idx = PackIndex.open(idxFile, true);
+		assertTrue(idx instanceof MappedPackIndexV2);
+		return idx;
+	}
+
+	@Test
+	public void testMatchesHeapIndex() throws Exception {
+		PackIndex heap = PackIndex.open(getFileForPackdf2982f28());
+		assertEquals(heap.getObjectCount(), denseIdx.getObjectCount());
+		assertEquals(heap.getOffset64Count(), denseIdx.getOffset64Count());
+		assertArrayEquals(heap.getChecksum(), denseIdx.getChecksum());
+		for (long i = 0; i < heap.getObjectCount(); i++) {
+			ObjectId id = heap.getObjectId(i);
+			assertEquals(id, denseIdx.getObjectId(i));
+			assertEquals(heap.getOffset(i), denseIdx.getOffset(i));
+			assertEquals(heap.findOffset(id), denseIdx.findOffset(id));
+			assertEquals(heap.findCRC32(id), denseIdx.findCRC32(id));
+		}
+		assertEquals(-1, denseIdx.findOffset(ObjectId.zeroId()));
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		Set<ObjectId> matches = new HashSet<>();
+		smallIdx.resolve(matches, AbbreviatedObjectId.fromString("540a36"),
+				10);
+		assertEquals(
+				new HashSet<>(Arrays.asList(ObjectId.fromString(
+						"540a36d136cf413e4b064c2b0e0a4db60f77feab"))),
+				matches);
+
+		matches.clear();
+		smallIdx.resolve(matches, AbbreviatedObjectId.fromString("ffff"), 10);
+		assertTrue(matches.isEmpty());
+	}
+
+	@Test
+	public void testOffset64() throws Exception {
+		List<PackedObjectInfo> objs = new ArrayList<>();
+		long[] offsets = { 12, 1L << 31, (1L << 40) + 7 };
+		for (int i = 0; i < offsets.length; i++) {
+			PackedObjectInfo o = new PackedObjectInfo(
+					ObjectId.fromString(String.format("%040x", //$NON-NLS-1$
+							Integer.valueOf(i + 1))));
+			o.setOffset(offsets[i]);
+			o.setCRC(i);
+			objs.add(o);
+		}
+		File idxFile = new File(db.getDirectory(), "offset64.idx");
+		try (OutputStream out = new FileOutputStream(idxFile)) {
+			PackIndexWriter.createVersion(out, 2).write(objs, new byte[20]);
+		}
+
+		PackIndex idx = open(idxFile);
+		assertEquals(3, idx.getObjectCount());
+		assertEquals(2, idx.getOffset64Count());
+		for (PackedObjectInfo o : objs) {
+			assertEquals(o.getOffset(), idx.findOffset(o));
+			assertEquals(o.getCRC(), idx.findCRC32(o));
+		}
+	}
+
+	@Test
+	public void testTruncatedIndex() throws Exception {
+		File src = JGitTestUtil.getTestResourceFile(
+				"pack-34be9032ac282b11fa9babdc2b2a93ca996c9c2f.idxV2");
+		File idxFile = new File(db.getDirectory(), "truncated.idx");
+		byte[] data = Files.readAllBytes(src.toPath());
+		try (OutputStream out = new FileOutputStream(idxFile)) {
+			out.write(data, 0, data.length - 30);
+		}
+		assertThrows(IOException.class, () -> PackIndex.open(idxFile, true));
+	}
+
+	@Test
+	public void testVersion1FallsBackToHeap() throws Exception {
+		PackIndex idx = PackIndex.open(JGitTestUtil.getTestResourceFile(
+				"pack-34be9032ac282b11fa9babdc2b2a93ca996c9c2f.idx"), true);
+		assertTrue(idx instanceof PackIndexV1);
+	}
+}
@@ -15,6 +15,7 @@
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -32,8 +33,20 @@ public abstract class PackIndexTestCase extends RepositoryTestCase {
 	@Override
 	public void setUp() throws Exception {
 		super.setUp();
-		smallIdx = PackIndex.open(getFileForPack34be9032());
-		denseIdx = PackIndex.open(getFileForPackdf2982f28());
+		smallIdx = open(getFileForPack34be9032());
+		denseIdx = open(getFileForPackdf2982f28());
+	}
+
+	/**
+	 * Open the index under test.
+	 *
+	 * @param idxFile
+	 *            file with index
+	 * @return the index
+	 * @throws IOException
+	 */
+	protected PackIndex open(File idxFile) throws IOException {
+		return PackIndex.open(idxFile);
 	}
 
 	/**
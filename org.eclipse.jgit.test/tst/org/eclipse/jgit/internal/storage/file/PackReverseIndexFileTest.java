@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.internal.storage.file.PackIndex.MutableEntry;
+import org.eclipse.jgit.transport.PackedObjectInfo;
+import org.junit.Test;
+
+public class PackReverseIndexFileTest extends PackReverseIndexTest {
+	@Override
+	protected PackReverseIndex create(PackIndex packIndex) throws Exception {
+		File revFile = new File(db.getDirectory(), "pack-huge.rev");
+		try (OutputStream out = new FileOutputStream(revFile)) {
+			out.write(write(packIndex, packIndex.packChecksum));
+		}
+		return PackReverseIndex.open(revFile, packIndex);
+	}
+
+	@Test
+	public void testReadFromStream() throws Exception {
+		PackReverseIndex rev = PackReverseIndex.read(
+				new ByteArrayInputStream(write(idx, idx.packChecksum)), idx);
+		PackReverseIndex computed = new PackReverseIndex(idx);
+		for (MutableEntry me : idx) {
+			assertEquals(computed.findPostion(me.getOffset()),
+					rev.findPostion(me.getOffset()));
+			assertEquals(me.toObjectId(), rev.findObject(me.getOffset()));
+		}
+	}
+
+	@Test
+	public void testPackChecksumMismatch() throws Exception {
+		byte[] data = write(idx, new byte[20]);
+		assertThrows(IOException.class, () -> PackReverseIndex
+				.read(new ByteArrayInputStream(data), idx));
+	}
+
+	@Test
+	public void testNotAReverseIndex() throws Exception {
+		byte[] data = write(idx, idx.packChecksum);
+		data[0] = 'X';
+		assertThrows(IOException.class, () -> PackReverseIndex
+				.read(new ByteArrayInputStream(data), idx));
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		byte[] data = write(idx, idx.packChecksum);
+		File revFile = new File(db.getDirectory(), "truncated.rev");
+		try (OutputStream out = new FileOutputStream(revFile)) {
+			out.write(data, 0, data.length - 4);
+		}
+		assertThrows(IOException.class,
+				() -> PackReverseIndex.open(revFile, idx));
+	}
+
+	private static byte[] write(PackIndex packIndex, byte[] packChecksum)
+			throws IOException {
+		List<PackedObjectInfo> objs = new ArrayList<>();
+		for (MutableEntry me : packIndex) {
+			PackedObjectInfo o = new PackedObjectInfo(me.toObjectId());
+			o.setOffset(me.getOffset());
+			objs.add(o);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PackReverseIndexWriter(out).write(objs, packChecksum);
+		return out.toByteArray();
+	}
+}
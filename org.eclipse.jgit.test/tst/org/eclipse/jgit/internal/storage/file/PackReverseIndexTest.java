@@ -25,9 +25,9 @@
 
 public class PackReverseIndexTest extends RepositoryTestCase {
 
-	private PackIndex idx;
+	protected PackIndex idx;
 
-	private PackReverseIndex reverseIdx;
+	protected PackReverseIndex reverseIdx;
 
 	/**
 	 * Set up tested class instance, test constructor by the way.
@@ -39,7 +39,11 @@ public void setUp() throws Exception {
 		// index with both small (< 2^31) and big offsets
 		idx = PackIndex.open(JGitTestUtil.getTestResourceFile(
 				"pack-huge.idx"));
-		reverseIdx = new PackReverseIndex(idx);
+		reverseIdx = create(idx);
+	}
+
+	protected PackReverseIndex create(PackIndex packIndex) throws Exception {
+		return new PackReverseIndex(packIndex);
 	}
 
 	/**
@@ -13,17 +13,21 @@
 import static org.eclipse.jgit.internal.storage.pack.PackWriter.NONE;
 import static org.eclipse.jgit.lib.Constants.INFO_ALTERNATES;
 import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -31,6 +35,9 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.storage.file.PackIndex.MutableEntry;
@@ -40,8 +47,10 @@
 import org.eclipse.jgit.junit.TestRepository.BranchBuilder;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
 import org.eclipse.jgit.lib.ObjectIdSet;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.Sets;
 import org.eclipse.jgit.revwalk.DepthWalk;
@@ -54,6 +63,7 @@
 import org.eclipse.jgit.storage.pack.PackStatistics;
 import org.eclipse.jgit.test.resources.SampleDataRepositoryTestCase;
 import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.util.SystemReader;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -524,6 +534,161 @@ public void testExclude() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelCountingFindsSameObjects() throws Exception {
+		Set<ObjectId> want = new HashSet<>();
+		for (Ref r : db.getRefDatabase().getRefs()) {
+			want.add(r.getObjectId());
+		}
+		List<ObjectId> serial = countObjects(want, 1);
+		List<ObjectId> parallel = countObjects(want, 4);
+		assertEquals(serial.size(), parallel.size());
+		assertEquals(new HashSet<>(serial), new HashSet<>(parallel));
+	}
+
+	@Test
+	public void testParallelCountingLimitsThreads() throws Exception {
+		Set<ObjectId> want = new HashSet<>();
+		for (Ref r : db.getRefDatabase().getRefs()) {
+			want.add(r.getObjectId());
+		}
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		ExecutorService pool = Executors.newCachedThreadPool();
+		try {
+			config.setExecutor(task -> pool.execute(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(),
+						Math::max);
+				try {
+					task.run();
+				} finally {
+					running.decrementAndGet();
+				}
+			}));
+			List<ObjectId> parallel = countObjects(want, 2);
+			config.setExecutor(null);
+			List<ObjectId> serial = countObjects(want, 1);
+			assertEquals(new HashSet<>(serial), new HashSet<>(parallel));
+			assertTrue(maxRunning.get() <= 2);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private List<ObjectId> countObjects(Set<ObjectId> want, int threads)
+			throws IOException {
+		config.setCountingThreads(threads);
+		try (PackWriter pw = new PackWriter(config, db.newObjectReader())) {
+			pw.setUseBitmaps(false);
+			pw.preparePack(NullProgressMonitor.INSTANCE, want, NONE);
+			List<ObjectId> ids = new ArrayList<>();
+			for (ObjectIdOwnerMap.Entry e : pw.getObjectSet()) {
+				ids.add(e.copy());
+			}
+			return ids;
+		}
+	}
+
+	@Test
+	public void testWholeCachedPackSentAsIs() throws Exception {
+		// TestRepository will close repo
+		FileRepository repo = createBareRepository();
+		try (TestRepository<FileRepository> testRepo = new TestRepository<>(
+				repo)) {
+			BranchBuilder bb = testRepo.branch("refs/heads/master");
+			bb.commit().add("a", genDeltableData(1000)).create();
+			RevCommit tip = bb.commit().add("a", genDeltableData(1005))
+					.add("b", "b").create();
+			new GC(repo).gc();
+			PackFile pack = repo.getObjectDatabase().getPacks().iterator()
+					.next();
+			byte[] expect = Files.readAllBytes(pack.getPackFile().toPath());
+
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			assertEquals(1, writeCachedPack(repo, wants(tip), buf));
+			assertArrayEquals(expect, buf.toByteArray());
+
+			File file = new File(trash, "whole.pack");
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				assertEquals(1, writeCachedPack(repo, wants(tip), out));
+			}
+			assertArrayEquals(expect, Files.readAllBytes(file.toPath()));
+		}
+	}
+
+	@Test
+	public void testWholeCachedPackSentAfterDelete() throws Exception {
+		assumeFalse(SystemReader.getInstance().isWindows());
+		// TestRepository will close repo
+		FileRepository repo = createBareRepository();
+		try (TestRepository<FileRepository> testRepo = new TestRepository<>(
+				repo)) {
+			BranchBuilder bb = testRepo.branch("refs/heads/master");
+			RevCommit tip = bb.commit().add("a", genDeltableData(1000))
+					.create();
+			new GC(repo).gc();
+			PackFile pack = repo.getObjectDatabase().getPacks().iterator()
+					.next();
+			File file = pack.getPackFile();
+			byte[] expect = Files.readAllBytes(file.toPath());
+
+			try (PackWriter pw = new PackWriter(repo)) {
+				pw.setUseCachedPacks(true);
+				pw.setUseBitmaps(true);
+				pw.setReuseValidatingObjects(false);
+				pw.setIndexDisabled(true);
+				pw.preparePack(NullProgressMonitor.INSTANCE, wants(tip), NONE);
+
+				// Open the pack, then delete it as a concurrent gc would.
+				repo.open(tip).getBytes();
+				Files.delete(file.toPath());
+
+				ByteArrayOutputStream buf = new ByteArrayOutputStream();
+				pw.writePack(NullProgressMonitor.INSTANCE,
+						NullProgressMonitor.INSTANCE, buf);
+				assertEquals(1, pw.getStatistics().getReusedPacks().size());
+				assertArrayEquals(expect, buf.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void testCachedPackWithOtherObjectsIsRewritten() throws Exception {
+		// TestRepository will close repo
+		FileRepository repo = createBareRepository();
+		try (TestRepository<FileRepository> testRepo = new TestRepository<>(
+				repo)) {
+			BranchBuilder bb = testRepo.branch("refs/heads/master");
+			RevCommit base = bb.commit().add("a", "a").create();
+			new GC(repo).gc();
+			RevCommit tip = bb.commit().parent(base).add("b", "b").create();
+
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			assertEquals(1, writeCachedPack(repo, wants(tip), buf));
+			try (ObjectInserter ins = dst.newObjectInserter()) {
+				PackParser p = ins.newPackParser(
+						new ByteArrayInputStream(buf.toByteArray()));
+				p.parse(NullProgressMonitor.INSTANCE);
+			}
+			assertTrue(dst.getObjectDatabase().has(tip));
+			assertTrue(dst.getObjectDatabase().has(base));
+		}
+	}
+
+	private static int writeCachedPack(FileRepository repo, Set<ObjectId> want,
+			OutputStream out) throws IOException {
+		try (PackWriter pw = new PackWriter(repo)) {
+			pw.setUseCachedPacks(true);
+			pw.setUseBitmaps(true);
+			pw.setReuseValidatingObjects(false);
+			pw.setIndexDisabled(true);
+			pw.preparePack(NullProgressMonitor.INSTANCE, want, NONE);
+			pw.writePack(NullProgressMonitor.INSTANCE,
+					NullProgressMonitor.INSTANCE, out);
+			return pw.getStatistics().getReusedPacks().size();
+		}
+	}
+
 	private static void assertContent(PackIndex pi, List<ObjectId> expected) {
 		assertEquals("Pack index has wrong size.", expected.size(),
 				pi.getObjectCount());
@@ -1317,6 +1317,48 @@ public void testPackedRefsLockFailure() throws Exception {
 		assertEquals(Storage.LOOSE, ref.getStorage());
 	}
 
+	@Test
+	public void testLargeSortedPackedRefsSearchedInPlace() throws IOException {
+		StringBuilder b = new StringBuilder(
+				"# pack-refs with: peeled fully-peeled sorted \n");
+		for (int i = 0; i < 2000; i++) {
+			b.append(i % 2 == 0 ? A.name() : B.name())
+					.append(String.format(" refs/heads/b%04d\n",
+							Integer.valueOf(i)));
+		}
+		b.append(v1_0.name()).append(" refs/tags/v1.0\n");
+		b.append('^').append(v1_0.getObject().name()).append('\n');
+		writePackedRefs(b.toString());
+		writeLooseRef("refs/heads/b0001", A);
+
+		assertEquals(B, refdir.exactRef("refs/heads/b1999").getObjectId());
+		assertEquals(A, refdir.exactRef("refs/heads/b0001").getObjectId());
+		assertEquals(v1_0.getObject(),
+				refdir.exactRef("refs/tags/v1.0").getPeeledObjectId());
+		assertNull(refdir.exactRef("refs/heads/b2000"));
+		assertEquals(1000, refdir.getRefsByPrefix("refs/heads/b1").size());
+		assertTrue(refdir.isNameConflicting("refs/heads/b0007/x"));
+		assertTrue(refdir.isNameConflicting("refs/tags"));
+		assertFalse(refdir.isNameConflicting("refs/heads/b2000"));
+
+		// None of the lookups parsed the whole file.
+		assertTrue(refdir.packedRefs.get().isEmpty());
+		assertNotNull(refdir.sortedPackedRefs.get());
+
+		assertEquals(2001, refdir.getRefs().size());
+		assertEquals(2001, refdir.packedRefs.get().size());
+		assertNull(refdir.sortedPackedRefs.get());
+	}
+
+	@Test
+	public void testPackedRefsWrittenSorted() throws IOException {
+		writeLooseRef("refs/heads/master", A);
+		refdir.pack(Arrays.asList("refs/heads/master"));
+		String content = read(new File(diskRepo.getDirectory(), "packed-refs"));
+		assertTrue(content, content.startsWith(
+				"# pack-refs with: peeled sorted\n"));
+	}
+
 	private void writeLooseRef(String name, AnyObjectId id) throws IOException {
 		writeLooseRef(name, id.name() + "\n");
 	}
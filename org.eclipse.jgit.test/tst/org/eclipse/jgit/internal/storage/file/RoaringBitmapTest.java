@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+public class RoaringBitmapTest {
+
+	@Test
+	public void testAddRemove() {
+		RoaringBitmap r = new RoaringBitmap();
+		r.add(3);
+		r.add(70000);
+		r.add(3);
+		assertEquals(2, r.cardinality());
+		assertTrue(r.contains(3));
+		assertTrue(r.contains(70000));
+		assertFalse(r.contains(4));
+
+		r.remove(70000);
+		r.remove(5);
+		assertEquals(1, r.cardinality());
+		assertFalse(r.contains(70000));
+		assertEquals(EWAHCompressedBitmap.bitmapOf(3),
+				r.toEWAHCompressedBitmap());
+	}
+
+	@Test
+	public void testDenseContainer() {
+		RoaringBitmap r = new RoaringBitmap();
+		java.util.BitSet expect = new java.util.BitSet();
+		for (int i = 0; i < 3 * RoaringBitmap.ARRAY_MAX; i += 2) {
+			r.add(i);
+			expect.set(i);
+		}
+		assertSame(expect, r);
+
+		for (int i = 0; i < 3 * RoaringBitmap.ARRAY_MAX; i += 4) {
+			r.remove(i);
+			expect.clear(i);
+		}
+		assertSame(expect, r);
+	}
+
+	@Test
+	public void testOnes() {
+		int n = 3 * 65536 + 17;
+		RoaringBitmap r = RoaringBitmap.of(BitmapIndexImpl.ones(n));
+		assertEquals(n, r.cardinality());
+		assertTrue(r.contains(n - 1));
+		assertFalse(r.contains(n));
+		assertEquals(BitmapIndexImpl.ones(n).cardinality(),
+				r.toEWAHCompressedBitmap().cardinality());
+
+		r.andNot(BitmapIndexImpl.ones(n - 5));
+		assertEquals(5, r.cardinality());
+		assertTrue(r.contains(n - 5));
+		assertFalse(r.contains(n - 6));
+	}
+
+	@Test
+	public void testRandomOperations() {
+		Random rng = new Random(42);
+		RoaringBitmap r = new RoaringBitmap();
+		java.util.BitSet expect = new java.util.BitSet();
+		for (int round = 0; round < 200; round++) {
+			java.util.BitSet other = randomBits(rng);
+			EWAHCompressedBitmap ewah = toEWAH(other);
+			boolean roaring = rng.nextBoolean();
+			switch (rng.nextInt(4)) {
+			case 0:
+				if (roaring) {
+					r.or(RoaringBitmap.of(ewah));
+				} else {
+					r.or(ewah);
+				}
+				expect.or(other);
+				break;
+			case 1:
+				if (roaring) {
+					r.andNot(RoaringBitmap.of(ewah));
+				} else {
+					r.andNot(ewah);
+				}
+				expect.andNot(other);
+				break;
+			case 2:
+				if (roaring) {
+					r.xor(RoaringBitmap.of(ewah));
+				} else {
+					r.xor(ewah);
+				}
+				expect.xor(other);
+				break;
+			default:
+				for (int i = 0; i < 100; i++) {
+					int p = rng.nextInt(300000);
+					if (rng.nextBoolean()) {
+						r.add(p);
+						expect.set(p);
+					} else {
+						r.remove(p);
+						expect.clear(p);
+					}
+				}
+			}
+			assertSame(expect, r);
+		}
+	}
+
+	@Test
+	public void testSameLayoutAsBitSet() {
+		BitSet bits = new BitSet(64);
+		RoaringBitmap r = new RoaringBitmap();
+		for (int p : new int[] { 1, 64, 65, 1000, 70000, 70001 }) {
+			bits.set(p);
+			r.add(p);
+		}
+		EWAHCompressedBitmap expect = bits.toEWAHCompressedBitmap();
+		EWAHCompressedBitmap actual = r.toEWAHCompressedBitmap();
+		assertEquals(expect.sizeInBits(), actual.sizeInBits());
+		assertEquals(expect, actual);
+		assertEquals(0,
+				new RoaringBitmap().toEWAHCompressedBitmap().sizeInBits());
+	}
+
+	private static java.util.BitSet randomBits(Random rng) {
+		java.util.BitSet bits = new java.util.BitSet();
+		int base = rng.nextInt(4) * 65536;
+		switch (rng.nextInt(3)) {
+		case 0: // sparse
+			for (int i = 0; i < 50; i++) {
+				bits.set(base + rng.nextInt(200000));
+			}
+			break;
+		case 1: // dense
+			for (int i = 0; i < 20000; i++) {
+				bits.set(base + rng.nextInt(70000));
+			}
+			break;
+		default: // runs
+			int start = base + rng.nextInt(1000);
+			bits.set(start, start + rng.nextInt(150000));
+		}
+		return bits;
+	}
+
+	private static EWAHCompressedBitmap toEWAH(java.util.BitSet bits) {
+		EWAHCompressedBitmap ewah = new EWAHCompressedBitmap();
+		bits.stream().forEach(ewah::set);
+		return ewah;
+	}
+
+	private static void assertSame(java.util.BitSet expect, RoaringBitmap r) {
+		assertEquals(expect.cardinality(), r.cardinality());
+		assertArrayEquals(expect.stream().toArray(),
+				r.toEWAHCompressedBitmap().toArray());
+		for (int p = expect.nextSetBit(0); p >= 0; p = expect
+				.nextSetBit(p + 1)) {
+			assertTrue(r.contains(p));
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.eclipse.jgit.lib.Ref.Storage.PACKED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.util.RefList;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SortedPackedRefsTest extends LocalDiskRepositoryTestCase {
+	private static final String SORTED_HEADER = "# pack-refs with: peeled fully-peeled sorted \n";
+
+	private File file;
+
+	@Override
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		file = new File(createTempDirectory("packed"), "packed-refs");
+	}
+
+	@Test
+	public void testGetEveryRef() throws IOException {
+		List<String> names = names(500);
+		SortedPackedRefs refs = open(SORTED_HEADER + records(names));
+		for (int i = 0; i < names.size(); i++) {
+			Ref r = refs.get(names.get(i));
+			assertNotNull(names.get(i), r);
+			assertEquals(names.get(i), r.getName());
+			assertEquals(id(i), r.getObjectId());
+			assertEquals(PACKED, r.getStorage());
+			assertTrue(r.isPeeled());
+			assertNull(r.getPeeledObjectId());
+		}
+	}
+
+	@Test
+	public void testGetMissingRef() throws IOException {
+		SortedPackedRefs refs = open(SORTED_HEADER + records(names(100)));
+		assertNull(refs.get("refs/heads/a"));
+		assertNull(refs.get("refs/heads/b0050x"));
+		assertNull(refs.get("refs/heads/b0050/x"));
+		assertNull(refs.get("refs/heads/b005"));
+		assertNull(refs.get("refs/heads/z"));
+		assertNull(refs.get("HEAD"));
+	}
+
+	@Test
+	public void testPeeledTags() throws IOException {
+		StringBuilder b = new StringBuilder(SORTED_HEADER);
+		for (int i = 0; i < 50; i++) {
+			b.append(id(i).name()).append(" refs/tags/v").append(100 + i)
+					.append('\n');
+			if (i % 2 == 0) {
+				b.append('^').append(id(1000 + i).name()).append('\n');
+			}
+		}
+		SortedPackedRefs refs = open(b.toString());
+		for (int i = 0; i < 50; i++) {
+			Ref r = refs.get("refs/tags/v" + (100 + i));
+			assertNotNull(r);
+			assertEquals(id(i), r.getObjectId());
+			assertEquals(i % 2 == 0 ? id(1000 + i) : null,
+					r.getPeeledObjectId());
+		}
+		assertEquals(10, refs.getByPrefix("refs/tags/v11").size());
+	}
+
+	@Test
+	public void testUnpeeled() throws IOException {
+		SortedPackedRefs refs = open(
+				"# pack-refs with: sorted \n" + records(names(10)));
+		Ref r = refs.get(names(10).get(3));
+		assertFalse(r.isPeeled());
+	}
+
+	@Test
+	public void testGetByPrefix() throws IOException {
+		List<String> names = names(200);
+		SortedPackedRefs refs = open(SORTED_HEADER + records(names));
+
+		RefList<Ref> list = refs.getByPrefix("refs/heads/b01");
+		assertEquals(100, list.size());
+		assertEquals("refs/heads/b0100", list.get(0).getName());
+		assertEquals("refs/heads/b0199", list.get(99).getName());
+
+		assertEquals(1, refs.getByPrefix("refs/heads/b0042").size());
+		assertEquals(200, refs.getByPrefix("refs/").size());
+		assertEquals(200, refs.getByPrefix("").size());
+		assertEquals(0, refs.getByPrefix("refs/tags/").size());
+
+		assertTrue(refs.hasPrefix("refs/heads/"));
+		assertTrue(refs.hasPrefix("refs/heads/b0199"));
+		assertFalse(refs.hasPrefix("refs/heads/b02"));
+		assertFalse(refs.hasPrefix("refs/tags/"));
+	}
+
+	@Test
+	public void testNoTrailingNewline() throws IOException {
+		List<String> names = names(3);
+		String content = SORTED_HEADER + records(names);
+		SortedPackedRefs refs = open(
+				content.substring(0, content.length() - 1));
+		assertEquals(names.get(2), refs.get(names.get(2)).getName());
+		assertEquals(3, refs.getByPrefix("refs/").size());
+	}
+
+	@Test
+	public void testNotOpened() throws IOException {
+		assertNull(SortedPackedRefs.open(file, 0));
+
+		write(file, "# pack-refs with: peeled \n" + records(names(10)));
+		assertNull(SortedPackedRefs.open(file, 0));
+
+		write(file, records(names(10)));
+		assertNull(SortedPackedRefs.open(file, 0));
+
+		write(file, SORTED_HEADER + records(names(10)));
+		assertNull(SortedPackedRefs.open(file));
+		assertNotNull(SortedPackedRefs.open(file, 0));
+	}
+
+	@Test
+	public void testCorruptRecord() throws IOException {
+		SortedPackedRefs refs = open(SORTED_HEADER + "1234 refs/heads/a\n");
+		assertThrows(IOException.class, () -> refs.get("refs/heads/a"));
+	}
+
+	private SortedPackedRefs open(String content) throws IOException {
+		write(file, content);
+		SortedPackedRefs refs = SortedPackedRefs.open(file, 0);
+		assertNotNull(refs);
+		return refs;
+	}
+
+	private static List<String> names(int n) {
+		List<String> names = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			names.add(String.format("refs/heads/b%04d", Integer.valueOf(i)));
+		}
+		return names;
+	}
+
+	private static String records(List<String> names) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < names.size(); i++) {
+			b.append(id(i).name()).append(' ').append(names.get(i))
+					.append('\n');
+		}
+		return b.toString();
+	}
+
+	private static ObjectId id(int i) {
+		return ObjectId.fromString(String.format("%040x", Integer.valueOf(i + 1)));
+	}
+}
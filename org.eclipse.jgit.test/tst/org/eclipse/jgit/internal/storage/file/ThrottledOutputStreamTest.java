@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ThrottledOutputStreamTest {
+	@Test
+	public void testThrottled() throws IOException {
+		byte[] data = sample(2000);
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		long start = System.nanoTime();
+		try (ThrottledOutputStream out = new ThrottledOutputStream(buf, 10000,
+				() -> false)) {
+			out.write(data);
+		}
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(ms >= 150);
+		assertArrayEquals(data, buf.toByteArray());
+	}
+
+	@Test
+	public void testUnthrottled() throws IOException {
+		byte[] data = sample(1 << 20);
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		long start = System.nanoTime();
+		try (ThrottledOutputStream out = new ThrottledOutputStream(buf, 10,
+				() -> true)) {
+			out.write(data);
+			out.write(42);
+		}
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(ms < 10000);
+		assertEquals(data.length + 1, buf.size());
+	}
+
+	@Test
+	public void testUnlimited() throws IOException {
+		byte[] data = sample(1 << 20);
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (ThrottledOutputStream out = new ThrottledOutputStream(buf, 0,
+				() -> false)) {
+			out.write(data);
+		}
+		assertArrayEquals(data, buf.toByteArray());
+	}
+
+	private static byte[] sample(int len) {
+		byte[] b = new byte[len];
+		for (int i = 0; i < len; i++) {
+			b[i] = (byte) i;
+		}
+		return b;
+	}
+}
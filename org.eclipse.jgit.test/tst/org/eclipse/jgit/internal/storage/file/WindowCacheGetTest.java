@@ -30,6 +30,7 @@
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheConfig.EvictionPolicy;
 import org.eclipse.jgit.storage.file.WindowCacheStats;
 import org.eclipse.jgit.test.resources.SampleDataRepositoryTestCase;
 import org.eclipse.jgit.util.MutableInteger;
@@ -44,15 +45,19 @@ public class WindowCacheGetTest extends SampleDataRepositoryTestCase {
 	private List<TestObject> toLoad;
 	private WindowCacheConfig cfg;
 	private boolean useStrongRefs;
+	private EvictionPolicy policy;
 
-	@Parameters(name = "useStrongRefs={0}")
+	@Parameters(name = "useStrongRefs={0}, policy={1}")
 	public static Collection<Object[]> data() {
-		return Arrays
-				.asList(new Object[][] { { Boolean.TRUE }, { Boolean.FALSE } });
+		return Arrays.asList(new Object[][] {
+				{ Boolean.TRUE, EvictionPolicy.LRU },
+				{ Boolean.FALSE, EvictionPolicy.LRU },
+				{ Boolean.FALSE, EvictionPolicy.TINY_LFU } });
 	}
 
-	public WindowCacheGetTest(Boolean useStrongRef) {
+	public WindowCacheGetTest(Boolean useStrongRef, EvictionPolicy policy) {
 		this.useStrongRefs = useStrongRef.booleanValue();
+		this.policy = policy;
 	}
 
 	@Override
@@ -80,6 +85,7 @@ public void setUp() throws Exception {
 		assertEquals(96, toLoad.size());
 		cfg = new WindowCacheConfig();
 		cfg.setPackedGitUseStrongRefs(useStrongRefs);
+		cfg.setPackedGitEvictionPolicy(policy);
 	}
 
 	@Test
@@ -121,6 +127,11 @@ public void testCache_TooSmallLimit() throws IOException {
 		cfg.install();
 		doCacheTests();
 		checkLimits(cfg);
+		if (policy == EvictionPolicy.TINY_LFU) {
+			WindowCacheStats s = WindowCache.getInstance().getStats();
+			assertTrue(s.getRejectionCount() > 0);
+			assertTrue(s.getEvictionCount() >= s.getRejectionCount());
+		}
 	}
 
 	private static void checkLimits(WindowCacheConfig cfg) {
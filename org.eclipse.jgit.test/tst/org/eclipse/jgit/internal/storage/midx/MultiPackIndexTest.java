@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.internal.storage.file.PackIndexWriter;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.PackedObjectInfo;
+import org.junit.Test;
+
+public class MultiPackIndexTest {
+	private static final String PACK_A = "pack-aaaa.idx";
+
+	private static final String PACK_B = "pack-bbbb.idx";
+
+	private static final String PACK_C = "pack-cccc.idx";
+
+	@Test
+	public void testEmpty() throws Exception {
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, index());
+		MultiPackIndex midx = writeAndRead(packs);
+		assertArrayEquals(new String[] { PACK_A }, midx.getPackNames());
+		assertEquals(0, midx.getObjectCount());
+		assertEquals(-1, midx.findPosition(ObjectId.zeroId()));
+	}
+
+	@Test
+	public void testMergesPacks() throws Exception {
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		// Iteration order is the preference order; pack ids follow names.
+		packs.put(PACK_C, index(id(3), 300, id(0x10000001), 310));
+		packs.put(PACK_A, index(id(1), 100, id(3), 130));
+		packs.put(PACK_B, index(id(2), 200, id(0xff000000), 210));
+
+		MultiPackIndex midx = writeAndRead(packs);
+		assertArrayEquals(new String[] { PACK_A, PACK_B, PACK_C },
+				midx.getPackNames());
+		assertEquals(5, midx.getObjectCount());
+
+		verify(midx, id(1), 0, 100);
+		verify(midx, id(2), 1, 200);
+		verify(midx, id(3), 2, 300);
+		verify(midx, id(0x10000001), 2, 310);
+		verify(midx, id(0xff000000), 1, 210);
+		assertEquals(-1, midx.findPosition(id(4)));
+
+		for (int i = 1; i < midx.getObjectCount(); i++) {
+			assertTrue(midx.getObjectId(i - 1)
+					.compareTo(midx.getObjectId(i)) < 0);
+		}
+	}
+
+	@Test
+	public void testLargeOffsets() throws Exception {
+		long[] offsets = { 12, (1L << 31) - 1, 1L << 31, (1L << 32) - 1,
+				1L << 32, (1L << 40) + 7 };
+		List<PackedObjectInfo> objs = new ArrayList<>();
+		for (int i = 0; i < offsets.length; i++) {
+			objs.add(info(id(i + 1), offsets[i]));
+		}
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, index(objs));
+
+		MultiPackIndex midx = writeAndRead(packs);
+		for (PackedObjectInfo o : objs) {
+			verify(midx, o, 0, o.getOffset());
+		}
+	}
+
+	@Test
+	public void testOffsetsBelow4GiBNeedNoLargeOffsets() throws Exception {
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, index(id(1), (1L << 32) - 1));
+		MultiPackIndex midx = writeAndRead(packs);
+		verify(midx, id(1), 0, (1L << 32) - 1);
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, index(id(0x12340001), 12, id(0x12350001), 24));
+		packs.put(PACK_B, index(id(0x12340002), 12));
+		MultiPackIndex midx = writeAndRead(packs);
+
+		Set<ObjectId> matches = new HashSet<>();
+		midx.resolve(matches, AbbreviatedObjectId.fromString("1234"), 10);
+		assertEquals(new HashSet<>(Arrays.asList(id(0x12340001),
+				id(0x12340002))), matches);
+
+		matches.clear();
+		midx.resolve(matches, AbbreviatedObjectId.fromString("1236"), 10);
+		assertTrue(matches.isEmpty());
+	}
+
+	@Test
+	public void testNotAMultiPackIndex() {
+		byte[] data = new byte[64];
+		assertThrows(MultiPackIndexFormatException.class,
+				() -> MultiPackIndexLoader.read(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		packs.put(PACK_A, index(id(1), 12));
+		byte[] data = write(packs);
+		assertThrows(IOException.class, () -> MultiPackIndexLoader.read(
+				new ByteArrayInputStream(data, 0, data.length - 40)));
+	}
+
+	private static void verify(MultiPackIndex midx, ObjectId id, int packId,
+			long offset) {
+		int pos = midx.findPosition(id);
+		assertTrue(pos >= 0);
+		assertEquals(id, midx.getObjectId(pos));
+		assertEquals(packId, midx.getPackId(pos));
+		assertEquals(offset, midx.getOffset(pos));
+	}
+
+	private static MultiPackIndex writeAndRead(Map<String, PackIndex> packs)
+			throws IOException {
+		return MultiPackIndexLoader
+				.read(new ByteArrayInputStream(write(packs)));
+	}
+
+	private static byte[] write(Map<String, PackIndex> packs)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MultiPackIndexWriter(packs).write(NullProgressMonitor.INSTANCE,
+				out);
+		return out.toByteArray();
+	}
+
+	private static ObjectId id(int n) {
+		return ObjectId.fromString(
+				String.format("%08x", Integer.valueOf(n)) + "0000000000000000"
+						+ "0000000000000000");
+	}
+
+	private static PackedObjectInfo info(ObjectId id, long offset) {
+		PackedObjectInfo o = new PackedObjectInfo(id);
+		o.setOffset(offset);
+		return o;
+	}
+
+	private static PackIndex index(Object... idsAndOffsets)
+			throws IOException {
+		List<PackedObjectInfo> objs = new ArrayList<>();
+		for (int i = 0; i < idsAndOffsets.length; i += 2) {
+			objs.add(info((ObjectId) idsAndOffsets[i],
+					((Number) idsAndOffsets[i + 1]).longValue()));
+		}
+		return index(objs);
+	}
+
+	private static PackIndex index(List<PackedObjectInfo> objs)
+			throws IOException {
+		List<PackedObjectInfo> sorted = new ArrayList<>(objs);
+		sorted.sort(null);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PackIndexWriter.createVersion(out, 2).write(sorted, new byte[20]);
+		return PackIndex.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -120,6 +120,33 @@ public void deleteIsHidden() throws IOException {
 		}
 	}
 
+	@Test
+	public void twoTableSeekPastRef() throws IOException {
+		List<Ref> delta1 = Arrays.asList(
+				ref("refs/heads/apple", 1),
+				ref("refs/heads/cherry", 2),
+				ref("refs/heads/master", 3));
+		List<Ref> delta2 = Arrays.asList(
+				ref("refs/heads/banana", 4),
+				delete("refs/heads/cherry"));
+
+		MergedReftable mr = merge(write(delta1), write(delta2));
+		try (RefCursor rc = mr.seekRefsWithPrefix("refs/heads/",
+				"refs/heads/apple")) {
+			assertTrue(rc.next());
+			assertEquals("refs/heads/banana", rc.getRef().getName());
+			assertTrue(rc.next());
+			assertEquals("refs/heads/master", rc.getRef().getName());
+			assertFalse(rc.next());
+		}
+		try (RefCursor rc = mr.seekRefsWithPrefix("refs/heads/",
+				"refs/heads/banana")) {
+			assertTrue(rc.next());
+			assertEquals("refs/heads/master", rc.getRef().getName());
+			assertFalse(rc.next());
+		}
+	}
+
 	@Test
 	public void twoTableSeek() throws IOException {
 		List<Ref> delta1 = Arrays.asList(
@@ -425,6 +425,50 @@ public void indexSeek() throws IOException {
 		assertSeek(refs, read(table));
 	}
 
+	@Test
+	public void seekPastRefWithIndex() throws IOException {
+		assertSeekPast(5670, "%04d");
+		assertTrue(stats.refIndexLevels() > 0);
+	}
+
+	@Test
+	public void seekPastRefNoIndex() throws IOException {
+		assertSeekPast(567, "%03d");
+		assertEquals(0, stats.refIndexLevels());
+	}
+
+	@SuppressWarnings("boxing")
+	private void assertSeekPast(int n, String format) throws IOException {
+		List<Ref> refs = new ArrayList<>();
+		refs.add(ref(MASTER, 1));
+		for (int i = 1; i <= n; i++) {
+			refs.add(ref(String.format("refs/heads/n/" + format, i), i));
+		}
+		refs.add(ref(V1_0, 2));
+		ReftableReader t = read(write(refs));
+
+		for (int after : new int[] { 1, n / 2, n - 1 }) {
+			String name = String.format("refs/heads/n/" + format, after);
+			try (RefCursor rc = t.seekRefsWithPrefix("refs/heads/n/", name)) {
+				for (int i = after + 1; i <= n; i++) {
+					assertTrue(rc.next());
+					assertEquals(String.format("refs/heads/n/" + format, i),
+							rc.getRef().getName());
+				}
+				assertFalse(rc.next());
+			}
+		}
+
+		// Resuming after a name that is not present.
+		try (RefCursor rc = t.seekRefsWithPrefix(R_HEADS, "refs/heads/m")) {
+			assertTrue(rc.next());
+			assertEquals(MASTER, rc.getRef().getName());
+		}
+		try (RefCursor rc = t.seekRefsWithPrefix(R_HEADS, "refs/heads/zzz")) {
+			assertFalse(rc.next());
+		}
+	}
+
 	@Test
 	public void noIndexScan() throws IOException {
 		List<Ref> refs = new ArrayList<>();
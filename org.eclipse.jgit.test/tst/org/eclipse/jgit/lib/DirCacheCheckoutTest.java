@@ -284,6 +284,48 @@ public void testInitialCheckout() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelCheckout() throws Exception {
+		StoredConfig config = db.getConfig();
+		config.setInt("checkout", null, "workers", 4);
+		config.setInt("checkout", null, "thresholdForParallelism", 1);
+		config.save();
+		try (Git git = new Git(db);
+				TestRepository<Repository> db_t = new TestRepository<>(db)) {
+			BranchBuilder master = db_t.branch("master");
+			TestRepository<Repository>.CommitBuilder c = master.commit()
+					.message("m0");
+			for (int d = 0; d < 10; d++) {
+				for (int f = 0; f < 30; f++) {
+					c.add("d" + d + "/f" + f, "d" + d + "/f" + f);
+				}
+			}
+			// Detach HEAD, so that it does not follow master.
+			git.checkout().setName(c.create().name()).call();
+			assertTrue(git.status().call().isClean());
+
+			// Change a third of the files, delete another third.
+			HashMap<String, String> files = new HashMap<>();
+			c = master.commit().message("m1");
+			for (int d = 0; d < 10; d++) {
+				for (int f = 0; f < 30; f++) {
+					String path = "d" + d + "/f" + f;
+					if (f % 3 == 0) {
+						files.put(path, path + " changed");
+						c.add(path, path + " changed");
+					} else if (f % 3 == 1) {
+						files.put(path, path);
+					} else {
+						c.rm(path);
+					}
+				}
+			}
+			git.checkout().setName(c.create().name()).call();
+			assertWorkDir(files);
+			assertTrue(git.status().call().isClean());
+		}
+	}
+
 	private DirCacheCheckout resetHard(RevCommit commit)
 			throws NoWorkTreeException,
 			CorruptObjectException, IOException {
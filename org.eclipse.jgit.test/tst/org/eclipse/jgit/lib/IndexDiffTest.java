@@ -512,6 +512,74 @@ public void testUntrackedNotIgnoredFolders() throws Exception {
 		}
 	}
 
+	@Test
+	public void testParallelScan() throws Exception {
+		try (Git git = new Git(db)) {
+			for (int d = 0; d < 20; d++) {
+				for (int f = 0; f < 5; f++) {
+					writeTrashFile("d" + d + "/sub/f" + f, "content " + f);
+				}
+				writeTrashFile("f" + d, "file " + d);
+			}
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage("initial").call();
+
+			writeTrashFile(".gitignore", "ignored\n");
+			writeTrashFile("d1/sub/f0", "modified");
+			writeTrashFile("f2", "modified");
+			deleteTrashFile("d3/sub/f1");
+			deleteTrashFile("f4");
+			writeTrashFile("d5/added", "added");
+			git.add().addFilepattern("d5/added").call();
+			git.rm().addFilepattern("d6/sub/f2").setCached(true).call();
+			git.rm().addFilepattern("f7").call();
+			writeTrashFile("d8/untracked/a", "untracked");
+			writeTrashFile("d8/untracked/b", "untracked");
+			writeTrashFile("new/a", "untracked");
+			writeTrashFile("d9/ignored/a", "ignored");
+			writeTrashFile("ignored/a", "ignored");
+
+			IndexDiff serial = new IndexDiff(db, Constants.HEAD,
+					new FileTreeIterator(db));
+			assertTrue(serial.diff());
+
+			FileBasedConfig config = db.getConfig();
+			config.setInt(ConfigConstants.CONFIG_STATUS_SECTION, null,
+					ConfigConstants.CONFIG_KEY_WORKERS, 4);
+			config.save();
+			IndexDiff parallel = new IndexDiff(db, Constants.HEAD,
+					new FileTreeIterator(db));
+			assertTrue(parallel.diff());
+
+			assertEquals(Collections.singleton("d5/added"),
+					parallel.getAdded());
+			assertEquals(new HashSet<>(Arrays.asList("d1/sub/f0", "f2")),
+					parallel.getModified());
+			assertEquals(new HashSet<>(Arrays.asList("d3/sub/f1", "f4")),
+					parallel.getMissing());
+			assertEquals(new HashSet<>(Arrays.asList("d6/sub/f2", "f7")),
+					parallel.getRemoved());
+			assertEquals(new HashSet<>(Arrays.asList("d8/untracked", "new")),
+					parallel.getUntrackedFolders());
+			assertEquals(new HashSet<>(Arrays.asList("d9/ignored", "ignored")),
+					parallel.getIgnoredNotInIndex());
+
+			assertEquals(serial.getAdded(), parallel.getAdded());
+			assertEquals(serial.getChanged(), parallel.getChanged());
+			assertEquals(serial.getRemoved(), parallel.getRemoved());
+			assertEquals(serial.getMissing(), parallel.getMissing());
+			assertEquals(serial.getModified(), parallel.getModified());
+			assertEquals(serial.getUntracked(), parallel.getUntracked());
+			assertEquals(serial.getConflicting(), parallel.getConflicting());
+			assertEquals(serial.getIgnoredNotInIndex(),
+					parallel.getIgnoredNotInIndex());
+			assertEquals(serial.getUntrackedFolders(),
+					parallel.getUntrackedFolders());
+			assertEquals(serial.getPathsWithIndexMode(FileMode.REGULAR_FILE),
+					parallel.getPathsWithIndexMode(FileMode.REGULAR_FILE));
+		}
+	}
+
 	@Test
 	public void testAssumeUnchanged() throws Exception {
 		try (Git git = new Git(db)) {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import static org.eclipse.jgit.lib.Constants.COMMIT_GENERATION_NOT_COMPUTED;
+import static org.eclipse.jgit.lib.Constants.COMMIT_GENERATION_UNKNOWN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.junit.Test;
+
+public class RevWalkCommitGraphTest extends RevWalkTestCase {
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		StoredConfig cfg = db.getConfig();
+		cfg.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+		cfg.save();
+	}
+
+	@Test
+	public void testParseHeadersFromGraph() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c = commit(a);
+		RevCommit d = commit(b, c);
+		RevCommit e = commit(d, a, c);
+		writeCommitGraph(e);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			walk.setRetainBody(false);
+			for (RevCommit expected : new RevCommit[] { a, b, c, d, e }) {
+				RevCommit actual = walk.parseCommit(expected);
+				assertTrue(actual instanceof RevCommitCG);
+				assertEquals(expected.getTree(), actual.getTree());
+				assertEquals(expected.getCommitTime(), actual.getCommitTime());
+				assertEquals(expected.getParentCount(),
+						actual.getParentCount());
+				for (int i = 0; i < expected.getParentCount(); i++) {
+					assertEquals(expected.getParent(i), actual.getParent(i));
+				}
+				assertNull(actual.getRawBuffer());
+			}
+			assertEquals(1, walk.parseCommit(a).getGeneration());
+			assertEquals(2, walk.parseCommit(b).getGeneration());
+			assertEquals(3, walk.parseCommit(d).getGeneration());
+			assertEquals(4, walk.parseCommit(e).getGeneration());
+		}
+	}
+
+	@Test
+	public void testRetainBodyIgnoresGraph() throws Exception {
+		RevCommit a = commit();
+		writeCommitGraph(a);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			RevCommit c = walk.parseCommit(a);
+			assertEquals(a.getFullMessage(), c.getFullMessage());
+			assertEquals(1, c.getGeneration());
+		}
+	}
+
+	@Test
+	public void testCommitsMissingFromGraph() throws Exception {
+		RevCommit a = commit();
+		writeCommitGraph(a);
+		RevCommit b = commit(a);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			walk.setRetainBody(false);
+			RevCommit c = walk.parseCommit(b);
+			assertFalse(c instanceof RevCommitCG);
+			assertEquals(COMMIT_GENERATION_UNKNOWN, c.getGeneration());
+			assertTrue(c.getParent(0) instanceof RevCommitCG);
+		}
+	}
+
+	@Test
+	public void testWalkMatchesWithoutGraph() throws Exception {
+		RevCommit a = commit();
+		RevCommit b1 = commit(1, a);
+		RevCommit b2 = commit(2, a);
+		RevCommit m = commit(3, b1, b2);
+		RevCommit tip = commit(1, m);
+
+		List<RevCommit> expected = walk(tip);
+		writeCommitGraph(tip);
+		assertEquals(expected, walk(tip));
+	}
+
+	@Test
+	public void testMergeBaseWithClockSkew() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit c1 = commit(-100000, b);
+		RevCommit c2 = commit(1, c1);
+		RevCommit d1 = commit(200000, b);
+		RevCommit d2 = commit(1, d1);
+		writeCommitGraph(c2, d2);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			walk.setRetainBody(false);
+			walk.setRevFilter(RevFilter.MERGE_BASE);
+			walk.markStart(walk.parseCommit(c2));
+			walk.markStart(walk.parseCommit(d2));
+			assertEquals(b, walk.next());
+			assertNull(walk.next());
+		}
+	}
+
+	@Test
+	public void testIsMergedInto() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit side = commit(-100000, a);
+		RevCommit m = commit(b, side);
+		RevCommit tip = commit(1, m);
+		RevCommit other = commit(a);
+		writeCommitGraph(tip, other);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			assertTrue(walk.isMergedInto(walk.parseCommit(side),
+					walk.parseCommit(tip)));
+			assertTrue(walk.isMergedInto(walk.parseCommit(a),
+					walk.parseCommit(tip)));
+			assertTrue(walk.isMergedInto(walk.parseCommit(tip),
+					walk.parseCommit(tip)));
+			assertFalse(walk.isMergedInto(walk.parseCommit(other),
+					walk.parseCommit(tip)));
+			assertFalse(walk.isMergedInto(walk.parseCommit(tip),
+					walk.parseCommit(a)));
+		}
+	}
+
+	@Test
+	public void testIsMergedIntoPartiallyCovered() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		writeCommitGraph(b);
+		RevCommit c = commit(b);
+		RevCommit d = commit(c);
+		RevCommit other = commit(a);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			assertTrue(walk.isMergedInto(walk.parseCommit(a),
+					walk.parseCommit(d)));
+			assertTrue(walk.isMergedInto(walk.parseCommit(c),
+					walk.parseCommit(d)));
+			assertFalse(walk.isMergedInto(walk.parseCommit(other),
+					walk.parseCommit(d)));
+			assertFalse(walk.isMergedInto(walk.parseCommit(d),
+					walk.parseCommit(b)));
+		}
+	}
+
+	@Test
+	public void testFindBranchesReachableFromWithClockSkew() throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		// The branch tip claims to be two days older than its ancestor.
+		RevCommit skewed = commit(-2 * 24 * 3600, b);
+		RevCommit other = commit(a);
+		createBranch(skewed, "refs/heads/skewed");
+		createBranch(other, "refs/heads/other");
+		writeCommitGraph(skewed, other);
+
+		try (RevWalk walk = new RevWalk(db)) {
+			List<Ref> refs = RevWalkUtils.findBranchesReachableFrom(
+					walk.parseCommit(b), walk,
+					db.getRefDatabase().getRefsByPrefix(Constants.R_HEADS));
+			assertEquals(1, refs.size());
+			assertEquals("refs/heads/skewed", refs.get(0).getName());
+		}
+	}
+
+	@Test
+	public void testFindBranchesReachableFromWithoutGenerations()
+			throws Exception {
+		RevCommit a = commit();
+		RevCommit b = commit(a);
+		RevCommit other = commit(a);
+		createBranch(b, "refs/heads/b");
+		createBranch(other, "refs/heads/other");
+		writeCommitGraph(b, other);
+		clearGenerations();
+
+		try (RevWalk walk = new RevWalk(db)) {
+			RevCommit parsed = walk.parseCommit(a);
+			assertEquals(COMMIT_GENERATION_NOT_COMPUTED,
+					parsed.getGeneration());
+			List<Ref> refs = RevWalkUtils.findBranchesReachableFrom(parsed,
+					walk,
+					db.getRefDatabase().getRefsByPrefix(Constants.R_HEADS));
+			assertEquals(2, refs.size());
+
+			refs = RevWalkUtils.findBranchesReachableFrom(
+					walk.parseCommit(b), walk,
+					db.getRefDatabase().getRefsByPrefix(Constants.R_HEADS));
+			assertEquals(1, refs.size());
+			assertEquals("refs/heads/b", refs.get(0).getName());
+		}
+	}
+
+	private List<RevCommit> walk(RevCommit tip) throws Exception {
+		List<RevCommit> commits = new ArrayList<>();
+		try (RevWalk walk = new RevWalk(db)) {
+			walk.setRetainBody(false);
+			walk.sort(RevSort.TOPO);
+			walk.markStart(walk.parseCommit(tip));
+			for (RevCommit c; (c = walk.next()) != null;) {
+				commits.add(c);
+			}
+		}
+		return commits;
+	}
+
+	private void writeCommitGraph(ObjectId... tips) throws Exception {
+		Set<ObjectId> wants = new HashSet<>();
+		for (ObjectId tip : tips) {
+			wants.add(tip);
+		}
+		new GC(db).writeCommitGraph(wants);
+	}
+
+	// Rewrite the graph as written by a version of C git that did not
+	// compute generation numbers.
+	private void clearGenerations() throws Exception {
+		File graph = new File(db.getObjectDatabase().getDirectory(),
+				Constants.INFO_COMMIT_GRAPH);
+		byte[] buf = IO.readFully(graph);
+		int chunks = buf[6] & 0xff;
+		for (int i = 0; i < chunks; i++) {
+			int p = 8 + i * 12;
+			if (NB.decodeInt32(buf, p) == 0x43444154) { // "CDAT"
+				int start = (int) NB.decodeInt64(buf, p + 4);
+				int end = (int) NB.decodeInt64(buf, p + 16);
+				for (int r = start; r < end; r += 36) {
+					// The upper 30 of 64 bits after tree and parents.
+					buf[r + 28] = 0;
+					buf[r + 29] = 0;
+					buf[r + 30] = 0;
+					buf[r + 31] &= 0x03;
+				}
+			}
+		}
+		Files.write(graph.toPath(), buf);
+	}
+}
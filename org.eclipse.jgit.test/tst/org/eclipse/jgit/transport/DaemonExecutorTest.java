@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DaemonExecutorTest {
+	private Daemon daemon;
+
+	private ExecutorService executor;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		InMemoryRepository repo = new InMemoryRepository(
+				new DfsRepositoryDescription("repo"));
+		daemon = new Daemon(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		daemon.setRepositoryResolver((client, name) -> {
+			repo.incrementOpen();
+			return repo;
+		});
+		daemon.setUploadPackFactory((client, db) -> {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new UploadPack(db);
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		daemon.stopAndWait();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExecutorRejectsConnection() throws Exception {
+		executor = Daemon.newBoundedExecutor(1, 0);
+		daemon.setExecutor(executor);
+		daemon.start();
+
+		try (Socket first = connect()) {
+			waitFor(() -> daemon.getActiveConnections() == 1);
+			try (Socket second = new Socket(daemon.getAddress().getAddress(),
+					daemon.getAddress().getPort())) {
+				assertEquals(-1, second.getInputStream().read());
+			}
+			assertEquals(1, daemon.getRejectedConnections());
+			assertEquals(1, daemon.getActiveConnections());
+			assertEquals(0, daemon.getQueuedConnections());
+		}
+	}
+
+	@Test
+	public void testQueuedConnection() throws Exception {
+		executor = Daemon.newBoundedExecutor(1, 1);
+		daemon.setExecutor(executor);
+		daemon.start();
+
+		try (Socket first = connect(); Socket second = connect()) {
+			waitFor(() -> daemon.getQueuedConnections() == 1);
+			assertEquals(1, daemon.getActiveConnections());
+			assertEquals(0, daemon.getRejectedConnections());
+			release.countDown();
+		}
+		waitFor(() -> daemon.getActiveConnections() == 0
+				&& daemon.getQueuedConnections() == 0);
+		assertEquals(0, daemon.getRejectedConnections());
+	}
+
+	@Test
+	public void testServiceLimit() throws Exception {
+		DaemonService service = daemon.getService("upload-pack");
+		service.setMaxConnections(1);
+		daemon.start();
+
+		try (Socket first = connect()) {
+			waitFor(() -> service.getActiveConnections() == 1);
+			try (Socket second = connect()) {
+				String err = new PacketLineIn(second.getInputStream())
+						.readString();
+				assertTrue(err, err.startsWith("ERR "));
+			}
+			assertEquals(1, daemon.getRejectedConnections());
+		}
+	}
+
+	private Socket connect() throws IOException {
+		Socket s = new Socket(daemon.getAddress().getAddress(),
+				daemon.getAddress().getPort());
+		PacketLineOut out = new PacketLineOut(s.getOutputStream());
+		out.writeString("git-upload-pack /repo\0host=localhost\0");
+		out.flush();
+		return s;
+	}
+
+	private static void waitFor(BooleanSupplier condition)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
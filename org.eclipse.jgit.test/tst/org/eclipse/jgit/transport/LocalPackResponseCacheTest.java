@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.transport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jgit.junit.RepositoryTestCase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.PackResponseCache.Key;
+import org.eclipse.jgit.transport.PackResponseCache.PendingResponse;
+import org.junit.Test;
+
+public class LocalPackResponseCacheTest extends RepositoryTestCase {
+	private static final ObjectId A = ObjectId
+			.fromString("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+
+	private static final ObjectId B = ObjectId
+			.fromString("bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+
+	@Test
+	public void testKey() {
+		Key k1 = Key.create("repo", Arrays.asList(A, B),
+				Collections.emptySet(), Arrays.asList("ofs-delta", "thin-pack"),
+				FilterSpec.NO_FILTER);
+		Key k2 = Key.create("repo", Arrays.asList(B, A),
+				Collections.emptySet(), Arrays.asList("thin-pack", "ofs-delta"),
+				FilterSpec.NO_FILTER);
+		assertEquals(k1, k2);
+		assertEquals(k1.hashCode(), k2.hashCode());
+
+		assertNotEquals(k1, Key.create("repo", Collections.singleton(A),
+				Collections.singleton(B), Arrays.asList("ofs-delta", "thin-pack"),
+				FilterSpec.NO_FILTER));
+		assertNotEquals(k1,
+				Key.create("repo", Arrays.asList(A, B), Collections.emptySet(),
+						Collections.singleton("ofs-delta"),
+						FilterSpec.NO_FILTER));
+		assertNotEquals(k1, Key.create("repo", Arrays.asList(A, B),
+				Collections.emptySet(), Arrays.asList("ofs-delta", "thin-pack"),
+				FilterSpec.withBlobLimit(0)));
+		assertNotEquals(k1, Key.create("other", Arrays.asList(A, B),
+				Collections.emptySet(), Arrays.asList("ofs-delta", "thin-pack"),
+				FilterSpec.NO_FILTER));
+	}
+
+	@Test
+	public void testCommitAndOpen() throws Exception {
+		LocalPackResponseCache cache = newCache(1024);
+		Key k = key(A);
+		assertNull(cache.open(k));
+
+		PendingResponse p = cache.create(k);
+		assertNotNull(p);
+		assertNull(cache.create(k));
+		p.getOutputStream().write(new byte[] { 1, 2, 3 });
+		p.commit();
+
+		assertEquals(3, cache.getTotalBytes());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, read(cache.open(k)));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, read(cache.open(k)));
+	}
+
+	@Test
+	public void testJoinWhileWriting() throws Exception {
+		LocalPackResponseCache cache = newCache(1024);
+		Key k = key(A);
+		PendingResponse p = cache.create(k);
+		p.getOutputStream().write(new byte[] { 1, 2 });
+
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			InputStream in = cache.open(k);
+			Future<byte[]> result = pool.submit(() -> read(in));
+			p.getOutputStream().write(new byte[] { 3 });
+			p.commit();
+			assertArrayEquals(new byte[] { 1, 2, 3 }, result.get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testAbortFailsReaders() throws Exception {
+		LocalPackResponseCache cache = newCache(1024);
+		Key k = key(A);
+		PendingResponse p = cache.create(k);
+		p.getOutputStream().write(new byte[] { 1, 2 });
+		InputStream in = cache.open(k);
+		p.abort();
+
+		assertThrows(IOException.class, () -> read(in));
+		assertNull(cache.open(k));
+		assertNotNull(cache.create(k));
+	}
+
+	@Test
+	public void testReadTimeout() throws Exception {
+		LocalPackResponseCache cache = newCache(1024);
+		cache.setReadTimeout(1);
+		Key k = key(A);
+		PendingResponse p = cache.create(k);
+		p.getOutputStream().write(new byte[] { 1, 2 });
+
+		try (InputStream in = cache.open(k)) {
+			byte[] buf = new byte[4];
+			assertEquals(2, in.read(buf));
+			assertThrows(InterruptedIOException.class, () -> in.read(buf));
+		}
+		p.abort();
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		LocalPackResponseCache cache = newCache(10);
+		write(cache, key(A), 6);
+		write(cache, key(B), 4);
+		assertEquals(10, cache.getTotalBytes());
+
+		// Touch A so that B is the least recently used entry.
+		read(cache.open(key(A)));
+		Key c = key(A, B);
+		write(cache, c, 3);
+		assertNull(cache.open(key(B)));
+		assertNotNull(cache.open(key(A)));
+		assertNotNull(cache.open(c));
+		assertEquals(9, cache.getTotalBytes());
+	}
+
+	@Test
+	public void testOversizedResponseNotRetained() throws Exception {
+		LocalPackResponseCache cache = newCache(10);
+		Key k = key(A);
+		PendingResponse p = cache.create(k);
+		InputStream in = cache.open(k);
+		p.getOutputStream().write(new byte[11]);
+		p.commit();
+
+		assertEquals(11, read(in).length);
+		assertNull(cache.open(k));
+		assertEquals(0, cache.getTotalBytes());
+		assertEquals(0, cacheDir().list().length);
+	}
+
+	@Test
+	public void testStaleFilesDeleted() throws Exception {
+		LocalPackResponseCache cache = newCache(10);
+		write(cache, key(A), 4);
+		assertEquals(1, cacheDir().list().length);
+
+		cache = newCache(10);
+		assertEquals(0, cacheDir().list().length);
+		assertNull(cache.open(key(A)));
+	}
+
+	private File cacheDir() {
+		return new File(trash, "response-cache");
+	}
+
+	private LocalPackResponseCache newCache(long maxBytes) throws IOException {
+		return new LocalPackResponseCache(cacheDir(), maxBytes);
+	}
+
+	private static Key key(ObjectId... wants) {
+		return Key.create("repo", Arrays.asList(wants),
+				Collections.emptySet(), Collections.emptySet(),
+				FilterSpec.NO_FILTER);
+	}
+
+	private static void write(PackResponseCache cache, Key k, int len)
+			throws IOException {
+		PendingResponse p = cache.create(k);
+		p.getOutputStream().write(new byte[len]);
+		p.commit();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try (InputStream s = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[4];
+			int n;
+			while ((n = s.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		}
+	}
+}
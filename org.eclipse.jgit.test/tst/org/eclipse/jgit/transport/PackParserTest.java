@@ -13,30 +13,48 @@
 
 package org.eclipse.jgit.transport;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
 
 import org.eclipse.jgit.errors.TooLargeObjectInPackException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.dfs.DfsInserter;
+import org.eclipse.jgit.internal.storage.dfs.DfsPackParser;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.internal.storage.file.ObjectDirectoryPackParser;
 import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.pack.DeltaEncoder;
 import org.eclipse.jgit.junit.JGitTestUtil;
 import org.eclipse.jgit.junit.RepositoryTestCase;
 import org.eclipse.jgit.junit.TestRepository;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevBlob;
 import org.eclipse.jgit.util.NB;
@@ -428,6 +446,216 @@ public void testDataAfterPackFooterSplitHeaderRead() throws Exception {
 		assertEquals(0x7e, in.read());
 	}
 
+	@Test
+	public void testParallelDeltaResolution() throws Exception {
+		List<byte[]> contents = new ArrayList<>();
+		PackParser p = index(new ByteArrayInputStream(deltaChainPack(contents)));
+		// Parallel resolution is off unless configured.
+		assertEquals(1, p.getThreads());
+		AtomicInteger workers = new AtomicInteger();
+		p.setThreads(4);
+		p.setExecutor(r -> {
+			workers.incrementAndGet();
+			new Thread(r).start();
+		});
+		p.parse(NullProgressMonitor.INSTANCE);
+
+		assertEquals(4, workers.get());
+		assertEquals(contents.size(), p.getObjectCount());
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (byte[] data : contents) {
+				ObjectId id = fmt.idFor(Constants.OBJ_BLOB, data);
+				assertArrayEquals(data,
+						db.open(id, Constants.OBJ_BLOB).getCachedBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testParallelDeltaResolutionRereadsDroppedBases()
+			throws Exception {
+		List<byte[]> contents = new ArrayList<>();
+		PackParser p = index(new ByteArrayInputStream(deltaChainPack(contents)));
+		p.setThreads(2);
+		p.setExecutor(r -> new Thread(r).start());
+		// Keep only the object last resolved and its parent.
+		p.setDeltaBaseCacheLimit(0);
+		p.parse(NullProgressMonitor.INSTANCE);
+
+		assertEquals(contents.size(), p.getObjectCount());
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (byte[] data : contents) {
+				ObjectId id = fmt.idFor(Constants.OBJ_BLOB, data);
+				assertArrayEquals(data,
+						db.open(id, Constants.OBJ_BLOB).getCachedBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testParallelDeltaResolutionInDfs() throws Exception {
+		List<byte[]> contents = new ArrayList<>();
+		byte[] pack = deltaChainPack(contents);
+		InMemoryRepository repo = new InMemoryRepository(
+				new DfsRepositoryDescription("test"));
+		try (ObjectInserter ins = repo.newObjectInserter()) {
+			PackParser p = ins.newPackParser(new ByteArrayInputStream(pack));
+			p.setThreads(4);
+			p.setExecutor(r -> new Thread(r).start());
+			p.parse(NullProgressMonitor.INSTANCE);
+			ins.flush();
+			assertEquals(contents.size(), p.getObjectCount());
+		}
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (byte[] data : contents) {
+				ObjectId id = fmt.idFor(Constants.OBJ_BLOB, data);
+				assertArrayEquals(data,
+						repo.open(id, Constants.OBJ_BLOB).getCachedBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testSerialDeltaResolutionWithoutPositionalReads()
+			throws Exception {
+		List<byte[]> contents = new ArrayList<>();
+		byte[] pack = deltaChainPack(contents);
+		InMemoryRepository repo = new InMemoryRepository(
+				new DfsRepositoryDescription("test"));
+		try (DfsInserter ins = (DfsInserter) repo.newObjectInserter()) {
+			// Like a subclass written before positional reads existed.
+			PackParser p = new DfsPackParser(repo.getObjectDatabase(), ins,
+					new ByteArrayInputStream(pack)) {
+				@Override
+				protected boolean isPositionalReadSupported() {
+					return false;
+				}
+
+				@Override
+				protected int readDatabase(long position, byte[] dst,
+						int pos, int cnt) {
+					throw new UnsupportedOperationException();
+				}
+			};
+			p.setThreads(4);
+			p.setExecutor(r -> fail("deltas resolved in parallel"));
+			p.parse(NullProgressMonitor.INSTANCE);
+			ins.flush();
+			assertEquals(contents.size(), p.getObjectCount());
+		}
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (byte[] data : contents) {
+				ObjectId id = fmt.idFor(Constants.OBJ_BLOB, data);
+				assertArrayEquals(data,
+						repo.open(id, Constants.OBJ_BLOB).getCachedBytes());
+			}
+		}
+	}
+
+	@Test
+	public void testRejectedDeltaResolver() throws Exception {
+		PackParser p = index(
+				new ByteArrayInputStream(deltaChainPack(new ArrayList<>())));
+		Thread main = Thread.currentThread();
+		CountDownLatch rejected = new CountDownLatch(1);
+		AtomicBoolean parseReturned = new AtomicBoolean();
+		AtomicBoolean lateWorker = new AtomicBoolean();
+		AtomicInteger executed = new AtomicInteger();
+		p.setThreads(2);
+		p.setExecutor(r -> {
+			if (executed.incrementAndGet() > 1) {
+				rejected.countDown();
+				throw new RejectedExecutionException();
+			}
+			new Thread(r).start();
+		});
+		ProgressMonitor pm = new EmptyProgressMonitor() {
+			@Override
+			public boolean isCancelled() {
+				if (Thread.currentThread() != main) {
+					try {
+						rejected.await();
+						Thread.sleep(100);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					if (parseReturned.get()) {
+						lateWorker.set(true);
+					}
+				}
+				return false;
+			}
+		};
+		try {
+			p.parse(pm);
+			fail("Expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			parseReturned.set(true);
+		}
+		Thread.sleep(200);
+		assertFalse("worker outlived the parser", lateWorker.get());
+	}
+
+	private static byte[] deltaChainPack(List<byte[]> contents) throws IOException {
+		int bases = 16;
+		int chainLength = 12;
+		TemporaryBuffer.Heap pack = new TemporaryBuffer.Heap(1 << 20);
+		packHeader(pack, bases * (1 + 2 * chainLength));
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			for (int b = 0; b < bases; b++) {
+				byte[] base = Constants.encode("base " + b + "\n");
+				objectHeader(pack, Constants.OBJ_BLOB, base.length);
+				deflate(pack, base);
+				contents.add(base);
+
+				// Two chains per base, so resolved objects have children too.
+				for (int c = 0; c < 2; c++) {
+					byte[] prior = base;
+					for (int i = 0; i < chainLength; i++) {
+						byte[] next = Constants.encode(
+								new String(prior, UTF_8) + c + "." + i + "\n");
+						ByteArrayOutputStream delta = new ByteArrayOutputStream();
+						DeltaEncoder de = new DeltaEncoder(delta, prior.length,
+								next.length);
+						de.copy(0, prior.length);
+						de.insert(Arrays.copyOfRange(next, prior.length,
+								next.length));
+						objectHeader(pack, Constants.OBJ_REF_DELTA,
+								delta.size());
+						fmt.idFor(Constants.OBJ_BLOB, prior).copyRawTo(pack);
+						deflate(pack, delta.toByteArray());
+						contents.add(next);
+						prior = next;
+					}
+				}
+			}
+		}
+		digest(pack);
+		return pack.toByteArray();
+	}
+
+	@Test
+	public void testIndexThreadsConfig() throws Exception {
+		db.getConfig().setInt("pack", null, "indexthreads", 3);
+		TemporaryBuffer.Heap pack = new TemporaryBuffer.Heap(1024);
+		packHeader(pack, 0);
+		digest(pack);
+		assertEquals(3, index(new ByteArrayInputStream(pack.toByteArray()))
+				.getThreads());
+	}
+
+	private static void objectHeader(TemporaryBuffer.Heap pack, int type,
+			long size) throws IOException {
+		int c = (type << 4) | (int) (size & 15);
+		size >>>= 4;
+		while (size != 0) {
+			pack.write(c | 0x80);
+			c = (int) (size & 0x7f);
+			size >>>= 7;
+		}
+		pack.write(c);
+	}
+
 	private static void packHeader(TemporaryBuffer.Heap tinyPack, int cnt)
 			throws IOException {
 		final byte[] hdr = new byte[8];
@@ -12,15 +12,24 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.RefAdvertiser.PacketLineOutRefAdvertiser;
 import org.eclipse.jgit.util.NB;
 import org.junit.Test;
@@ -65,6 +74,68 @@ public void advertiser() throws IOException {
 		assertTrue(PacketLineIn.isEnd(s));
 	}
 
+	@Test
+	public void sendSortsRefs() throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		PacketLineOutRefAdvertiser adv = new PacketLineOutRefAdvertiser(
+				new PacketLineOut(buf));
+		adv.send(Arrays.asList(ref("refs/heads/next", 2),
+				ref("refs/heads/master", 1)));
+		adv.end();
+
+		PacketLineIn pckIn = new PacketLineIn(
+				new ByteArrayInputStream(buf.toByteArray()));
+		assertEquals(id(1).name() + " refs/heads/master\n",
+				pckIn.readStringRaw());
+		assertEquals(id(2).name() + " refs/heads/next\n",
+				pckIn.readStringRaw());
+		assertTrue(PacketLineIn.isEnd(pckIn.readStringRaw()));
+	}
+
+	@Test
+	public void sendSorted() throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		PacketLineOutRefAdvertiser adv = new PacketLineOutRefAdvertiser(
+				new PacketLineOut(buf));
+		adv.setUseProtocolV2(true);
+		Set<ObjectId> sent = adv.sendSorted(Arrays
+				.asList(ref("refs/heads/master", 1), ref("refs/heads/next", 2))
+				.iterator());
+		adv.end();
+		assertTrue(sent.isEmpty());
+
+		PacketLineIn pckIn = new PacketLineIn(
+				new ByteArrayInputStream(buf.toByteArray()));
+		assertEquals(id(1).name() + " refs/heads/master",
+				pckIn.readString());
+		assertEquals(id(2).name() + " refs/heads/next", pckIn.readString());
+		assertTrue(PacketLineIn.isEnd(pckIn.readString()));
+	}
+
+	@Test
+	public void sendSortedRethrowsReadError() {
+		IOException err = new IOException("boom");
+		Iterator<Ref> failing = new Iterator<Ref>() {
+			@Override
+			public boolean hasNext() {
+				throw new UncheckedIOException(err);
+			}
+
+			@Override
+			public Ref next() {
+				throw new NoSuchElementException();
+			}
+		};
+		PacketLineOutRefAdvertiser adv = new PacketLineOutRefAdvertiser(
+				new PacketLineOut(new ByteArrayOutputStream()));
+		assertSame(err,
+				assertThrows(IOException.class, () -> adv.sendSorted(failing)));
+	}
+
+	private static Ref ref(String name, int id) {
+		return new ObjectIdRef.PeeledNonTag(Ref.Storage.PACKED, name, id(id));
+	}
+
 	private static ObjectId id(int i) {
 		try (ObjectInserter.Formatter f = new ObjectInserter.Formatter()) {
 			byte[] tmp = new byte[4];
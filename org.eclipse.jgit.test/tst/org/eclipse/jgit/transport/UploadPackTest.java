@@ -14,9 +14,12 @@
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -53,6 +56,7 @@
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.storage.pack.PackStatistics;
 import org.eclipse.jgit.transport.UploadPack.RequestPolicy;
+import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.util.io.NullOutputStream;
 import org.junit.After;
 import org.junit.Before;
@@ -125,6 +129,147 @@ public void testFetchParentOfShallowCommit() throws Exception {
 		}
 	}
 
+	@Test
+	public void testFetchServedFromPackResponseCache() throws Exception {
+		File dir = Files.createTempDirectory("response-cache").toFile();
+		try {
+			PackResponseCache cache = new LocalPackResponseCache(dir, 1 << 20);
+			// Only the first fetch generated a pack.
+			assertEquals(1, fetchTwiceWithCache(cache));
+		} finally {
+			FileUtils.delete(dir, FileUtils.RECURSIVE);
+		}
+	}
+
+	@Test
+	public void testFetchWithFailingPackResponseCache() throws Exception {
+		File dir = Files.createTempDirectory("response-cache").toFile();
+		try {
+			PackResponseCache local = new LocalPackResponseCache(dir, 1 << 20);
+			PackResponseCache cache = new PackResponseCache() {
+				@Override
+				public InputStream open(Key key) throws IOException {
+					return local.open(key);
+				}
+
+				@Override
+				public PendingResponse create(Key key) throws IOException {
+					PendingResponse p = local.create(key);
+					return new PendingResponse() {
+						@Override
+						public OutputStream getOutputStream() {
+							return new OutputStream() {
+								@Override
+								public void write(int b) throws IOException {
+									throw new IOException("disk full");
+								}
+							};
+						}
+
+						@Override
+						public void commit() throws IOException {
+							p.commit();
+						}
+
+						@Override
+						public void abort() {
+							p.abort();
+						}
+					};
+				}
+			};
+			// The pack was not cached, but both clients got it.
+			assertEquals(2, fetchTwiceWithCache(cache));
+		} finally {
+			FileUtils.delete(dir, FileUtils.RECURSIVE);
+		}
+	}
+
+	@Test
+	public void testFetchWithUnavailablePackResponseCache() throws Exception {
+		PackResponseCache cache = new PackResponseCache() {
+			@Override
+			public InputStream open(Key key) throws IOException {
+				throw new IOException("cannot open");
+			}
+
+			@Override
+			public PendingResponse create(Key key) throws IOException {
+				throw new IOException("cannot create");
+			}
+		};
+		// Both clients got a generated pack.
+		assertEquals(2, fetchTwiceWithCache(cache));
+	}
+
+	@Test
+	public void testFetchWithStalledPackResponse() throws Exception {
+		File dir = Files.createTempDirectory("response-cache").toFile();
+		try {
+			LocalPackResponseCache local = new LocalPackResponseCache(dir,
+					1 << 20);
+			local.setReadTimeout(1);
+			List<PackResponseCache.PendingResponse> stalled = new ArrayList<>();
+			PackResponseCache cache = new PackResponseCache() {
+				@Override
+				public InputStream open(Key key) throws IOException {
+					return local.open(key);
+				}
+
+				@Override
+				public PendingResponse create(Key key) throws IOException {
+					// Pretend another request is generating the pack, but
+					// never writes it.
+					stalled.add(local.create(key));
+					return null;
+				}
+			};
+			// Both clients gave up waiting and generated the pack.
+			assertEquals(2, fetchTwiceWithCache(cache));
+			assertEquals(1, stalled.size());
+			stalled.get(0).abort();
+		} finally {
+			FileUtils.delete(dir, FileUtils.RECURSIVE);
+		}
+	}
+
+	// Returns the number of packs generated.
+	private int fetchTwiceWithCache(PackResponseCache cache)
+			throws Exception {
+		RevBlob blob = remote.blob("foo");
+		RevCommit commit = remote.commit().add("foo", blob).create();
+		remote.update("master", commit);
+
+		List<PackStatistics> uploads = new ArrayList<>();
+		testProtocol = new TestProtocol<>((Object req, Repository db) -> {
+			UploadPack up = new UploadPack(db);
+			up.setPackResponseCache(cache);
+			up.setPostUploadHook(uploads::add);
+			return up;
+		}, null);
+		uri = testProtocol.register(ctx, server);
+
+		for (String name : new String[] { "client1", "client2" }) {
+			InMemoryRepository repo = newRepo(name);
+			try (Transport tn = testProtocol.open(uri, repo, "server")) {
+				tn.fetch(NullProgressMonitor.INSTANCE, Collections
+						.singletonList(new RefSpec(commit.name())));
+			}
+			assertTrue(repo.getObjectDatabase().has(blob.toObjectId()));
+			assertTrue(repo.getObjectDatabase().has(commit.toObjectId()));
+		}
+		// Cached responses are reported too, without object counts.
+		assertEquals(2, uploads.size());
+		int generated = 0;
+		for (PackStatistics s : uploads) {
+			assertTrue(s.getTotalBytes() > 0);
+			if (s.getTotalObjects() > 0) {
+				generated++;
+			}
+		}
+		return generated;
+	}
+
 	@Test
 	public void testFetchWithBlobNoneFilter() throws Exception {
 		InMemoryRepository server2 = newRepo("server2");
@@ -42,6 +42,8 @@ public class StatusCommand extends GitCommand<Status> {
 
 	private IgnoreSubmoduleMode ignoreSubmoduleMode = null;
 
+	private boolean writeFileSystemMonitorState;
+
 	/**
 	 * Constructor for StatusCommand.
 	 *
@@ -66,6 +68,25 @@ public StatusCommand setIgnoreSubmodules(IgnoreSubmoduleMode mode) {
 		return this;
 	}
 
+	/**
+	 * Whether to record the files found unchanged in the index, if it is
+	 * watched by a file system monitor.
+	 * <p>
+	 * The next status then skips these files unless the monitor reports them
+	 * changed. Recording them takes the lock of the index and rewrites it, so
+	 * status is no longer read-only; it is skipped if the index is locked.
+	 *
+	 * @param write
+	 *            whether to write the index. Defaults to {@code false}.
+	 * @return {@code this}
+	 * @since 5.8
+	 * @see org.eclipse.jgit.lib.IndexDiff#setWriteFileSystemMonitorState(boolean)
+	 */
+	public StatusCommand setWriteFileSystemMonitorState(boolean write) {
+		writeFileSystemMonitorState = write;
+		return this;
+	}
+
 	/**
 	 * Show only the status of files which match the given paths. The path must
 	 * either name a file or a directory exactly. All paths are always relative
@@ -116,6 +137,7 @@ public Status call() throws GitAPIException, NoWorkTreeException {
 			IndexDiff diff = new IndexDiff(repo, Constants.HEAD, workingTreeIt);
 			if (ignoreSubmoduleMode != null)
 				diff.setIgnoreSubmoduleMode(ignoreSubmoduleMode);
+			diff.setWriteFileSystemMonitorState(writeFileSystemMonitorState);
 			if (paths != null)
 				diff.setFilter(PathFilterGroup.createFromStrings(paths));
 			if (progressMonitor == null)
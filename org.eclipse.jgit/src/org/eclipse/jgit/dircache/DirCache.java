@@ -16,6 +16,10 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -25,10 +29,13 @@
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.text.ParseException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -37,11 +44,15 @@
 import org.eclipse.jgit.errors.UnmergedPathException;
 import org.eclipse.jgit.events.IndexChangedEvent;
 import org.eclipse.jgit.events.IndexChangedListener;
+import org.eclipse.jgit.fsmonitor.FileSystemMonitor;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.file.FileSnapshot;
 import org.eclipse.jgit.internal.storage.file.LockFile;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.ObjectReader;
@@ -51,11 +62,19 @@
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.GitDateParser;
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.MutableInteger;
 import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.SystemReader;
 import org.eclipse.jgit.util.TemporaryBuffer;
 import org.eclipse.jgit.util.io.SilentFileInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
 
 /**
  * Support for the Git dircache (aka index file).
@@ -71,10 +90,18 @@
  * resolutions to be easily performed.
  */
 public class DirCache {
+	private static final Logger LOG = LoggerFactory.getLogger(DirCache.class);
+
 	private static final byte[] SIG_DIRC = { 'D', 'I', 'R', 'C' };
 
 	private static final int EXT_TREE = 0x54524545 /* 'TREE' */;
 
+	private static final int EXT_UNTR = 0x554e5452 /* 'UNTR' */;
+
+	private static final int EXT_LINK = 0x6c696e6b /* 'link' */;
+
+	private static final int EXT_FSMN = 0x46534d4e /* 'FSMN' */;
+
 	private static final DirCacheEntry[] NO_ENTRIES = {};
 
 	private static final byte[] NO_CHECKSUM = {};
@@ -159,6 +186,7 @@ public static DirCache read(Repository repository)
 			throws CorruptObjectException, IOException {
 		final DirCache c = read(repository.getIndexFile(), repository.getFS());
 		c.repository = repository;
+		c.refreshFileSystemMonitor();
 		return c;
 	}
 
@@ -255,6 +283,7 @@ public static DirCache lock(final Repository repository,
 		DirCache c = lock(repository.getIndexFile(), repository.getFS(),
 				indexChangedListener);
 		c.repository = repository;
+		c.refreshFileSystemMonitor();
 		return c;
 	}
 
@@ -303,6 +332,24 @@ public static DirCache lock(final File indexLocation, final FS fs,
 	/** Cache tree for this index; null if the cache tree is not available. */
 	private DirCacheTree tree;
 
+	/** Untracked cache of this index; null if not available. */
+	private UntrackedCache untrackedCache;
+
+	/** Shared index of this index; null if it is not split. */
+	private SplitIndex splitIndex;
+
+	/** Token of the file system monitor; null if not monitored. */
+	private String fsmonitorToken;
+
+	/** Entries not known to be unchanged when the token was obtained. */
+	private EWAHCompressedBitmap fsmonitorDirty;
+
+	/** Number of entries known to be unchanged when the index was read. */
+	private int fsmonitorValid;
+
+	/** Whether the file system monitor was queried for this instance. */
+	private boolean fsmonitorQueried;
+
 	/** Our active lock (if we hold it); null if we don't have it locked. */
 	private LockFile myLock;
 
@@ -365,6 +412,9 @@ public DirCacheEditor editor() {
 	}
 
 	void replace(DirCacheEntry[] e, int cnt) {
+		if (untrackedCache != null) {
+			untrackedCache.invalidate(sortedEntries, entryCnt, e, cnt);
+		}
 		sortedEntries = e;
 		entryCnt = cnt;
 		tree = null;
@@ -408,6 +458,9 @@ else if (snapshot == null || snapshot.isModified(liveFile)) {
 			}
 			snapshot = FileSnapshot.save(liveFile);
 		}
+		if (fsmonitorQueried) {
+			forgetFileSystemMonitorState();
+		}
 	}
 
 	/**
@@ -430,6 +483,11 @@ public void clear() {
 		sortedEntries = NO_ENTRIES;
 		entryCnt = 0;
 		tree = null;
+		untrackedCache = null;
+		splitIndex = null;
+		fsmonitorToken = null;
+		fsmonitorDirty = null;
+		fsmonitorValid = 0;
 		readIndexChecksum = NO_CHECKSUM;
 	}
 
@@ -466,9 +524,13 @@ else if (ver != 2)
 		sortedEntries = new DirCacheEntry[entryCnt];
 
 		final MutableInteger infoAt = new MutableInteger();
+		boolean stripped = false;
 		for (int i = 0; i < entryCnt; i++) {
 			sortedEntries[i] = new DirCacheEntry(infos, infoAt, in, md, smudge);
+			stripped |= sortedEntries[i].path.length == 0;
 		}
+		byte[] link = null;
+		byte[] fsmonitor = null;
 
 		// After the file entries are index extensions, and then a footer.
 		//
@@ -499,6 +561,39 @@ else if (ver != 2)
 				tree = new DirCacheTree(raw, new MutableInteger(), null);
 				break;
 			}
+			case EXT_UNTR: {
+				if (Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionIsTooLargeAt,
+							formatExtensionName(hdr), Long.valueOf(sz)));
+				}
+				final byte[] raw = new byte[(int) sz];
+				IO.readFully(in, raw, 0, raw.length);
+				md.update(raw, 0, raw.length);
+				untrackedCache = UntrackedCache.read(raw, smudge);
+				break;
+			}
+			case EXT_LINK: {
+				if (sz < Constants.OBJECT_ID_LENGTH || Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(
+							JGitText.get().DIRCCorruptLinkExtension);
+				}
+				link = new byte[(int) sz];
+				IO.readFully(in, link, 0, link.length);
+				md.update(link, 0, link.length);
+				break;
+			}
+			case EXT_FSMN: {
+				if (Integer.MAX_VALUE < sz) {
+					throw new CorruptObjectException(MessageFormat.format(
+							JGitText.get().DIRCExtensionIsTooLargeAt,
+							formatExtensionName(hdr), Long.valueOf(sz)));
+				}
+				fsmonitor = new byte[(int) sz];
+				IO.readFully(in, fsmonitor, 0, fsmonitor.length);
+				md.update(fsmonitor, 0, fsmonitor.length);
+				break;
+			}
 			default:
 				if (hdr[0] >= 'A' && hdr[0] <= 'Z') {
 					// The extension is optional and is here only as
@@ -522,6 +617,247 @@ else if (ver != 2)
 		if (!Arrays.equals(readIndexChecksum, hdr)) {
 			throw new CorruptObjectException(JGitText.get().DIRCChecksumMismatch);
 		}
+
+		ObjectId base = link != null ? ObjectId.fromRaw(link) : null;
+		if (base != null && !ObjectId.zeroId().equals(base)) {
+			try {
+				splitIndex = SplitIndex.read(liveFile.getParentFile(), base);
+				sortedEntries = splitIndex.merge(link, sortedEntries,
+						entryCnt, smudge);
+				entryCnt = sortedEntries.length;
+			} catch (IOException e) {
+				// Do not keep the entries of the index file alone.
+				clear();
+				throw e;
+			}
+		} else if (stripped) {
+			throw new CorruptObjectException(
+					JGitText.get().DIRCCorruptLinkExtension);
+		}
+		if (fsmonitor != null) {
+			readFileSystemMonitor(fsmonitor);
+		}
+	}
+
+	/**
+	 * Read the token and the dirty entries of the FSMN extension.
+	 * <p>
+	 * Version 1 holds the time of the last query in nanoseconds, version 2 a
+	 * token of the monitor. The bitmap indexes the entries of the complete
+	 * index, after a split index was merged. The extension is only a
+	 * performance optimization, so it is ignored if it cannot be parsed.
+	 *
+	 * @param raw
+	 *            the extension data.
+	 */
+	private void readFileSystemMonitor(byte[] raw) {
+		if (raw.length < 4) {
+			return;
+		}
+		int ptr;
+		String token;
+		int ver = NB.decodeInt32(raw, 0);
+		if (ver == 1 && raw.length >= 12) {
+			token = Long.toUnsignedString(NB.decodeInt64(raw, 4));
+			ptr = 12;
+		} else if (ver == 2) {
+			int end = 4;
+			while (end < raw.length && raw[end] != 0) {
+				end++;
+			}
+			if (end == raw.length) {
+				return;
+			}
+			token = RawParseUtils.decode(raw, 4, end);
+			ptr = end + 1;
+		} else {
+			return;
+		}
+		if (raw.length < ptr + 4) {
+			return;
+		}
+		long sz = NB.decodeUInt32(raw, ptr);
+		ptr += 4;
+		if (raw.length - ptr < sz) {
+			return;
+		}
+		EWAHCompressedBitmap dirty = new EWAHCompressedBitmap();
+		try {
+			dirty.deserialize(new DataInputStream(
+					new ByteArrayInputStream(raw, ptr, (int) sz)));
+		} catch (IOException | RuntimeException e) {
+			return;
+		}
+		if (dirty.sizeInBits() > entryCnt) {
+			return;
+		}
+		fsmonitorToken = token;
+		fsmonitorDirty = dirty;
+	}
+
+	/**
+	 * Ask the file system monitor of the repository which files changed, and
+	 * mark the entries of the others as unchanged.
+	 * <p>
+	 * An entry is unchanged if it was not dirty when the index was written
+	 * and the monitor reports no change to its path since the token of the
+	 * index. If the monitor fails, all entries are considered changed.
+	 * <p>
+	 * Queries may be costly, running a hook for example, so the monitor is
+	 * queried once per instance, when the index is first loaded.
+	 */
+	private void refreshFileSystemMonitor() {
+		fsmonitorQueried = true;
+		String token = fsmonitorToken;
+		EWAHCompressedBitmap dirty = fsmonitorDirty;
+		fsmonitorToken = null;
+		fsmonitorDirty = null;
+		fsmonitorValid = 0;
+
+		FileSystemMonitor.Changes changes = null;
+		try {
+			FileSystemMonitor monitor = FileSystemMonitor.get(repository);
+			if (monitor != null) {
+				changes = monitor.query(token);
+			}
+		} catch (IOException | RuntimeException e) {
+			// A broken monitor must not prevent reading the index.
+			LOG.warn(e.getMessage(), e);
+		}
+		fsmonitorToken = changes != null ? changes.getToken() : null;
+		boolean watched = fsmonitorToken != null;
+		for (int i = 0; i < entryCnt; i++) {
+			sortedEntries[i].setFileSystemMonitorWatched(watched);
+		}
+		if (changes == null || !watched) {
+			return;
+		}
+		Collection<String> paths = changes.getPaths();
+		if (token == null || paths == null) {
+			invalidate(0, entryCnt);
+			return;
+		}
+
+		if (dirty != null) {
+			for (int i = 0; i < entryCnt; i++) {
+				DirCacheEntry e = sortedEntries[i];
+				e.setFileSystemMonitorValid(
+						!FileMode.GITLINK.equals(e.getRawMode()));
+			}
+			IntIterator it = dirty.intIterator();
+			while (it.hasNext()) {
+				sortedEntries[it.next()].setFileSystemMonitorValid(false);
+			}
+		}
+		for (String path : paths) {
+			byte[] p = Constants.encode(path);
+			int len = p.length;
+			if (len > 0 && p[len - 1] == '/') {
+				len--;
+			}
+			int i = findEntry(p, len);
+			if (i >= 0) {
+				invalidate(i, nextEntry(i));
+			}
+			// Entries below the path, if it is a directory.
+			byte[] dir = Arrays.copyOf(p, len + 1);
+			dir[len] = '/';
+			i = findEntry(dir, dir.length);
+			i = i < 0 ? -(i + 1) : i;
+			invalidate(i, nextEntry(dir, dir.length, i));
+		}
+		fsmonitorValid = countFileSystemMonitorValid();
+	}
+
+	/**
+	 * Consider all entries changed when the index is read again.
+	 * <p>
+	 * Files may have changed since the monitor was queried. Rather than
+	 * querying it again, entries are compared with their files until they
+	 * are marked unchanged again. Entries marked after the token was obtained
+	 * can be written with it, as the monitor reports any later change.
+	 */
+	private void forgetFileSystemMonitorState() {
+		fsmonitorDirty = null;
+		boolean watched = fsmonitorToken != null;
+		for (int i = 0; i < entryCnt; i++) {
+			DirCacheEntry e = sortedEntries[i];
+			e.setFileSystemMonitorWatched(watched);
+			e.setFileSystemMonitorValid(false);
+		}
+		fsmonitorValid = 0;
+	}
+
+	private void invalidate(int start, int end) {
+		for (int i = start; i < end; i++) {
+			sortedEntries[i].setFileSystemMonitorValid(false);
+		}
+	}
+
+	private int countFileSystemMonitorValid() {
+		int n = 0;
+		for (int i = 0; i < entryCnt; i++) {
+			if (sortedEntries[i].isFileSystemMonitorValid()) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Write the index if more entries are known to be unchanged than when it
+	 * was read.
+	 * <p>
+	 * Entries are marked unchanged when they are compared with their files,
+	 * for example by {@link org.eclipse.jgit.lib.IndexDiff}. Writing them
+	 * lets the next reader of the index skip these files, as long as the file
+	 * system monitor does not report them changed. The index is not written
+	 * if it is not monitored, if it cannot be locked, or if it changed since
+	 * it was read; failures to write it are ignored.
+	 * <p>
+	 * Reading commands such as {@link org.eclipse.jgit.api.StatusCommand} only
+	 * call this when asked to, as it takes the lock of the index.
+	 *
+	 * @return whether the index was written.
+	 * @since 5.8
+	 */
+	public boolean writeFileSystemMonitorState() {
+		if (fsmonitorToken == null || liveFile == null || myLock != null) {
+			return false;
+		}
+		int valid = countFileSystemMonitorValid();
+		if (valid <= fsmonitorValid || !writeIfUnchanged()) {
+			return false;
+		}
+		fsmonitorValid = valid;
+		return true;
+	}
+
+	// Write the index if it can be locked and did not change since it was
+	// read; for the caches of the index, which the next reader can do
+	// without.
+	private boolean writeIfUnchanged() {
+		try {
+			if (!lock()) {
+				return false;
+			}
+			try {
+				if (isOutdated()) {
+					return false;
+				}
+				write();
+				if (!commit()) {
+					return false;
+				}
+			} finally {
+				unlock();
+			}
+		} catch (IOException e) {
+			// Only an optimization; the next reader compares the files.
+			LOG.debug(e.getMessage(), e);
+			return false;
+		}
+		return true;
 	}
 
 	private void skipOptionalExtension(final InputStream in,
@@ -606,24 +942,6 @@ void writeTo(File dir, OutputStream os) throws IOException {
 		final MessageDigest foot = Constants.newMessageDigest();
 		final DigestOutputStream dos = new DigestOutputStream(os, foot);
 
-		boolean extended = false;
-		for (int i = 0; i < entryCnt; i++) {
-			if (sortedEntries[i].isExtended()) {
-				extended = true;
-				break;
-			}
-		}
-
-		// Write the header.
-		//
-		final byte[] tmp = new byte[128];
-		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
-		NB.encodeInt32(tmp, 4, extended ? 3 : 2);
-		NB.encodeInt32(tmp, 8, entryCnt);
-		dos.write(tmp, 0, 12);
-
-		// Write the individual file entries.
-
 		Instant smudge;
 		if (myLock != null) {
 			// For new files we need to smudge the index entry
@@ -645,12 +963,56 @@ void writeTo(File dir, OutputStream os) throws IOException {
 		if (repository != null && entryCnt > 0)
 			updateSmudgedEntries();
 
+		boolean extended = false;
 		for (int i = 0; i < entryCnt; i++) {
 			final DirCacheEntry e = sortedEntries[i];
 			if (e.mightBeRacilyClean(smudge)) {
 				e.smudgeRacilyClean();
 			}
-			e.write(dos);
+			extended |= e.isExtended();
+		}
+
+		// With a split index, only entries not in the shared index are
+		// written to the index file.
+		final SplitIndex.Delta delta = myLock != null ? prepareSplitIndex(dir)
+				: null;
+
+		// Write the header.
+		//
+		final byte[] tmp = new byte[128];
+		System.arraycopy(SIG_DIRC, 0, tmp, 0, SIG_DIRC.length);
+		NB.encodeInt32(tmp, 4, extended ? 3 : 2);
+		NB.encodeInt32(tmp, 8, delta != null ? delta.size() : entryCnt);
+		dos.write(tmp, 0, 12);
+
+		// Write the individual file entries.
+		//
+		if (delta != null) {
+			for (DirCacheEntry e : delta.replaced) {
+				e.writeWithoutPath(dos);
+			}
+			for (DirCacheEntry e : delta.added) {
+				e.write(dos);
+			}
+
+			@SuppressWarnings("resource") // Explicitly closed in try block, and
+											// destroyed in finally
+			TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
+			try {
+				splitIndex.writeLink(delta, bb);
+				bb.close();
+
+				NB.encodeInt32(tmp, 0, EXT_LINK);
+				NB.encodeInt32(tmp, 4, (int) bb.length());
+				dos.write(tmp, 0, 8);
+				bb.writeTo(dos, null);
+			} finally {
+				bb.destroy();
+			}
+		} else {
+			for (int i = 0; i < entryCnt; i++) {
+				sortedEntries[i].write(dos);
+			}
 		}
 
 		if (writeTree) {
@@ -669,11 +1031,141 @@ void writeTo(File dir, OutputStream os) throws IOException {
 				bb.destroy();
 			}
 		}
+
+		if (untrackedCache != null) {
+			@SuppressWarnings("resource") // Explicitly closed in try block, and
+											// destroyed in finally
+			TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
+			try {
+				untrackedCache.write(bb);
+				bb.close();
+
+				NB.encodeInt32(tmp, 0, EXT_UNTR);
+				NB.encodeInt32(tmp, 4, (int) bb.length());
+				dos.write(tmp, 0, 8);
+				bb.writeTo(dos, null);
+			} finally {
+				bb.destroy();
+			}
+		}
+
+		if (fsmonitorToken != null) {
+			@SuppressWarnings("resource") // Explicitly closed in try block, and
+											// destroyed in finally
+			TemporaryBuffer bb = new TemporaryBuffer.LocalFile(dir, 5 << 20);
+			try {
+				writeFileSystemMonitor(bb);
+				bb.close();
+
+				NB.encodeInt32(tmp, 0, EXT_FSMN);
+				NB.encodeInt32(tmp, 4, (int) bb.length());
+				dos.write(tmp, 0, 8);
+				bb.writeTo(dos, null);
+			} finally {
+				bb.destroy();
+			}
+		}
 		writeIndexChecksum = foot.digest();
 		os.write(writeIndexChecksum);
 		os.close();
 	}
 
+	/**
+	 * Write version 2 of the FSMN extension: the token of the monitor and the
+	 * entries not known to be unchanged.
+	 *
+	 * @param os
+	 *            stream to write the extension data to.
+	 * @throws IOException
+	 *             the stream failed.
+	 */
+	private void writeFileSystemMonitor(OutputStream os) throws IOException {
+		EWAHCompressedBitmap dirty = new EWAHCompressedBitmap();
+		for (int i = 0; i < entryCnt; i++) {
+			if (!sortedEntries[i].isFileSystemMonitorValid()) {
+				dirty.set(i);
+			}
+		}
+		byte[] hdr = new byte[4];
+		NB.encodeInt32(hdr, 0, 2);
+		os.write(hdr);
+		os.write(Constants.encode(fsmonitorToken));
+		os.write(0);
+
+		ByteArrayOutputStream bitmap = new ByteArrayOutputStream();
+		dirty.serialize(new DataOutputStream(bitmap));
+		NB.encodeInt32(hdr, 0, bitmap.size());
+		os.write(hdr);
+		bitmap.writeTo(os);
+	}
+
+	/**
+	 * Decide whether to write a split index, writing a new shared index if
+	 * needed.
+	 * <p>
+	 * {@code core.splitIndex} enables or disables split indexes; if it is not
+	 * set, an index that was read split stays split. A new shared index is
+	 * written when more than {@code splitIndex.maxPercentChange} percent of
+	 * the entries differ from the shared index.
+	 *
+	 * @param dir
+	 *            directory holding the index.
+	 * @return entries to write to the index file, or null to write a
+	 *         complete index file.
+	 * @throws IOException
+	 *             the shared index could not be written.
+	 */
+	private SplitIndex.Delta prepareSplitIndex(File dir) throws IOException {
+		Config cfg = repository != null ? repository.getConfig() : null;
+		if (cfg != null && cfg.getString(ConfigConstants.CONFIG_CORE_SECTION,
+				null, ConfigConstants.CONFIG_KEY_SPLIT_INDEX) != null) {
+			if (!cfg.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+					ConfigConstants.CONFIG_KEY_SPLIT_INDEX, false)) {
+				splitIndex = null;
+				return null;
+			}
+		} else if (splitIndex == null) {
+			return null;
+		}
+
+		int maxPercent = SplitIndex.DEFAULT_MAX_PERCENT_CHANGE;
+		String expire = SplitIndex.DEFAULT_SHARED_INDEX_EXPIRE;
+		if (cfg != null) {
+			maxPercent = cfg.getInt(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION,
+					ConfigConstants.CONFIG_KEY_MAX_PERCENT_CHANGE, maxPercent);
+			if (maxPercent < 0 || 100 < maxPercent) {
+				maxPercent = SplitIndex.DEFAULT_MAX_PERCENT_CHANGE;
+			}
+			String s = cfg.getString(ConfigConstants.CONFIG_SPLIT_INDEX_SECTION,
+					null, ConfigConstants.CONFIG_KEY_SHARED_INDEX_EXPIRE);
+			if (s != null) {
+				expire = s;
+			}
+		}
+
+		if (splitIndex != null && maxPercent > 0) {
+			SplitIndex.Delta delta = splitIndex.diff(sortedEntries, entryCnt);
+			if (maxPercent == 100
+					|| (long) delta.size() * 100 <= (long) maxPercent
+							* entryCnt) {
+				splitIndex.touch();
+				return delta;
+			}
+		}
+
+		splitIndex = SplitIndex.write(dir, sortedEntries, entryCnt);
+		try {
+			Date date = GitDateParser.parse(expire, null,
+					SystemReader.getInstance().getLocale());
+			if (!GitDateParser.NEVER.equals(date)) {
+				splitIndex.expire(date.toInstant());
+			}
+		} catch (ParseException e) {
+			// Keep the old shared indexes.
+		}
+		return new SplitIndex.Delta();
+	}
+
 	/**
 	 * Commit this change and release the lock.
 	 * <p>
@@ -903,6 +1395,54 @@ public DirCacheTree getCacheTree(boolean build) {
 		return tree;
 	}
 
+	/**
+	 * Get the untracked cache of this index.
+	 * <p>
+	 * The cache is read from the index file, if C Git wrote one.
+	 *
+	 * @return the untracked cache; null if the index has none.
+	 * @since 5.8
+	 */
+	public UntrackedCache getUntrackedCache() {
+		return untrackedCache;
+	}
+
+	void setUntrackedCache(UntrackedCache cache) {
+		untrackedCache = cache;
+	}
+
+	/**
+	 * Write the index with a new untracked cache, if the cache changed.
+	 * <p>
+	 * The index is not written if it cannot be locked, or if it changed since
+	 * it was read; failures to write it are ignored.
+	 *
+	 * @param cache
+	 *            the new untracked cache, as built by
+	 *            {@link org.eclipse.jgit.dircache.UntrackedCache.Builder}.
+	 * @return whether the index was written.
+	 * @since 5.8
+	 */
+	public boolean writeUntrackedCache(UntrackedCache cache) {
+		if (liveFile == null || myLock != null) {
+			return false;
+		}
+		UntrackedCache old = untrackedCache;
+		if (old != null
+				&& Arrays.equals(old.toByteArray(), cache.toByteArray())) {
+			return false;
+		}
+		untrackedCache = cache;
+		if (!writeIfUnchanged()) {
+			untrackedCache = old;
+			return false;
+		}
+		if (fsmonitorToken != null) {
+			fsmonitorValid = countFileSystemMonitorValid();
+		}
+		return true;
+	}
+
 	/**
 	 * Write all index trees to the object store, returning the root tree.
 	 *
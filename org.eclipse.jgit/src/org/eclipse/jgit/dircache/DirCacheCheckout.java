@@ -25,6 +25,7 @@
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -548,40 +549,14 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 			}
 			removed = filterOut(removed, nonDeleted);
 			nonDeleted = null;
-			Iterator<Map.Entry<String, CheckoutMetadata>> toUpdate = updated
-					.entrySet().iterator();
-			Map.Entry<String, CheckoutMetadata> e = null;
-			try {
-				while (toUpdate.hasNext()) {
-					e = toUpdate.next();
-					String path = e.getKey();
-					CheckoutMetadata meta = e.getValue();
-					DirCacheEntry entry = dc.getEntry(path);
-					if (FileMode.GITLINK.equals(entry.getRawMode())) {
-						checkoutGitlink(path, entry);
-					} else {
-						checkoutEntry(repo, entry, objectReader, false, meta);
-					}
-					e = null;
-
-					monitor.update(1);
-					if (monitor.isCancelled()) {
-						throw new CanceledException(MessageFormat.format(
-								JGitText.get().operationCanceled,
-								JGitText.get().checkingOutFiles));
-					}
-				}
-			} catch (Exception ex) {
-				// We didn't actually modify the current entry nor any that
-				// might follow.
-				if (e != null) {
-					toUpdate.remove();
-				}
-				while (toUpdate.hasNext()) {
-					e = toUpdate.next();
-					toUpdate.remove();
-				}
-				throw ex;
+			int workers = checkoutWorkers();
+			if (workers > 1 && updated.size() >= repo.getConfig().getInt(
+					ConfigConstants.CONFIG_CHECKOUT_SECTION,
+					ConfigConstants.CONFIG_KEY_THRESHOLD_FOR_PARALLELISM,
+					ParallelCheckout.DEFAULT_THRESHOLD)) {
+				checkoutUpdatedInParallel(objectReader, workers);
+			} else {
+				checkoutUpdated(objectReader);
 			}
 			for (String conflict : conflicts) {
 				// the conflicts are likely to have multiple entries in the
@@ -619,6 +594,105 @@ private boolean doCheckout() throws CorruptObjectException, IOException,
 		return toBeDeleted.isEmpty();
 	}
 
+	private void checkoutUpdated(ObjectReader objectReader)
+			throws IOException, CanceledException {
+		Iterator<Map.Entry<String, CheckoutMetadata>> toUpdate = updated
+				.entrySet().iterator();
+		Map.Entry<String, CheckoutMetadata> e = null;
+		try {
+			while (toUpdate.hasNext()) {
+				e = toUpdate.next();
+				String path = e.getKey();
+				CheckoutMetadata meta = e.getValue();
+				DirCacheEntry entry = dc.getEntry(path);
+				if (FileMode.GITLINK.equals(entry.getRawMode())) {
+					checkoutGitlink(path, entry);
+				} else {
+					checkoutEntry(repo, entry, objectReader, false, meta);
+				}
+				e = null;
+
+				monitor.update(1);
+				if (monitor.isCancelled()) {
+					throw new CanceledException(MessageFormat.format(
+							JGitText.get().operationCanceled,
+							JGitText.get().checkingOutFiles));
+				}
+			}
+		} catch (Exception ex) {
+			// We didn't actually modify the current entry nor any that
+			// might follow.
+			if (e != null) {
+				toUpdate.remove();
+			}
+			while (toUpdate.hasNext()) {
+				e = toUpdate.next();
+				toUpdate.remove();
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Check out the updated files on several threads.
+	 * <p>
+	 * Gitlinks are checked out first on the calling thread. If a file cannot
+	 * be written, or the checkout is cancelled, {@link #updated} is reduced to
+	 * the files written, like {@link #checkoutUpdated(ObjectReader)} does.
+	 *
+	 * @param objectReader
+	 *            reader to create the readers of the threads from.
+	 * @param workers
+	 *            number of threads.
+	 * @throws IOException
+	 *             a file could not be written.
+	 * @throws CanceledException
+	 *             the checkout was cancelled.
+	 */
+	private void checkoutUpdatedInParallel(ObjectReader objectReader,
+			int workers) throws IOException, CanceledException {
+		List<String> paths = new ArrayList<>(updated.keySet());
+		Collections.sort(paths);
+		List<ParallelCheckout.Item> items = new ArrayList<>(paths.size());
+		Set<String> written = new HashSet<>();
+		boolean ok = false;
+		try {
+			for (String path : paths) {
+				DirCacheEntry entry = dc.getEntry(path);
+				if (FileMode.GITLINK.equals(entry.getRawMode())) {
+					checkoutGitlink(path, entry);
+					written.add(path);
+					monitor.update(1);
+				} else {
+					items.add(new ParallelCheckout.Item(path, entry,
+							updated.get(path)));
+				}
+			}
+			new ParallelCheckout(repo, objectReader, workers).run(items,
+					monitor);
+			ok = true;
+		} finally {
+			if (!ok) {
+				for (ParallelCheckout.Item i : items) {
+					if (i.done) {
+						written.add(i.path);
+					}
+				}
+				updated.keySet().retainAll(written);
+			}
+		}
+	}
+
+	private int checkoutWorkers() {
+		int workers = repo.getConfig().getInt(
+				ConfigConstants.CONFIG_CHECKOUT_SECTION,
+				ConfigConstants.CONFIG_KEY_WORKERS, 1);
+		if (workers < 1) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		return workers;
+	}
+
 	private void checkoutGitlink(String path, DirCacheEntry entry)
 			throws IOException {
 		File gitlinkDir = new File(repo.getWorkTree(), path);
@@ -100,6 +100,18 @@ public class DirCacheEntry {
 	/** In-core flag signaling that the entry should be considered as modified. */
 	private static final int UPDATE_NEEDED = 0x1;
 
+	/**
+	 * In-core flag signaling that the file system monitor reported no change
+	 * to the file.
+	 */
+	private static final int FSMONITOR_VALID = 0x2;
+
+	/**
+	 * In-core flag signaling that the index of the entry is watched by a file
+	 * system monitor.
+	 */
+	private static final int FSMONITOR_WATCHED = 0x4;
+
 	/** (Possibly shared) header information storage. */
 	private final byte[] info;
 
@@ -162,8 +174,12 @@ public class DirCacheEntry {
 			md.update((byte) 0);
 		}
 
+		// Entries of a split index replacing those of its shared index
+		// have no path; DirCache checks that there is a shared index.
 		try {
-			checkPath(path);
+			if (pathLen > 0) {
+				checkPath(path);
+			}
 		} catch (InvalidPathException e) {
 			CorruptObjectException p =
 				new CorruptObjectException(e.getMessage());
@@ -183,7 +199,7 @@ public class DirCacheEntry {
 			md.update(nullpad, 0, padLen);
 		}
 
-		if (mightBeRacilyClean(smudge)) {
+		if (smudge != null && mightBeRacilyClean(smudge)) {
 			smudgeRacilyClean();
 		}
 	}
@@ -283,6 +299,68 @@ public DirCacheEntry(DirCacheEntry src) {
 		System.arraycopy(src.info, src.infoOffset, info, 0, INFO_LEN);
 	}
 
+	/**
+	 * Copy an entry, giving it a new path.
+	 * <p>
+	 * Unlike {@link #DirCacheEntry(DirCacheEntry)} this also copies the
+	 * extended flags.
+	 *
+	 * @param src
+	 *            entry to copy.
+	 * @param path
+	 *            path of the new entry, in the standard encoding.
+	 */
+	DirCacheEntry(DirCacheEntry src, byte[] path) {
+		final int len = src.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		this.path = path;
+		info = new byte[len];
+		infoOffset = 0;
+		System.arraycopy(src.info, src.infoOffset, info, 0, len);
+
+		int flags = NB.decodeUInt16(info, P_FLAGS) & ~NAME_MASK;
+		flags |= Math.min(path.length, NAME_MASK);
+		NB.encodeInt16(info, P_FLAGS, flags);
+	}
+
+	/**
+	 * Whether this entry stores the same data as another entry.
+	 *
+	 * @param other
+	 *            entry to compare with, having the same path.
+	 * @return true if both entries would be written the same way.
+	 */
+	boolean isSameInfo(DirCacheEntry other) {
+		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		if (len != (other.isExtended() ? INFO_LEN_EXTENDED : INFO_LEN)) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (info[infoOffset + i] != other.info[other.infoOffset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write this entry without its path, as a split index stores the entries
+	 * replacing those of its shared index.
+	 *
+	 * @param os
+	 *            stream to write to.
+	 * @throws IOException
+	 *             the entry could not be written.
+	 */
+	void writeWithoutPath(OutputStream os) throws IOException {
+		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
+		final byte[] buf = Arrays.copyOfRange(info, infoOffset,
+				infoOffset + len);
+		NB.encodeInt16(buf, P_FLAGS,
+				NB.decodeUInt16(buf, P_FLAGS) & ~NAME_MASK);
+		os.write(buf);
+		os.write(nullpad, 0, ((len + 8) & ~7) - len);
+	}
+
 	void write(OutputStream os) throws IOException {
 		final int len = isExtended() ? INFO_LEN_EXTENDED : INFO_LEN;
 		final int pathLen = path.length;
@@ -442,6 +520,48 @@ public void setUpdateNeeded(boolean updateNeeded) {
 			inCoreFlags &= (byte) ~UPDATE_NEEDED;
 	}
 
+	/**
+	 * Whether the file system monitor reported that the file did not change
+	 * since this entry was last written to the index.
+	 * <p>
+	 * The working tree file of such an entry does not need to be compared
+	 * with the entry. The flag is cleared when the object id or the mode of
+	 * the entry is changed.
+	 *
+	 * @return {@code true} if the file is known to match this entry
+	 * @see org.eclipse.jgit.fsmonitor.FileSystemMonitor
+	 * @since 5.8
+	 */
+	public boolean isFileSystemMonitorValid() {
+		return (inCoreFlags & FSMONITOR_VALID) != 0;
+	}
+
+	/**
+	 * Mark whether the working tree file is known to match this entry.
+	 * <p>
+	 * Set it after comparing the file with the entry: the file system
+	 * monitor reports later changes to the next reader of the index. Entries
+	 * of an index not watched by a file system monitor cannot be marked
+	 * valid, as nothing would tell when their file changes.
+	 *
+	 * @param valid
+	 *            {@code true} if the file matches this entry
+	 * @since 5.8
+	 */
+	public void setFileSystemMonitorValid(boolean valid) {
+		if (valid && (inCoreFlags & FSMONITOR_WATCHED) != 0)
+			inCoreFlags |= (byte) FSMONITOR_VALID;
+		else
+			inCoreFlags &= (byte) ~FSMONITOR_VALID;
+	}
+
+	void setFileSystemMonitorWatched(boolean watched) {
+		if (watched)
+			inCoreFlags |= (byte) FSMONITOR_WATCHED;
+		else
+			inCoreFlags &= (byte) ~(FSMONITOR_WATCHED | FSMONITOR_VALID);
+	}
+
 	/**
 	 * Get the stage of this entry.
 	 * <p>
@@ -519,10 +639,12 @@ public void setFileMode(FileMode mode) {
 					JGitText.get().invalidModeForPath, mode, getPathString()));
 		}
 		NB.encodeInt32(info, infoOffset + P_MODE, mode.getBits());
+		setFileSystemMonitorValid(false);
 	}
 
 	void setFileMode(int mode) {
 		NB.encodeInt32(info, infoOffset + P_MODE, mode);
+		setFileSystemMonitorValid(false);
 	}
 
 	/**
@@ -662,6 +784,7 @@ public ObjectId getObjectId() {
 	 */
 	public void setObjectId(AnyObjectId id) {
 		id.copyRawTo(idBuffer(), idOffset());
+		setFileSystemMonitorValid(false);
 	}
 
 	/**
@@ -676,6 +799,7 @@ public void setObjectId(AnyObjectId id) {
 	public void setObjectIdFromRaw(byte[] bs, int p) {
 		final int n = Constants.OBJECT_ID_LENGTH;
 		System.arraycopy(bs, p, idBuffer(), idOffset(), n);
+		setFileSystemMonitorValid(false);
 	}
 
 	/**
@@ -755,6 +879,7 @@ void copyMetaData(DirCacheEntry src, boolean keepStage) {
 			pStageShifted = newflags & SHIFTED_STAGE_MASK;
 		NB.encodeInt16(info, infoOffset + P_FLAGS, pStageShifted | pLen
 				| (newflags & ~NAME_MASK & ~SHIFTED_STAGE_MASK));
+		setFileSystemMonitorValid(false);
 	}
 
 	/**
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.dircache;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import org.eclipse.jgit.api.errors.CanceledException;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Writes files of a checkout to the working tree on several threads.
+ * <p>
+ * Files are split into batches of consecutive paths, keeping the files of a
+ * directory together where possible, so that threads rarely create or list
+ * the same directory. Each batch is written by a task with its own
+ * {@link ObjectReader}. A task only updates the {@link DirCacheEntry}s of its
+ * own files, so the index built by the checkout does not depend on the order
+ * in which the tasks run.
+ * <p>
+ * The progress monitor is only used by the calling thread, which waits for
+ * the tasks in path order.
+ */
+class ParallelCheckout {
+	/** Default minimum number of files for a checkout to use several threads. */
+	static final int DEFAULT_THRESHOLD = 100;
+
+	/** Largest number of files in a batch. */
+	private static final int MAX_BATCH = 256;
+
+	/** File to check out. */
+	static final class Item {
+		final String path;
+
+		final DirCacheEntry entry;
+
+		final CheckoutMetadata meta;
+
+		/** Whether the file was written. */
+		volatile boolean done;
+
+		Item(String path, DirCacheEntry entry, CheckoutMetadata meta) {
+			this.path = path;
+			this.entry = entry;
+			this.meta = meta;
+		}
+	}
+
+	private final Repository repo;
+
+	private final ObjectReader reader;
+
+	private final int workers;
+
+	/** Set to stop the tasks before their next file. */
+	private volatile boolean stop;
+
+	/**
+	 * Create a parallel checkout.
+	 *
+	 * @param repo
+	 *            repository whose working tree is written.
+	 * @param reader
+	 *            reader to create the readers of the tasks from.
+	 * @param workers
+	 *            number of threads.
+	 */
+	ParallelCheckout(Repository repo, ObjectReader reader, int workers) {
+		this.repo = repo;
+		this.reader = reader;
+		this.workers = workers;
+	}
+
+	/**
+	 * Write files to the working tree.
+	 * <p>
+	 * Returns or throws only once no task is running. If a file could not be
+	 * written, or the checkout was cancelled, the files written so far are
+	 * the items marked {@link Item#done}.
+	 *
+	 * @param items
+	 *            files to write, sorted by path.
+	 * @param monitor
+	 *            monitor updated with the number of files written.
+	 * @throws IOException
+	 *             a file could not be written. If several could not, the
+	 *             error of the first one in path order among them.
+	 * @throws CanceledException
+	 *             the monitor was cancelled.
+	 */
+	void run(List<Item> items, ProgressMonitor monitor)
+			throws IOException, CanceledException {
+		if (items.isEmpty()) {
+			return;
+		}
+		List<List<Item>> batches = split(items);
+		List<FutureTask<Void>> tasks = new ArrayList<>(batches.size());
+		for (List<Item> batch : batches) {
+			tasks.add(new FutureTask<>(() -> {
+				checkout(batch);
+				return null;
+			}));
+		}
+
+		ExecutorService pool = Executors
+				.newFixedThreadPool(Math.min(workers, tasks.size()));
+		Throwable failure = null;
+		boolean cancelled = false;
+		boolean interrupted = false;
+		try {
+			for (FutureTask<Void> t : tasks) {
+				pool.execute(t);
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					tasks.get(i).get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+					stop = true;
+				} catch (InterruptedException e) {
+					interrupted = true;
+					stop = true;
+					cancelled = true;
+					// Wait again; the tasks stop before their next file.
+					i--;
+					continue;
+				}
+				if (!stop) {
+					monitor.update(batches.get(i).size());
+					if (monitor.isCancelled()) {
+						stop = true;
+						cancelled = true;
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure.getMessage(), failure);
+		}
+		if (cancelled) {
+			throw new CanceledException(MessageFormat.format(
+					JGitText.get().operationCanceled,
+					JGitText.get().checkingOutFiles));
+		}
+	}
+
+	private void checkout(List<Item> batch) throws IOException {
+		try (ObjectReader or = reader.newReader()) {
+			for (Item i : batch) {
+				if (stop) {
+					return;
+				}
+				DirCacheCheckout.checkoutEntry(repo, i.entry, or, false,
+						i.meta);
+				i.done = true;
+			}
+		}
+	}
+
+	/**
+	 * Split the files into batches.
+	 * <p>
+	 * There are several batches per thread, so that threads finishing early
+	 * can take over the remaining work. A batch ends at a change of
+	 * directory once it has its target size, or at four times that size in
+	 * large directories.
+	 *
+	 * @param items
+	 *            files sorted by path.
+	 * @return batches of consecutive files.
+	 */
+	private List<List<Item>> split(List<Item> items) {
+		int target = Math.max(1, Math.min(MAX_BATCH,
+				(items.size() + workers * 4 - 1) / (workers * 4)));
+		List<List<Item>> batches = new ArrayList<>();
+		List<Item> batch = new ArrayList<>(target);
+		String dir = null;
+		for (Item i : items) {
+			String d = parent(i.path);
+			if (batch.size() >= 4 * target
+					|| (batch.size() >= target && !d.equals(dir))) {
+				batches.add(batch);
+				batch = new ArrayList<>(target);
+			}
+			batch.add(i);
+			dir = d;
+		}
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	private static String parent(String path) {
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? "" : path.substring(0, slash); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.dircache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.MutableInteger;
+import org.eclipse.jgit.util.NB;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+/**
+ * Shared index of a split index.
+ * <p>
+ * A split index keeps its entries in a shared index file,
+ * {@code sharedindex.<id>} next to the index, where {@code <id>} is the
+ * checksum of that file. The index file itself only holds the entries that
+ * were added or changed since the shared index was written, and a "link"
+ * extension naming the shared index and listing its entries that were
+ * deleted or replaced. Writing a small change to a large index then only
+ * writes and hashes the changed entries.
+ * <p>
+ * The entries of a shared index are kept as they are stored in its file, so
+ * that writing the index can tell which entries changed by comparing them.
+ */
+final class SplitIndex {
+	/** Prefix of the name of shared index files. */
+	static final String SHARED_INDEX_PREFIX = "sharedindex."; //$NON-NLS-1$
+
+	/** Default for {@code splitIndex.maxPercentChange}. */
+	static final int DEFAULT_MAX_PERCENT_CHANGE = 20;
+
+	/** Default for {@code splitIndex.sharedIndexExpire}. */
+	static final String DEFAULT_SHARED_INDEX_EXPIRE = "2.weeks.ago"; //$NON-NLS-1$
+
+	/** Entries of an index file that are not in its shared index. */
+	static final class Delta {
+		/** Entries of the shared index deleted from the index. */
+		final EWAHCompressedBitmap delete = new EWAHCompressedBitmap();
+
+		/** Entries of the shared index replaced by {@link #replaced}. */
+		final EWAHCompressedBitmap replace = new EWAHCompressedBitmap();
+
+		/** New data of the entries set in {@link #replace}, in order. */
+		final List<DirCacheEntry> replaced = new ArrayList<>();
+
+		/** Entries not in the shared index, sorted. */
+		final List<DirCacheEntry> added = new ArrayList<>();
+
+		/**
+		 * Get the number of entries stored in the index file.
+		 *
+		 * @return number of replaced and added entries.
+		 */
+		int size() {
+			return replaced.size() + added.size();
+		}
+	}
+
+	/** Id of the shared index, the checksum of its file. */
+	final ObjectId id;
+
+	/** Entries of the shared index, sorted. */
+	final DirCacheEntry[] entries;
+
+	private final File file;
+
+	private SplitIndex(ObjectId id, DirCacheEntry[] entries, File file) {
+		this.id = id;
+		this.entries = entries;
+		this.file = file;
+	}
+
+	/**
+	 * Read a shared index.
+	 *
+	 * @param dir
+	 *            directory holding the index.
+	 * @param id
+	 *            id of the shared index, from the link extension.
+	 * @return the shared index.
+	 * @throws IOException
+	 *             the shared index cannot be read or is corrupt.
+	 */
+	static SplitIndex read(File dir, ObjectId id) throws IOException {
+		File file = new File(dir, SHARED_INDEX_PREFIX + id.name());
+		try (InputStream in = new BufferedInputStream(
+				new FileInputStream(file))) {
+			MessageDigest md = Constants.newMessageDigest();
+			byte[] hdr = new byte[20];
+			IO.readFully(in, hdr, 0, 12);
+			md.update(hdr, 0, 12);
+			if (hdr[0] != 'D' || hdr[1] != 'I' || hdr[2] != 'R'
+					|| hdr[3] != 'C') {
+				throw new CorruptObjectException(JGitText.get().notADIRCFile);
+			}
+			int ver = NB.decodeInt32(hdr, 4);
+			if (ver != 2 && ver != 3) {
+				throw new CorruptObjectException(MessageFormat.format(
+						JGitText.get().unknownDIRCVersion,
+						Integer.valueOf(ver)));
+			}
+			int cnt = NB.decodeInt32(hdr, 8);
+			if (cnt < 0) {
+				throw new CorruptObjectException(
+						JGitText.get().DIRCHasTooManyEntries);
+			}
+
+			byte[] infos = new byte[DirCacheEntry
+					.getMaximumInfoLength(ver == 3) * cnt];
+			DirCacheEntry[] entries = new DirCacheEntry[cnt];
+			MutableInteger infoAt = new MutableInteger();
+			for (int i = 0; i < cnt; i++) {
+				entries[i] = new DirCacheEntry(infos, infoAt, in, md, null);
+				if (entries[i].path.length == 0) {
+					throw new CorruptObjectException(
+							JGitText.get().DIRCCorruptLinkExtension);
+				}
+			}
+
+			// Shared indexes are written without extensions.
+			IO.readFully(in, hdr, 0, 20);
+			if (in.read() >= 0 || !Arrays.equals(md.digest(), hdr)
+					|| !id.equals(ObjectId.fromRaw(hdr))) {
+				throw new CorruptObjectException(
+						JGitText.get().DIRCChecksumMismatch);
+			}
+			return new SplitIndex(id, entries, file);
+		}
+	}
+
+	/**
+	 * Write the entries of an index as a new shared index.
+	 *
+	 * @param dir
+	 *            directory holding the index.
+	 * @param entries
+	 *            entries of the index, sorted.
+	 * @param cnt
+	 *            number of entries.
+	 * @return the shared index, holding copies of the entries.
+	 * @throws IOException
+	 *             the shared index could not be written.
+	 */
+	static SplitIndex write(File dir, DirCacheEntry[] entries, int cnt)
+			throws IOException {
+		boolean extended = false;
+		DirCacheEntry[] copies = new DirCacheEntry[cnt];
+		for (int i = 0; i < cnt; i++) {
+			copies[i] = new DirCacheEntry(entries[i], entries[i].path);
+			extended |= copies[i].isExtended();
+		}
+
+		File tmp = File.createTempFile("sharedindex_", null, dir); //$NON-NLS-1$
+		try {
+			MessageDigest md = Constants.newMessageDigest();
+			byte[] sum;
+			try (OutputStream os = new BufferedOutputStream(
+					new FileOutputStream(tmp))) {
+				DigestOutputStream dos = new DigestOutputStream(os, md);
+				byte[] hdr = { 'D', 'I', 'R', 'C', 0, 0, 0, 0, 0, 0, 0, 0 };
+				NB.encodeInt32(hdr, 4, extended ? 3 : 2);
+				NB.encodeInt32(hdr, 8, cnt);
+				dos.write(hdr);
+				for (DirCacheEntry e : copies) {
+					e.write(dos);
+				}
+				sum = md.digest();
+				os.write(sum);
+			}
+			ObjectId id = ObjectId.fromRaw(sum);
+			File file = new File(dir, SHARED_INDEX_PREFIX + id.name());
+			FileUtils.rename(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+			return new SplitIndex(id, copies, file);
+		} finally {
+			FileUtils.delete(tmp, FileUtils.SKIP_MISSING);
+		}
+	}
+
+	/**
+	 * Merge the entries of an index file with its shared index.
+	 *
+	 * @param link
+	 *            content of the link extension of the index file.
+	 * @param split
+	 *            entries of the index file.
+	 * @param cnt
+	 *            number of entries of the index file.
+	 * @param smudge
+	 *            last modified time of the index file, to smudge entries
+	 *            which might be racily clean.
+	 * @return the entries of the index.
+	 * @throws CorruptObjectException
+	 *             the link extension does not match the entries.
+	 */
+	DirCacheEntry[] merge(byte[] link, DirCacheEntry[] split, int cnt,
+			Instant smudge) throws CorruptObjectException {
+		EWAHCompressedBitmap delete = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap replace = new EWAHCompressedBitmap();
+		if (link.length > Constants.OBJECT_ID_LENGTH) {
+			ByteArrayInputStream in = new ByteArrayInputStream(link,
+					Constants.OBJECT_ID_LENGTH,
+					link.length - Constants.OBJECT_ID_LENGTH);
+			try {
+				DataInputStream data = new DataInputStream(in);
+				delete.deserialize(data);
+				replace.deserialize(data);
+			} catch (IOException | RuntimeException e) {
+				throw corrupt(e);
+			}
+			if (in.available() != 0) {
+				throw corrupt(null);
+			}
+		}
+
+		DirCacheEntry[] merged = new DirCacheEntry[entries.length];
+		int n = 0;
+		int r = 0;
+		IntIterator del = delete.intIterator();
+		IntIterator rep = replace.intIterator();
+		int nextDel = del.hasNext() ? del.next() : -1;
+		int nextRep = rep.hasNext() ? rep.next() : -1;
+		for (int i = 0; i < entries.length; i++) {
+			DirCacheEntry e;
+			if (i == nextRep) {
+				if (r >= cnt || split[r].path.length != 0) {
+					throw corrupt(null);
+				}
+				e = new DirCacheEntry(split[r++], entries[i].path);
+				nextRep = rep.hasNext() ? rep.next() : -1;
+			} else {
+				e = new DirCacheEntry(entries[i], entries[i].path);
+			}
+			if (i == nextDel) {
+				nextDel = del.hasNext() ? del.next() : -1;
+				continue;
+			}
+			if (e.mightBeRacilyClean(smudge)) {
+				e.smudgeRacilyClean();
+			}
+			merged[n++] = e;
+		}
+		if (nextDel >= 0 || nextRep >= 0) {
+			throw corrupt(null);
+		}
+
+		// The remaining entries of the index file are added, and are
+		// sorted like the shared index.
+		DirCacheEntry[] all = new DirCacheEntry[n + cnt - r];
+		int m = 0;
+		int a = r;
+		for (int i = 0; i < n || a < cnt;) {
+			if (a < cnt && split[a].path.length == 0) {
+				throw corrupt(null);
+			}
+			int c = i == n ? 1
+					: a == cnt ? -1 : DirCache.ENT_CMP.compare(merged[i],
+							split[a]);
+			if (c < 0) {
+				all[m++] = merged[i++];
+			} else {
+				if (c == 0) {
+					i++;
+				}
+				all[m++] = split[a++];
+			}
+		}
+		return m == all.length ? all : Arrays.copyOf(all, m);
+	}
+
+	/**
+	 * Compare the entries of an index with this shared index.
+	 *
+	 * @param sorted
+	 *            entries of the index, sorted.
+	 * @param cnt
+	 *            number of entries.
+	 * @return the entries to store in the index file.
+	 */
+	Delta diff(DirCacheEntry[] sorted, int cnt) {
+		Delta d = new Delta();
+		int b = 0;
+		int i = 0;
+		while (b < entries.length || i < cnt) {
+			int c = b == entries.length ? 1
+					: i == cnt ? -1
+							: DirCache.ENT_CMP.compare(entries[b], sorted[i]);
+			if (c < 0) {
+				d.delete.set(b++);
+			} else if (c > 0) {
+				d.added.add(sorted[i++]);
+			} else {
+				if (!entries[b].isSameInfo(sorted[i])) {
+					d.replace.set(b);
+					d.replaced.add(sorted[i]);
+				}
+				b++;
+				i++;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Write the link extension of an index file.
+	 *
+	 * @param d
+	 *            entries stored in the index file.
+	 * @param os
+	 *            stream to write the extension content to.
+	 * @throws IOException
+	 *             the extension could not be written.
+	 */
+	void writeLink(Delta d, OutputStream os) throws IOException {
+		id.copyRawTo(os);
+		DataOutputStream data = new DataOutputStream(os);
+		d.delete.serialize(data);
+		d.replace.serialize(data);
+		data.flush();
+	}
+
+	/**
+	 * Mark the shared index as used, so that it does not expire.
+	 *
+	 * @throws IOException
+	 *             the modification time of the file cannot be set.
+	 */
+	void touch() throws IOException {
+		Files.setLastModifiedTime(file.toPath(), FileTime.from(Instant.now()));
+	}
+
+	/**
+	 * Delete the shared indexes other than this one that were not used since
+	 * a given time.
+	 *
+	 * @param expire
+	 *            shared indexes last modified before this time are deleted.
+	 */
+	void expire(Instant expire) {
+		File[] files = file.getParentFile().listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			String name = f.getName();
+			if (name.startsWith(SHARED_INDEX_PREFIX)
+					&& name.length() == SHARED_INDEX_PREFIX.length()
+							+ Constants.OBJECT_ID_STRING_LENGTH
+					&& !f.equals(file)
+					&& f.lastModified() < expire.toEpochMilli()) {
+				try {
+					FileUtils.delete(f, FileUtils.SKIP_MISSING);
+				} catch (IOException e) {
+					// Another shared index is deleted next time.
+				}
+			}
+		}
+	}
+
+	private static CorruptObjectException corrupt(Exception cause) {
+		CorruptObjectException e = new CorruptObjectException(
+				JGitText.get().DIRCCorruptLinkExtension);
+		if (cause != null) {
+			e.initCause(cause);
+		}
+		return e;
+	}
+}
@@ -0,0 +1,1000 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.dircache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.eclipse.jgit.util.StringUtils;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IntIterator;
+
+/**
+ * Untracked cache of an index, the 'UNTR' extension written by C Git.
+ * <p>
+ * For each directory of the working tree the cache records the untracked
+ * files and directories that are not ignored, together with the stat data of
+ * the directory and the id of its {@code .gitignore} when it was listed. As
+ * long as none of these changed, and neither did the global ignore files, the
+ * untracked files of the directory are the ones in the cache, without
+ * evaluating the ignore rules again.
+ * <p>
+ * {@link org.eclipse.jgit.lib.IndexDiff} uses the cache to skip the
+ * evaluation of ignore rules in directories that did not change. If
+ * {@code core.untrackedCache} is true it also fills the cache while walking
+ * the whole working tree (see {@link Builder}) and writes it to the index
+ * when it changed, as C Git's status does. Directories in which the index
+ * gains or loses a path are invalidated, as C Git does.
+ * <p>
+ * Directories are still listed, since the files in the index must be
+ * compared with the working tree and {@link org.eclipse.jgit.lib.IndexDiff}
+ * also reports the ignored files, which the cache does not record.
+ *
+ * @since 5.8
+ */
+public class UntrackedCache {
+	/** Length of the stat data of a file in the cache. */
+	private static final int STAT_LEN = 36;
+
+	/** Offset of the change time in stat data. */
+	private static final int STAT_CTIME = 0;
+
+	/** Offset of the modification time in stat data. */
+	private static final int STAT_MTIME = 8;
+
+	/** Offset of the device, followed by inode, uid and gid, in stat data. */
+	private static final int STAT_DEV = 16;
+
+	/** Offset of the size in stat data. */
+	private static final int STAT_SIZE = 32;
+
+	/**
+	 * Flags of the walk C Git's status fills the cache with: untracked
+	 * directories are shown as a whole, unless they only hold ignored files.
+	 */
+	private static final int DIR_FLAGS = 6;
+
+	private final byte[] ident;
+
+	private final byte[] infoExcludeStat;
+
+	private final byte[] excludesFileStat;
+
+	private final int dirFlags;
+
+	private final ObjectId infoExcludeId;
+
+	private final ObjectId excludesFileId;
+
+	private final byte[] excludePerDir;
+
+	/** Top level directory; null if the cache is empty. */
+	final Directory root;
+
+	UntrackedCache(byte[] ident, byte[] infoExcludeStat,
+			byte[] excludesFileStat, int dirFlags, ObjectId infoExcludeId,
+			ObjectId excludesFileId, byte[] excludePerDir, Directory root) {
+		this.ident = ident;
+		this.infoExcludeStat = infoExcludeStat;
+		this.excludesFileStat = excludesFileStat;
+		this.dirFlags = dirFlags;
+		this.infoExcludeId = infoExcludeId;
+		this.excludesFileId = excludesFileId;
+		this.excludePerDir = excludePerDir;
+		this.root = root;
+	}
+
+	/**
+	 * Get the cache of the top level directory, if the cache can be used for
+	 * the working tree of a repository.
+	 * <p>
+	 * The cache can be used if it was written for the same working tree on
+	 * the same kind of system, and the global ignore files, the one named by
+	 * {@code core.excludesFile} and {@code info/exclude}, did not change.
+	 *
+	 * @param repository
+	 *            repository whose working tree is walked.
+	 * @return the top level directory; null if the cache cannot be used.
+	 * @throws java.io.IOException
+	 *             a global ignore file cannot be read.
+	 */
+	@Nullable
+	public Directory getRoot(Repository repository) throws IOException {
+		if (root == null || repository.isBare()
+				|| !Arrays.equals(excludePerDir,
+						Constants.encode(Constants.DOT_GIT_IGNORE))
+				|| !Arrays.equals(ident, ident(repository))) {
+			return null;
+		}
+		if (!isIdOf(infoExcludeId, infoExcludeFile(repository))
+				|| !isIdOf(excludesFileId, excludesFile(repository))) {
+			return null;
+		}
+		return root;
+	}
+
+	private static File infoExcludeFile(Repository repository) {
+		return repository.getFS().resolve(repository.getDirectory(),
+				Constants.INFO_EXCLUDE);
+	}
+
+	@Nullable
+	private static File excludesFile(Repository repository) {
+		FS fs = repository.getFS();
+		String path = repository.getConfig().get(CoreConfig.KEY)
+				.getExcludesFile();
+		if (path == null) {
+			return null;
+		} else if (path.startsWith("~/")) { //$NON-NLS-1$
+			return fs.resolve(fs.userHome(), path.substring(2));
+		}
+		return fs.resolve(null, path);
+	}
+
+	/**
+	 * Whether the cache may be used according to the configuration.
+	 * <p>
+	 * Like C Git, JGit uses an existing cache unless
+	 * {@code core.untrackedCache} is false.
+	 *
+	 * @param repository
+	 *            the repository.
+	 * @return whether the cache of the index may be used.
+	 */
+	public static boolean isEnabled(Repository repository) {
+		String value = repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE);
+		return value == null
+				|| !Boolean.FALSE.equals(StringUtils.toBooleanOrNull(value));
+	}
+
+	/**
+	 * Whether the cache should be filled and written according to the
+	 * configuration.
+	 * <p>
+	 * Like C Git, JGit only adds a cache to the index if
+	 * {@code core.untrackedCache} is true.
+	 *
+	 * @param repository
+	 *            the repository.
+	 * @return whether a walk of the working tree should update the cache.
+	 */
+	public static boolean isUpdateEnabled(Repository repository) {
+		return Boolean.TRUE.equals(StringUtils.toBooleanOrNull(
+				repository.getConfig().getString(
+						ConfigConstants.CONFIG_CORE_SECTION, null,
+						ConfigConstants.CONFIG_KEY_UNTRACKED_CACHE)));
+	}
+
+	/**
+	 * Identify the working tree and system the cache is written for, as C Git
+	 * does.
+	 *
+	 * @param repository
+	 *            the repository.
+	 * @return the identification, including its terminating NUL.
+	 * @throws IOException
+	 *             the working tree cannot be resolved.
+	 */
+	static byte[] ident(Repository repository) throws IOException {
+		String system = System.getProperty("os.name", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		if (system.startsWith("Mac")) { //$NON-NLS-1$
+			system = "Darwin"; //$NON-NLS-1$
+		} else if (system.startsWith("Windows")) { //$NON-NLS-1$
+			system = "Windows"; //$NON-NLS-1$
+		}
+		return Constants.encode("Location " //$NON-NLS-1$
+				+ repository.getWorkTree().getCanonicalPath() + ", system " //$NON-NLS-1$
+				+ system + '\0');
+	}
+
+	private static boolean isIdOf(ObjectId id, @Nullable File file)
+			throws IOException {
+		if (file == null || !file.isFile()) {
+			return id.equals(ObjectId.zeroId());
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			return isIdOf(id, in, file.length());
+		}
+	}
+
+	/**
+	 * Whether an id is the one C Git records for an ignore file.
+	 * <p>
+	 * That is the id of the index entry of the file if it is tracked and
+	 * unmodified, and otherwise the id of its content with an extra LF, or of
+	 * the empty blob if it is empty.
+	 *
+	 * @param id
+	 *            the recorded id.
+	 * @param in
+	 *            content of the ignore file.
+	 * @param length
+	 *            length of the ignore file.
+	 * @return whether the id matches the content.
+	 * @throws IOException
+	 *             the content cannot be read.
+	 */
+	static boolean isIdOf(ObjectId id, InputStream in, long length)
+			throws IOException {
+		ByteBuffer buf = IO.readWholeStream(in, (int) length + 1);
+		int len = buf.limit();
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			if (id.equals(
+					fmt.idFor(Constants.OBJ_BLOB, buf.array(), 0, len))) {
+				return true;
+			}
+			if (len == 0) {
+				return false;
+			}
+			byte[] lf = Arrays.copyOf(buf.array(), len + 1);
+			lf[len] = '\n';
+			return id.equals(fmt.idFor(Constants.OBJ_BLOB, lf, 0, len + 1));
+		}
+	}
+
+	/**
+	 * Invalidate the directories whose untracked files change because paths
+	 * were added to or removed from the index.
+	 *
+	 * @param oldEntries
+	 *            entries of the index before the change, sorted.
+	 * @param oldCnt
+	 *            number of old entries.
+	 * @param newEntries
+	 *            entries of the index after the change, sorted.
+	 * @param newCnt
+	 *            number of new entries.
+	 */
+	void invalidate(DirCacheEntry[] oldEntries, int oldCnt,
+			DirCacheEntry[] newEntries, int newCnt) {
+		if (root == null) {
+			return;
+		}
+		int o = 0;
+		int n = 0;
+		while (o < oldCnt || n < newCnt) {
+			int cmp;
+			if (o == oldCnt) {
+				cmp = 1;
+			} else if (n == newCnt) {
+				cmp = -1;
+			} else {
+				cmp = DirCache.cmp(oldEntries[o], newEntries[n]);
+			}
+			byte[] path = cmp <= 0 ? oldEntries[o].path : newEntries[n].path;
+			if (cmp != 0) {
+				invalidate(path);
+			}
+			// Skip the other stages of the path.
+			while (o < oldCnt && Arrays.equals(oldEntries[o].path, path)) {
+				o++;
+			}
+			while (n < newCnt && Arrays.equals(newEntries[n].path, path)) {
+				n++;
+			}
+		}
+	}
+
+	// Invalidate the directories from the top level down to the one holding
+	// the path.
+	private void invalidate(byte[] path) {
+		Directory d = root;
+		int start = 0;
+		while (d != null) {
+			d.invalidate();
+			int slash = RawParseUtils.next(path, start, '/');
+			if (slash > path.length || path[slash - 1] != '/') {
+				return;
+			}
+			d = d.getSubdirectory(path, start, slash - 1);
+			start = slash;
+		}
+	}
+
+	/**
+	 * Parse the cache.
+	 *
+	 * @param raw
+	 *            content of the extension.
+	 * @param indexModified
+	 *            modification time of the index.
+	 * @return the cache; null if the extension is malformed, in which case,
+	 *         like C Git, the index is used without it.
+	 */
+	@Nullable
+	static UntrackedCache read(byte[] raw, Instant indexModified) {
+		try {
+			return parse(raw, indexModified);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static UntrackedCache parse(byte[] raw, Instant indexModified)
+			throws IOException {
+		int end = raw.length - 1;
+		if (end < 0 || raw[end] != 0) {
+			return null;
+		}
+		int[] ptr = { 0 };
+		int identLen = (int) decodeVarint(raw, ptr);
+		byte[] ident = Arrays.copyOfRange(raw, ptr[0], ptr[0] + identLen);
+		int p = ptr[0] + identLen;
+		byte[] infoExcludeStat = Arrays.copyOfRange(raw, p, p + STAT_LEN);
+		p += STAT_LEN;
+		byte[] excludesFileStat = Arrays.copyOfRange(raw, p, p + STAT_LEN);
+		p += STAT_LEN;
+		int dirFlags = NB.decodeInt32(raw, p);
+		p += 4;
+		ObjectId infoExcludeId = ObjectId.fromRaw(raw, p);
+		p += Constants.OBJECT_ID_LENGTH;
+		ObjectId excludesFileId = ObjectId.fromRaw(raw, p);
+		p += Constants.OBJECT_ID_LENGTH;
+		int nul = RawParseUtils.next(raw, p, '\0');
+		byte[] excludePerDir = Arrays.copyOfRange(raw, p, nul - 1);
+		p = nul;
+
+		Directory root = null;
+		int count = 0;
+		if (p < end) {
+			ptr[0] = p;
+			count = (int) decodeVarint(raw, ptr);
+			p = ptr[0];
+		}
+		if (count > 0) {
+			List<Directory> dirs = new ArrayList<>(count);
+			ptr[0] = p;
+			root = readDirectory(raw, ptr, end, indexModified, dirs);
+			if (dirs.size() != count) {
+				return null;
+			}
+			ByteArrayInputStream in = new ByteArrayInputStream(raw, ptr[0],
+					end - ptr[0]);
+			DataInputStream data = new DataInputStream(in);
+			EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+			valid.deserialize(data);
+			EWAHCompressedBitmap checkOnly = new EWAHCompressedBitmap();
+			checkOnly.deserialize(data);
+			EWAHCompressedBitmap excludeValid = new EWAHCompressedBitmap();
+			excludeValid.deserialize(data);
+			p = end - in.available();
+
+			for (IntIterator i = checkOnly.intIterator(); i.hasNext();) {
+				dirs.get(i.next()).checkOnly = true;
+			}
+			for (IntIterator i = valid.intIterator(); i.hasNext();) {
+				Directory d = dirs.get(i.next());
+				d.valid = true;
+				d.stat = Arrays.copyOfRange(raw, p, p + STAT_LEN);
+				p += STAT_LEN;
+			}
+			for (IntIterator i = excludeValid.intIterator(); i.hasNext();) {
+				dirs.get(i.next()).excludeId = ObjectId.fromRaw(raw, p);
+				p += Constants.OBJECT_ID_LENGTH;
+			}
+		}
+		if (p != end) {
+			return null;
+		}
+		return new UntrackedCache(ident, infoExcludeStat, excludesFileStat,
+				dirFlags, infoExcludeId, excludesFileId, excludePerDir, root);
+	}
+
+	private static Directory readDirectory(byte[] raw, int[] ptr, int end,
+			Instant indexModified, List<Directory> dirs) {
+		int untrackedCnt = (int) decodeVarint(raw, ptr);
+		int dirCnt = (int) decodeVarint(raw, ptr);
+		Directory d = new Directory(readString(raw, ptr, end), indexModified);
+		d.untracked = new byte[untrackedCnt][];
+		d.untrackedFiles = new HashSet<>();
+		for (int i = 0; i < untrackedCnt; i++) {
+			d.untracked[i] = readString(raw, ptr, end);
+			d.untrackedFiles.add(RawParseUtils.decode(d.untracked[i]));
+		}
+		dirs.add(d);
+		d.dirs = new ArrayList<>(dirCnt);
+		for (int i = 0; i < dirCnt; i++) {
+			d.dirs.add(readDirectory(raw, ptr, end, indexModified, dirs));
+		}
+		return d;
+	}
+
+	private static byte[] readString(byte[] raw, int[] ptr, int end) {
+		int start = ptr[0];
+		int nul = RawParseUtils.next(raw, start, '\0');
+		if (nul > end) {
+			throw new ArrayIndexOutOfBoundsException(nul);
+		}
+		ptr[0] = nul;
+		return Arrays.copyOfRange(raw, start, nul - 1);
+	}
+
+	/**
+	 * Write the content of the extension.
+	 *
+	 * @param os
+	 *            stream to write to.
+	 * @throws IOException
+	 *             the stream cannot be written.
+	 */
+	void write(OutputStream os) throws IOException {
+		byte[] tmp = new byte[16];
+		os.write(tmp, 0, encodeVarint(ident.length, tmp));
+		os.write(ident);
+		os.write(infoExcludeStat);
+		os.write(excludesFileStat);
+		NB.encodeInt32(tmp, 0, dirFlags);
+		os.write(tmp, 0, 4);
+		infoExcludeId.copyRawTo(os);
+		excludesFileId.copyRawTo(os);
+		os.write(excludePerDir);
+		os.write(0);
+		if (root == null) {
+			os.write(tmp, 0, encodeVarint(0, tmp));
+			return;
+		}
+
+		List<Directory> dirs = new ArrayList<>();
+		root.collect(dirs);
+		EWAHCompressedBitmap valid = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap checkOnly = new EWAHCompressedBitmap();
+		EWAHCompressedBitmap excludeValid = new EWAHCompressedBitmap();
+		for (int i = 0; i < dirs.size(); i++) {
+			Directory d = dirs.get(i);
+			if (d.valid) {
+				valid.set(i);
+				if (d.checkOnly) {
+					checkOnly.set(i);
+				}
+			}
+			if (d.excludeId != null) {
+				excludeValid.set(i);
+			}
+		}
+
+		os.write(tmp, 0, encodeVarint(dirs.size(), tmp));
+		root.write(os, tmp);
+		DataOutputStream data = new DataOutputStream(os);
+		valid.serialize(data);
+		checkOnly.serialize(data);
+		excludeValid.serialize(data);
+		data.flush();
+		for (Directory d : dirs) {
+			if (d.valid) {
+				os.write(d.stat);
+			}
+		}
+		for (Directory d : dirs) {
+			if (d.excludeId != null) {
+				d.excludeId.copyRawTo(os);
+			}
+		}
+		os.write(0);
+	}
+
+	// Variable length integer, as in the offsets of OFS_DELTA objects.
+	private static long decodeVarint(byte[] raw, int[] ptr) {
+		int p = ptr[0];
+		int c = raw[p++] & 0xff;
+		long val = c & 0x7f;
+		while ((c & 0x80) != 0) {
+			c = raw[p++] & 0xff;
+			val = ((val + 1) << 7) | (c & 0x7f);
+		}
+		ptr[0] = p;
+		return val;
+	}
+
+	private static int encodeVarint(long value, byte[] out) {
+		byte[] buf = new byte[16];
+		int pos = buf.length - 1;
+		buf[pos] = (byte) (value & 0x7f);
+		for (long v = value >>> 7; v != 0; v >>>= 7) {
+			buf[--pos] = (byte) (0x80 | (--v & 0x7f));
+		}
+		int n = buf.length - pos;
+		System.arraycopy(buf, pos, out, 0, n);
+		return n;
+	}
+
+	/**
+	 * Get the content of the extension.
+	 *
+	 * @return the bytes written by {@link #write(OutputStream)}.
+	 */
+	byte[] toByteArray() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(out);
+		} catch (IOException e) {
+			// Not thrown by a ByteArrayOutputStream.
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	// The id C Git records for an ignore file it does not take from the
+	// index: the id of its content with an extra LF, or of the empty blob if
+	// it is empty.
+	private static ObjectId ignoreFileId(ObjectInserter.Formatter fmt,
+			byte[] content, int len) {
+		if (len == 0) {
+			return fmt.idFor(Constants.OBJ_BLOB, content, 0, 0);
+		}
+		byte[] lf = Arrays.copyOf(content, len + 1);
+		lf[len] = '\n';
+		return fmt.idFor(Constants.OBJ_BLOB, lf, 0, len + 1);
+	}
+
+	private static ObjectId ignoreFileId(@Nullable File file)
+			throws IOException {
+		if (file == null || !file.isFile()) {
+			return ObjectId.zeroId();
+		}
+		byte[] content = IO.readFully(file);
+		try (ObjectInserter.Formatter fmt = new ObjectInserter.Formatter()) {
+			return ignoreFileId(fmt, content, content.length);
+		}
+	}
+
+	/**
+	 * Build a cache from a walk over the whole working tree.
+	 * <p>
+	 * The walk reports each directory it lists, with the stat data it had
+	 * before it was listed, and each untracked file it finds not ignored.
+	 * Like C Git, the cache then has an entry for every listed directory
+	 * holding paths of the index. An untracked directory is recorded as
+	 * {@code name/} in the untracked files of its parent if it holds any
+	 * untracked file that is not ignored.
+	 * <p>
+	 * The stat data includes the change time, device, inode and owner of the
+	 * directory where the file system provides them, so that C Git can use
+	 * the cache too. Elsewhere C Git finds the directories changed and lists
+	 * them again.
+	 * <p>
+	 * Methods may be called concurrently by the threads of a walk.
+	 *
+	 * @since 5.8
+	 */
+	public static final class Builder {
+		private final Repository repository;
+
+		private final Map<String, ListedDirectory> listed = new HashMap<>();
+
+		private final Set<String> untrackedPaths = new HashSet<>();
+
+		/**
+		 * Create a builder.
+		 *
+		 * @param repository
+		 *            repository whose working tree is walked.
+		 */
+		public Builder(Repository repository) {
+			this.repository = repository;
+		}
+
+		/**
+		 * Record a directory of the working tree.
+		 *
+		 * @param path
+		 *            path of the directory; the empty string for the top
+		 *            level.
+		 * @param lastModified
+		 *            modification time of the directory before it was
+		 *            listed.
+		 * @param length
+		 *            size of the directory before it was listed.
+		 * @param gitignore
+		 *            content of the {@code .gitignore} of the directory; null
+		 *            if it does not have one.
+		 * @param gitignoreLength
+		 *            length of the {@code .gitignore}.
+		 * @throws java.io.IOException
+		 *             the {@code .gitignore} cannot be read.
+		 */
+		public void addDirectory(String path, Instant lastModified,
+				long length, @Nullable InputStream gitignore,
+				long gitignoreLength) throws IOException {
+			ListedDirectory d = new ListedDirectory(stat(
+					new File(repository.getWorkTree(), path), lastModified,
+					length));
+			if (gitignore != null) {
+				ByteBuffer buf = IO.readWholeStream(gitignore,
+						(int) gitignoreLength + 1);
+				int len = buf.limit();
+				ObjectInserter.Formatter fmt = new ObjectInserter.Formatter();
+				d.gitignoreId = fmt.idFor(Constants.OBJ_BLOB, buf.array(), 0,
+						len);
+				d.gitignoreLfId = ignoreFileId(fmt, buf.array(), len);
+			}
+			synchronized (this) {
+				listed.put(path, d);
+			}
+		}
+
+		/**
+		 * Record an untracked file that is not ignored.
+		 *
+		 * @param path
+		 *            path of the file.
+		 */
+		public synchronized void addUntracked(String path) {
+			untrackedPaths.add(path);
+		}
+
+		/**
+		 * Create the cache.
+		 *
+		 * @param index
+		 *            the index the walk compared the working tree with.
+		 * @return the cache; null if the top level directory was not
+		 *         recorded.
+		 * @throws java.io.IOException
+		 *             a global ignore file cannot be read.
+		 */
+		@Nullable
+		public synchronized UntrackedCache build(DirCache index)
+				throws IOException {
+			Set<String> tracked = new HashSet<>();
+			tracked.add(""); //$NON-NLS-1$
+			for (int i = 0; i < index.getEntryCount(); i++) {
+				String p = index.getEntry(i).getPathString();
+				for (int s = p.lastIndexOf('/'); s > 0; s = p.lastIndexOf('/',
+						s - 1)) {
+					if (!tracked.add(p.substring(0, s))) {
+						break;
+					}
+				}
+			}
+
+			Map<String, Directory> dirs = new HashMap<>();
+			Map<Directory, Set<String>> untracked = new HashMap<>();
+			for (Map.Entry<String, ListedDirectory> e : new TreeMap<>(listed)
+					.entrySet()) {
+				String path = e.getKey();
+				Directory parent = path.isEmpty() ? null
+						: dirs.get(parentOf(path));
+				if (!tracked.contains(path)
+						|| (parent == null && !path.isEmpty())) {
+					continue;
+				}
+				ListedDirectory l = e.getValue();
+				Directory d = new Directory(Constants.encode(nameOf(path)),
+						Instant.EPOCH);
+				d.valid = true;
+				d.stat = l.stat;
+				if (l.gitignoreId != null) {
+					DirCacheEntry ent = index.getEntry(path.isEmpty()
+							? Constants.DOT_GIT_IGNORE
+							: path + '/' + Constants.DOT_GIT_IGNORE);
+					d.excludeId = ent != null
+							&& ent.getObjectId().equals(l.gitignoreId)
+									? l.gitignoreId
+									: l.gitignoreLfId;
+				}
+				if (parent != null) {
+					parent.dirs.add(d);
+				}
+				dirs.put(path, d);
+				untracked.put(d, new TreeSet<>());
+			}
+			Directory root = dirs.get(""); //$NON-NLS-1$
+			if (root == null) {
+				return null;
+			}
+
+			for (String path : untrackedPaths) {
+				String dir = parentOf(path);
+				String name = nameOf(path);
+				while (!tracked.contains(dir)) {
+					name = nameOf(dir) + '/';
+					dir = parentOf(dir);
+				}
+				Directory d = dirs.get(dir);
+				if (d != null) {
+					untracked.get(d).add(name);
+				}
+			}
+			for (Map.Entry<Directory, Set<String>> e : untracked
+					.entrySet()) {
+				Directory d = e.getKey();
+				// C Git looks subdirectories up by binary search.
+				d.dirs.sort((x, y) -> compareNames(x.name, y.name));
+				d.untrackedFiles = e.getValue();
+				d.untracked = new byte[d.untrackedFiles.size()][];
+				int i = 0;
+				for (String name : d.untrackedFiles) {
+					d.untracked[i++] = Constants.encode(name);
+				}
+			}
+
+			return new UntrackedCache(ident(repository), new byte[STAT_LEN],
+					new byte[STAT_LEN], DIR_FLAGS,
+					ignoreFileId(infoExcludeFile(repository)),
+					ignoreFileId(excludesFile(repository)),
+					Constants.encode(Constants.DOT_GIT_IGNORE), root);
+		}
+
+		private static int compareNames(byte[] a, byte[] b) {
+			for (int i = 0; i < a.length && i < b.length; i++) {
+				int c = (a[i] & 0xff) - (b[i] & 0xff);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return a.length - b.length;
+		}
+
+		private static String parentOf(String path) {
+			int s = path.lastIndexOf('/');
+			return s < 0 ? "" : path.substring(0, s); //$NON-NLS-1$
+		}
+
+		private static String nameOf(String path) {
+			return path.substring(path.lastIndexOf('/') + 1);
+		}
+
+		private static byte[] stat(File dir, Instant lastModified,
+				long length) {
+			byte[] s = new byte[STAT_LEN];
+			try {
+				Map<String, Object> a = Files.readAttributes(dir.toPath(),
+						"unix:ctime,dev,ino,uid,gid", //$NON-NLS-1$
+						LinkOption.NOFOLLOW_LINKS);
+				Instant ctime = ((FileTime) a.get("ctime")) //$NON-NLS-1$
+						.toInstant();
+				NB.encodeInt32(s, STAT_CTIME, (int) ctime.getEpochSecond());
+				NB.encodeInt32(s, STAT_CTIME + 4, ctime.getNano());
+				NB.encodeInt32(s, STAT_DEV,
+						((Number) a.get("dev")).intValue()); //$NON-NLS-1$
+				NB.encodeInt32(s, STAT_DEV + 4,
+						((Number) a.get("ino")).intValue()); //$NON-NLS-1$
+				NB.encodeInt32(s, STAT_DEV + 8,
+						((Number) a.get("uid")).intValue()); //$NON-NLS-1$
+				NB.encodeInt32(s, STAT_DEV + 12,
+						((Number) a.get("gid")).intValue()); //$NON-NLS-1$
+			} catch (IOException | RuntimeException e) {
+				// No POSIX attributes; C Git will list the directory again.
+			}
+			NB.encodeInt32(s, STAT_MTIME, (int) lastModified.getEpochSecond());
+			NB.encodeInt32(s, STAT_MTIME + 4, lastModified.getNano());
+			NB.encodeInt32(s, STAT_SIZE, (int) length);
+			return s;
+		}
+	}
+
+	private static final class ListedDirectory {
+		final byte[] stat;
+
+		/** Id of the content of the .gitignore, as the index has it. */
+		ObjectId gitignoreId;
+
+		/** Id C Git computes for the .gitignore if it is not in the index. */
+		ObjectId gitignoreLfId;
+
+		ListedDirectory(byte[] stat) {
+			this.stat = stat;
+		}
+	}
+
+	/**
+	 * Cache of one directory.
+	 *
+	 * @since 5.8
+	 */
+	public static final class Directory {
+		final byte[] name;
+
+		byte[][] untracked;
+
+		List<Directory> dirs;
+
+		/** Whether {@link #untracked} and {@link #stat} are valid. */
+		boolean valid;
+
+		/** Whether the directory was only checked for untracked files. */
+		boolean checkOnly;
+
+		/** Stat data of the directory, if {@link #valid}. */
+		byte[] stat;
+
+		/** Id of the .gitignore of the directory; null if there is none. */
+		ObjectId excludeId;
+
+		/** Modification time of the index the cache was read from. */
+		private final Instant indexModified;
+
+		/** Decoded {@link #untracked}, for lookups. */
+		Set<String> untrackedFiles;
+
+		Directory(byte[] name, Instant indexModified) {
+			this.name = name;
+			this.indexModified = indexModified;
+			this.untracked = new byte[0][];
+			this.untrackedFiles = Collections.emptySet();
+			this.dirs = new ArrayList<>();
+		}
+
+		/**
+		 * Get the name of the directory.
+		 *
+		 * @return name of the directory; the empty string for the top level.
+		 */
+		public String getName() {
+			return RawParseUtils.decode(name);
+		}
+
+		/**
+		 * Get the cache of a subdirectory.
+		 *
+		 * @param dirName
+		 *            name of the subdirectory.
+		 * @return the cache of the subdirectory; null if there is none.
+		 */
+		@Nullable
+		public Directory getSubdirectory(String dirName) {
+			byte[] n = Constants.encode(dirName);
+			return getSubdirectory(n, 0, n.length);
+		}
+
+		@Nullable
+		Directory getSubdirectory(byte[] path, int start, int end) {
+			for (Directory d : dirs) {
+				if (d.name.length == end - start && RawParseUtils
+						.match(path, start, d.name) == end) {
+					return d;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Whether the cached untracked files of this directory are still
+		 * current.
+		 * <p>
+		 * They are if they were fully listed, and the modification time and
+		 * size of the directory, and the id of its {@code .gitignore}, did not
+		 * change since. The directory must also not have been modified in the
+		 * same second as the index was written, when it may have been
+		 * modified again without its modification time changing. The same
+		 * must hold for all parent directories, whose ignore rules also apply
+		 * to this one.
+		 *
+		 * @param lastModified
+		 *            modification time of the directory.
+		 * @param length
+		 *            size of the directory, as reported by the file system.
+		 * @param gitignore
+		 *            content of the {@code .gitignore} of the directory; null
+		 *            if it does not have one.
+		 * @param gitignoreLength
+		 *            length of the {@code .gitignore}.
+		 * @return whether {@link #isUntracked(String)} can be used.
+		 * @throws java.io.IOException
+		 *             the {@code .gitignore} cannot be read.
+		 */
+		public boolean isUpToDate(Instant lastModified, long length,
+				@Nullable InputStream gitignore, long gitignoreLength)
+				throws IOException {
+			byte[] s = stat;
+			if (!valid || checkOnly || s == null) {
+				return false;
+			}
+			long sec = NB.decodeUInt32(s, STAT_MTIME);
+			int nsec = NB.decodeInt32(s, STAT_MTIME + 4);
+			if (sec != (lastModified.getEpochSecond() & 0xffffffffL)
+					|| (nsec != 0 && nsec != lastModified.getNano())
+					|| NB.decodeInt32(s, STAT_SIZE) != (int) length
+					|| lastModified.getEpochSecond() >= indexModified
+							.getEpochSecond()) {
+				return false;
+			}
+			ObjectId id = excludeId;
+			if (id == null || gitignore == null) {
+				return id == null && gitignore == null;
+			}
+			return isIdOf(id, gitignore, gitignoreLength);
+		}
+
+		/**
+		 * Whether a file of this directory is untracked and not ignored.
+		 * <p>
+		 * Only meaningful for files not in the index, and if
+		 * {@link #isUpToDate} is true.
+		 *
+		 * @param fileName
+		 *            name of the file.
+		 * @return whether the file is in the cached untracked files.
+		 */
+		public boolean isUntracked(String fileName) {
+			return untrackedFiles.contains(fileName);
+		}
+
+		/**
+		 * Get the names of the cached untracked files and directories.
+		 *
+		 * @return names of the untracked entries; directory names end with
+		 *         '/'.
+		 */
+		public List<String> getUntracked() {
+			List<String> r = new ArrayList<>(untracked.length);
+			for (byte[] u : untracked) {
+				r.add(RawParseUtils.decode(u));
+			}
+			return Collections.unmodifiableList(r);
+		}
+
+		void invalidate() {
+			valid = false;
+			checkOnly = false;
+			untracked = new byte[0][];
+			untrackedFiles = Collections.emptySet();
+		}
+
+		private void collect(List<Directory> all) {
+			all.add(this);
+			for (Directory d : dirs) {
+				d.collect(all);
+			}
+		}
+
+		private void write(OutputStream os, byte[] tmp) throws IOException {
+			byte[][] u = valid ? untracked : new byte[0][];
+			os.write(tmp, 0, encodeVarint(u.length, tmp));
+			os.write(tmp, 0, encodeVarint(dirs.size(), tmp));
+			os.write(name);
+			os.write(0);
+			for (byte[] f : u) {
+				os.write(f);
+				os.write(0);
+			}
+			for (Directory d : dirs) {
+				d.write(os, tmp);
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.fsmonitor;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.StringUtils;
+
+/**
+ * Oracle telling which files of a working tree changed.
+ * <p>
+ * A monitor hands out opaque tokens. Asked with a token it returned earlier,
+ * it reports the paths that may have changed since then, so that index
+ * entries of the other paths do not need to be compared with their files.
+ * The token is kept in the "FSMN" extension of the index together with the
+ * entries that were not known to be unchanged, as C git does when
+ * {@code core.fsmonitor} is set.
+ * <p>
+ * The monitor of a repository is found by the {@link Provider} set with
+ * {@link #setProvider(Provider)}. The default provider reads
+ * {@code core.fsmonitor}: {@code true} uses a
+ * {@link WatchServiceFileSystemMonitor} running in this process, and any
+ * other value that is not a boolean is the command of a hook speaking the
+ * fsmonitor hook protocol of C git, run by {@link HookFileSystemMonitor}.
+ *
+ * @since 5.8
+ */
+public abstract class FileSystemMonitor {
+	/** Finds the monitor of a repository. */
+	@FunctionalInterface
+	public interface Provider {
+		/**
+		 * Get the monitor of a repository.
+		 *
+		 * @param repository
+		 *            a repository with a working tree.
+		 * @return the monitor, or null if the repository is not monitored.
+		 * @throws IOException
+		 *             the monitor cannot be started.
+		 */
+		@Nullable
+		FileSystemMonitor get(Repository repository) throws IOException;
+	}
+
+	/** Changes reported by a monitor. */
+	public static final class Changes {
+		private final String token;
+
+		private final Collection<String> paths;
+
+		/**
+		 * Create the result of a query.
+		 *
+		 * @param token
+		 *            token to pass to the next query, or null if the monitor
+		 *            cannot tell the changes after this query.
+		 * @param paths
+		 *            paths relative to the working tree, separated by '/',
+		 *            that may have changed since the token of the query; a
+		 *            path stands for itself and for everything below it. Null
+		 *            if any path may have changed.
+		 */
+		public Changes(@Nullable String token,
+				@Nullable Collection<String> paths) {
+			this.token = token;
+			this.paths = paths;
+		}
+
+		/**
+		 * Get the token to pass to the next query.
+		 *
+		 * @return the token, or null if the monitor cannot tell the changes
+		 *         after this query.
+		 */
+		@Nullable
+		public String getToken() {
+			return token;
+		}
+
+		/**
+		 * Get the paths that may have changed.
+		 *
+		 * @return paths relative to the working tree that may have changed,
+		 *         each standing for itself and for everything below it; null
+		 *         if any path may have changed.
+		 */
+		@Nullable
+		public Collection<String> getPaths() {
+			return paths;
+		}
+	}
+
+	private static final Provider DEFAULT_PROVIDER = FileSystemMonitor::fromConfig;
+
+	private static volatile Provider provider = DEFAULT_PROVIDER;
+
+	/**
+	 * Set the provider finding the monitor of a repository.
+	 *
+	 * @param p
+	 *            the provider, or null to use {@code core.fsmonitor}.
+	 */
+	public static void setProvider(@Nullable Provider p) {
+		provider = p != null ? p : DEFAULT_PROVIDER;
+	}
+
+	/**
+	 * Get the monitor of a repository.
+	 *
+	 * @param repository
+	 *            the repository.
+	 * @return the monitor, or null if the repository is bare or not
+	 *         monitored.
+	 * @throws IOException
+	 *             the monitor cannot be started.
+	 */
+	@Nullable
+	public static FileSystemMonitor get(Repository repository)
+			throws IOException {
+		if (repository.isBare()) {
+			return null;
+		}
+		return provider.get(repository);
+	}
+
+	private static FileSystemMonitor fromConfig(Repository repository)
+			throws IOException {
+		String value = repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_FSMONITOR);
+		if (StringUtils.isEmptyOrNull(value)) {
+			return null;
+		}
+		Boolean enabled = StringUtils.toBooleanOrNull(value);
+		if (enabled != null) {
+			return enabled.booleanValue()
+					? WatchServiceFileSystemMonitor.get(repository)
+					: null;
+		}
+		return new HookFileSystemMonitor(repository, value);
+	}
+
+	/**
+	 * Ask which files changed.
+	 *
+	 * @param token
+	 *            token returned by an earlier query, or null to get a first
+	 *            token.
+	 * @return the paths that may have changed since the token, and a new
+	 *         token. If the token is null or unknown to the monitor, any path
+	 *         may have changed.
+	 * @throws IOException
+	 *             the monitor cannot be queried.
+	 */
+	public abstract Changes query(@Nullable String token) throws IOException;
+}
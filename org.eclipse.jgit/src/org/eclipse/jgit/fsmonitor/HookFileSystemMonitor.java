@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.fsmonitor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FS.ExecutionResult;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Monitor running a hook that speaks the fsmonitor hook protocol of C git.
+ * <p>
+ * The hook is run in the working tree with the protocol version and a token
+ * as arguments. With version 2, it prints a new token and the changed
+ * paths, all terminated by NUL; a path of "/" means that any path may have
+ * changed. Output without a terminated token is taken as a change to every
+ * path. If the hook fails with version 2, version 1 is tried, where the
+ * token is the time of the previous query in nanoseconds and only the paths
+ * are printed. This is how C git talks to Watchman, through the
+ * {@code fsmonitor-watchman} hook it ships as a sample.
+ *
+ * @since 5.8
+ */
+public class HookFileSystemMonitor extends FileSystemMonitor {
+	private final Repository repository;
+
+	private final String command;
+
+	/**
+	 * Create a monitor running a hook.
+	 *
+	 * @param repository
+	 *            repository whose working tree is monitored.
+	 * @param command
+	 *            command line of the hook.
+	 */
+	public HookFileSystemMonitor(Repository repository, String command) {
+		this.repository = repository;
+		this.command = command;
+	}
+
+	@Override
+	public Changes query(@Nullable String token) throws IOException {
+		long now = System.currentTimeMillis() * 1_000_000L;
+		String since = token != null ? token : Long.toString(now);
+
+		ExecutionResult r = run("2", since); //$NON-NLS-1$
+		if (r.getRc() == 0) {
+			byte[] out = r.getStdout().toByteArray();
+			int nul = RawParseUtils.next(out, 0, '\0');
+			if (out.length > 0 && out[nul - 1] == '\0') {
+				String next = RawParseUtils.decode(out, 0, nul - 1);
+				List<String> paths = paths(out, nul);
+				return new Changes(next, token != null ? paths : null);
+			}
+			// Without a token the output cannot be trusted, assume that
+			// everything changed.
+			return new Changes(token, null);
+		}
+
+		if (token != null && !isTimestamp(token)) {
+			// The token is not one of version 1.
+			return new Changes(Long.toString(now), null);
+		}
+		r = run("1", since); //$NON-NLS-1$
+		if (r.getRc() != 0) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().fileSystemMonitorFailed, command,
+					Integer.valueOf(r.getRc())));
+		}
+		List<String> paths = paths(r.getStdout().toByteArray(), 0);
+		return new Changes(Long.toString(now), token != null ? paths : null);
+	}
+
+	private ExecutionResult run(String version, String token)
+			throws IOException {
+		FS fs = repository.getFS();
+		ProcessBuilder pb = fs.runInShell(command,
+				new String[] { version, token });
+		pb.directory(repository.getWorkTree());
+		try {
+			return fs.execute(pb, null);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private static List<String> paths(byte[] out, int start) {
+		List<String> paths = new ArrayList<>();
+		int ptr = start;
+		while (ptr < out.length) {
+			int end = RawParseUtils.next(out, ptr, '\0');
+			int len = end - ptr - (out[end - 1] == '\0' ? 1 : 0);
+			if (len > 0) {
+				String path = RawParseUtils.decode(out, ptr, ptr + len);
+				if (path.equals("/")) { //$NON-NLS-1$
+					return null;
+				}
+				paths.add(path);
+			}
+			ptr = end;
+		}
+		return paths;
+	}
+
+	private static boolean isTimestamp(String token) {
+		for (int i = 0; i < token.length(); i++) {
+			if (token.charAt(i) < '0' || '9' < token.charAt(i)) {
+				return false;
+			}
+		}
+		return !token.isEmpty();
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.fsmonitor;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Monitor watching a working tree with a {@link WatchService}.
+ * <p>
+ * The monitor is a daemon running in this process: a thread records the
+ * paths reported by the watch service, and queries return the paths
+ * recorded since their token. There is one monitor per working tree, shared
+ * by all repositories opened on it, and it runs until it is closed.
+ * <p>
+ * Watch services report changes with some delay. Before answering, a query
+ * creates a cookie file in the git directory and waits for the service to
+ * report it, so that the changes made before the query are all recorded. If
+ * the cookie is not reported in time, as with watch services that poll, or
+ * if the service lost events, any path may have changed.
+ *
+ * @since 5.8
+ */
+public final class WatchServiceFileSystemMonitor extends FileSystemMonitor
+		implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(WatchServiceFileSystemMonitor.class);
+
+	private static final String COOKIE_PREFIX = "fsmonitor--cookie-"; //$NON-NLS-1$
+
+	/** Largest number of paths recorded before forgetting the oldest. */
+	private static final int MAX_LOG = 100_000;
+
+	private static final long COOKIE_TIMEOUT_MILLIS = 1000;
+
+	private static final Map<Path, WatchServiceFileSystemMonitor> running = new HashMap<>();
+
+	/**
+	 * Get the monitor of the working tree of a repository, starting it if
+	 * needed.
+	 *
+	 * @param repository
+	 *            a repository with a working tree.
+	 * @return the monitor of its working tree.
+	 * @throws IOException
+	 *             the working tree cannot be watched.
+	 */
+	public static WatchServiceFileSystemMonitor get(Repository repository)
+			throws IOException {
+		Path root = repository.getWorkTree().toPath().toAbsolutePath()
+				.normalize();
+		synchronized (running) {
+			WatchServiceFileSystemMonitor m = running.get(root);
+			if (m == null) {
+				m = new WatchServiceFileSystemMonitor(root,
+						repository.getDirectory());
+				running.put(root, m);
+			}
+			return m;
+		}
+	}
+
+	private final Path root;
+
+	private final Path gitDir;
+
+	private final WatchService watcher;
+
+	private final Map<WatchKey, Path> dirs = new HashMap<>();
+
+	/** Distinguishes the tokens of this monitor from those of others. */
+	private final String instance;
+
+	/** Paths recorded, oldest first; guarded by this. */
+	private final List<String> log = new ArrayList<>();
+
+	/** Sequence number of the first path of {@link #log}. */
+	private long logStart;
+
+	/** Tokens before this sequence number may have missed changes. */
+	private long lostBefore;
+
+	/** Cookies reported by the watch service; guarded by itself. */
+	private final Set<String> cookies = new HashSet<>();
+
+	private long nextCookie;
+
+	private volatile boolean closed;
+
+	private WatchServiceFileSystemMonitor(Path root, File gitDir)
+			throws IOException {
+		this.root = root;
+		this.gitDir = gitDir.toPath().toAbsolutePath().normalize();
+		instance = Long.toHexString(System.nanoTime()) + '-'
+				+ Integer.toHexString(System.identityHashCode(this));
+		watcher = root.getFileSystem().newWatchService();
+		try {
+			register(root);
+			dirs.put(this.gitDir.register(watcher, ENTRY_CREATE),
+					this.gitDir);
+		} catch (IOException | RuntimeException e) {
+			watcher.close();
+			throw e;
+		}
+		Thread thread = new Thread(this::run,
+				"JGit-FileSystemMonitor-" + root.getFileName()); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void register(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path d,
+					BasicFileAttributes attrs) throws IOException {
+				if (d.getFileName() != null && Constants.DOT_GIT
+						.equals(d.getFileName().toString())) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				WatchKey key = d.register(watcher, ENTRY_CREATE, ENTRY_DELETE,
+						ENTRY_MODIFY);
+				synchronized (dirs) {
+					dirs.put(key, d);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path f, IOException e) {
+				// Deleted meanwhile; its parent reports it.
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				WatchKey key = watcher.take();
+				Path dir;
+				synchronized (dirs) {
+					dir = dirs.get(key);
+				}
+				for (WatchEvent<?> ev : key.pollEvents()) {
+					if (ev.kind() == OVERFLOW) {
+						lost();
+					} else if (dir != null) {
+						changed(dir, (Path) ev.context(),
+								ev.kind() == ENTRY_CREATE);
+					}
+				}
+				if (!key.reset()) {
+					synchronized (dirs) {
+						dirs.remove(key);
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Closed.
+		}
+	}
+
+	private void changed(Path dir, Path name, boolean created) {
+		if (dir.equals(gitDir)) {
+			String n = name.toString();
+			if (n.startsWith(COOKIE_PREFIX)) {
+				synchronized (cookies) {
+					cookies.add(n);
+					cookies.notifyAll();
+				}
+			}
+			return;
+		}
+		Path path = dir.resolve(name);
+		if (Constants.DOT_GIT.equals(name.toString())) {
+			return;
+		}
+		StringBuilder rel = new StringBuilder();
+		for (Path p : root.relativize(path)) {
+			if (rel.length() > 0) {
+				rel.append('/');
+			}
+			rel.append(p.toString());
+		}
+		synchronized (this) {
+			if (log.size() >= MAX_LOG) {
+				int drop = MAX_LOG / 2;
+				log.subList(0, drop).clear();
+				logStart += drop;
+			}
+			log.add(rel.toString());
+		}
+		if (created && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+			// Files created in the directory before it was registered are
+			// covered by the path of the directory.
+			try {
+				register(path);
+			} catch (IOException e) {
+				LOG.warn(e.getMessage(), e);
+				lost();
+			}
+		}
+	}
+
+	private synchronized void lost() {
+		lostBefore = logStart + log.size();
+	}
+
+	@Override
+	public Changes query(@Nullable String token) throws IOException {
+		if (closed) {
+			return new Changes(null, null);
+		}
+		boolean synced = sync();
+		synchronized (this) {
+			long end = logStart + log.size();
+			String next = instance + ':' + end;
+			String prefix = instance + ':';
+			if (!synced || token == null || !token.startsWith(prefix)) {
+				return new Changes(next, null);
+			}
+			long since;
+			try {
+				since = Long.parseLong(token.substring(prefix.length()));
+			} catch (NumberFormatException e) {
+				return new Changes(next, null);
+			}
+			if (since < logStart || since < lostBefore || since > end) {
+				return new Changes(next, null);
+			}
+			return new Changes(next, new ArrayList<>(
+					log.subList((int) (since - logStart), log.size())));
+		}
+	}
+
+	/**
+	 * Wait for the watch service to report the changes made so far.
+	 *
+	 * @return whether the changes were reported in time.
+	 * @throws IOException
+	 *             the cookie file cannot be created.
+	 */
+	private boolean sync() throws IOException {
+		String name;
+		synchronized (cookies) {
+			name = COOKIE_PREFIX + nextCookie++;
+		}
+		Path cookie = gitDir.resolve(name);
+		Files.createFile(cookie);
+		try {
+			long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(COOKIE_TIMEOUT_MILLIS);
+			synchronized (cookies) {
+				while (!cookies.remove(name)) {
+					long wait = deadline - System.nanoTime();
+					if (wait <= 0 || closed) {
+						return false;
+					}
+					cookies.wait(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+				}
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			Files.deleteIfExists(cookie);
+		}
+	}
+
+	/**
+	 * Stop watching the working tree.
+	 */
+	@Override
+	public void close() {
+		synchronized (running) {
+			if (running.get(root) == this) {
+				running.remove(root);
+			}
+		}
+		closed = true;
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			LOG.warn(e.getMessage(), e);
+		}
+		synchronized (cookies) {
+			cookies.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * File system monitors telling which working tree files changed.
+ */
+package org.eclipse.jgit.fsmonitor;
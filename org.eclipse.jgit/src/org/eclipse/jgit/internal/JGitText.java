@@ -75,6 +75,7 @@ public static JGitText get() {
 	/***/ public String buildingBitmaps;
 	/***/ public String cachedPacksPreventsIndexCreation;
 	/***/ public String cachedPacksPreventsListingObjects;
+	/***/ public String cacheShardsNotPositive;
 	/***/ public String cannotAccessLastModifiedForSafeDeletion;
 	/***/ public String cannotBeCombined;
 	/***/ public String cannotBeRecursiveWhenTreesAreIncluded;
@@ -132,6 +133,7 @@ public static JGitText get() {
 	/***/ public String cannotSquashFixupWithoutPreviousCommit;
 	/***/ public String cannotStoreObjects;
 	/***/ public String cannotResolveUniquelyAbbrevObjectId;
+	/***/ public String cannotUpdateCommitGraph;
 	/***/ public String cannotUpdateUnbornBranch;
 	/***/ public String cannotWriteObjectsPath;
 	/***/ public String canOnlyCherryPickCommitsWithOneParent;
@@ -152,6 +154,12 @@ public static JGitText get() {
 	/***/ public String commandClosedStderrButDidntExit;
 	/***/ public String commandRejectedByHook;
 	/***/ public String commandWasCalledInTheWrongState;
+	/***/ public String commitGraphBaseMismatch;
+	/***/ public String commitGraphChunkCorrupt;
+	/***/ public String commitGraphChunkLookupTableCorrupt;
+	/***/ public String commitGraphChunkNeeded;
+	/***/ public String commitGraphChunkRepeated;
+	/***/ public String commitGraphFileIsTooLargeForJgit;
 	/***/ public String commitMessageNotSpecified;
 	/***/ public String commitOnRepoWithoutHEADCurrentlyNotSupported;
 	/***/ public String commitAmendOnInitialNotPossible;
@@ -165,7 +173,9 @@ public static JGitText get() {
 	/***/ public String connectionFailed;
 	/***/ public String connectionTimeOut;
 	/***/ public String contextMustBeNonNegative;
+	/***/ public String corruptCommitGraph;
 	/***/ public String corruptionDetectedReReadingAt;
+	/***/ public String corruptMultiPackIndex;
 	/***/ public String corruptObjectBadDate;
 	/***/ public String corruptObjectBadEmail;
 	/***/ public String corruptObjectBadStream;
@@ -215,6 +225,7 @@ public static JGitText get() {
 	/***/ public String corruptObjectTruncatedInObjectId;
 	/***/ public String corruptObjectZeroId;
 	/***/ public String corruptPack;
+	/***/ public String corruptReverseIndex;
 	/***/ public String corruptUseCnt;
 	/***/ public String couldNotFindTabInLine;
 	/***/ public String couldNotFindSixTabsInLine;
@@ -238,6 +249,8 @@ public static JGitText get() {
 	/***/ public String credentialPassphrase;
 	/***/ public String credentialUsername;
 	/***/ public String daemonAlreadyRunning;
+	/***/ public String daemonInvalidThreads;
+	/***/ public String daemonServiceBusy;
 	/***/ public String daysAgo;
 	/***/ public String deepenNotWithDeepen;
 	/***/ public String deepenSinceWithDeepen;
@@ -252,6 +265,7 @@ public static JGitText get() {
 	/***/ public String dirCacheFileIsNotLocked;
 	/***/ public String dirCacheIsNotLocked;
 	/***/ public String DIRCChecksumMismatch;
+	/***/ public String DIRCCorruptLinkExtension;
 	/***/ public String DIRCExtensionIsTooLargeAt;
 	/***/ public String DIRCExtensionNotSupportedByThisVersion;
 	/***/ public String DIRCHasTooManyEntries;
@@ -322,9 +336,11 @@ public static JGitText get() {
 	/***/ public String fileCannotBeDeleted;
 	/***/ public String fileIsTooLarge;
 	/***/ public String fileModeNotSetForPath;
+	/***/ public String fileSystemMonitorFailed;
 	/***/ public String filterExecutionFailed;
 	/***/ public String filterExecutionFailedRc;
 	/***/ public String filterRequiresCapability;
+	/***/ public String findingCommitsForCommitGraph;
 	/***/ public String findingGarbage;
 	/***/ public String flagIsDisposed;
 	/***/ public String flagNotFromThis;
@@ -471,6 +487,11 @@ public static JGitText get() {
 	/***/ public String month;
 	/***/ public String months;
 	/***/ public String monthsAgo;
+	/***/ public String multiPackIndexChunkCorrupt;
+	/***/ public String multiPackIndexChunkLookupTableCorrupt;
+	/***/ public String multiPackIndexChunkNeeded;
+	/***/ public String multiPackIndexChunkRepeated;
+	/***/ public String multiPackIndexFileIsTooLargeForJgit;
 	/***/ public String multipleMergeBasesFor;
 	/***/ public String nameMustNotBeNullOrEmpty;
 	/***/ public String need2Arguments;
@@ -492,10 +513,13 @@ public static JGitText get() {
 	/***/ public String noSuchSubmodule;
 	/***/ public String notABoolean;
 	/***/ public String notABundle;
+	/***/ public String notACommitGraph;
 	/***/ public String notADIRCFile;
 	/***/ public String notAGitDirectory;
+	/***/ public String notAMultiPackIndex;
 	/***/ public String notAPACKFile;
 	/***/ public String notARef;
+	/***/ public String notAReverseIndex;
 	/***/ public String notASCIIString;
 	/***/ public String notAuthorized;
 	/***/ public String notAValidPack;
@@ -533,9 +557,12 @@ public static JGitText get() {
 	/***/ public String packHandleIsStale;
 	/***/ public String packHasUnresolvedDeltas;
 	/***/ public String packInaccessible;
+	/***/ public String packIndexSizeMismatch;
 	/***/ public String packingCancelledDuringObjectsWriting;
 	/***/ public String packObjectCountMismatch;
 	/***/ public String packRefs;
+	/***/ public String packResponseAborted;
+	/***/ public String packResponseStalled;
 	/***/ public String packSizeNotSetYet;
 	/***/ public String packTooLargeForIndexVersion1;
 	/***/ public String packWasDeleted;
@@ -587,6 +614,7 @@ public static JGitText get() {
 	/***/ public String refAlreadyExists1;
 	/***/ public String reflogEntryNotFound;
 	/***/ public String refNotResolved;
+	/***/ public String reftableCompactionFailed;
 	/***/ public String reftableDirExists;
 	/***/ public String reftableRecordsMustIncrease;
 	/***/ public String refUpdateReturnCodeWas;
@@ -624,6 +652,8 @@ public static JGitText get() {
 	/***/ public String resettingHead;
 	/***/ public String resolvingDeltas;
 	/***/ public String resultLengthIncorrect;
+	/***/ public String reverseIndexDoesNotMatchPack;
+	/***/ public String reverseIndexSizeMismatch;
 	/***/ public String rewinding;
 	/***/ public String s3ActionDeletion;
 	/***/ public String s3ActionReading;
@@ -765,15 +795,20 @@ public static JGitText get() {
 	/***/ public String unsupportedAlternates;
 	/***/ public String unsupportedArchiveFormat;
 	/***/ public String unsupportedCommand0;
+	/***/ public String unsupportedCommitGraphHashVersion;
+	/***/ public String unsupportedCommitGraphVersion;
 	/***/ public String unsupportedEncryptionAlgorithm;
 	/***/ public String unsupportedEncryptionVersion;
 	/***/ public String unsupportedGC;
 	/***/ public String unsupportedMark;
+	/***/ public String unsupportedMultiPackIndexHashVersion;
+	/***/ public String unsupportedMultiPackIndexVersion;
 	/***/ public String unsupportedOperationNotAddAtEnd;
 	/***/ public String unsupportedPackIndexVersion;
 	/***/ public String unsupportedPackVersion;
 	/***/ public String unsupportedReftableVersion;
 	/***/ public String unsupportedRepositoryDescription;
+	/***/ public String unsupportedReverseIndexVersion;
 	/***/ public String updateRequiresOldIdAndNewId;
 	/***/ public String updatingHeadFailed;
 	/***/ public String updatingReferences;
@@ -785,6 +820,7 @@ public static JGitText get() {
 	/***/ public String URINotSupported;
 	/***/ public String userConfigInvalid;
 	/***/ public String validatingGitModules;
+	/***/ public String virtualThreadsNotSupported;
 	/***/ public String walkFailure;
 	/***/ public String wantNoSpaceWithCapabilities;
 	/***/ public String wantNotValid;
@@ -796,6 +832,8 @@ public static JGitText get() {
 	/***/ public String writingNotPermitted;
 	/***/ public String writingNotSupported;
 	/***/ public String writingObjects;
+	/***/ public String writingOutCommitGraph;
+	/***/ public String writingOutMultiPackIndex;
 	/***/ public String wrongDecompressedLength;
 	/***/ public String wrongRepositoryState;
 	/***/ public String year;
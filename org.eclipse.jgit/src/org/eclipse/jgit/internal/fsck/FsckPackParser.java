@@ -196,6 +196,22 @@ protected int readDatabase(byte[] dst, int pos, int cnt)
 		return n;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isPositionalReadSupported() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		// The channel has a single position shared by all readers.
+		synchronized (channel) {
+			return read(position, dst, pos, cnt);
+		}
+	}
+
 	int read(long channelPosition, byte[] dst, int pos, int cnt)
 			throws IOException {
 		long block = channelPosition / blockSize;
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The commit-graph stores the list of commit OIDs and some associated
+ * metadata, including:
+ * <ol>
+ * <li>The generation number of the commit. Commits with no parents have
+ * generation number 1; commits with parents have generation number one more
+ * than the maximum generation number of its parents. We reserve zero as
+ * special, and can be used to mark a generation number invalid or as "not
+ * computed".</li>
+ * <li>The root tree OID.</li>
+ * <li>The commit date.</li>
+ * <li>The parents of the commit, stored using positional references within
+ * the graph file.</li>
+ * </ol>
+ * <p>
+ * Positions are global across a commit-graph chain: the commits of a base
+ * layer come first, followed by the commits of each layer stacked on top of
+ * it.
+ */
+public interface CommitGraph {
+
+	/** Empty {@link CommitGraph} with no commits. */
+	CommitGraph EMPTY = new CommitGraph() {
+		@Override
+		public int findGraphPosition(AnyObjectId commit) {
+			return -1;
+		}
+
+		@Override
+		public ObjectId getObjectId(int graphPos) {
+			return null;
+		}
+
+		@Override
+		public CommitData getCommitData(int graphPos) {
+			return null;
+		}
+
+		@Override
+		public long getCommitCnt() {
+			return 0;
+		}
+	};
+
+	/**
+	 * Find the position in the commit-graph of the commit.
+	 * <p>
+	 * The position can only be used within this commit-graph (or a chain it
+	 * is the top layer of).
+	 *
+	 * @param commit
+	 *            the commit for which the commit-graph position will be
+	 *            found.
+	 * @return the commit-graph position or -1 if the object was not found.
+	 */
+	int findGraphPosition(AnyObjectId commit);
+
+	/**
+	 * Get the object at the commit-graph position.
+	 *
+	 * @param graphPos
+	 *            the position in the commit-graph of the object.
+	 * @return the ObjectId or null if it's not found.
+	 */
+	ObjectId getObjectId(int graphPos);
+
+	/**
+	 * Get the metadata of a commit.
+	 *
+	 * @param graphPos
+	 *            the position in the commit-graph of the object.
+	 * @return the metadata of a commit or null if it's not found.
+	 */
+	CommitData getCommitData(int graphPos);
+
+	/**
+	 * Obtain the total number of commits described by this commit-graph,
+	 * including the commits of any base layer.
+	 *
+	 * @return number of commits in this commit-graph.
+	 */
+	long getCommitCnt();
+
+	/**
+	 * Metadata of a commit in the commit-graph.
+	 */
+	interface CommitData {
+
+		/**
+		 * Get a reference to this commit's tree.
+		 *
+		 * @return tree of this commit.
+		 */
+		ObjectId getTree();
+
+		/**
+		 * Obtain an array of all parents.
+		 * <p>
+		 * The method only provides the graph positions of parents in the
+		 * commit-graph, call {@link CommitGraph#getObjectId(int)} to get the
+		 * real objectId.
+		 *
+		 * @return the array of parents.
+		 */
+		int[] getParents();
+
+		/**
+		 * Time from the "committer" line.
+		 *
+		 * @return commit time in seconds since the epoch.
+		 */
+		long getCommitTime();
+
+		/**
+		 * Get the generation number (the topological level) of the commit.
+		 *
+		 * @return the generation number or
+		 *         {@link org.eclipse.jgit.lib.Constants#COMMIT_GENERATION_NOT_COMPUTED}
+		 *         if the number was not computed.
+		 */
+		int getGeneration();
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+/**
+ * Constants relating to commit-graph.
+ */
+class CommitGraphConstants {
+
+	static final int COMMIT_GRAPH_MAGIC = 0x43475048; /* "CGPH" */
+
+	static final int CHUNK_ID_OID_FANOUT = 0x4f494446; /* "OIDF" */
+
+	static final int CHUNK_ID_OID_LOOKUP = 0x4f49444c; /* "OIDL" */
+
+	static final int CHUNK_ID_COMMIT_DATA = 0x43444154; /* "CDAT" */
+
+	static final int CHUNK_ID_EXTRA_EDGE_LIST = 0x45444745; /* "EDGE" */
+
+	static final int CHUNK_ID_BASE_GRAPHS = 0x42415345; /* "BASE" */
+
+	/**
+	 * First 4 bytes describe the chunk id. Value 0 is a terminating label.
+	 * Other 8 bytes provide the byte-offset in current file for chunk to
+	 * start.
+	 */
+	static final int CHUNK_LOOKUP_WIDTH = 12;
+
+	/** "CGPH", version, hash version, number of chunks, base graph count. */
+	static final int COMMIT_GRAPH_HEADER_SIZE = 8;
+
+	static final int COMMIT_GRAPH_VERSION = 1;
+
+	static final int OID_HASH_VERSION = 1; /* SHA-1 */
+
+	static final int GRAPH_FANOUT_SIZE = 4 * 256;
+
+	/** Parent position used when the commit has no (further) parent. */
+	static final int GRAPH_NO_PARENT = 0x70000000;
+
+	/** Flag set on the second parent if the commit is an octopus merge. */
+	static final int GRAPH_EXTRA_EDGES_NEEDED = 0x80000000;
+
+	/** Flag set on the last parent of an octopus merge in the edge list. */
+	static final int GRAPH_LAST_EDGE = 0x80000000;
+
+	/** Largest topological level that fits into the commit data. */
+	static final int GENERATION_NUMBER_MAX = 0x3FFFFFFF;
+
+	private CommitGraphConstants() {
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_BASE_GRAPHS;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_COMMIT_DATA;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_EXTRA_EDGE_LIST;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_HEADER_SIZE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_MAGIC;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_VERSION;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_FANOUT_SIZE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.OID_HASH_VERSION;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * The loader returns the representation of the commit-graph file content.
+ */
+public class CommitGraphLoader {
+
+	/**
+	 * Read a stand-alone commit-graph from the stream.
+	 * <p>
+	 * The stream is read to the end of the file's trailing checksum. The
+	 * caller is responsible for closing the stream.
+	 *
+	 * @param fd
+	 *            stream to read the commit-graph file from. The stream must
+	 *            be buffered as some small IOs are performed against the
+	 *            stream.
+	 * @return a copy of the commit-graph file in memory
+	 * @throws CommitGraphFormatException
+	 *             the stream does not contain a valid commit-graph, or the
+	 *             commit-graph requires base graphs.
+	 * @throws java.io.IOException
+	 *             the stream cannot be read.
+	 */
+	public static CommitGraph read(InputStream fd)
+			throws CommitGraphFormatException, IOException {
+		return read(fd, CommitGraph.EMPTY, new ObjectId[0]);
+	}
+
+	/**
+	 * Read one layer of a commit-graph chain from the stream.
+	 *
+	 * @param fd
+	 *            stream to read the commit-graph file from. The stream must
+	 *            be buffered as some small IOs are performed against the
+	 *            stream.
+	 * @param base
+	 *            the layers below this one, already combined into a single
+	 *            graph; {@link CommitGraph#EMPTY} for the bottom layer.
+	 * @param baseIds
+	 *            checksums of the layers that make up {@code base}, from the
+	 *            bottom up. They must match the layer's BASE chunk.
+	 * @return the layer, stacked on top of {@code base}.
+	 * @throws CommitGraphFormatException
+	 *             the stream does not contain a valid commit-graph, or the
+	 *             layer was written on top of different base graphs.
+	 * @throws java.io.IOException
+	 *             the stream cannot be read.
+	 */
+	public static CommitGraph read(InputStream fd, CommitGraph base,
+			ObjectId[] baseIds) throws CommitGraphFormatException, IOException {
+		byte[] hdr = new byte[COMMIT_GRAPH_HEADER_SIZE];
+		IO.readFully(fd, hdr, 0, hdr.length);
+
+		int magic = NB.decodeInt32(hdr, 0);
+		if (magic != COMMIT_GRAPH_MAGIC) {
+			throw new CommitGraphFormatException(
+					JGitText.get().notACommitGraph);
+		}
+
+		int v = hdr[4];
+		if (v != COMMIT_GRAPH_VERSION) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().unsupportedCommitGraphVersion,
+					Integer.valueOf(v)));
+		}
+
+		int hashVersion = hdr[5];
+		if (hashVersion != OID_HASH_VERSION) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().unsupportedCommitGraphHashVersion,
+					Integer.valueOf(hashVersion)));
+		}
+
+		int numberOfChunks = hdr[6] & 0xff;
+		int numberOfBaseGraphs = hdr[7] & 0xff;
+		if (numberOfBaseGraphs != baseIds.length) {
+			throw new CommitGraphFormatException(
+					JGitText.get().commitGraphBaseMismatch);
+		}
+
+		byte[] lookupBuffer = new byte[CHUNK_LOOKUP_WIDTH
+				* (numberOfChunks + 1)];
+		IO.readFully(fd, lookupBuffer, 0, lookupBuffer.length);
+
+		int[] chunkIds = new int[numberOfChunks + 1];
+		long[] chunkOffsets = new long[numberOfChunks + 1];
+		for (int i = 0; i <= numberOfChunks; i++) {
+			int p = i * CHUNK_LOOKUP_WIDTH;
+			chunkIds[i] = NB.decodeInt32(lookupBuffer, p);
+			chunkOffsets[i] = NB.decodeInt64(lookupBuffer, p + 4);
+		}
+		if (chunkIds[numberOfChunks] != 0) {
+			throw new CommitGraphFormatException(
+					JGitText.get().commitGraphChunkLookupTableCorrupt);
+		}
+
+		long pos = COMMIT_GRAPH_HEADER_SIZE + lookupBuffer.length;
+		byte[] fanout = null;
+		byte[] oidLookup = null;
+		byte[] commitData = null;
+		byte[] extraEdges = null;
+		byte[] baseGraphs = null;
+		for (int i = 0; i < numberOfChunks; i++) {
+			long chunkOffset = chunkOffsets[i];
+			long nextOffset = chunkOffsets[i + 1];
+			if (chunkOffset != pos || nextOffset < chunkOffset) {
+				throw new CommitGraphFormatException(
+						JGitText.get().commitGraphChunkLookupTableCorrupt);
+			}
+			long len = nextOffset - chunkOffset;
+			if (len > Integer.MAX_VALUE - 8) { // http://stackoverflow.com/a/8381338
+				throw new CommitGraphFormatException(
+						JGitText.get().commitGraphFileIsTooLargeForJgit);
+			}
+
+			byte[] buffer = new byte[(int) len];
+			IO.readFully(fd, buffer, 0, buffer.length);
+			pos = nextOffset;
+
+			int chunkId = chunkIds[i];
+			switch (chunkId) {
+			case CHUNK_ID_OID_FANOUT:
+				fanout = checkNotRepeated(fanout, buffer, chunkId);
+				break;
+			case CHUNK_ID_OID_LOOKUP:
+				oidLookup = checkNotRepeated(oidLookup, buffer, chunkId);
+				break;
+			case CHUNK_ID_COMMIT_DATA:
+				commitData = checkNotRepeated(commitData, buffer, chunkId);
+				break;
+			case CHUNK_ID_EXTRA_EDGE_LIST:
+				extraEdges = checkNotRepeated(extraEdges, buffer, chunkId);
+				break;
+			case CHUNK_ID_BASE_GRAPHS:
+				baseGraphs = checkNotRepeated(baseGraphs, buffer, chunkId);
+				break;
+			default:
+				// Optional chunks (e.g. Bloom filters, corrected commit
+				// dates) which this implementation does not use.
+				break;
+			}
+		}
+
+		fanout = checkNeeded(fanout, CHUNK_ID_OID_FANOUT);
+		oidLookup = checkNeeded(oidLookup, CHUNK_ID_OID_LOOKUP);
+		commitData = checkNeeded(commitData, CHUNK_ID_COMMIT_DATA);
+		if (fanout.length != GRAPH_FANOUT_SIZE) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().commitGraphChunkCorrupt,
+					chunkName(CHUNK_ID_OID_FANOUT)));
+		}
+		if (baseIds.length > 0) {
+			checkBaseGraphs(checkNeeded(baseGraphs, CHUNK_ID_BASE_GRAPHS),
+					baseIds);
+		}
+
+		// Skip over the trailing checksum; callers identify chain layers
+		// by their file name.
+		IO.skipFully(fd, Constants.OBJECT_ID_LENGTH);
+
+		return new CommitGraphV1(base, fanout, oidLookup, commitData,
+				extraEdges);
+	}
+
+	private static byte[] checkNotRepeated(byte[] old, byte[] buffer,
+			int chunkId) throws CommitGraphFormatException {
+		if (old != null) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().commitGraphChunkRepeated,
+					chunkName(chunkId)));
+		}
+		return buffer;
+	}
+
+	private static byte[] checkNeeded(byte[] buffer, int chunkId)
+			throws CommitGraphFormatException {
+		if (buffer == null) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().commitGraphChunkNeeded,
+					chunkName(chunkId)));
+		}
+		return buffer;
+	}
+
+	private static void checkBaseGraphs(byte[] baseGraphs, ObjectId[] baseIds)
+			throws CommitGraphFormatException {
+		if (baseGraphs.length != baseIds.length * Constants.OBJECT_ID_LENGTH) {
+			throw new CommitGraphFormatException(
+					JGitText.get().commitGraphBaseMismatch);
+		}
+		for (int i = 0; i < baseIds.length; i++) {
+			if (baseIds[i].compareTo(baseGraphs,
+					i * Constants.OBJECT_ID_LENGTH) != 0) {
+				throw new CommitGraphFormatException(
+						JGitText.get().commitGraphBaseMismatch);
+			}
+		}
+	}
+
+	private static String chunkName(int chunkId) {
+		byte[] b = new byte[4];
+		NB.encodeInt32(b, 0, chunkId);
+		return new String(b, 0, 4, US_ASCII);
+	}
+
+	private CommitGraphLoader() {
+	}
+}
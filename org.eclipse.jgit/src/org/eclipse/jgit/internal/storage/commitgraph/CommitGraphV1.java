@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EXTRA_EDGES_NEEDED;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_LAST_EDGE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_NO_PARENT;
+
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * One layer of a commit-graph held in memory, stacked on an optional base.
+ */
+class CommitGraphV1 implements CommitGraph {
+	private static final int[] NO_PARENTS = {};
+
+	/** Width of a CDAT record: tree, two parents, generation and time. */
+	static final int COMMIT_DATA_WIDTH = Constants.OBJECT_ID_LENGTH + 16;
+
+	private final CommitGraph base;
+
+	private final int baseCnt;
+
+	private final int[] fanoutTable;
+
+	private final byte[] oidLookup;
+
+	private final byte[] commitData;
+
+	private final byte[] extraEdges;
+
+	private final int commitCnt;
+
+	CommitGraphV1(CommitGraph base, byte[] fanout, byte[] oidLookup,
+			byte[] commitData, byte[] extraEdges)
+			throws CommitGraphFormatException {
+		this.base = base;
+		this.baseCnt = (int) base.getCommitCnt();
+		this.fanoutTable = new int[256];
+		for (int k = 0; k < fanoutTable.length; k++) {
+			fanoutTable[k] = NB.decodeInt32(fanout, k * 4);
+			// Lookups trust the table to bound their search of OIDL.
+			if (fanoutTable[k] < (k == 0 ? 0 : fanoutTable[k - 1])) {
+				throw new CommitGraphFormatException(MessageFormat.format(
+						JGitText.get().commitGraphChunkCorrupt, "OIDF")); //$NON-NLS-1$
+			}
+		}
+		this.oidLookup = oidLookup;
+		this.commitData = commitData;
+		this.extraEdges = extraEdges;
+		this.commitCnt = fanoutTable[255];
+
+		if (commitCnt < 0 || (long) commitCnt
+				* Constants.OBJECT_ID_LENGTH != oidLookup.length) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().commitGraphChunkCorrupt, "OIDL")); //$NON-NLS-1$
+		}
+		if ((long) commitCnt * COMMIT_DATA_WIDTH != commitData.length) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().commitGraphChunkCorrupt, "CDAT")); //$NON-NLS-1$
+		}
+		checkExtraEdges();
+	}
+
+	// Verify every commit with more than two parents finds them in EDGE, so
+	// getCommitData(int) never drops a parent.
+	private void checkExtraEdges() throws CommitGraphFormatException {
+		if (extraEdges != null && extraEdges.length % 4 != 0) {
+			throw new CommitGraphFormatException(MessageFormat.format(
+					JGitText.get().commitGraphChunkCorrupt, "EDGE")); //$NON-NLS-1$
+		}
+		for (int p = 0; p < commitCnt; p++) {
+			int p2 = NB.decodeInt32(commitData,
+					p * COMMIT_DATA_WIDTH + Constants.OBJECT_ID_LENGTH + 4);
+			if ((p2 & GRAPH_EXTRA_EDGES_NEEDED) == 0) {
+				continue;
+			}
+			if (extraEdges == null) {
+				throw new CommitGraphFormatException(MessageFormat.format(
+						JGitText.get().commitGraphChunkNeeded, "EDGE")); //$NON-NLS-1$
+			}
+			long i = (p2 & ~GRAPH_EXTRA_EDGES_NEEDED) * 4L;
+			for (;;) {
+				if (i >= extraEdges.length) {
+					throw new CommitGraphFormatException(MessageFormat.format(
+							JGitText.get().commitGraphChunkCorrupt, "EDGE")); //$NON-NLS-1$
+				}
+				if ((NB.decodeInt32(extraEdges, (int) i)
+						& GRAPH_LAST_EDGE) != 0) {
+					break;
+				}
+				i += 4;
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int findGraphPosition(AnyObjectId commit) {
+		int levelOne = commit.getFirstByte();
+		int high = fanoutTable[levelOne];
+		int low = levelOne == 0 ? 0 : fanoutTable[levelOne - 1];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = commit.compareTo(oidLookup,
+					mid * Constants.OBJECT_ID_LENGTH);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				return baseCnt + mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return base.findGraphPosition(commit);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ObjectId getObjectId(int graphPos) {
+		if (graphPos < baseCnt) {
+			return base.getObjectId(graphPos);
+		}
+		int p = graphPos - baseCnt;
+		if (graphPos < 0 || p >= commitCnt) {
+			return null;
+		}
+		return ObjectId.fromRaw(oidLookup, p * Constants.OBJECT_ID_LENGTH);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CommitData getCommitData(int graphPos) {
+		if (graphPos < baseCnt) {
+			return base.getCommitData(graphPos);
+		}
+		int p = graphPos - baseCnt;
+		if (graphPos < 0 || p >= commitCnt) {
+			return null;
+		}
+
+		int ptr = p * COMMIT_DATA_WIDTH;
+		ObjectId tree = ObjectId.fromRaw(commitData, ptr);
+		ptr += Constants.OBJECT_ID_LENGTH;
+
+		int p1 = NB.decodeInt32(commitData, ptr);
+		int p2 = NB.decodeInt32(commitData, ptr + 4);
+		int[] parents;
+		if (p1 == GRAPH_NO_PARENT) {
+			parents = NO_PARENTS;
+		} else if (p2 == GRAPH_NO_PARENT) {
+			parents = new int[] { p1 };
+		} else if ((p2 & GRAPH_EXTRA_EDGES_NEEDED) == 0) {
+			parents = new int[] { p1, p2 };
+		} else {
+			parents = readExtraEdges(p1, p2 & ~GRAPH_EXTRA_EDGES_NEEDED);
+		}
+
+		// Upper 30 bits are the generation, lower 34 bits the commit time.
+		long data = NB.decodeInt64(commitData, ptr + 8);
+		int generation = (int) (data >>> 34);
+		long commitTime = data & 0x3FFFFFFFFL;
+		return new CommitDataImpl(tree, parents, commitTime, generation);
+	}
+
+	private int[] readExtraEdges(int p1, int edgeIndex) {
+		// checkExtraEdges() verified the list exists and is terminated.
+		int cnt = 1;
+		for (int i = edgeIndex * 4; i < extraEdges.length; i += 4) {
+			cnt++;
+			if ((NB.decodeInt32(extraEdges, i) & GRAPH_LAST_EDGE) != 0) {
+				break;
+			}
+		}
+		int[] parents = new int[cnt];
+		parents[0] = p1;
+		for (int i = 1; i < cnt; i++) {
+			int e = NB.decodeInt32(extraEdges, (edgeIndex + i - 1) * 4);
+			parents[i] = e & ~GRAPH_LAST_EDGE;
+		}
+		return parents;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getCommitCnt() {
+		return baseCnt + commitCnt;
+	}
+
+	private static class CommitDataImpl implements CommitData {
+		private final ObjectId tree;
+
+		private final int[] parents;
+
+		private final long commitTime;
+
+		private final int generation;
+
+		CommitDataImpl(ObjectId tree, int[] parents, long commitTime,
+				int generation) {
+			this.tree = tree;
+			this.parents = parents;
+			this.commitTime = commitTime;
+			this.generation = generation;
+		}
+
+		@Override
+		public ObjectId getTree() {
+			return tree;
+		}
+
+		@Override
+		public int[] getParents() {
+			return parents;
+		}
+
+		@Override
+		public long getCommitTime() {
+			return commitTime;
+		}
+
+		@Override
+		public int getGeneration() {
+			return generation;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_BASE_GRAPHS;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_COMMIT_DATA;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_EXTRA_EDGE_LIST;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_HEADER_SIZE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_MAGIC;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.COMMIT_GRAPH_VERSION;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_EXTRA_EDGES_NEEDED;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_FANOUT_SIZE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_LAST_EDGE;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GRAPH_NO_PARENT;
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.OID_HASH_VERSION;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.annotations.NonNull;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Writes a commit-graph formatted file.
+ * <p>
+ * The file layout follows Git's {@code commit-graph-format.txt}: a header,
+ * the chunk lookup table, the OIDF, OIDL and CDAT chunks, the optional EDGE
+ * and BASE chunks, and a trailing SHA-1 checksum of everything before it.
+ */
+public class CommitGraphWriter {
+
+	private final GraphCommits graphCommits;
+
+	/**
+	 * Create commit-graph writer for these commits.
+	 *
+	 * @param graphCommits
+	 *            the commits which will be writen to the commit-graph.
+	 */
+	public CommitGraphWriter(@NonNull GraphCommits graphCommits) {
+		this.graphCommits = graphCommits;
+	}
+
+	/**
+	 * Write commit-graph to the supplied stream.
+	 *
+	 * @param monitor
+	 *            progress monitor to report the number of items written.
+	 * @param commitGraphStream
+	 *            output stream of commit-graph data. The stream should be
+	 *            buffered by the caller. The caller is responsible for
+	 *            closing the stream.
+	 * @return the trailing checksum of the written file, which names the file
+	 *         when it is a layer of a commit-graph chain.
+	 * @throws IOException
+	 *             if an error occurred
+	 */
+	public ObjectId write(ProgressMonitor monitor,
+			OutputStream commitGraphStream) throws IOException {
+		if (monitor == null) {
+			monitor = NullProgressMonitor.INSTANCE;
+		}
+
+		List<ChunkHeader> chunks = createChunks(monitor);
+		MessageDigest md = Constants.newMessageDigest();
+		DigestOutputStream out = new DigestOutputStream(
+				new BufferedOutputStream(commitGraphStream), md);
+		monitor.beginTask(JGitText.get().writingOutCommitGraph,
+				graphCommits.size());
+		try {
+			writeHeader(out, chunks.size());
+			writeChunkLookup(out, chunks);
+			for (ChunkHeader c : chunks) {
+				c.writer.write(out);
+			}
+			out.on(false);
+			byte[] checksum = md.digest();
+			out.write(checksum);
+			out.flush();
+			return ObjectId.fromRaw(checksum);
+		} finally {
+			monitor.endTask();
+		}
+	}
+
+	private List<ChunkHeader> createChunks(ProgressMonitor monitor) {
+		List<ChunkHeader> chunks = new ArrayList<>(5);
+		int n = graphCommits.size();
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_FANOUT, GRAPH_FANOUT_SIZE,
+				this::writeFanoutTable));
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_LOOKUP,
+				(long) n * Constants.OBJECT_ID_LENGTH, this::writeOidLookUp));
+		chunks.add(new ChunkHeader(CHUNK_ID_COMMIT_DATA,
+				(long) n * CommitGraphV1.COMMIT_DATA_WIDTH,
+				out -> writeCommitData(out, monitor)));
+		if (graphCommits.getExtraEdgeCnt() > 0) {
+			chunks.add(new ChunkHeader(CHUNK_ID_EXTRA_EDGE_LIST,
+					(long) graphCommits.getExtraEdgeCnt() * 4,
+					this::writeExtraEdges));
+		}
+		ObjectId[] baseIds = graphCommits.getBaseIds();
+		if (baseIds.length > 0) {
+			chunks.add(new ChunkHeader(CHUNK_ID_BASE_GRAPHS,
+					(long) baseIds.length * Constants.OBJECT_ID_LENGTH,
+					this::writeBaseGraphs));
+		}
+		return chunks;
+	}
+
+	private void writeHeader(OutputStream out, int numChunks)
+			throws IOException {
+		byte[] headerBuffer = new byte[COMMIT_GRAPH_HEADER_SIZE];
+		NB.encodeInt32(headerBuffer, 0, COMMIT_GRAPH_MAGIC);
+		headerBuffer[4] = (byte) COMMIT_GRAPH_VERSION;
+		headerBuffer[5] = (byte) OID_HASH_VERSION;
+		headerBuffer[6] = (byte) numChunks;
+		headerBuffer[7] = (byte) graphCommits.getBaseIds().length;
+		out.write(headerBuffer);
+	}
+
+	private void writeChunkLookup(OutputStream out, List<ChunkHeader> chunks)
+			throws IOException {
+		int numChunks = chunks.size();
+		long chunkOffset = COMMIT_GRAPH_HEADER_SIZE
+				+ (numChunks + 1) * CHUNK_LOOKUP_WIDTH;
+		byte[] buffer = new byte[CHUNK_LOOKUP_WIDTH];
+		for (ChunkHeader chunk : chunks) {
+			NB.encodeInt32(buffer, 0, chunk.id);
+			NB.encodeInt64(buffer, 4, chunkOffset);
+			out.write(buffer);
+			chunkOffset += chunk.size;
+		}
+		NB.encodeInt32(buffer, 0, 0);
+		NB.encodeInt64(buffer, 4, chunkOffset);
+		out.write(buffer);
+	}
+
+	private void writeFanoutTable(OutputStream out) throws IOException {
+		byte[] tmp = new byte[4];
+		int[] fanout = new int[256];
+		for (RevCommit c : graphCommits) {
+			fanout[c.getFirstByte() & 0xff]++;
+		}
+		for (int i = 1; i < fanout.length; i++) {
+			fanout[i] += fanout[i - 1];
+		}
+		for (int n : fanout) {
+			NB.encodeInt32(tmp, 0, n);
+			out.write(tmp, 0, 4);
+		}
+	}
+
+	private void writeOidLookUp(OutputStream out) throws IOException {
+		byte[] tmp = new byte[Constants.OBJECT_ID_LENGTH];
+		for (RevCommit c : graphCommits) {
+			c.copyRawTo(tmp, 0);
+			out.write(tmp);
+		}
+	}
+
+	private void writeCommitData(OutputStream out, ProgressMonitor monitor)
+			throws IOException {
+		int edgeIndex = 0;
+		byte[] buffer = new byte[CommitGraphV1.COMMIT_DATA_WIDTH];
+		for (RevCommit commit : graphCommits) {
+			commit.getTree().copyRawTo(buffer, 0);
+			int ptr = Constants.OBJECT_ID_LENGTH;
+
+			RevCommit[] parents = commit.getParents();
+			int p1 = GRAPH_NO_PARENT;
+			int p2 = GRAPH_NO_PARENT;
+			if (parents.length > 0) {
+				p1 = position(parents[0]);
+			}
+			if (parents.length == 2) {
+				p2 = position(parents[1]);
+			} else if (parents.length > 2) {
+				p2 = GRAPH_EXTRA_EDGES_NEEDED | edgeIndex;
+				edgeIndex += parents.length - 1;
+			}
+			NB.encodeInt32(buffer, ptr, p1);
+			NB.encodeInt32(buffer, ptr + 4, p2);
+
+			long generation = graphCommits.getGeneration(commit);
+			long commitTime = commit.getCommitTime() & 0x3FFFFFFFFL;
+			NB.encodeInt64(buffer, ptr + 8, (generation << 34) | commitTime);
+			out.write(buffer);
+			monitor.update(1);
+		}
+	}
+
+	private void writeExtraEdges(OutputStream out) throws IOException {
+		byte[] tmp = new byte[4];
+		for (RevCommit commit : graphCommits) {
+			RevCommit[] parents = commit.getParents();
+			if (parents.length <= 2) {
+				continue;
+			}
+			for (int i = 1; i < parents.length; i++) {
+				int edge = position(parents[i]);
+				if (i == parents.length - 1) {
+					edge |= GRAPH_LAST_EDGE;
+				}
+				NB.encodeInt32(tmp, 0, edge);
+				out.write(tmp);
+			}
+		}
+	}
+
+	private void writeBaseGraphs(OutputStream out) throws IOException {
+		byte[] tmp = new byte[Constants.OBJECT_ID_LENGTH];
+		for (ObjectId id : graphCommits.getBaseIds()) {
+			id.copyRawTo(tmp, 0);
+			out.write(tmp);
+		}
+	}
+
+	private int position(RevCommit parent) throws MissingObjectException {
+		int pos = graphCommits.getOidPosition(parent);
+		if (pos < 0) {
+			throw new MissingObjectException(parent, Constants.OBJ_COMMIT);
+		}
+		return pos;
+	}
+
+	@FunctionalInterface
+	private interface ChunkWriter {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private static class ChunkHeader {
+		final int id;
+
+		final long size;
+
+		final ChunkWriter writer;
+
+		ChunkHeader(int id, long size, ChunkWriter writer) {
+			this.id = id;
+			this.size = size;
+			this.writer = writer;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.commitgraph;
+
+import static org.eclipse.jgit.internal.storage.commitgraph.CommitGraphConstants.GENERATION_NUMBER_MAX;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.annotations.NonNull;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * The commits which are used by the commit-graph writer to:
+ * <ul>
+ * <li>List commits in SHA1 order.</li>
+ * <li>Get the position of a specific SHA1 in the list.</li>
+ * <li>Get the generation number of each commit.</li>
+ * </ul>
+ * <p>
+ * When a base graph is supplied only commits missing from the base are
+ * collected; the walk does not descend into commits the base already
+ * describes.
+ */
+public class GraphCommits implements Iterable<RevCommit> {
+
+	/**
+	 * Prepare and create the commits for
+	 * {@link org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter}
+	 * from the RevWalk.
+	 *
+	 * @param pm
+	 *            progress monitor.
+	 * @param wants
+	 *            the list of wanted objects, writer walks commits starting at
+	 *            these. Must not be {@code null}.
+	 * @param walk
+	 *            the RevWalk to use. Must not be {@code null}.
+	 * @return the commits' collection which are used by the commit-graph
+	 *         writer. Never null.
+	 * @throws IOException
+	 *             if an object could not be read.
+	 */
+	public static GraphCommits fromWalk(ProgressMonitor pm,
+			@NonNull Set<? extends ObjectId> wants, @NonNull RevWalk walk)
+			throws IOException {
+		return fromWalk(pm, wants, walk, CommitGraph.EMPTY, new ObjectId[0]);
+	}
+
+	/**
+	 * Prepare the commits for a new layer of a commit-graph chain.
+	 *
+	 * @param pm
+	 *            progress monitor.
+	 * @param wants
+	 *            the list of wanted objects, writer walks commits starting at
+	 *            these. Must not be {@code null}.
+	 * @param walk
+	 *            the RevWalk to use. Must not be {@code null}.
+	 * @param base
+	 *            the existing chain the new layer is stacked on. Commits it
+	 *            already contains are omitted.
+	 * @param baseIds
+	 *            checksums of the layers making up {@code base}, from the
+	 *            bottom up.
+	 * @return the commits' collection which are used by the commit-graph
+	 *         writer. Never null.
+	 * @throws IOException
+	 *             if an object could not be read.
+	 */
+	public static GraphCommits fromWalk(ProgressMonitor pm,
+			@NonNull Set<? extends ObjectId> wants, @NonNull RevWalk walk,
+			@NonNull CommitGraph base, @NonNull ObjectId[] baseIds)
+			throws IOException {
+		walk.setRetainBody(false);
+		RevFlag added = walk.newFlag("graphCommits"); //$NON-NLS-1$
+		List<RevCommit> commits = new ArrayList<>();
+		Deque<RevCommit> pending = new ArrayDeque<>();
+		try {
+			pm.beginTask(JGitText.get().findingCommitsForCommitGraph,
+					ProgressMonitor.UNKNOWN);
+			for (ObjectId id : wants) {
+				RevObject o = peel(walk, id);
+				if (o instanceof RevCommit && !o.has(added)) {
+					o.add(added);
+					pending.push((RevCommit) o);
+				}
+			}
+			while (!pending.isEmpty()) {
+				RevCommit c = pending.pop();
+				if (base.findGraphPosition(c) >= 0) {
+					continue;
+				}
+				walk.parseHeaders(c);
+				commits.add(c);
+				pm.update(1);
+				for (RevCommit p : c.getParents()) {
+					if (!p.has(added)) {
+						p.add(added);
+						pending.push(p);
+					}
+				}
+			}
+		} finally {
+			walk.disposeFlag(added);
+			pm.endTask();
+		}
+		return new GraphCommits(commits, base, baseIds);
+	}
+
+	private static RevObject peel(RevWalk walk, AnyObjectId id)
+			throws IOException {
+		try {
+			return walk.peel(walk.parseAny(id));
+		} catch (MissingObjectException notFound) {
+			// A ref pointing to a missing object cannot contribute commits.
+			return null;
+		}
+	}
+
+	private final List<RevCommit> sortedCommits;
+
+	private final ObjectIdOwnerMap<CommitWithPosition> commitPosMap;
+
+	private final CommitGraph base;
+
+	private final ObjectId[] baseIds;
+
+	private final int baseCnt;
+
+	private int extraEdgeCnt;
+
+	private GraphCommits(List<RevCommit> commits, CommitGraph base,
+			ObjectId[] baseIds) throws MissingObjectException {
+		this.base = base;
+		this.baseIds = baseIds;
+		this.baseCnt = (int) base.getCommitCnt();
+
+		Collections.sort(commits);
+		sortedCommits = commits;
+		commitPosMap = new ObjectIdOwnerMap<>();
+		for (int i = 0; i < commits.size(); i++) {
+			RevCommit c = commits.get(i);
+			if (c.getParentCount() > 2) {
+				extraEdgeCnt += c.getParentCount() - 1;
+			}
+			commitPosMap.add(new CommitWithPosition(c, baseCnt + i));
+		}
+		computeGenerations();
+	}
+
+	private void computeGenerations() throws MissingObjectException {
+		Deque<CommitWithPosition> stack = new ArrayDeque<>();
+		for (CommitWithPosition start : commitPosMap) {
+			if (start.generation != 0) {
+				continue;
+			}
+			stack.push(start);
+			while (!stack.isEmpty()) {
+				CommitWithPosition c = stack.peek();
+				int max = 0;
+				boolean ready = true;
+				for (RevCommit p : c.commit.getParents()) {
+					CommitWithPosition inLayer = commitPosMap.get(p);
+					int gen;
+					if (inLayer != null) {
+						gen = inLayer.generation;
+						if (gen == 0) {
+							stack.push(inLayer);
+							ready = false;
+							continue;
+						}
+					} else {
+						gen = baseGeneration(p);
+					}
+					max = Math.max(max, gen);
+				}
+				if (ready) {
+					c.generation = Math.min(max + 1, GENERATION_NUMBER_MAX);
+					stack.pop();
+				}
+			}
+		}
+	}
+
+	private int baseGeneration(RevCommit p) throws MissingObjectException {
+		int pos = base.findGraphPosition(p);
+		if (pos < 0) {
+			throw new MissingObjectException(p, Constants.OBJ_COMMIT);
+		}
+		return base.getCommitData(pos).getGeneration();
+	}
+
+	/**
+	 * Get the number of commits in this layer.
+	 *
+	 * @return the number of commits in this layer.
+	 */
+	public int size() {
+		return sortedCommits.size();
+	}
+
+	/**
+	 * Get the global commit-graph position of a commit.
+	 *
+	 * @param commit
+	 *            a commit of this layer or of its base.
+	 * @return the position of the commit in the commit-graph chain, or -1 if
+	 *         it is contained in neither.
+	 */
+	public int getOidPosition(AnyObjectId commit) {
+		CommitWithPosition c = commitPosMap.get(commit);
+		if (c != null) {
+			return c.position;
+		}
+		return base.findGraphPosition(commit);
+	}
+
+	/**
+	 * Get the generation number of a commit of this layer.
+	 *
+	 * @param commit
+	 *            a commit of this layer.
+	 * @return the topological level of the commit.
+	 */
+	public int getGeneration(AnyObjectId commit) {
+		CommitWithPosition c = commitPosMap.get(commit);
+		return c != null ? c.generation : 0;
+	}
+
+	int getExtraEdgeCnt() {
+		return extraEdgeCnt;
+	}
+
+	ObjectId[] getBaseIds() {
+		return baseIds;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<RevCommit> iterator() {
+		return sortedCommits.iterator();
+	}
+
+	private static class CommitWithPosition extends ObjectIdOwnerMap.Entry {
+		final RevCommit commit;
+
+		final int position;
+
+		int generation;
+
+		CommitWithPosition(RevCommit commit, int position) {
+			super(commit);
+			this.commit = commit;
+			this.position = position;
+		}
+	}
+}
@@ -134,6 +134,10 @@ DfsBlock readOneBlock(long pos, DfsReader ctx, ReadableChannel rc)
 						DfsText.get().shortReadOfBlock, Long.valueOf(pos),
 						getFileName(), Long.valueOf(0), Long.valueOf(0)));
 
+			if (cache.isDirectMemory()) {
+				return readDirectBlock(pos, size, len, rc, ctx);
+			}
+
 			byte[] buf = new byte[size];
 			rc.position(pos);
 			int cnt = read(rc, ByteBuffer.wrap(buf, 0, size));
@@ -163,6 +167,26 @@ DfsBlock readOneBlock(long pos, DfsReader ctx, ReadableChannel rc)
 		}
 	}
 
+	private DfsBlock readDirectBlock(long pos, int size, long len,
+			ReadableChannel rc, DfsReader ctx) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocateDirect(size);
+		rc.position(pos);
+		int cnt = read(rc, buf);
+		ctx.stats.readBlockBytes += cnt;
+		if (cnt != size) {
+			if (0 <= len) {
+				throw new EOFException(MessageFormat.format(
+						DfsText.get().shortReadOfBlock, Long.valueOf(pos),
+						getFileName(), Integer.valueOf(size),
+						Integer.valueOf(cnt)));
+			}
+		} else if (len < 0) {
+			length = rc.size();
+		}
+		buf.flip();
+		return new DfsBlock(key, pos, buf.slice());
+	}
+
 	static int read(ReadableChannel rc, ByteBuffer buf) throws IOException {
 		int n;
 		do {
@@ -20,26 +20,71 @@
 
 import org.eclipse.jgit.internal.storage.pack.PackOutputStream;
 
-/** A cached slice of a {@link BlockBasedFile}. */
+/**
+ * A cached slice of a {@link BlockBasedFile}.
+ * <p>
+ * The data is held either in a heap array or, if the cache is configured to
+ * use direct memory, in a direct {@link ByteBuffer} outside of the Java heap.
+ * Direct buffers are only read through duplicates, so a block can be shared
+ * by any number of threads.
+ */
 final class DfsBlock {
+	/** Size of the heap arrays staging data of direct blocks for inflaters. */
+	static final int STAGE_SIZE = 8192;
+
 	final DfsStreamKey stream;
 	final long start;
 	final long end;
+
+	/** Data of a heap block; null if the block is stored in direct memory. */
 	private final byte[] block;
 
+	/** Data of a direct block; null if the block is stored on the heap. */
+	private final ByteBuffer direct;
+
 	DfsBlock(DfsStreamKey p, long pos, byte[] buf) {
 		stream = p;
 		start = pos;
 		end = pos + buf.length;
 		block = buf;
+		direct = null;
+	}
+
+	DfsBlock(DfsStreamKey p, long pos, ByteBuffer buf) {
+		stream = p;
+		start = pos;
+		end = pos + buf.limit();
+		block = null;
+		direct = buf;
 	}
 
 	int size() {
-		return block.length;
+		return block != null ? block.length : direct.limit();
+	}
+
+	boolean isDirect() {
+		return direct != null;
+	}
+
+	/**
+	 * Copy this block into direct memory.
+	 *
+	 * @return a direct block with the same content; {@code this} if the block
+	 *         is already direct.
+	 */
+	DfsBlock toDirect() {
+		if (direct != null) {
+			return this;
+		}
+		ByteBuffer buf = ByteBuffer.allocateDirect(block.length);
+		buf.put(block);
+		buf.flip();
+		return new DfsBlock(stream, start, buf);
 	}
 
 	ByteBuffer zeroCopyByteBuffer(int n) {
-		ByteBuffer b = ByteBuffer.wrap(block);
+		ByteBuffer b = block != null ? ByteBuffer.wrap(block)
+				: direct.duplicate();
 		b.position(n);
 		return b;
 	}
@@ -54,42 +99,100 @@ int copy(long pos, byte[] dstbuf, int dstoff, int cnt) {
 	}
 
 	int copy(int p, byte[] b, int o, int n) {
-		n = Math.min(block.length - p, n);
-		System.arraycopy(block, p, b, o, n);
+		n = Math.min(size() - p, n);
+		if (block != null) {
+			System.arraycopy(block, p, b, o, n);
+		} else {
+			ByteBuffer src = direct.duplicate();
+			src.position(p);
+			src.get(b, o, n);
+		}
 		return n;
 	}
 
-	int setInput(long pos, Inflater inf) throws DataFormatException {
+	/**
+	 * Feed the inflater with data from this block.
+	 *
+	 * @param pos
+	 *            position within the file of the first byte to inflate.
+	 * @param inf
+	 *            the inflater.
+	 * @param stage
+	 *            buffer owned by the caller, used to pass data of a direct
+	 *            block to the inflater. It must not be modified until the
+	 *            inflater needs more input.
+	 * @return number of bytes passed to the inflater.
+	 * @throws DataFormatException
+	 *             {@code pos} is past the end of the block.
+	 */
+	int setInput(long pos, Inflater inf, byte[] stage)
+			throws DataFormatException {
 		int ptr = (int) (pos - start);
-		int cnt = block.length - ptr;
+		int cnt = size() - ptr;
 		if (cnt <= 0) {
 			throw new DataFormatException(cnt + " bytes to inflate:" //$NON-NLS-1$
 					+ " at pos=" + pos //$NON-NLS-1$
 					+ "; block.start=" + start //$NON-NLS-1$
 					+ "; ptr=" + ptr //$NON-NLS-1$
-					+ "; block.length=" + block.length); //$NON-NLS-1$
+					+ "; block.length=" + size()); //$NON-NLS-1$
 		}
-		inf.setInput(block, ptr, cnt);
+		if (block != null) {
+			inf.setInput(block, ptr, cnt);
+			return cnt;
+		}
+		// Inflater cannot read a ByteBuffer before Java 11.
+		cnt = copy(ptr, stage, 0, Math.min(cnt, stage.length));
+		inf.setInput(stage, 0, cnt);
 		return cnt;
 	}
 
 	void crc32(CRC32 out, long pos, int cnt) {
 		int ptr = (int) (pos - start);
-		out.update(block, ptr, cnt);
+		if (block != null) {
+			out.update(block, ptr, cnt);
+		} else {
+			ByteBuffer src = direct.duplicate();
+			src.position(ptr);
+			src.limit(ptr + cnt);
+			out.update(src);
+		}
 	}
 
 	void write(PackOutputStream out, long pos, int cnt)
 			throws IOException {
-		out.write(block, (int) (pos - start), cnt);
+		int ptr = (int) (pos - start);
+		if (block != null) {
+			out.write(block, ptr, cnt);
+			return;
+		}
+		byte[] buf = out.getCopyBuffer();
+		while (cnt > 0) {
+			int n = copy(ptr, buf, 0, Math.min(cnt, buf.length));
+			out.write(buf, 0, n);
+			ptr += n;
+			cnt -= n;
+		}
 	}
 
-	void check(Inflater inf, byte[] tmp, long pos, int cnt)
+	void check(Inflater inf, byte[] tmp, byte[] stage, long pos, int cnt)
 			throws DataFormatException {
 		// Unlike inflate() above the exact byte count is known by the caller.
 		// Push all of it in a single invocation to avoid unnecessary loops.
 		//
-		inf.setInput(block, (int) (pos - start), cnt);
-		while (inf.inflate(tmp, 0, tmp.length) > 0)
-			continue;
+		int ptr = (int) (pos - start);
+		if (block != null) {
+			inf.setInput(block, ptr, cnt);
+			while (inf.inflate(tmp, 0, tmp.length) > 0)
+				continue;
+			return;
+		}
+		while (cnt > 0) {
+			int n = copy(ptr, stage, 0, Math.min(cnt, stage.length));
+			inf.setInput(stage, 0, n);
+			while (inf.inflate(tmp, 0, tmp.length) > 0)
+				continue;
+			ptr += n;
+			cnt -= n;
+		}
 	}
 }
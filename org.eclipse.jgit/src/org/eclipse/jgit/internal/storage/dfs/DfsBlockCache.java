@@ -20,6 +20,7 @@
 import java.util.stream.LongStream;
 
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.FrequencySketch;
 import org.eclipse.jgit.internal.storage.pack.PackExt;
 
 /**
@@ -56,6 +57,15 @@
  * The internal hash table does not expand at runtime, instead it is fixed in
  * size at cache creation time. The internal lock table used to gate load
  * invocations is also fixed in size.
+ * <p>
+ * Lookups never take a lock. The cache can be split into several shards (see
+ * {@link DfsBlockCacheConfig#setCacheShards(int)}), each with its own lock and
+ * an equal share of the block limit, so threads loading blocks into different
+ * shards do not serialize on one lock. Each shard of a sharded cache replaces
+ * blocks with W-TinyLFU: a new block is kept by a small clock window, and
+ * then only stays in the shard if it is estimated to be used more often than
+ * the block it would displace. Contention on the shard locks is reported by
+ * {@link #getShardLockContention()} and {@link #getShardLockWaitTime()}.
  */
 public final class DfsBlockCache {
 	private static volatile DfsBlockCache cache;
@@ -110,6 +120,9 @@ public static DfsBlockCache getInstance() {
 	/** Maximum number of bytes the cache should hold. */
 	private final long maxBytes;
 
+	/** Whether blocks are stored in direct memory rather than the heap. */
+	private final boolean directMemory;
+
 	/** Pack files smaller than this size can be copied through the cache. */
 	private final long maxStreamThroughCache;
 
@@ -150,18 +163,14 @@ public static DfsBlockCache getInstance() {
 	 */
 	private final AtomicReference<AtomicLong[]> liveBytes;
 
-	/** Protects the clock and its related data. */
-	private final ReentrantLock clockLock;
+	/** Independent clocks, each owning a share of {@link #maxBytes}. */
+	private final ClockShard[] shards;
 
 	/**
 	 * A consumer of object reference lock wait time milliseconds.  May be used to build a metric.
 	 */
 	private final Consumer<Long> refLockWaitTime;
 
-	/** Current position of the clock. */
-	private Ref clockHand;
-
-	@SuppressWarnings("unchecked")
 	private DfsBlockCache(DfsBlockCacheConfig cfg) {
 		tableSize = tableSize(cfg);
 		if (tableSize < 1) {
@@ -169,26 +178,32 @@ private DfsBlockCache(DfsBlockCacheConfig cfg) {
 		}
 
 		table = new AtomicReferenceArray<>(tableSize);
+		// A single shard keeps the historical fair locks. Sharded caches are
+		// tuned for throughput and let threads barge.
+		boolean fair = cfg.getCacheShards() <= 1;
 		loadLocks = new ReentrantLock[cfg.getConcurrencyLevel()];
 		for (int i = 0; i < loadLocks.length; i++) {
-			loadLocks[i] = new ReentrantLock(true /* fair */);
+			loadLocks[i] = new ReentrantLock(fair);
 		}
 		refLocks = new ReentrantLock[cfg.getConcurrencyLevel()];
 		for (int i = 0; i < refLocks.length; i++) {
-			refLocks[i] = new ReentrantLock(true /* fair */);
+			refLocks[i] = new ReentrantLock(fair);
 		}
 
 		maxBytes = cfg.getBlockLimit();
+		directMemory = cfg.isDirectMemory();
 		maxStreamThroughCache = (long) (maxBytes * cfg.getStreamRatio());
 		blockSize = cfg.getBlockSize();
 		blockSizeShift = Integer.numberOfTrailingZeros(blockSize);
 
-		clockLock = new ReentrantLock(true /* fair */);
-		String none = ""; //$NON-NLS-1$
-		clockHand = new Ref<>(
-				DfsStreamKey.of(new DfsRepositoryDescription(none), none, null),
-				-1, 0, null);
-		clockHand.next = clockHand;
+		// Every shard must be able to hold at least one block.
+		shards = new ClockShard[(int) Math.max(1,
+				Math.min(cfg.getCacheShards(), maxBytes / blockSize))];
+		long shardBytes = Math.max(maxBytes / shards.length, 1);
+		boolean tinyLfu = shards.length > 1;
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new ClockShard(shardBytes, fair, tinyLfu);
+		}
 
 		statHit = new AtomicReference<>(newCounters());
 		statMiss = new AtomicReference<>(newCounters());
@@ -294,6 +309,57 @@ public long[] getEvictions() {
 		return getStatVals(statEvict);
 	}
 
+	/**
+	 * Get the number of shards the cache's clock is split into.
+	 *
+	 * @return the number of shards the cache's clock is split into.
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Get total number of bytes in the cache, per shard.
+	 *
+	 * @return total number of bytes in the cache, per shard.
+	 */
+	public long[] getShardCurrentSize() {
+		long[] r = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			r[i] = shards[i].live.get();
+		}
+		return r;
+	}
+
+	/**
+	 * Get number of times a thread had to wait for a shard's lock, per shard.
+	 *
+	 * @return number of times a thread had to wait for a shard's lock, per
+	 *         shard.
+	 */
+	public long[] getShardLockContention() {
+		long[] r = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			r[i] = shards[i].contended.get();
+		}
+		return r;
+	}
+
+	/**
+	 * Get total time in nanoseconds threads waited for a shard's lock, per
+	 * shard.
+	 *
+	 * @return total time in nanoseconds threads waited for a shard's lock, per
+	 *         shard.
+	 */
+	public long[] getShardLockWaitTime() {
+		long[] r = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			r[i] = shards[i].waitNanos.get();
+		}
+		return r;
+	}
+
 	/**
 	 * Quickly check if the cache contains block 0 of the given stream.
 	 * <p>
@@ -315,10 +381,18 @@ private int hash(int packHash, long off) {
 		return packHash + (int) (off >>> blockSizeShift);
 	}
 
+	private int hash(Ref<?> ref) {
+		return hash(ref.key.hash, ref.position);
+	}
+
 	int getBlockSize() {
 		return blockSize;
 	}
 
+	boolean isDirectMemory() {
+		return directMemory;
+	}
+
 	private static int tableSize(DfsBlockCacheConfig cfg) {
 		final int wsz = cfg.getBlockSize();
 		final long limit = cfg.getBlockLimit();
@@ -361,7 +435,7 @@ DfsBlock getOrLoad(BlockBasedFile file, long position, DfsReader ctx,
 			return v;
 		}
 
-		reserveSpace(blockSize, key);
+		ClockShard shard = reserveSpace(blockSize, key, position);
 		ReentrantLock regionLock = lockFor(key, position);
 		regionLock.lock();
 		try {
@@ -371,7 +445,7 @@ DfsBlock getOrLoad(BlockBasedFile file, long position, DfsReader ctx,
 				if (v != null) {
 					ctx.stats.blockCacheHit++;
 					getStat(statHit, key).incrementAndGet();
-					creditSpace(blockSize, key);
+					creditSpace(blockSize, shard, key);
 					return v;
 				}
 			}
@@ -383,7 +457,7 @@ DfsBlock getOrLoad(BlockBasedFile file, long position, DfsReader ctx,
 				credit = false;
 			} finally {
 				if (credit) {
-					creditSpace(blockSize, key);
+					creditSpace(blockSize, shard, key);
 				}
 			}
 			if (position != v.start) {
@@ -402,7 +476,7 @@ DfsBlock getOrLoad(BlockBasedFile file, long position, DfsReader ctx,
 				}
 				e2 = table.get(slot);
 			}
-			addToClock(ref, blockSize - v.size());
+			addToClock(ref, blockSize - v.size(), shard);
 		} finally {
 			regionLock.unlock();
 		}
@@ -415,70 +489,102 @@ DfsBlock getOrLoad(BlockBasedFile file, long position, DfsReader ctx,
 		return getOrLoad(file, requestedPosition, ctx, fileChannel);
 	}
 
-	@SuppressWarnings("unchecked")
-	private void reserveSpace(long reserve, DfsStreamKey key) {
-		clockLock.lock();
+	// In a sharded cache entries larger than their shard are not cached:
+	// evicting the whole shard would still not make room for them. A single
+	// shard admits them, evicting everything else, as it always has.
+	private boolean fitsShard(long size, DfsStreamKey key, long position) {
+		return shards.length == 1
+				|| size <= shardFor(key, position).maxBytes;
+	}
+
+	private ClockShard reserveSpace(long reserve, DfsStreamKey key,
+			long position) {
+		ClockShard shard = shardFor(key, position);
+		shard.lock();
 		try {
-			long live = LongStream.of(getCurrentSize()).sum() + reserve;
-			if (maxBytes < live) {
-				Ref prev = clockHand;
-				Ref hand = clockHand.next;
-				do {
-					if (hand.hot) {
-						// Value was recently touched. Clear
-						// hot and give it another chance.
-						hand.hot = false;
-						prev = hand;
-						hand = hand.next;
-						continue;
-					} else if (prev == hand)
+			long live = shard.live.addAndGet(reserve);
+			if (shard.window != null) {
+				// Make room in the window for the new entry, moving the
+				// oldest unused entries to the main clock or evicting them.
+				while (shard.window.bytes + reserve > shard.maxWindow) {
+					Ref<?> candidate = shard.window.victim();
+					if (candidate == null) {
 						break;
-
-					// No recent access since last scan, kill
-					// value and remove from clock.
-					Ref dead = hand;
-					hand = hand.next;
-					prev.next = hand;
-					dead.next = null;
-					dead.value = null;
-					live -= dead.size;
-					getStat(liveBytes, dead.key).addAndGet(-dead.size);
-					getStat(statEvict, dead.key).incrementAndGet();
-				} while (maxBytes < live);
-				clockHand = prev;
+					}
+					shard.window.unlink(candidate);
+					live = admit(shard, candidate);
+				}
+			}
+			while (shard.maxBytes < live) {
+				Clock from = shard.main;
+				Ref<?> dead = from.victim();
+				if (dead == null && shard.window != null) {
+					from = shard.window;
+					dead = from.victim();
+				}
+				if (dead == null) {
+					break;
+				}
+				from.unlink(dead);
+				live = evict(shard, dead);
 			}
 			getStat(liveBytes, key).addAndGet(reserve);
 		} finally {
-			clockLock.unlock();
+			shard.lock.unlock();
 		}
+		return shard;
 	}
 
-	private void creditSpace(long credit, DfsStreamKey key) {
-		clockLock.lock();
-		try {
-			getStat(liveBytes, key).addAndGet(-credit);
-		} finally {
-			clockLock.unlock();
+	private long admit(ClockShard shard, Ref<?> candidate) {
+		int freq = shard.sketch.frequency(hash(candidate));
+		long maxMain = shard.maxBytes - shard.maxWindow;
+		while (shard.main.bytes + candidate.size > maxMain) {
+			Ref<?> victim = shard.main.victim();
+			if (victim == null
+					|| freq <= shard.sketch.frequency(hash(victim))) {
+				return evict(shard, candidate);
+			}
+			shard.main.unlink(victim);
+			evict(shard, victim);
 		}
+		shard.main.add(candidate);
+		return shard.live.get();
 	}
 
-	@SuppressWarnings("unchecked")
-	private void addToClock(Ref ref, long credit) {
-		clockLock.lock();
+	private long evict(ClockShard shard, Ref<?> dead) {
+		dead.next = null;
+		dead.value = null;
+		getStat(liveBytes, dead.key).addAndGet(-dead.size);
+		getStat(statEvict, dead.key).incrementAndGet();
+		return shard.live.addAndGet(-dead.size);
+	}
+
+	private void creditSpace(long credit, ClockShard shard, DfsStreamKey key) {
+		shard.live.addAndGet(-credit);
+		getStat(liveBytes, key).addAndGet(-credit);
+	}
+
+	private void addToClock(Ref<?> ref, long credit, ClockShard shard) {
+		if (credit != 0) {
+			creditSpace(credit, shard, ref.key);
+		}
+		shard.lock();
 		try {
-			if (credit != 0) {
-				getStat(liveBytes, ref.key).addAndGet(-credit);
+			if (shard.window != null) {
+				shard.sketch.increment(hash(ref));
+				shard.window.add(ref);
+			} else {
+				shard.main.add(ref);
 			}
-			Ref ptr = clockHand;
-			ref.next = ptr.next;
-			ptr.next = ref;
-			clockHand = ref;
 		} finally {
-			clockLock.unlock();
+			shard.lock.unlock();
 		}
 	}
 
 	void put(DfsBlock v) {
+		if (directMemory) {
+			v = v.toDirect();
+		}
 		put(v.stream, v.start, v.size(), v);
 	}
 
@@ -527,7 +633,10 @@ <T> Ref<T> getOrLoadRef(
 			ref = loader.load();
 			ref.hot = true;
 			// Reserve after loading to get the size of the object
-			reserveSpace(ref.size, key);
+			if (!fitsShard(ref.size, key, position)) {
+				return ref;
+			}
+			ClockShard shard = reserveSpace(ref.size, key, position);
 			for (;;) {
 				HashEntry n = new HashEntry(clean(e2), ref);
 				if (table.compareAndSet(slot, e2, n)) {
@@ -535,7 +644,7 @@ <T> Ref<T> getOrLoadRef(
 				}
 				e2 = table.get(slot);
 			}
-			addToClock(ref, 0);
+			addToClock(ref, 0, shard);
 		} finally {
 			regionLock.unlock();
 		}
@@ -554,7 +663,10 @@ <T> Ref<T> put(DfsStreamKey key, long pos, long size, T v) {
 			return ref;
 		}
 
-		reserveSpace(size, key);
+		if (!fitsShard(size, key, pos)) {
+			return new Ref<>(key, pos, size, v);
+		}
+		ClockShard shard = reserveSpace(size, key, pos);
 		ReentrantLock regionLock = lockFor(key, pos);
 		regionLock.lock();
 		try {
@@ -562,7 +674,7 @@ <T> Ref<T> put(DfsStreamKey key, long pos, long size, T v) {
 			if (e2 != e1) {
 				ref = scanRef(e2, key, pos);
 				if (ref != null) {
-					creditSpace(size, key);
+					creditSpace(size, shard, key);
 					return ref;
 				}
 			}
@@ -576,7 +688,7 @@ <T> Ref<T> put(DfsStreamKey key, long pos, long size, T v) {
 				}
 				e2 = table.get(slot);
 			}
-			addToClock(ref, 0);
+			addToClock(ref, 0, shard);
 		} finally {
 			regionLock.unlock();
 		}
@@ -622,6 +734,10 @@ private ReentrantLock lockFor(DfsStreamKey key, long position) {
 		return loadLocks[(hash(key.hash, position) >>> 1) % loadLocks.length];
 	}
 
+	private ClockShard shardFor(DfsStreamKey key, long position) {
+		return shards[(hash(key.hash, position) >>> 1) % shards.length];
+	}
+
 	private ReentrantLock lockForRef(DfsStreamKey key) {
 		return refLocks[(key.hash >>> 1) % refLocks.length];
 	}
@@ -673,6 +789,154 @@ private static HashEntry clean(HashEntry top) {
 		return n == top.next ? top : new HashEntry(n, top.ref);
 	}
 
+	/**
+	 * A share of the cache with its own lock and replacement policy.
+	 * <p>
+	 * An unsharded cache is a single clock. When the cache is sharded each
+	 * shard runs W-TinyLFU instead: new entries join a small window clock
+	 * holding about 1% of the shard, and an entry swept out of the window
+	 * joins the main clock only if a {@link FrequencySketch} estimates it is
+	 * used more often than the main clock's victim. Lookups never touch the
+	 * sketch; an entry is counted when it is loaded and each time a sweep
+	 * finds it was used, so readers still do not take a lock.
+	 */
+	private final class ClockShard {
+		final long maxBytes;
+
+		/** Protects the clocks and the sketch. */
+		final ReentrantLock lock;
+
+		/** Number of bytes currently held by blocks in this shard. */
+		final AtomicLong live = new AtomicLong();
+
+		/** Number of times {@link #lock} was already held. */
+		final AtomicLong contended = new AtomicLong();
+
+		/** Nanoseconds spent waiting for {@link #lock}. */
+		final AtomicLong waitNanos = new AtomicLong();
+
+		/** Estimated use of entries; null if the shard is a single clock. */
+		final FrequencySketch sketch;
+
+		/** Clock new entries are added to; null without a sketch. */
+		final Clock window;
+
+		/** Number of bytes {@link #window} may hold. */
+		final long maxWindow;
+
+		/** Clock holding the entries admitted to the shard. */
+		final Clock main;
+
+		ClockShard(long maxBytes, boolean fair, boolean tinyLfu) {
+			this.maxBytes = maxBytes;
+			this.lock = new ReentrantLock(fair);
+			if (tinyLfu) {
+				sketch = new FrequencySketch(maxBytes / blockSize);
+				window = new Clock(sketch);
+				maxWindow = Math.min(Math.max(maxBytes / 100, blockSize),
+						maxBytes);
+			} else {
+				sketch = null;
+				window = null;
+				maxWindow = 0;
+			}
+			main = new Clock(sketch);
+		}
+
+		void lock() {
+			// tryLock() barges even on a fair lock, so an uncontended
+			// shard never queues behind other threads.
+			if (lock.tryLock()) {
+				return;
+			}
+			contended.incrementAndGet();
+			long start = System.nanoTime();
+			lock.lock();
+			waitNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * A ring of entries swept by a clock hand, giving each entry one chance
+	 * to have been accessed since the last sweep. Guarded by the lock of the
+	 * shard owning it.
+	 */
+	private final class Clock {
+		/** Empty entry which is never evicted. */
+		final Ref<?> sentinel;
+
+		/** Entries used during a sweep are counted here, if not null. */
+		private final FrequencySketch sketch;
+
+		/** Current position of the clock; new entries are added after it. */
+		Ref<?> hand;
+
+		/** Number of bytes held by entries linked into the ring. */
+		long bytes;
+
+		Clock(FrequencySketch sketch) {
+			this.sketch = sketch;
+			String none = ""; //$NON-NLS-1$
+			sentinel = new Ref<>(
+					DfsStreamKey.of(new DfsRepositoryDescription(none), none,
+							null),
+					-1, 0, null);
+			sentinel.next = sentinel;
+			hand = sentinel;
+		}
+
+		/**
+		 * Advance the hand to the next entry not accessed since the last
+		 * sweep, clearing the hot flag of the entries passed.
+		 *
+		 * @return the entry following {@link #hand}, or null if the ring is
+		 *         empty.
+		 */
+		Ref<?> victim() {
+			Ref<?> prev = hand;
+			for (;;) {
+				Ref<?> r = prev.next;
+				if (r == sentinel) {
+					// Never unlinked, the ring is never empty.
+					if (r.next == r) {
+						hand = r;
+						return null;
+					}
+				} else if (r.hot) {
+					// Value was recently touched. Clear
+					// hot and give it another chance.
+					r.hot = false;
+					if (sketch != null) {
+						sketch.increment(hash(r));
+					}
+				} else {
+					hand = prev;
+					return r;
+				}
+				prev = r;
+			}
+		}
+
+		/**
+		 * Remove the entry returned by {@link #victim()}. Its next pointer is
+		 * left unchanged so the hash table still sees it as live.
+		 *
+		 * @param r
+		 *            the entry following {@link #hand}.
+		 */
+		void unlink(Ref<?> r) {
+			hand.next = r.next;
+			bytes -= r.size;
+		}
+
+		void add(Ref<?> r) {
+			r.next = hand.next;
+			hand.next = r;
+			hand = r;
+			bytes += r.size;
+		}
+	}
+
 	private static final class HashEntry {
 		/** Next entry in the hash table's chain list. */
 		final HashEntry next;
@@ -691,7 +955,7 @@ private static final class HashEntry {
 		final long position;
 		final long size;
 		volatile T value;
-		Ref next;
+		Ref<?> next;
 		volatile boolean hot;
 
 		Ref(DfsStreamKey key, long position, long size, T v) {
@@ -14,7 +14,9 @@
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_DFS_SECTION;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_BLOCK_LIMIT;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_BLOCK_SIZE;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_CACHE_SHARDS;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_CONCURRENCY_LEVEL;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_DIRECT_MEMORY;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_STREAM_RATIO;
 
 import java.text.MessageFormat;
@@ -38,6 +40,8 @@ public class DfsBlockCacheConfig {
 	private int blockSize;
 	private double streamRatio;
 	private int concurrencyLevel;
+	private int cacheShards;
+	private boolean directMemory;
 
 	private Consumer<Long> refLock;
 
@@ -49,6 +53,7 @@ public DfsBlockCacheConfig() {
 		setBlockSize(64 * KB);
 		setStreamRatio(0.30);
 		setConcurrencyLevel(32);
+		setCacheShards(1);
 	}
 
 	/**
@@ -139,6 +144,75 @@ public DfsBlockCacheConfig setConcurrencyLevel(
 		return this;
 	}
 
+	/**
+	 * Get the number of shards the cache's replacement clock is split into.
+	 *
+	 * @return the number of shards the cache's replacement clock is split
+	 *         into. <b>Default is 1.</b>
+	 * @since 5.8
+	 */
+	public int getCacheShards() {
+		return cacheShards;
+	}
+
+	/**
+	 * Set the number of shards the cache's replacement clock is split into.
+	 * <p>
+	 * Each shard evicts independently under its own lock and may hold an
+	 * equal share of {@link #getBlockLimit()}, reducing contention between
+	 * threads loading blocks concurrently. With more than one shard the locks
+	 * used to serialize loads of the same block are also non-fair, each shard
+	 * replaces blocks with W-TinyLFU rather than a plain clock, and entries
+	 * larger than a shard are not cached. A single shard keeps the plain
+	 * clock, which caches an entry of any size by evicting everything else.
+	 *
+	 * @param newShards
+	 *            number of shards; must be positive. The cache uses fewer
+	 *            shards if the block limit cannot give each shard at least
+	 *            one block.
+	 * @return {@code this}
+	 * @since 5.8
+	 */
+	public DfsBlockCacheConfig setCacheShards(int newShards) {
+		if (newShards <= 0) {
+			throw new IllegalArgumentException(MessageFormat.format(
+					JGitText.get().cacheShardsNotPositive,
+					Integer.valueOf(newShards)));
+		}
+		cacheShards = newShards;
+		return this;
+	}
+
+	/**
+	 * Whether cached blocks are stored in direct memory.
+	 *
+	 * @return true if cached blocks are stored in direct memory, outside of
+	 *         the Java heap. <b>Default is false.</b>
+	 * @since 5.8
+	 */
+	public boolean isDirectMemory() {
+		return directMemory;
+	}
+
+	/**
+	 * Set whether cached blocks are stored in direct memory.
+	 * <p>
+	 * Direct memory is not scanned by the garbage collector, so a large cache
+	 * does not grow the old generation or lengthen collections. The JVM must
+	 * allow at least {@link #getBlockLimit()} bytes of direct memory, see
+	 * {@code -XX:MaxDirectMemorySize}. Memory of an evicted block is released
+	 * once no reader uses it any more.
+	 *
+	 * @param direct
+	 *            true to store cached blocks in direct memory.
+	 * @return {@code this}
+	 * @since 5.8
+	 */
+	public DfsBlockCacheConfig setDirectMemory(boolean direct) {
+		directMemory = direct;
+		return this;
+	}
+
 	/**
 	 * Get highest percentage of {@link #getBlockLimit()} a single pack can
 	 * occupy while being copied by the pack reuse strategy.
@@ -224,6 +298,18 @@ public DfsBlockCacheConfig fromConfig(Config rc) {
 				CONFIG_KEY_CONCURRENCY_LEVEL,
 				getConcurrencyLevel()));
 
+		setCacheShards(rc.getInt(
+				CONFIG_CORE_SECTION,
+				CONFIG_DFS_SECTION,
+				CONFIG_KEY_CACHE_SHARDS,
+				getCacheShards()));
+
+		setDirectMemory(rc.getBoolean(
+				CONFIG_CORE_SECTION,
+				CONFIG_DFS_SECTION,
+				CONFIG_KEY_DIRECT_MEMORY,
+				isDirectMemory()));
+
 		String v = rc.getString(
 				CONFIG_CORE_SECTION,
 				CONFIG_DFS_SECTION,
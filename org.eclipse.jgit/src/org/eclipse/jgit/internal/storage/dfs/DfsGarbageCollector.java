@@ -19,9 +19,11 @@
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.UNREACHABLE_GARBAGE;
 import static org.eclipse.jgit.internal.storage.dfs.DfsPackCompactor.configureReftable;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.BITMAP_INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.COMMIT_GRAPH;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.REFTABLE;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.REVERSE_INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackWriter.NONE;
 
 import java.io.IOException;
@@ -37,6 +39,8 @@
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
 import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource;
 import org.eclipse.jgit.internal.storage.file.PackIndex;
 import org.eclipse.jgit.internal.storage.file.PackReverseIndex;
@@ -80,6 +84,7 @@ public class DfsGarbageCollector {
 	private boolean includeDeletes;
 	private long reftableInitialMinUpdateIndex = 1;
 	private long reftableInitialMaxUpdateIndex = 1;
+	private boolean writeCommitGraph;
 
 	// See packIsCoalesceableGarbage(), below, for how these two variables
 	// interact.
@@ -166,6 +171,23 @@ public DfsGarbageCollector setConvertToReftable(boolean convert) {
 		return this;
 	}
 
+	/**
+	 * Toggle commit-graph generation.
+	 * <p>
+	 * False by default. When enabled, a commit-graph covering all commits
+	 * reachable from the repository's references is stored alongside the GC
+	 * pack.
+	 *
+	 * @param enable
+	 *            whether to write a commit-graph.
+	 * @return {@code this}
+	 * @since 5.8
+	 */
+	public DfsGarbageCollector setWriteCommitGraph(boolean enable) {
+		writeCommitGraph = enable;
+		return this;
+	}
+
 	/**
 	 * Whether the garbage collector will include tombstones for deleted
 	 * references in the reftable.
@@ -677,6 +699,16 @@ private DfsPackDescription writePack(PackSource source, PackWriter pw,
 			pack.setIndexVersion(pw.getIndexVersion());
 		}
 
+		if (packConfig.isWriteReverseIndex()) {
+			try (DfsOutputStream out = objdb.writeFile(pack, REVERSE_INDEX)) {
+				CountingOutputStream cnt = new CountingOutputStream(out);
+				pw.writeReverseIndex(cnt);
+				pack.addFileExt(REVERSE_INDEX);
+				pack.setFileSize(REVERSE_INDEX, cnt.getCount());
+				pack.setBlockSize(REVERSE_INDEX, out.blockSize());
+			}
+		}
+
 		if (pw.prepareBitmapIndex(pm)) {
 			try (DfsOutputStream out = objdb.writeFile(pack, BITMAP_INDEX)) {
 				CountingOutputStream cnt = new CountingOutputStream(out);
@@ -687,6 +719,10 @@ private DfsPackDescription writePack(PackSource source, PackWriter pw,
 			}
 		}
 
+		if (source == GC && writeCommitGraph) {
+			writeCommitGraph(pack, pm);
+		}
+
 		PackStatistics stats = pw.getStatistics();
 		pack.setPackStats(stats);
 		pack.setLastModified(startTimeMillis);
@@ -696,6 +732,35 @@ private DfsPackDescription writePack(PackSource source, PackWriter pw,
 		return pack;
 	}
 
+	private void writeCommitGraph(DfsPackDescription pack, ProgressMonitor pm)
+			throws IOException {
+		Set<ObjectId> allTips = new HashSet<>();
+		for (Ref ref : refsBefore) {
+			if (ref.isSymbolic() || ref.getObjectId() == null) {
+				continue;
+			}
+			if (ref.getPeeledObjectId() != null) {
+				allTips.add(ref.getPeeledObjectId());
+			} else {
+				allTips.add(ref.getObjectId());
+			}
+		}
+		if (allTips.isEmpty()) {
+			return;
+		}
+
+		try (DfsOutputStream out = objdb.writeFile(pack, COMMIT_GRAPH);
+				RevWalk pool = new RevWalk(ctx)) {
+			CommitGraphWriter writer = new CommitGraphWriter(
+					GraphCommits.fromWalk(pm, allTips, pool));
+			CountingOutputStream cnt = new CountingOutputStream(out);
+			writer.write(pm, cnt);
+			pack.addFileExt(COMMIT_GRAPH);
+			pack.setFileSize(COMMIT_GRAPH, cnt.getCount());
+			pack.setBlockSize(COMMIT_GRAPH, out.blockSize());
+		}
+	}
+
 	private void writeReftable() throws IOException {
 		if (reftableConfig != null) {
 			DfsPackDescription pack = objdb.newPack(GC);
@@ -327,6 +327,7 @@ private class PackStream extends OutputStream {
 		private long currPos; // Position of currBuf[0] in the output stream.
 		private int currPtr; // Number of bytes in currBuf.
 		private byte[] currBuf;
+		private byte[] inflaterInput; // Stages direct blocks for inflation.
 
 		final CRC32 crc32;
 		final DeflaterOutputStream compress;
@@ -473,8 +474,13 @@ else if (n == 0)
 
 		private int setInput(long pos, Inflater inf)
 				throws IOException, DataFormatException {
-			if (pos < currPos)
-				return getOrLoadBlock(pos).setInput(pos, inf);
+			if (pos < currPos) {
+				DfsBlock b = getOrLoadBlock(pos);
+				if (b.isDirect() && inflaterInput == null) {
+					inflaterInput = new byte[DfsBlock.STAGE_SIZE];
+				}
+				return b.setInput(pos, inf, inflaterInput);
+			}
 			if (pos < currPos + currPtr) {
 				int s = (int) (pos - currPos);
 				int n = currPtr - s;
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.dfs;
+
+import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.COMPACT;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.MULTI_PACK_INDEX;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackList;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexWriter;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.util.io.CountingOutputStream;
+
+/**
+ * Writes a multi-pack-index covering all packs of a DFS repository.
+ * <p>
+ * The multi-pack-index is stored as its own pack description, holding no
+ * pack, and replaces the previous one when committed. Readers locate objects
+ * of the covered packs with a single lookup, and search the packs added after
+ * it was written one by one.
+ * <p>
+ * Packs removed after the multi-pack-index was written are tolerated, the
+ * readers then fall back to searching all packs for the affected objects.
+ * Applications should write a new multi-pack-index after a garbage
+ * collection, or once enough packs were received.
+ */
+public class DfsMultiPackIndexWriter {
+	private final DfsRepository repo;
+
+	private DfsPackDescription outDesc;
+
+	/**
+	 * Initialize a multi-pack-index writer.
+	 *
+	 * @param repository
+	 *            repository whose packs are indexed.
+	 */
+	public DfsMultiPackIndexWriter(DfsRepository repository) {
+		repo = repository;
+	}
+
+	/**
+	 * Write and commit the multi-pack-index.
+	 *
+	 * @param pm
+	 *            progress monitor to receive updates on.
+	 * @return true if a multi-pack-index was written; false if the repository
+	 *         has no packs.
+	 * @throws java.io.IOException
+	 *             the multi-pack-index cannot be written.
+	 */
+	public boolean write(ProgressMonitor pm) throws IOException {
+		if (pm == null) {
+			pm = NullProgressMonitor.INSTANCE;
+		}
+
+		DfsObjDatabase objdb = repo.getObjectDatabase();
+		PackList packList = objdb.scanPacks(objdb.getPackList());
+		if (packList.packs.length == 0) {
+			return false;
+		}
+
+		boolean rollback = true;
+		outDesc = objdb.newPack(COMPACT);
+		try (DfsReader ctx = objdb.newReader()) {
+			Map<String, PackIndex> indexes = new LinkedHashMap<>();
+			for (DfsPackFile pack : packList.packs) {
+				indexes.put(pack.getPackDescription().getFileName(INDEX),
+						pack.getPackIndex(ctx));
+			}
+
+			try (DfsOutputStream out = objdb.writeFile(outDesc,
+					MULTI_PACK_INDEX)) {
+				CountingOutputStream cnt = new CountingOutputStream(out);
+				new MultiPackIndexWriter(indexes).write(pm, cnt);
+				outDesc.addFileExt(MULTI_PACK_INDEX);
+				outDesc.setFileSize(MULTI_PACK_INDEX, cnt.getCount());
+				outDesc.setBlockSize(MULTI_PACK_INDEX, out.blockSize());
+			}
+
+			List<DfsPackDescription> replaces = packList.midxDescription != null
+					? Collections.singletonList(packList.midxDescription)
+					: null;
+			objdb.commitPack(Collections.singletonList(outDesc), replaces);
+			rollback = false;
+			return true;
+		} finally {
+			if (rollback) {
+				objdb.rollbackPack(Collections.singletonList(outDesc));
+			}
+		}
+	}
+
+	/**
+	 * Get the description of the written multi-pack-index.
+	 *
+	 * @return the description; null if {@link #write(ProgressMonitor)} was
+	 *         not called.
+	 */
+	public DfsPackDescription getNewMultiPackIndex() {
+		return outDesc;
+	}
+}
@@ -11,9 +11,16 @@
 package org.eclipse.jgit.internal.storage.dfs;
 
 import static java.util.stream.Collectors.joining;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.MULTI_PACK_INDEX;
 
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -26,6 +33,9 @@
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndex;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexFormatException;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexLoader;
 import org.eclipse.jgit.internal.storage.pack.PackExt;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.ObjectDatabase;
@@ -537,7 +547,8 @@ void addPack(DfsPackFile newPack) throws IOException {
 			DfsPackFile[] packs = new DfsPackFile[1 + o.packs.length];
 			packs[0] = newPack;
 			System.arraycopy(o.packs, 0, packs, 1, o.packs.length);
-			n = new PackListImpl(packs, o.reftables);
+			n = new PackListImpl(packs, o.reftables, o.midxDescription,
+					o.midx);
 		} while (!packList.compareAndSet(o, n));
 	}
 
@@ -562,7 +573,8 @@ void addReftable(DfsPackDescription add, Set<DfsPackDescription> remove)
 				}
 			}
 			tables.add(new DfsReftable(add));
-			n = new PackListImpl(o.packs, tables.toArray(new DfsReftable[0]));
+			n = new PackListImpl(o.packs, tables.toArray(new DfsReftable[0]),
+					o.midxDescription, o.midx);
 		} while (!packList.compareAndSet(o, n));
 	}
 
@@ -596,8 +608,14 @@ private PackList scanPacksImpl(PackList old) throws IOException {
 
 		List<DfsPackFile> newPacks = new ArrayList<>(scanned.size());
 		List<DfsReftable> newReftables = new ArrayList<>(scanned.size());
+		DfsPackDescription midxDesc = null;
 		boolean foundNew = false;
 		for (DfsPackDescription dsc : scanned) {
+			if (dsc.hasFileExt(MULTI_PACK_INDEX) && (midxDesc == null
+					|| midxDesc.getLastModified() < dsc.getLastModified())) {
+				midxDesc = dsc;
+			}
+
 			DfsPackFile oldPack = packs.remove(dsc);
 			if (oldPack != null) {
 				newPacks.add(oldPack);
@@ -615,6 +633,16 @@ private PackList scanPacksImpl(PackList old) throws IOException {
 			}
 		}
 
+		MultiPackIndex midx = null;
+		if (midxDesc != null && midxDesc.equals(old.midxDescription)) {
+			midx = old.midx;
+		} else if (midxDesc != null) {
+			midx = readMultiPackIndex(midxDesc);
+			foundNew = true;
+		} else if (old.midxDescription != null) {
+			foundNew = true;
+		}
+
 		if (newPacks.isEmpty() && newReftables.isEmpty())
 			return new PackListImpl(NO_PACKS.packs, NO_PACKS.reftables);
 		if (!foundNew) {
@@ -624,7 +652,31 @@ private PackList scanPacksImpl(PackList old) throws IOException {
 		Collections.sort(newReftables, reftableComparator());
 		return new PackListImpl(
 				newPacks.toArray(new DfsPackFile[0]),
-				newReftables.toArray(new DfsReftable[0]));
+				newReftables.toArray(new DfsReftable[0]),
+				midx != null ? midxDesc : null, midx);
+	}
+
+	private MultiPackIndex readMultiPackIndex(DfsPackDescription desc)
+			throws IOException {
+		try (ReadableChannel rc = openFile(desc, MULTI_PACK_INDEX)) {
+			InputStream in = Channels.newInputStream(rc);
+			int wantSize = 8192;
+			int bs = rc.blockSize();
+			if (0 < bs && bs < wantSize) {
+				bs = (wantSize / bs) * bs;
+			} else if (bs <= 0) {
+				bs = wantSize;
+			}
+			return MultiPackIndexLoader.read(new BufferedInputStream(in, bs));
+		} catch (EOFException e) {
+			throw new IOException(MessageFormat.format(
+					DfsText.get().shortReadOfIndex,
+					desc.getFileName(MULTI_PACK_INDEX)), e);
+		} catch (FileNotFoundException | MultiPackIndexFormatException e) {
+			// Removed by a concurrent writer, or unusable. The index only
+			// accelerates lookups, search the packs one by one.
+			return null;
+		}
 	}
 
 	private static Map<DfsPackDescription, DfsPackFile> packMap(PackList old) {
@@ -679,11 +731,79 @@ public abstract static class PackList {
 		/** All known reftables, sorted. */
 		public final DfsReftable[] reftables;
 
+		/** Description holding {@link #midx}; null if there is none. */
+		final DfsPackDescription midxDescription;
+
+		/** Multi-pack-index of the packs; null if there is none. */
+		final MultiPackIndex midx;
+
+		/**
+		 * Known packs by their id in {@link #midx}; null for packs which no
+		 * longer exist.
+		 */
+		private final DfsPackFile[] midxPacks;
+
+		/** Packs not covered by {@link #midx}, sorted like {@link #packs}. */
+		final DfsPackFile[] uncovered;
+
 		private long lastModified = -1;
 
 		PackList(DfsPackFile[] packs, DfsReftable[] reftables) {
+			this(packs, reftables, null, null);
+		}
+
+		PackList(DfsPackFile[] packs, DfsReftable[] reftables,
+				DfsPackDescription midxDescription, MultiPackIndex midx) {
 			this.packs = packs;
 			this.reftables = reftables;
+			this.midxDescription = midxDescription;
+			this.midx = midx;
+			if (midx == null) {
+				midxPacks = null;
+				uncovered = packs;
+				return;
+			}
+
+			String[] names = midx.getPackNames();
+			midxPacks = new DfsPackFile[names.length];
+			List<DfsPackFile> rest = new ArrayList<>();
+			for (DfsPackFile p : packs) {
+				int id = Arrays.binarySearch(names,
+						p.getPackDescription().getFileName(INDEX));
+				if (id >= 0) {
+					midxPacks[id] = p;
+				} else {
+					rest.add(p);
+				}
+			}
+			uncovered = rest.toArray(new DfsPackFile[0]);
+		}
+
+		/**
+		 * Find an object in the multi-pack-index.
+		 *
+		 * @param id
+		 *            the object to look for.
+		 * @return position of the object in {@link #midx}; -1 if there is no
+		 *         multi-pack-index or it does not contain the object, which
+		 *         then can only be in one of the {@link #uncovered} packs.
+		 */
+		int findInMultiPackIndex(AnyObjectId id) {
+			return midx != null ? midx.findPosition(id) : -1;
+		}
+
+		/**
+		 * Get the pack recorded for an object of the multi-pack-index.
+		 *
+		 * @param pos
+		 *            position of the object in {@link #midx}.
+		 * @return the pack; null if it was removed after the multi-pack-index
+		 *         was written. All packs must then be searched, as another
+		 *         copy of the object may be in a covered pack.
+		 */
+		DfsPackFile getMultiPackIndexPack(int pos) {
+			int id = midx.getPackId(pos);
+			return 0 <= id && id < midxPacks.length ? midxPacks[id] : null;
 		}
 
 		/** @return last modified time of all packs, in milliseconds. */
@@ -718,6 +838,11 @@ private static final class PackListImpl extends PackList {
 			super(packs, reftables);
 		}
 
+		PackListImpl(DfsPackFile[] packs, DfsReftable[] reftables,
+				DfsPackDescription midxDescription, MultiPackIndex midx) {
+			super(packs, reftables, midxDescription, midx);
+		}
+
 		@Override
 		boolean dirty() {
 			return dirty;
@@ -14,8 +14,10 @@
 
 import static org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackSource.UNREACHABLE_GARBAGE;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.BITMAP_INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.COMMIT_GRAPH;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.REVERSE_INDEX;
 
 import java.io.BufferedInputStream;
 import java.io.EOFException;
@@ -35,6 +37,8 @@
 import org.eclipse.jgit.errors.PackInvalidException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphLoader;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndex;
 import org.eclipse.jgit.internal.storage.file.PackIndex;
 import org.eclipse.jgit.internal.storage.file.PackReverseIndex;
@@ -74,6 +78,9 @@ public final class DfsPackFile extends BlockBasedFile {
 	/** Index of compressed bitmap mapping entire object graph. */
 	private volatile PackBitmapIndex bitmapIndex;
 
+	/** Commit-graph of the commits reachable from the packed refs. */
+	private volatile CommitGraph commitGraph;
+
 	/**
 	 * Objects we have tried to read, and discovered to be corrupt.
 	 * <p>
@@ -212,6 +219,33 @@ PackBitmapIndex getBitmapIndex(DfsReader ctx) throws IOException {
 		}
 	}
 
+	CommitGraph getCommitGraph(DfsReader ctx) throws IOException {
+		if (invalid || isGarbage() || !desc.hasFileExt(COMMIT_GRAPH)) {
+			return null;
+		}
+
+		if (commitGraph != null) {
+			return commitGraph;
+		}
+
+		synchronized (initLock) {
+			if (commitGraph != null) {
+				return commitGraph;
+			}
+
+			DfsStreamKey graphKey = desc.getStreamKey(COMMIT_GRAPH);
+			DfsBlockCache.Ref<CommitGraph> graphref = cache.getOrLoadRef(
+					graphKey,
+					REF_POSITION,
+					() -> loadCommitGraph(ctx, graphKey));
+			CommitGraph cg = graphref.get();
+			if (commitGraph == null && cg != null) {
+				commitGraph = cg;
+			}
+			return commitGraph;
+		}
+	}
+
 	PackReverseIndex getReverseIdx(DfsReader ctx) throws IOException {
 		if (reverseIndex != null) {
 			return reverseIndex;
@@ -228,7 +262,7 @@ PackReverseIndex getReverseIdx(DfsReader ctx) throws IOException {
 			DfsBlockCache.Ref<PackReverseIndex> revref = cache.getOrLoadRef(
 					revKey,
 					REF_POSITION,
-					() -> loadReverseIdx(revKey, idx));
+					() -> loadReverseIdx(ctx, revKey, idx));
 			PackReverseIndex revidx = revref.get();
 			if (reverseIndex == null && revidx != null) {
 				reverseIndex = revidx;
@@ -501,7 +535,8 @@ void copyAsIs(PackOutputStream out, DfsObjectToPack src,
 				Inflater inf = ctx.inflater();
 				byte[] tmp = new byte[1024];
 				if (quickCopy != null) {
-					quickCopy.check(inf, tmp, dataOffset, (int) dataLength);
+					quickCopy.check(inf, tmp, ctx.inflaterInput(quickCopy),
+							dataOffset, (int) dataLength);
 				} else {
 					long pos = dataOffset;
 					long cnt = dataLength;
@@ -1023,9 +1058,15 @@ private DfsBlockCache.Ref<PackIndex> loadPackIndex(
 		}
 	}
 
-	private DfsBlockCache.Ref<PackReverseIndex> loadReverseIdx(
+	private DfsBlockCache.Ref<PackReverseIndex> loadReverseIdx(DfsReader ctx,
 			DfsStreamKey revKey, PackIndex idx) {
-		PackReverseIndex revidx = new PackReverseIndex(idx);
+		PackReverseIndex revidx = null;
+		if (desc.hasFileExt(REVERSE_INDEX)) {
+			revidx = readReverseIdx(ctx, idx);
+		}
+		if (revidx == null) {
+			revidx = new PackReverseIndex(idx);
+		}
 		reverseIndex = revidx;
 		return new DfsBlockCache.Ref<>(
 				revKey,
@@ -1034,6 +1075,32 @@ private DfsBlockCache.Ref<PackReverseIndex> loadReverseIdx(
 				revidx);
 	}
 
+	private PackReverseIndex readReverseIdx(DfsReader ctx, PackIndex idx) {
+		ctx.stats.readReverseIdx++;
+		long start = System.nanoTime();
+		try (ReadableChannel rc = ctx.db.openFile(desc, REVERSE_INDEX)) {
+			try {
+				InputStream in = Channels.newInputStream(rc);
+				int wantSize = 8192;
+				int bs = rc.blockSize();
+				if (0 < bs && bs < wantSize) {
+					bs = (wantSize / bs) * bs;
+				} else if (bs <= 0) {
+					bs = wantSize;
+				}
+				in = new BufferedInputStream(in, bs);
+				return PackReverseIndex.read(in, idx);
+			} finally {
+				ctx.stats.readIdxBytes += rc.position();
+				ctx.stats.readIdxMicros += elapsedMicros(start);
+			}
+		} catch (IOException e) {
+			// The reverse index is only an optimization; a missing or
+			// corrupt file is replaced by computing it from the index.
+			return null;
+		}
+	}
+
 	private DfsBlockCache.Ref<PackBitmapIndex> loadBitmapIndex(
 			DfsReader ctx,
 			DfsStreamKey bitmapKey,
@@ -1073,4 +1140,41 @@ private DfsBlockCache.Ref<PackBitmapIndex> loadBitmapIndex(
 					desc.getFileName(BITMAP_INDEX)), e);
 		}
 	}
+
+	private DfsBlockCache.Ref<CommitGraph> loadCommitGraph(DfsReader ctx,
+			DfsStreamKey graphKey) throws IOException {
+		ctx.stats.readCommitGraph++;
+		long start = System.nanoTime();
+		try (ReadableChannel rc = ctx.db.openFile(desc, COMMIT_GRAPH)) {
+			long size;
+			CommitGraph cg;
+			try {
+				InputStream in = Channels.newInputStream(rc);
+				int wantSize = 8192;
+				int bs = rc.blockSize();
+				if (0 < bs && bs < wantSize) {
+					bs = (wantSize / bs) * bs;
+				} else if (bs <= 0) {
+					bs = wantSize;
+				}
+				in = new BufferedInputStream(in, bs);
+				cg = CommitGraphLoader.read(in);
+			} finally {
+				size = rc.position();
+				ctx.stats.readIdxBytes += size;
+				ctx.stats.readIdxMicros += elapsedMicros(start);
+			}
+			commitGraph = cg;
+			return new DfsBlockCache.Ref<>(
+					graphKey, REF_POSITION, size, cg);
+		} catch (EOFException e) {
+			throw new IOException(MessageFormat.format(
+					DfsText.get().shortReadOfIndex,
+					desc.getFileName(COMMIT_GRAPH)), e);
+		} catch (IOException e) {
+			throw new IOException(MessageFormat.format(
+					DfsText.get().cannotReadIndex,
+					desc.getFileName(COMMIT_GRAPH)), e);
+		}
+	}
 }
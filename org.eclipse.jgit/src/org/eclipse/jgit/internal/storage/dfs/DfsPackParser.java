@@ -360,6 +360,45 @@ protected int readDatabase(byte[] dst, int pos, int cnt) throws IOException {
 		return n;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isPositionalReadSupported() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		if (cnt == 0)
+			return 0;
+
+		if (currPos <= position) {
+			// Still buffered, not yet written to the stream.
+			int p = (int) (position - currPos);
+			int n = Math.min(cnt, currEnd - p);
+			if (n <= 0)
+				return -1;
+			System.arraycopy(currBuf, p, dst, pos, n);
+			return n;
+		}
+
+		long start = toBlockStart(position);
+		DfsBlock b = blockCache.get(packKey, start);
+		if (b == null) {
+			int size = (int) Math.min(blockSize, packEnd - start);
+			byte[] buf = new byte[size];
+			// Streams are not required to support concurrent reads.
+			synchronized (out) {
+				if (read(start, buf, 0, size) != size)
+					throw new EOFException();
+			}
+			b = new DfsBlock(packKey, start, buf);
+			blockCache.put(b);
+		}
+		return b.copy(position, dst, pos, cnt);
+	}
+
 	private int read(long pos, byte[] dst, int off, int len) throws IOException {
 		if (len == 0)
 			return 0;
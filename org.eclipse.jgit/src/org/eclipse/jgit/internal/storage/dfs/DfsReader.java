@@ -23,6 +23,7 @@
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -31,6 +32,7 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.internal.storage.dfs.DfsObjDatabase.PackList;
 import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndex;
@@ -72,6 +74,7 @@ public class DfsReader extends ObjectReader implements ObjectReuseAsIs {
 	final DfsReaderIoStats.Accumulator stats = new DfsReaderIoStats.Accumulator();
 
 	private Inflater inf;
+	private byte[] inflaterInput;
 	private DfsBlock block;
 	private DeltaBaseCache baseCache;
 	private DfsPackFile last;
@@ -121,6 +124,18 @@ public BitmapIndex getBitmapIndex() throws IOException {
 		return null;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Optional<CommitGraph> getCommitGraph() throws IOException {
+		for (DfsPackFile pack : db.getPacks()) {
+			CommitGraph graph = pack.getCommitGraph(this);
+			if (graph != null) {
+				return Optional.of(graph);
+			}
+		}
+		return Optional.empty();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public Collection<CachedPack> getCachedPacksAndUpdate(
@@ -182,7 +197,19 @@ public boolean has(AnyObjectId objectId) throws IOException {
 
 	private boolean hasImpl(PackList packList, AnyObjectId objectId)
 			throws IOException {
-		for (DfsPackFile pack : packList.packs) {
+		DfsPackFile[] search = packList.packs;
+		int pos = packList.findInMultiPackIndex(objectId);
+		if (pos >= 0) {
+			DfsPackFile pack = packList.getMultiPackIndexPack(pos);
+			if (pack != null && !skipGarbagePack(pack)
+					&& !pack.isCorrupt(packList.midx.getOffset(pos))) {
+				last = pack;
+				return true;
+			}
+		} else {
+			search = packList.uncovered;
+		}
+		for (DfsPackFile pack : search) {
 			if (pack == last || skipGarbagePack(pack))
 				continue;
 			if (pack.hasObject(this, objectId)) {
@@ -235,7 +262,20 @@ private static ObjectLoader checkType(ObjectLoader ldr, AnyObjectId id,
 
 	private ObjectLoader openImpl(PackList packList, AnyObjectId objectId)
 			throws IOException {
-		for (DfsPackFile pack : packList.packs) {
+		DfsPackFile[] search = packList.packs;
+		int pos = packList.findInMultiPackIndex(objectId);
+		if (pos >= 0) {
+			DfsPackFile pack = packList.getMultiPackIndexPack(pos);
+			long offset = packList.midx.getOffset(pos);
+			if (pack != null && !skipGarbagePack(pack)
+					&& !pack.isCorrupt(offset)) {
+				last = pack;
+				return pack.load(this, offset);
+			}
+		} else {
+			search = packList.uncovered;
+		}
+		for (DfsPackFile pack : search) {
 			if (pack == last || skipGarbagePack(pack)) {
 				continue;
 			}
@@ -511,7 +551,20 @@ public long getObjectSize(AnyObjectId objectId, int typeHint)
 
 	private long getObjectSizeImpl(PackList packList, AnyObjectId objectId)
 			throws IOException {
-		for (DfsPackFile pack : packList.packs) {
+		DfsPackFile[] search = packList.packs;
+		int pos = packList.findInMultiPackIndex(objectId);
+		if (pos >= 0) {
+			DfsPackFile pack = packList.getMultiPackIndexPack(pos);
+			long offset = packList.midx.getOffset(pos);
+			if (pack != null && !skipGarbagePack(pack)
+					&& !pack.isCorrupt(offset)) {
+				last = pack;
+				return pack.getObjectSize(this, offset);
+			}
+		} else {
+			search = packList.uncovered;
+		}
+		for (DfsPackFile pack : search) {
 			if (pack == last || skipGarbagePack(pack)) {
 				continue;
 			}
@@ -722,7 +775,7 @@ int inflate(DfsPackFile pack, long position, byte[] dstbuf,
 		long start = System.nanoTime();
 		prepareInflater();
 		pin(pack, position);
-		position += block.setInput(position, inf);
+		position += block.setInput(position, inf, inflaterInput(block));
 		for (int dstoff = 0;;) {
 			int n = inf.inflate(dstbuf, dstoff, dstbuf.length - dstoff);
 			dstoff += n;
@@ -732,7 +785,8 @@ int inflate(DfsPackFile pack, long position, byte[] dstbuf,
 				return dstoff;
 			} else if (inf.needsInput()) {
 				pin(pack, position);
-				position += block.setInput(position, inf);
+				position += block.setInput(position, inf,
+						inflaterInput(block));
 			} else if (n == 0)
 				throw new DataFormatException();
 		}
@@ -746,6 +800,14 @@ DfsBlock quickCopy(DfsPackFile p, long pos, long cnt)
 		return null;
 	}
 
+	byte[] inflaterInput(DfsBlock b) {
+		// Only blocks stored in direct memory need a staging buffer.
+		if (inflaterInput == null && b.isDirect()) {
+			inflaterInput = new byte[DfsBlock.STAGE_SIZE];
+		}
+		return inflaterInput;
+	}
+
 	Inflater inflater() {
 		prepareInflater();
 		return inf;
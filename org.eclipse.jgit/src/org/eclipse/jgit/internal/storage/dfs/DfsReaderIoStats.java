@@ -25,6 +25,12 @@ public static class Accumulator {
 		/** Total number of complete bitmap indexes read into memory. */
 		long readBitmap;
 
+		/** Total number of commit-graphs read into memory. */
+		long readCommitGraph;
+
+		/** Total number of reverse indexes read into memory. */
+		long readReverseIdx;
+
 		/** Total number of bytes read from indexes. */
 		long readIdxBytes;
 
@@ -92,6 +98,26 @@ public long getReadBitmapIndexCount() {
 		return stats.readBitmap;
 	}
 
+	/**
+	 * Get total number of commit-graphs read into memory.
+	 *
+	 * @return total number of commit-graphs read into memory.
+	 * @since 5.8
+	 */
+	public long getReadCommitGraphCount() {
+		return stats.readCommitGraph;
+	}
+
+	/**
+	 * Get total number of reverse indexes read into memory.
+	 *
+	 * @return total number of reverse indexes read into memory.
+	 * @since 5.8
+	 */
+	public long getReadReverseIndexCount() {
+		return stats.readReverseIdx;
+	}
+
 	/**
 	 * Get total number of bytes read from indexes.
 	 *
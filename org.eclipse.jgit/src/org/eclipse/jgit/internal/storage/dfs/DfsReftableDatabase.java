@@ -13,6 +13,7 @@
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -174,6 +175,12 @@ public List<Ref> getRefsByPrefix(String prefix) throws IOException {
 		return reftableDatabase.getRefsByPrefix(prefix);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<Ref> iterateRefsByPrefix(String prefix) {
+		return reftableDatabase.iterateRefsByPrefix(prefix);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public Set<Ref> getTipsWithSha1(ObjectId id) throws IOException {
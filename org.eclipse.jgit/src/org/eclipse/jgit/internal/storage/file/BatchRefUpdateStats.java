@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of the atomic batch ref updates committed by a
+ * {@link RefDirectory}.
+ * <p>
+ * Atomic batches queued by concurrent threads are committed together with a
+ * single rewrite of {@code packed-refs}; see {@link PackedRefsGroupCommit}.
+ */
+public class BatchRefUpdateStats {
+	/** POJO to accumulate batch ref update statistics. */
+	static class Accumulator {
+		/** Number of atomic batches committed. */
+		long batches;
+
+		/** Number of atomic batches rejected. */
+		long rejectedBatches;
+
+		/** Number of ref updates in the committed batches. */
+		long updates;
+
+		/** Number of groups of batches committed together. */
+		long groups;
+
+		/** Number of times {@code packed-refs} was written. */
+		long packedRefsWrites;
+
+		/** Total nanoseconds batches waited to enter a group commit. */
+		long lockWaitNanos;
+
+		/** Total nanoseconds spent committing groups. */
+		long commitNanos;
+
+		Accumulator copy() {
+			Accumulator a = new Accumulator();
+			a.batches = batches;
+			a.rejectedBatches = rejectedBatches;
+			a.updates = updates;
+			a.groups = groups;
+			a.packedRefsWrites = packedRefsWrites;
+			a.lockWaitNanos = lockWaitNanos;
+			a.commitNanos = commitNanos;
+			return a;
+		}
+	}
+
+	private final Accumulator stats;
+
+	BatchRefUpdateStats(Accumulator stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Get number of atomic batches committed.
+	 *
+	 * @return number of atomic batches committed.
+	 */
+	public long getBatches() {
+		return stats.batches;
+	}
+
+	/**
+	 * Get number of atomic batches rejected.
+	 *
+	 * @return number of atomic batches rejected, for example because a ref
+	 *         could not be locked or did not have the expected old value.
+	 */
+	public long getRejectedBatches() {
+		return stats.rejectedBatches;
+	}
+
+	/**
+	 * Get number of ref updates in the committed batches.
+	 *
+	 * @return number of ref updates in the committed batches.
+	 */
+	public long getUpdates() {
+		return stats.updates;
+	}
+
+	/**
+	 * Get number of groups of batches committed together.
+	 *
+	 * @return number of groups of batches committed together.
+	 */
+	public long getGroups() {
+		return stats.groups;
+	}
+
+	/**
+	 * Get number of times {@code packed-refs} was written.
+	 *
+	 * @return number of times {@code packed-refs} was written by group commits.
+	 */
+	public long getPackedRefsWrites() {
+		return stats.packedRefsWrites;
+	}
+
+	/**
+	 * Get total time batches waited to enter a group commit.
+	 *
+	 * @param unit
+	 *            unit of the result.
+	 * @return total time batches waited for the in-process {@code packed-refs}
+	 *         lock, summed over all batches.
+	 */
+	public long getLockWaitTime(TimeUnit unit) {
+		return unit.convert(stats.lockWaitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get total time spent committing groups.
+	 *
+	 * @param unit
+	 *            unit of the result.
+	 * @return total time spent locking, validating and writing groups of
+	 *         batches.
+	 */
+	public long getCommitTime(TimeUnit unit) {
+		return unit.convert(stats.commitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get ref updates committed per second of commit time.
+	 *
+	 * @return ref updates committed per second spent committing, or 0 if
+	 *         nothing was committed.
+	 */
+	public double getUpdatesPerSecond() {
+		if (stats.commitNanos == 0) {
+			return 0;
+		}
+		return stats.updates * 1e9 / stats.commitNanos;
+	}
+}
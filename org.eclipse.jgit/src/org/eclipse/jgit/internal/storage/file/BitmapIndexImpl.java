@@ -21,6 +21,7 @@
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.util.BlockList;
 
 import com.googlecode.javaewah.EWAHCompressedBitmap;
@@ -32,12 +33,48 @@
 public class BitmapIndexImpl implements BitmapIndex {
 	private static final int EXTRA_BITS = 10 * 1024;
 
+	/**
+	 * In-memory representation of the bitmaps built by
+	 * {@link #newBitmapBuilder()}.
+	 * <p>
+	 * Bitmaps read from the pack and those returned by
+	 * {@code BitmapBuilder.build()} are always {@link EWAHCompressedBitmap}s,
+	 * the representation only affects builders while they are modified.
+	 */
+	public enum Representation {
+		/**
+		 * Compressed bitmaps that are replaced on every logical operation,
+		 * with single bit updates buffered in uncompressed bit sets.
+		 */
+		EWAH,
+
+		/**
+		 * Roaring style bitmaps, which are updated in place and are faster
+		 * when large bitmaps are combined repeatedly.
+		 */
+		ROARING;
+
+		/**
+		 * Get the representation selected by a pack configuration.
+		 *
+		 * @param config
+		 *            the pack configuration.
+		 * @return {@link #ROARING} if
+		 *         {@link PackConfig#isRoaringBitmaps()}, else {@link #EWAH}.
+		 */
+		public static Representation of(PackConfig config) {
+			return config.isRoaringBitmaps() ? ROARING : EWAH;
+		}
+	}
+
 	final PackBitmapIndex packIndex;
 
 	final MutableBitmapIndex mutableIndex;
 
 	final int indexObjectCount;
 
+	private final Representation representation;
+
 	/**
 	 * Creates a BitmapIndex that is back by Compressed bitmaps.
 	 *
@@ -45,11 +82,50 @@ public class BitmapIndexImpl implements BitmapIndex {
 	 *            the bitmap index for the pack.
 	 */
 	public BitmapIndexImpl(PackBitmapIndex packIndex) {
+		this(packIndex, Representation.EWAH);
+	}
+
+	/**
+	 * Creates a BitmapIndex that is back by Compressed bitmaps.
+	 *
+	 * @param packIndex
+	 *            the bitmap index for the pack.
+	 * @param representation
+	 *            representation of bitmaps under construction.
+	 */
+	public BitmapIndexImpl(PackBitmapIndex packIndex,
+			Representation representation) {
 		this.packIndex = packIndex;
+		this.representation = representation;
 		mutableIndex = new MutableBitmapIndex();
 		indexObjectCount = packIndex.getObjectCount();
 	}
 
+	/**
+	 * Get the representation of bitmaps under construction.
+	 *
+	 * @return the representation used by {@link #newBitmapBuilder()}.
+	 */
+	public Representation getRepresentation() {
+		return representation;
+	}
+
+	/**
+	 * Get a BitmapIndex over the same pack building bitmaps in another
+	 * representation.
+	 *
+	 * @param r
+	 *            representation of bitmaps under construction.
+	 * @return this index if it already uses {@code r}; otherwise a new index
+	 *         over the same pack bitmap index.
+	 */
+	public BitmapIndexImpl withRepresentation(Representation r) {
+		if (r == representation) {
+			return this;
+		}
+		return new BitmapIndexImpl(packIndex, r);
+	}
+
 	PackBitmapIndex getPackBitmapIndex() {
 		return packIndex;
 	}
@@ -88,22 +164,118 @@ int findOrInsert(AnyObjectId objectId, int type) {
 		return position;
 	}
 
-	private static final class ComboBitset {
+	private BuilderBits newBits(EWAHCompressedBitmap bitmap) {
+		if (representation == Representation.ROARING) {
+			return new RoaringBits(bitmap);
+		}
+		return new ComboBitset(bitmap);
+	}
+
+	/** Mutable bits of a {@link CompressedBitmapBuilder}. */
+	private interface BuilderBits {
+		boolean contains(int position);
+
+		void set(int position);
+
+		void remove(int position);
+
+		void or(EWAHCompressedBitmap inbits);
+
+		void andNot(EWAHCompressedBitmap inbits);
+
+		void xor(EWAHCompressedBitmap inbits);
+
+		EWAHCompressedBitmap combine();
+
+		int cardinality();
+	}
+
+	private static final class RoaringBits implements BuilderBits {
+		final RoaringBitmap bits;
+
+		private EWAHCompressedBitmap compressed;
+
+		RoaringBits(EWAHCompressedBitmap bitmap) {
+			bits = RoaringBitmap.of(bitmap);
+		}
+
+		@Override
+		public boolean contains(int position) {
+			return bits.contains(position);
+		}
+
+		@Override
+		public void set(int position) {
+			compressed = null;
+			bits.add(position);
+		}
+
+		@Override
+		public void remove(int position) {
+			compressed = null;
+			bits.remove(position);
+		}
+
+		@Override
+		public void or(EWAHCompressedBitmap inbits) {
+			compressed = null;
+			bits.or(inbits);
+		}
+
+		@Override
+		public void andNot(EWAHCompressedBitmap inbits) {
+			compressed = null;
+			bits.andNot(inbits);
+		}
+
+		@Override
+		public void xor(EWAHCompressedBitmap inbits) {
+			compressed = null;
+			bits.xor(inbits);
+		}
+
+		void or(RoaringBits other) {
+			compressed = null;
+			bits.or(other.bits);
+		}
+
+		void andNot(RoaringBits other) {
+			compressed = null;
+			bits.andNot(other.bits);
+		}
+
+		void xor(RoaringBits other) {
+			compressed = null;
+			bits.xor(other.bits);
+		}
+
+		@Override
+		public EWAHCompressedBitmap combine() {
+			if (compressed == null) {
+				compressed = bits.toEWAHCompressedBitmap();
+			}
+			return compressed;
+		}
+
+		@Override
+		public int cardinality() {
+			return bits.cardinality();
+		}
+	}
+
+	private static final class ComboBitset implements BuilderBits {
 		private InflatingBitSet inflatingBitmap;
 
 		private BitSet toAdd;
 
 		private BitSet toRemove;
 
-		ComboBitset() {
-			this(new EWAHCompressedBitmap());
-		}
-
 		ComboBitset(EWAHCompressedBitmap bitmap) {
 			this.inflatingBitmap = new InflatingBitSet(bitmap);
 		}
 
-		EWAHCompressedBitmap combine() {
+		@Override
+		public EWAHCompressedBitmap combine() {
 			EWAHCompressedBitmap toAddCompressed = null;
 			if (toAdd != null) {
 				toAddCompressed = toAdd.toEWAHCompressedBitmap();
@@ -123,25 +295,29 @@ EWAHCompressedBitmap combine() {
 			return inflatingBitmap.getBitmap();
 		}
 
-		void or(EWAHCompressedBitmap inbits) {
+		@Override
+		public void or(EWAHCompressedBitmap inbits) {
 			if (toRemove != null)
 				combine();
 			inflatingBitmap = inflatingBitmap.or(inbits);
 		}
 
-		void andNot(EWAHCompressedBitmap inbits) {
+		@Override
+		public void andNot(EWAHCompressedBitmap inbits) {
 			if (toAdd != null || toRemove != null)
 				combine();
 			inflatingBitmap = inflatingBitmap.andNot(inbits);
 		}
 
-		void xor(EWAHCompressedBitmap inbits) {
+		@Override
+		public void xor(EWAHCompressedBitmap inbits) {
 			if (toAdd != null || toRemove != null)
 				combine();
 			inflatingBitmap = inflatingBitmap.xor(inbits);
 		}
 
-		boolean contains(int position) {
+		@Override
+		public boolean contains(int position) {
 			if (toRemove != null && toRemove.get(position))
 				return false;
 			if (toAdd != null && toAdd.get(position))
@@ -149,7 +325,8 @@ boolean contains(int position) {
 			return inflatingBitmap.contains(position);
 		}
 
-		void remove(int position) {
+		@Override
+		public void remove(int position) {
 			if (toAdd != null)
 				toAdd.clear(position);
 
@@ -160,7 +337,8 @@ void remove(int position) {
 			}
 		}
 
-		void set(int position) {
+		@Override
+		public void set(int position) {
 			if (toRemove != null)
 				toRemove.clear(position);
 
@@ -168,14 +346,19 @@ void set(int position) {
 				toAdd = new BitSet(position + EXTRA_BITS);
 			toAdd.set(position);
 		}
+
+		@Override
+		public int cardinality() {
+			return combine().cardinality();
+		}
 	}
 
 	private static final class CompressedBitmapBuilder implements BitmapBuilder {
-		private ComboBitset bitset;
+		private BuilderBits bitset;
 		private final BitmapIndexImpl bitmapIndex;
 
 		CompressedBitmapBuilder(BitmapIndexImpl bitmapIndex) {
-			this.bitset = new ComboBitset();
+			this.bitset = bitmapIndex.newBits(new EWAHCompressedBitmap());
 			this.bitmapIndex = bitmapIndex;
 		}
 
@@ -200,19 +383,34 @@ public void remove(AnyObjectId objectId) {
 
 		@Override
 		public CompressedBitmapBuilder or(Bitmap other) {
-			bitset.or(ewahBitmap(other));
+			RoaringBits roaring = roaringBits(other);
+			if (roaring != null) {
+				((RoaringBits) bitset).or(roaring);
+			} else {
+				bitset.or(ewahBitmap(other));
+			}
 			return this;
 		}
 
 		@Override
 		public CompressedBitmapBuilder andNot(Bitmap other) {
-			bitset.andNot(ewahBitmap(other));
+			RoaringBits roaring = roaringBits(other);
+			if (roaring != null) {
+				((RoaringBits) bitset).andNot(roaring);
+			} else {
+				bitset.andNot(ewahBitmap(other));
+			}
 			return this;
 		}
 
 		@Override
 		public CompressedBitmapBuilder xor(Bitmap other) {
-			bitset.xor(ewahBitmap(other));
+			RoaringBits roaring = roaringBits(other);
+			if (roaring != null) {
+				((RoaringBits) bitset).xor(roaring);
+			} else {
+				bitset.xor(ewahBitmap(other));
+			}
 			return this;
 		}
 
@@ -229,7 +427,7 @@ public Iterator<BitmapObject> iterator() {
 
 		@Override
 		public int cardinality() {
-			return bitset.combine().cardinality();
+			return bitset.cardinality();
 		}
 
 		@Override
@@ -243,7 +441,7 @@ public boolean removeAllOrNone(PackBitmapIndex index) {
 			IntIterator ii = curr.intIterator();
 			if (ii.hasNext() && ii.next() < bitmapIndex.indexObjectCount)
 				return false;
-			bitset = new ComboBitset(curr);
+			bitset = bitmapIndex.newBits(curr);
 			return true;
 		}
 
@@ -252,6 +450,20 @@ public BitmapIndexImpl getBitmapIndex() {
 			return bitmapIndex;
 		}
 
+		// Bits of another Roaring builder of the same index, which can be
+		// combined without converting them to an EWAHCompressedBitmap.
+		private RoaringBits roaringBits(Bitmap other) {
+			if (bitset instanceof RoaringBits
+					&& other instanceof CompressedBitmapBuilder) {
+				CompressedBitmapBuilder b = (CompressedBitmapBuilder) other;
+				if (b.bitmapIndex == bitmapIndex
+						&& b.bitset instanceof RoaringBits) {
+					return (RoaringBits) b.bitset;
+				}
+			}
+			return null;
+		}
+
 		private EWAHCompressedBitmap ewahBitmap(Bitmap other) {
 			if (other instanceof CompressedBitmap) {
 				CompressedBitmap b = (CompressedBitmap) other;
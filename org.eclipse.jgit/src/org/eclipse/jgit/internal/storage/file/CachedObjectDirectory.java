@@ -15,8 +15,10 @@
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.internal.storage.file.ObjectDirectory.AlternateHandle;
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
@@ -121,6 +123,16 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return wrapped.getShallowCommits();
 	}
 
+	@Override
+	Optional<CommitGraph> getCommitGraph() {
+		return wrapped.getCommitGraph();
+	}
+
+	@Override
+	void updateCommitGraph(Set<? extends ObjectId> commits) {
+		wrapped.updateCommitGraph(commits);
+	}
+
 	private CachedObjectDirectory[] myAlternates() {
 		if (alts == null) {
 			ObjectDirectory.AlternateHandle[] src = wrapped.myAlternates();
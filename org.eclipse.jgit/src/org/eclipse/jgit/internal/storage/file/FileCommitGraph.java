@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.LockFailedException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphLoader;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Traditional file system for commit-graph.
+ * <p>
+ * This is the commit-graph file representation for a Git object database.
+ * Each call to {@link FileCommitGraph#get()} will recheck for newer versions
+ * of {@code objects/info/commit-graph} and of the commit-graph chain in
+ * {@code objects/info/commit-graphs}. A single commit-graph file takes
+ * precedence over a chain, as it does in C Git.
+ * <p>
+ * Writers of either form hold the lock of {@code objects/info/commit-graph}
+ * (see {@link #lock()}), so a layer appended after receiving a pack never
+ * races with a rewrite by GC.
+ */
+class FileCommitGraph {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(FileCommitGraph.class);
+
+	static final String CHAIN_FILE_NAME = "commit-graph-chain"; //$NON-NLS-1$
+
+	/**
+	 * A new layer absorbs the layers below it until the next one holds more
+	 * than this many times its commits, as C Git's split commit-graphs do.
+	 */
+	private static final int SIZE_MULTIPLE = 2;
+
+	private GraphSnapshot current;
+
+	private final File graphFile;
+
+	private final File graphsDir;
+
+	private final File chainFile;
+
+	/**
+	 * Initialize the commit-graph of an object database.
+	 *
+	 * @param objectsDir
+	 *            the location of the {@code objects} directory.
+	 */
+	FileCommitGraph(File objectsDir) {
+		this.graphFile = new File(objectsDir, Constants.INFO_COMMIT_GRAPH);
+		this.graphsDir = new File(objectsDir, Constants.INFO_COMMIT_GRAPHS);
+		this.chainFile = new File(graphsDir, CHAIN_FILE_NAME);
+		this.current = new GraphSnapshot();
+	}
+
+	/**
+	 * The method will first scan whether the commit-graph files have been
+	 * modified, if so, it will re-parse the files, otherwise it will return
+	 * the same result as the last time.
+	 *
+	 * @return commit-graph or null if commit-graph file does not exist or
+	 *         is corrupt.
+	 */
+	synchronized CommitGraph get() {
+		GraphSnapshot n = current.refresh();
+		current = n;
+		return n.getCommitGraph();
+	}
+
+	/**
+	 * Get the checksums of the layers of the commit-graph chain, from the
+	 * bottom up.
+	 *
+	 * @return the layer checksums; empty if the repository has no chain or
+	 *         uses a single commit-graph file.
+	 */
+	synchronized List<ObjectId> getChain() {
+		get();
+		return current.chain;
+	}
+
+	File getGraphFile() {
+		return graphFile;
+	}
+
+	File getGraphsDirectory() {
+		return graphsDir;
+	}
+
+	File getChainFile() {
+		return chainFile;
+	}
+
+	File layerFile(ObjectId layer) {
+		return new File(graphsDir, "graph-" + layer.name() + ".graph"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Lock the commit-graph against other writers.
+	 * <p>
+	 * The lock is the one of {@code objects/info/commit-graph}; a writer
+	 * replacing the single file commits it, others only unlock it.
+	 *
+	 * @return the held lock.
+	 * @throws IOException
+	 *             the lock is held by another writer.
+	 */
+	LockFile lock() throws IOException {
+		FileUtils.mkdirs(graphFile.getParentFile(), true);
+		LockFile lock = new LockFile(graphFile);
+		if (!lock.lock()) {
+			throw new LockFailedException(graphFile);
+		}
+		return lock;
+	}
+
+	/**
+	 * Add the commits reachable from {@code tips} which the commit-graph does
+	 * not yet cover as a new layer on top of the commit-graph chain.
+	 * <p>
+	 * If the repository has a single commit-graph file it becomes the bottom
+	 * layer of the chain. Top layers holding no more than twice the commits
+	 * of the new layer are merged into it, keeping the chain logarithmic in
+	 * the number of commits. Nothing is written if all commits are covered.
+	 *
+	 * @param reader
+	 *            reader for the repository's objects.
+	 * @param tips
+	 *            the new commits; usually the commits of a received pack.
+	 * @return the checksum of the new layer, or null if none was written.
+	 * @throws IOException
+	 *             the new layer could not be written, or another writer
+	 *             holds the commit-graph lock.
+	 */
+	ObjectId appendLayer(ObjectReader reader, Set<? extends ObjectId> tips)
+			throws IOException {
+		LockFile graphLock = lock();
+		try {
+			FileUtils.mkdirs(graphsDir, true);
+			LockFile chainLock = new LockFile(chainFile);
+			if (!chainLock.lock()) {
+				throw new LockFailedException(chainFile);
+			}
+			try {
+				return appendLayer(reader, tips, chainLock);
+			} finally {
+				chainLock.unlock();
+			}
+		} finally {
+			graphLock.unlock();
+		}
+	}
+
+	private ObjectId appendLayer(ObjectReader reader,
+			Set<? extends ObjectId> tips, LockFile chainLock)
+			throws IOException {
+		GraphSnapshot snapshot;
+		synchronized (this) {
+			snapshot = current.refresh();
+			current = snapshot;
+		}
+		List<ObjectId> chain = new ArrayList<>(snapshot.chain);
+		List<CommitGraph> layers = new ArrayList<>(snapshot.layers);
+		CommitGraph top = snapshot.getCommitGraph();
+		boolean fromSingleFile = chain.isEmpty() && top != null;
+		if (top == null) {
+			top = CommitGraph.EMPTY;
+		}
+		ObjectId singleId = null;
+		if (fromSingleFile) {
+			singleId = readChecksum(graphFile);
+			chain.add(singleId);
+			layers.add(top);
+		}
+
+		GraphCommits commits = collect(reader, tips, top, chain);
+		if (commits.size() == 0) {
+			return null;
+		}
+		int keep = chain.size();
+		long cnt = commits.size();
+		while (keep > 0 && layerSize(layers, keep - 1) <= SIZE_MULTIPLE
+				* cnt) {
+			keep--;
+			cnt += layerSize(layers, keep);
+		}
+		List<ObjectId> merged = new ArrayList<>(chain.subList(keep,
+				chain.size()));
+		if (keep < chain.size()) {
+			CommitGraph base = keep > 0 ? layers.get(keep - 1)
+					: CommitGraph.EMPTY;
+			Set<ObjectId> wants = new HashSet<>(tips);
+			for (int p = (int) base.getCommitCnt(); p < top
+					.getCommitCnt(); p++) {
+				wants.add(top.getObjectId(p));
+			}
+			chain = new ArrayList<>(chain.subList(0, keep));
+			commits = collect(reader, wants, base, chain);
+		}
+
+		if (fromSingleFile && keep > 0) {
+			File bottom = layerFile(singleId);
+			if (!bottom.exists()) {
+				Files.copy(graphFile.toPath(), bottom.toPath());
+			}
+		}
+		File tmp = File.createTempFile("graph_", ".tmp", graphsDir); //$NON-NLS-1$ //$NON-NLS-2$
+		ObjectId layer;
+		try {
+			try (FileOutputStream out = new FileOutputStream(tmp)) {
+				layer = new CommitGraphWriter(commits)
+						.write(NullProgressMonitor.INSTANCE, out);
+				out.getChannel().force(true);
+			}
+			FileUtils.rename(tmp, layerFile(layer),
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			FileUtils.delete(tmp, FileUtils.SKIP_MISSING);
+		}
+		chain.add(layer);
+
+		StringBuilder content = new StringBuilder();
+		for (ObjectId id : chain) {
+			content.append(id.name()).append('\n');
+		}
+		chainLock.setFSync(true);
+		chainLock.write(Constants.encode(content.toString()));
+		if (!chainLock.commit()) {
+			throw new LockFailedException(chainFile);
+		}
+		if (fromSingleFile) {
+			// The chain now describes the same commits and more; the
+			// single file would take precedence over it.
+			FileUtils.delete(graphFile, FileUtils.SKIP_MISSING);
+		}
+		for (ObjectId id : merged) {
+			if (!chain.contains(id)) {
+				FileUtils.delete(layerFile(id),
+						FileUtils.SKIP_MISSING | FileUtils.IGNORE_ERRORS);
+			}
+		}
+		return layer;
+	}
+
+	private static GraphCommits collect(ObjectReader reader,
+			Set<? extends ObjectId> tips, CommitGraph base,
+			List<ObjectId> baseIds) throws IOException {
+		try (RevWalk rw = new RevWalk(reader)) {
+			return GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips,
+					rw, base, baseIds.toArray(new ObjectId[0]));
+		}
+	}
+
+	private static long layerSize(List<CommitGraph> layers, int i) {
+		long below = i > 0 ? layers.get(i - 1).getCommitCnt() : 0;
+		return layers.get(i).getCommitCnt() - below;
+	}
+
+	private static ObjectId readChecksum(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) { //$NON-NLS-1$
+			byte[] buf = new byte[Constants.OBJECT_ID_LENGTH];
+			raf.seek(raf.length() - buf.length);
+			raf.readFully(buf);
+			return ObjectId.fromRaw(buf);
+		}
+	}
+
+	private final class GraphSnapshot {
+		private final FileSnapshot graphSnapshot;
+
+		private final FileSnapshot chainSnapshot;
+
+		private final CommitGraph graph;
+
+		final List<ObjectId> chain;
+
+		/** The graph up to and including each layer of {@link #chain}. */
+		final List<CommitGraph> layers;
+
+		GraphSnapshot() {
+			this(FileSnapshot.DIRTY, FileSnapshot.DIRTY, null,
+					new ArrayList<>(), new ArrayList<>());
+		}
+
+		GraphSnapshot(FileSnapshot graphSnapshot, FileSnapshot chainSnapshot,
+				CommitGraph graph, List<ObjectId> chain,
+				List<CommitGraph> layers) {
+			this.graphSnapshot = graphSnapshot;
+			this.chainSnapshot = chainSnapshot;
+			this.graph = graph;
+			this.chain = chain;
+			this.layers = layers;
+		}
+
+		CommitGraph getCommitGraph() {
+			return graph;
+		}
+
+		GraphSnapshot refresh() {
+			if (!graphSnapshot.isModified(graphFile)
+					&& !chainSnapshot.isModified(chainFile)) {
+				return this;
+			}
+
+			FileSnapshot gs = snapshotOf(graphFile);
+			FileSnapshot cs = snapshotOf(chainFile);
+			List<ObjectId> ids = new ArrayList<>();
+			List<CommitGraph> layers = new ArrayList<>();
+			CommitGraph g = null;
+			try {
+				if (gs != FileSnapshot.MISSING_FILE) {
+					g = readSingle();
+				} else if (cs != FileSnapshot.MISSING_FILE) {
+					g = readChain(ids, layers);
+				}
+			} catch (FileNotFoundException e) {
+				// Replaced concurrently; the next call will see the new file.
+				ids.clear();
+				layers.clear();
+			} catch (IOException e) {
+				LOG.warn(MessageFormat.format(
+						JGitText.get().corruptCommitGraph,
+						gs != FileSnapshot.MISSING_FILE ? graphFile : chainFile),
+						e);
+				ids.clear();
+				layers.clear();
+			}
+			return new GraphSnapshot(gs, cs, g, ids, layers);
+		}
+	}
+
+	private static FileSnapshot snapshotOf(File file) {
+		return file.exists() ? FileSnapshot.save(file)
+				: FileSnapshot.MISSING_FILE;
+	}
+
+	private CommitGraph readSingle() throws IOException {
+		try (InputStream in = new BufferedInputStream(
+				new FileInputStream(graphFile))) {
+			return CommitGraphLoader.read(in);
+		}
+	}
+
+	private CommitGraph readChain(List<ObjectId> ids, List<CommitGraph> layers)
+			throws IOException {
+		for (String line : Files.readAllLines(chainFile.toPath())) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			if (!ObjectId.isId(line)) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().corruptCommitGraph, chainFile));
+			}
+			ids.add(ObjectId.fromString(line));
+		}
+
+		CommitGraph graph = CommitGraph.EMPTY;
+		for (int i = 0; i < ids.size(); i++) {
+			ObjectId[] baseIds = ids.subList(0, i).toArray(new ObjectId[0]);
+			try (InputStream in = new BufferedInputStream(
+					new FileInputStream(layerFile(ids.get(i))))) {
+				graph = CommitGraphLoader.read(in, graph, baseIds);
+			}
+			layers.add(graph);
+		}
+		return ids.isEmpty() ? null : graph;
+	}
+}
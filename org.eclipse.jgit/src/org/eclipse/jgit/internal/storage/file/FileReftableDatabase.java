@@ -16,17 +16,28 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.eclipse.jgit.annotations.NonNull;
 import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.reftable.MergedReftable;
 import org.eclipse.jgit.internal.storage.reftable.ReftableBatchRefUpdate;
 import org.eclipse.jgit.internal.storage.reftable.ReftableDatabase;
@@ -51,6 +62,8 @@
 import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.util.RefList;
 import org.eclipse.jgit.util.RefMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Implements RefDatabase using reftable for storage.
@@ -58,12 +71,52 @@
  * This class is threadsafe.
  */
 public class FileReftableDatabase extends RefDatabase {
+	private static final Logger LOG = LoggerFactory
+			.getLogger(FileReftableDatabase.class);
+
+	/**
+	 * Runs background compactions of all repositories. Compactions are I/O
+	 * bound and throttled, so a few threads suffice; more than one, so that a
+	 * long compaction of one repository does not hold up the others. Each
+	 * repository runs one compaction at a time.
+	 */
+	private static class CompactionExecutor {
+		private static final int THREADS = 4;
+
+		static final ExecutorService INSTANCE = newExecutor();
+
+		private static ExecutorService newExecutor() {
+			AtomicInteger cnt = new AtomicInteger();
+			ThreadPoolExecutor e = new ThreadPoolExecutor(THREADS, THREADS,
+					60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+						Thread t = new Thread(r, "JGit-ReftableCompaction-" //$NON-NLS-1$
+								+ cnt.incrementAndGet());
+						t.setContextClassLoader(null);
+						t.setDaemon(true);
+						return t;
+					});
+			e.allowCoreThreadTimeOut(true);
+			return e;
+		}
+	}
+
 	private final ReftableDatabase reftableDatabase;
 
 	private final FileRepository fileRepository;
 
 	private final FileReftableStack reftableStack;
 
+	/** Whether a background compaction was requested and not yet started. */
+	private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+	/** Whether a compaction task of this database is queued or running. */
+	private final AtomicBoolean compactionRunning = new AtomicBoolean();
+
+	private volatile Future<?> compaction;
+
+	/** Guarded by the lock of {@link #reftableDatabase}. */
+	private boolean closed;
+
 	FileReftableDatabase(FileRepository repo) throws IOException {
 		this(repo, new File(new File(repo.getDirectory(), Constants.REFTABLE),
 				Constants.TABLES_LIST));
@@ -82,6 +135,7 @@ public MergedReftable openMergedReftable() throws IOException {
 				return reftableStack.getMergedReftable();
 			}
 		};
+		reftableStack.setCompactionScheduler(this::scheduleCompaction);
 	}
 
 	ReflogReader getReflogReader(String refname) throws IOException {
@@ -120,6 +174,94 @@ private ReentrantLock getLock() {
 		return reftableDatabase.getLock();
 	}
 
+	// Coalesces requests: a compaction requested while another one waits to
+	// start is covered by it, and one requested while another one runs is
+	// started by the running task when it is done.
+	private void scheduleCompaction() {
+		compactionScheduled.set(true);
+		submitCompaction();
+	}
+
+	private void submitCompaction() {
+		if (compactionRunning.compareAndSet(false, true)) {
+			compaction = CompactionExecutor.INSTANCE.submit(this::compact);
+		}
+	}
+
+	private void compact() {
+		try {
+			while (compactionScheduled.getAndSet(false)) {
+				while (compactOnce()) {
+					// The merged table may match up with the next one.
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.warn(MessageFormat.format(
+					JGitText.get().reftableCompactionFailed,
+					fileRepository.getDirectory()), e);
+		} finally {
+			compactionRunning.set(false);
+			if (compactionScheduled.get()) {
+				submitCompaction();
+			}
+		}
+	}
+
+	/**
+	 * Run one step of automatic compaction. The database lock is held while
+	 * choosing and replacing the tables, but not while the compacted table is
+	 * written, so writers are not blocked by compaction.
+	 *
+	 * @return whether tables were compacted.
+	 * @throws IOException
+	 *             on I/O errors
+	 */
+	private boolean compactOnce() throws IOException {
+		FileReftableStack.Compaction prepared;
+		getLock().lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			prepared = reftableStack.prepareCompaction(true);
+		} finally {
+			getLock().unlock();
+		}
+		if (prepared == null) {
+			return false;
+		}
+		try (FileReftableStack.Compaction c = prepared) {
+			reftableStack.writeCompaction(c);
+			getLock().lock();
+			try {
+				if (closed || !reftableStack.commitCompaction(c)) {
+					return false;
+				}
+				reftableDatabase.clearCache();
+				return true;
+			} finally {
+				getLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Wait for scheduled background compactions to finish.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	void awaitCompaction() throws InterruptedException {
+		Future<?> f;
+		while ((f = compaction) != null && !f.isDone()) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				// compact() handles its errors.
+			}
+		}
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean performsAtomicTransactions() {
@@ -177,6 +319,12 @@ public Map<String, Ref> getRefs(String prefix) throws IOException {
 				RefList.emptyList());
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<Ref> iterateRefsByPrefix(String prefix) {
+		return reftableDatabase.iterateRefsByPrefix(prefix);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public List<Ref> getAdditionalRefs() throws IOException {
@@ -311,7 +459,13 @@ public boolean isNameConflicting(String name) throws IOException {
 	/** {@inheritDoc} */
 	@Override
 	public void close() {
-		reftableStack.close();
+		getLock().lock();
+		try {
+			closed = true;
+			reftableStack.close();
+		} finally {
+			getLock().unlock();
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -323,14 +477,23 @@ public void create() throws IOException {
 	}
 
 	private boolean addReftable(FileReftableStack.Writer w) throws IOException {
-		if (!reftableStack.addReftable(w)) {
-			reftableStack.reload();
+		// The background compaction locks the stack file only while holding
+		// the database lock, so writers of this process never fail on it.
+		// Readers hold the lock too, and never see the tables the stack
+		// closes on reload.
+		getLock().lock();
+		try {
+			if (!reftableStack.addReftable(w)) {
+				reftableStack.reload();
+				reftableDatabase.clearCache();
+				return false;
+			}
 			reftableDatabase.clearCache();
-			return false;
-		}
-		reftableDatabase.clearCache();
 
-		return true;
+			return true;
+		} finally {
+			getLock().unlock();
+		}
 	}
 
 	private class FileReftableBatchRefUpdate extends ReftableBatchRefUpdate {
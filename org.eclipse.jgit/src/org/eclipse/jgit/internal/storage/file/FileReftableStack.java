@@ -19,6 +19,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@
 import org.eclipse.jgit.internal.storage.reftable.ReftableReader;
 import org.eclipse.jgit.internal.storage.reftable.ReftableWriter;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.util.FileUtils;
 
 /**
@@ -57,6 +59,9 @@ private static class StackEntry {
 
 	private List<StackEntry> stack;
 
+	/** Size of {@link #stack}, for background compaction. */
+	private volatile int tableCount;
+
 	private long lastNextUpdateIndex;
 
 	private final File stackPath;
@@ -67,6 +72,9 @@ private static class StackEntry {
 
 	private final Supplier<Config> configSupplier;
 
+	@Nullable
+	private Runnable compactionScheduler;
+
 	// Used for stats & testing.
 	static class CompactionStats {
 
@@ -128,6 +136,23 @@ CompactionStats getStats() {
 		return stats;
 	}
 
+	/**
+	 * Set the hook scheduling automatic compaction in the background.
+	 * <p>
+	 * If set and {@code reftable.backgroundCompaction} is enabled,
+	 * {@link #addReftable(Writer)} runs the hook instead of compacting on the
+	 * calling thread. The scheduled task must run
+	 * {@link #prepareCompaction(boolean)},
+	 * {@link #writeCompaction(Compaction)} and
+	 * {@link #commitCompaction(Compaction)}.
+	 *
+	 * @param scheduler
+	 *            the hook, or {@code null} to always compact inline.
+	 */
+	void setCompactionScheduler(@Nullable Runnable scheduler) {
+		compactionScheduler = scheduler;
+	}
+
 	/** Thrown if the update indices in the stack are not monotonic */
 	public static class ReftableNumbersNotIncreasingException
 			extends RuntimeException {
@@ -206,6 +231,7 @@ private void reloadOnce(List<String> names)
 			// survived without exceptions: swap in new stack, and close
 			// dangling tables.
 			stack = newStack;
+			tableCount = newStack.size();
 			newTables.clear();
 
 			current.values().forEach(r -> {
@@ -422,7 +448,14 @@ public boolean addReftable(Writer w) throws IOException {
 
 			reload();
 
-			autoCompact();
+			Runnable scheduler = compactionScheduler;
+			if (scheduler != null && configSupplier.get().getBoolean(
+					ConfigConstants.CONFIG_REFTABLE_SECTION,
+					ConfigConstants.CONFIG_KEY_BACKGROUND_COMPACTION, false)) {
+				scheduler.run();
+			} else {
+				autoCompact();
+			}
 		} finally {
 			lock.unlock();
 		}
@@ -433,116 +466,240 @@ private ReftableConfig reftableConfig() {
 		return new ReftableConfig(configSupplier.get());
 	}
 
+	private static int compactionFactor(Config cfg) {
+		return Math.max(2, cfg.getInt(ConfigConstants.CONFIG_REFTABLE_SECTION,
+				ConfigConstants.CONFIG_KEY_COMPACTION_FACTOR, 2));
+	}
+
 	/**
-	 * Write the reftable for the given range into a temp file.
-	 *
-	 * @param first
-	 *            index of first stack entry to be written
-	 * @param last
-	 *            index of last stack entry to be written
-	 * @return the file holding the replacement table.
-	 * @throws IOException
-	 *             on I/O problem
+	 * Compaction of a consecutive range of tables whose files are locked.
+	 * <p>
+	 * A compaction does not refer to the readers of the stack, so its table
+	 * can be written by another thread while the stack keeps changing.
+	 * Closing it releases the locks and removes the temporary table, if any.
 	 */
-	private File compactLocked(int first, int last) throws IOException {
-		String fn = filename(first, last);
+	static class Compaction implements AutoCloseable {
+		final List<String> names = new ArrayList<>();
 
-		File tmpTable = File.createTempFile(fn + "_", ".ref", //$NON-NLS-1$//$NON-NLS-2$
-				stackPath.getParentFile());
-		try (FileOutputStream fos = new FileOutputStream(tmpTable)) {
-			ReftableCompactor c = new ReftableCompactor(fos)
-					.setConfig(reftableConfig())
-					.setIncludeDeletes(first > 0);
+		final List<File> files = new ArrayList<>();
 
-			List<ReftableReader> compactMe = new ArrayList<>();
-			long totalBytes = 0;
-			for (int i = first; i <= last; i++) {
-				compactMe.add(stack.get(i).reftableReader);
-				totalBytes += stack.get(i).reftableReader.size();
-			}
-			c.addAll(compactMe);
+		final List<LockFile> locks = new ArrayList<>();
 
-			c.compact();
+		ReftableConfig config;
 
-			// Even though the compaction did not definitely succeed, we keep
-			// tally here as we've expended the effort.
-			stats.bytes += totalBytes;
-			stats.tables += first - last + 1;
-			stats.attempted++;
-			stats.refCount += c.getStats().refCount();
-			stats.logCount += c.getStats().logCount();
-		}
+		boolean includeDeletes;
+
+		long minUpdateIndex;
+
+		long maxUpdateIndex;
+
+		long bytes;
+
+		long bytesPerSecond;
+
+		int maxTables;
+
+		File tmpTable;
 
-		return tmpTable;
+		long refCount;
+
+		long logCount;
+
+		@Override
+		public void close() {
+			if (tmpTable != null) {
+				tmpTable.delete();
+				tmpTable = null;
+			}
+			for (LockFile lf : locks) {
+				lf.unlock();
+			}
+			locks.clear();
+		}
 	}
 
 	/**
-	 * Compacts a range of the stack, following the file locking protocol
-	 * documented in the spec.
+	 * Lock a range of the stack for compaction.
 	 *
 	 * @param first
-	 *            index of first stack entry to be considered in compaction
+	 *            index of first stack entry to be compacted
 	 * @param last
-	 *            index of last stack entry to be considered in compaction
-	 * @return true if a compaction was successfully applied.
+	 *            index of last stack entry to be compacted
+	 * @return the compaction, or null if the stack or one of the tables could
+	 *         not be locked, or the stack is out of date.
 	 * @throws IOException
 	 *             on I/O problem
 	 */
-	boolean compactRange(int first, int last) throws IOException {
-		if (first >= last) {
-			return true;
-		}
+	@Nullable
+	private Compaction lockRange(int first, int last) throws IOException {
 		LockFile lock = new LockFile(stackPath);
-
-		File tmpTable = null;
-		List<LockFile> subtableLocks = new ArrayList<>();
-
+		Compaction c = new Compaction();
+		boolean locked = false;
 		try {
 			if (!lock.lock()) {
-				return false;
+				return null;
 			}
 			if (!isUpToDate()) {
-				return false;
+				return null;
 			}
 
-			List<File> deleteOnSuccess = new ArrayList<>();
 			for (int i = first; i <= last; i++) {
-				File f = new File(reftableDir, stack.get(i).name);
+				StackEntry e = stack.get(i);
+				File f = new File(reftableDir, e.name);
 				LockFile lf = new LockFile(f);
 				if (!lf.lock()) {
-					return false;
+					return null;
 				}
-				subtableLocks.add(lf);
-				deleteOnSuccess.add(f);
+				c.locks.add(lf);
+				c.names.add(e.name);
+				c.files.add(f);
+				c.bytes += e.reftableReader.size();
 			}
-
+			c.config = reftableConfig();
+			c.includeDeletes = first > 0;
+			c.minUpdateIndex = stack.get(first).reftableReader.minUpdateIndex();
+			c.maxUpdateIndex = stack.get(last).reftableReader.maxUpdateIndex();
+			locked = true;
+			return c;
+		} finally {
 			lock.unlock();
-			lock = null;
+			if (!locked) {
+				c.close();
+			}
+		}
+	}
 
-			tmpTable = compactLocked(first, last);
+	/**
+	 * Lock the range of the stack selected by the automatic compaction policy.
+	 *
+	 * @param background
+	 *            whether the compaction will be written in the background,
+	 *            subject to {@code reftable.compactionBytesPerSecond}.
+	 * @return the compaction, or null if the stack does not need compaction or
+	 *         the range could not be locked.
+	 * @throws IOException
+	 *             on I/O problem
+	 */
+	@Nullable
+	Compaction prepareCompaction(boolean background) throws IOException {
+		Config cfg = configSupplier.get();
+		Optional<Segment> cand = autoCompactCandidate(tableSizes(),
+				compactionFactor(cfg));
+		if (!cand.isPresent()) {
+			return null;
+		}
+		Compaction c = lockRange(cand.get().start, cand.get().end - 1);
+		if (c == null) {
+			stats.failed++;
+			return null;
+		}
+		if (!background) {
+			return c;
+		}
+		c.bytesPerSecond = cfg.getLong(ConfigConstants.CONFIG_REFTABLE_SECTION,
+				ConfigConstants.CONFIG_KEY_COMPACTION_BYTES_PER_SECOND, 0);
+		c.maxTables = cfg.getInt(ConfigConstants.CONFIG_REFTABLE_SECTION,
+				ConfigConstants.CONFIG_KEY_MAX_TABLES, 0);
+		return c;
+	}
 
-			lock = new LockFile(stackPath);
+	/**
+	 * Write the compacted table into a temp file.
+	 * <p>
+	 * This reads the locked table files with readers of its own and can be
+	 * called concurrently with other methods of the stack. Its writes are
+	 * throttled to {@code reftable.compactionBytesPerSecond}, unless the stack
+	 * has grown beyond {@code reftable.maxTables}: writers never wait for
+	 * compaction, so it is the compaction that speeds up to keep the stack
+	 * short.
+	 *
+	 * @param c
+	 *            the compaction.
+	 * @throws IOException
+	 *             on I/O problem
+	 */
+	void writeCompaction(Compaction c) throws IOException {
+		String fn = filename(c.minUpdateIndex, c.maxUpdateIndex);
+		c.tmpTable = File.createTempFile(fn + "_", ".ref", //$NON-NLS-1$//$NON-NLS-2$
+				stackPath.getParentFile());
+
+		List<ReftableReader> compactMe = new ArrayList<>(c.files.size());
+		try {
+			for (File f : c.files) {
+				compactMe.add(new ReftableReader(
+						BlockSource.from(new FileInputStream(f))));
+			}
+			try (OutputStream os = new ThrottledOutputStream(
+					new FileOutputStream(c.tmpTable), c.bytesPerSecond,
+					() -> c.maxTables > 0 && tableCount > c.maxTables)) {
+				ReftableCompactor rc = new ReftableCompactor(os)
+						.setConfig(c.config)
+						.setIncludeDeletes(c.includeDeletes);
+				rc.addAll(compactMe);
+				rc.compact();
+				c.refCount = rc.getStats().refCount();
+				c.logCount = rc.getStats().logCount();
+			}
+		} finally {
+			for (ReftableReader r : compactMe) {
+				r.close();
+			}
+		}
+	}
+
+	/**
+	 * Replace the compacted tables by the written table.
+	 * <p>
+	 * Tables may have been added since the compaction was prepared; they are
+	 * kept above the compacted table.
+	 *
+	 * @param c
+	 *            the compaction, written by {@link #writeCompaction}.
+	 * @return true if the compaction was applied.
+	 * @throws IOException
+	 *             on I/O problem
+	 */
+	boolean commitCompaction(Compaction c) throws IOException {
+		if (!replaceTables(c)) {
+			stats.failed++;
+			return false;
+		}
+		return true;
+	}
+
+	private boolean replaceTables(Compaction c) throws IOException {
+		// Even though the compaction did not definitely succeed, we keep
+		// tally here as we've expended the effort.
+		stats.bytes += c.bytes;
+		stats.tables += c.names.size();
+		stats.attempted++;
+		stats.refCount += c.refCount;
+		stats.logCount += c.logCount;
+
+		LockFile lock = new LockFile(stackPath);
+		try {
 			if (!lock.lock()) {
 				return false;
 			}
 			if (!isUpToDate()) {
+				reload();
+			}
+			int first = indexOf(c.names);
+			if (first < 0) {
 				return false;
 			}
-
-			String fn = filename(
-					stack.get(first).reftableReader.minUpdateIndex(),
-					stack.get(last).reftableReader.maxUpdateIndex());
+			int last = first + c.names.size() - 1;
 
 			// The spec suggests to use .log for log-only tables, and collect
 			// all log entries in a single file at the bottom of the stack. That would
 			// require supporting overlapping ranges for the different tables. For the
 			// sake of simplicity, we simply ignore this and always produce a log +
 			// ref combined table.
-			fn += ".ref"; //$NON-NLS-1$
+			String fn = filename(c.minUpdateIndex, c.maxUpdateIndex) + ".ref"; //$NON-NLS-1$
 			File dest = new File(reftableDir, fn);
 
-			FileUtils.rename(tmpTable, dest, StandardCopyOption.ATOMIC_MOVE);
-			tmpTable = null;
+			FileUtils.rename(c.tmpTable, dest, StandardCopyOption.ATOMIC_MOVE);
+			c.tmpTable = null;
 
 			StringBuilder sb = new StringBuilder();
 
@@ -560,22 +717,54 @@ boolean compactRange(int first, int last) throws IOException {
 				return false;
 			}
 
-			for (File f : deleteOnSuccess) {
+			for (File f : c.files) {
 				Files.delete(f.toPath());
 			}
 
 			reload();
 			return true;
 		} finally {
-			if (tmpTable != null) {
-				tmpTable.delete();
-			}
-			for (LockFile lf : subtableLocks) {
-				lf.unlock();
+			lock.unlock();
+		}
+	}
+
+	// Index of the first of names if they are consecutive in the stack, or -1.
+	private int indexOf(List<String> names) {
+		for (int i = 0; i + names.size() <= stack.size(); i++) {
+			if (stack.get(i).name.equals(names.get(0))) {
+				for (int j = 1; j < names.size(); j++) {
+					if (!stack.get(i + j).name.equals(names.get(j))) {
+						return -1;
+					}
+				}
+				return i;
 			}
-			if (lock != null) {
-				lock.unlock();
+		}
+		return -1;
+	}
+
+	/**
+	 * Compacts a range of the stack, following the file locking protocol
+	 * documented in the spec.
+	 *
+	 * @param first
+	 *            index of first stack entry to be considered in compaction
+	 * @param last
+	 *            index of last stack entry to be considered in compaction
+	 * @return true if a compaction was successfully applied.
+	 * @throws IOException
+	 *             on I/O problem
+	 */
+	boolean compactRange(int first, int last) throws IOException {
+		if (first >= last) {
+			return true;
+		}
+		try (Compaction c = lockRange(first, last)) {
+			if (c == null) {
+				return false;
 			}
+			writeCompaction(c);
+			return replaceTables(c);
 		}
 	}
 
@@ -586,7 +775,19 @@ boolean compactRange(int first, int last) throws IOException {
 	 * @return log2
 	 */
 	static int log(long sz) {
-		long base = 2;
+		return log(sz, 2);
+	}
+
+	/**
+	 * Calculate an approximate logarithm.
+	 *
+	 * @param sz
+	 *            positive number
+	 * @param base
+	 *            base of the logarithm, at least 2
+	 * @return the logarithm of {@code sz}, rounded down
+	 */
+	static int log(long sz, int base) {
 		if (sz <= 0) {
 			throw new IllegalArgumentException("log2 negative"); //$NON-NLS-1$
 		}
@@ -604,7 +805,7 @@ static int log(long sz) {
 	 * size.
 	 */
 	static class Segment {
-		// the approximate log_2 of the size.
+		// the approximate log of the size, in the compaction factor's base.
 		int log;
 
 		// The total bytes in this segment
@@ -650,10 +851,14 @@ public String toString() {
 	}
 
 	static List<Segment> segmentSizes(long[] sizes) {
+		return segmentSizes(sizes, 2);
+	}
+
+	static List<Segment> segmentSizes(long[] sizes, int factor) {
 		List<Segment> segments = new ArrayList<>();
 		Segment cur = new Segment();
 		for (int i = 0; i < sizes.length; i++) {
-			int l = log(sizes[i]);
+			int l = log(sizes[i], factor);
 			if (l != cur.log && cur.bytes > 0) {
 				segments.add(cur);
 				cur = new Segment();
@@ -669,7 +874,7 @@ static List<Segment> segmentSizes(long[] sizes) {
 		return segments;
 	}
 
-	private static Optional<Segment> autoCompactCandidate(long[] sizes) {
+	static Optional<Segment> autoCompactCandidate(long[] sizes, int factor) {
 		if (sizes.length == 0) {
 			return Optional.empty();
 		}
@@ -678,9 +883,10 @@ private static Optional<Segment> autoCompactCandidate(long[] sizes) {
 		// avoid frequent large compactions. We do this by playing the game 2048
 		// here: first compact together the smallest tables if there are more
 		// than one. Then try to see if the result will be big enough to match
-		// up with next up.
+		// up with next up. A larger factor merges tables of more different
+		// sizes, which keeps the stack shorter at the cost of rewriting more.
 
-		List<Segment> segments = segmentSizes(sizes);
+		List<Segment> segments = segmentSizes(sizes, factor);
 		segments = segments.stream().filter(s -> s.size() > 1)
 				.collect(Collectors.toList());
 		if (segments.isEmpty()) {
@@ -694,7 +900,7 @@ private static Optional<Segment> autoCompactCandidate(long[] sizes) {
 		while (smallCollected.start > 0) {
 			int prev = smallCollected.start - 1;
 			long prevSize = sizes[prev];
-			if (log(smallCollected.bytes) < log(prevSize)) {
+			if (log(smallCollected.bytes, factor) < log(prevSize, factor)) {
 				break;
 			}
 			smallCollected.start = prev;
@@ -711,10 +917,10 @@ private static Optional<Segment> autoCompactCandidate(long[] sizes) {
 	 * @throws IOException
 	 */
 	private void autoCompact() throws IOException {
-		Optional<Segment> cand = autoCompactCandidate(tableSizes());
-		if (cand.isPresent()) {
-			if (!compactRange(cand.get().start, cand.get().end - 1)) {
-				stats.failed++;
+		try (Compaction c = prepareCompaction(false)) {
+			if (c != null) {
+				writeCompaction(c);
+				commitCompaction(c);
 			}
 		}
 	}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+/**
+ * Estimates how often a key has been seen recently.
+ * <p>
+ * This is a count-min sketch of 4-bit counters. Each key is counted in four
+ * counters selected by independent hashes, and its frequency is the minimum
+ * of them, so collisions can only overestimate. Once the number of
+ * increments reaches ten times the expected number of keys all counters are
+ * halved, letting the sketch forget keys which are no longer popular.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class FrequencySketch {
+	/** Largest value a counter can reach. */
+	public static final int MAX_FREQUENCY = 15;
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+			0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	private final long[] table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private int size;
+
+	/**
+	 * Create a sketch.
+	 *
+	 * @param maximumSize
+	 *            expected number of distinct keys held by the cache.
+	 */
+	public FrequencySketch(long maximumSize) {
+		int max = (int) Math.min(Math.max(maximumSize, 1), 1 << 26);
+		table = new long[Integer.highestOneBit(Math.max(max, 2) - 1) << 1];
+		tableMask = table.length - 1;
+		sampleSize = 10 * max;
+	}
+
+	/**
+	 * Get the estimated number of recent occurrences of a key.
+	 *
+	 * @param hash
+	 *            hash code of the key.
+	 * @return estimated frequency, between 0 and {@link #MAX_FREQUENCY}.
+	 */
+	public int frequency(int hash) {
+		hash = spread(hash);
+		int start = (hash & 3) << 2;
+		int freq = MAX_FREQUENCY;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xf);
+			freq = Math.min(freq, count);
+		}
+		return freq;
+	}
+
+	/**
+	 * Record an occurrence of a key.
+	 *
+	 * @param hash
+	 *            hash code of the key.
+	 */
+	public void increment(int hash) {
+		hash = spread(hash);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if ((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
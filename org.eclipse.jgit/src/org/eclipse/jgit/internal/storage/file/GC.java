@@ -12,6 +12,7 @@
 
 import static org.eclipse.jgit.internal.storage.pack.PackExt.BITMAP_INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.REVERSE_INDEX;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -38,6 +39,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +60,9 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.NoWorkTreeException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexWriter;
 import org.eclipse.jgit.internal.storage.pack.PackExt;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
 import org.eclipse.jgit.internal.storage.reftree.RefTreeNames;
@@ -115,6 +120,9 @@ public class GC {
 
 	private static final String INDEX_EXT = "." + PackExt.INDEX.getExtension(); //$NON-NLS-1$
 
+	private static final String REVERSE_INDEX_EXT = "." //$NON-NLS-1$
+			+ PackExt.REVERSE_INDEX.getExtension();
+
 	private static final int DEFAULT_AUTOPACKLIMIT = 50;
 
 	private static final int DEFAULT_AUTOLIMIT = 6700;
@@ -266,6 +274,12 @@ private Collection<PackFile> doGc() throws IOException, ParseException {
 		// TODO: implement reflog_expire(pm, repo);
 		Collection<PackFile> newPacks = repack();
 		prune(Collections.emptySet());
+		if (shouldWriteCommitGraphWhenGc()) {
+			writeCommitGraph(refsToObjectIds(getAllRefs()));
+		}
+		if (shouldWriteMultiPackIndexWhenGc()) {
+			writeMultiPackIndex();
+		}
 		// TODO: implement rerere_gc(pm);
 		return newPacks;
 	}
@@ -887,6 +901,125 @@ public Collection<PackFile> repack() throws IOException {
 		return ret;
 	}
 
+	/**
+	 * Generate a new commit-graph file covering all commits reachable from
+	 * {@code wants}.
+	 * <p>
+	 * The file replaces any existing {@code objects/info/commit-graph} and
+	 * any commit-graph chain in {@code objects/info/commit-graphs}. Nothing is
+	 * written for a shallow repository, as its history is incomplete.
+	 *
+	 * @param wants
+	 *            the tips the commit-graph is computed from; usually all refs.
+	 * @throws java.io.IOException
+	 *             if the commit-graph could not be written.
+	 * @since 5.8
+	 */
+	public void writeCommitGraph(@NonNull Set<? extends ObjectId> wants)
+			throws IOException {
+		checkCancelled();
+		if (wants.isEmpty()) {
+			return;
+		}
+		ObjectDirectory objdb = repo.getObjectDatabase();
+		if (!objdb.getShallowCommits().isEmpty()) {
+			return;
+		}
+		FileCommitGraph fcg = objdb.getFileCommitGraph();
+		File graphFile = fcg.getGraphFile();
+		// The lock is shared with layers appended on receive, which
+		// therefore never write into the chain deleted below.
+		LockFile lock = fcg.lock();
+		try (RevWalk walk = new RevWalk(repo)) {
+			CommitGraphWriter writer = new CommitGraphWriter(
+					GraphCommits.fromWalk(pm, wants, walk));
+			lock.setFSync(true);
+			try (OutputStream out = lock.getOutputStream()) {
+				writer.write(pm, out);
+			}
+			// A single commit-graph file takes precedence over a chain, so
+			// the layers it replaces can be removed.
+			File graphsDir = fcg.getGraphsDirectory();
+			if (graphsDir.exists()) {
+				FileUtils.delete(graphsDir,
+						FileUtils.RECURSIVE | FileUtils.IGNORE_ERRORS);
+			}
+			if (!lock.commit()) {
+				throw new IOException(MessageFormat
+						.format(JGitText.get().cannotLock, graphFile));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Generate a new multi-pack-index covering all packs of the repository.
+	 * <p>
+	 * The file replaces any existing {@code objects/pack/multi-pack-index}.
+	 * If the repository has no packs the file is deleted.
+	 *
+	 * @throws java.io.IOException
+	 *             if the multi-pack-index could not be written.
+	 * @since 5.8
+	 */
+	public void writeMultiPackIndex() throws IOException {
+		checkCancelled();
+		ObjectDirectory objdb = repo.getObjectDatabase();
+		File midxFile = objdb.getMultiPackIndexFile();
+		Map<String, PackIndex> packs = new LinkedHashMap<>();
+		for (PackFile p : objdb.getPacks()) {
+			packs.put("pack-" + p.getPackName() + '.' + INDEX.getExtension(), //$NON-NLS-1$
+					p.getIndex());
+		}
+		if (packs.isEmpty()) {
+			FileUtils.delete(midxFile, FileUtils.SKIP_MISSING);
+			return;
+		}
+		LockFile lock = new LockFile(midxFile);
+		if (!lock.lock()) {
+			throw new IOException(MessageFormat
+					.format(JGitText.get().cannotLock, midxFile));
+		}
+		try {
+			lock.setFSync(true);
+			try (OutputStream out = lock.getOutputStream()) {
+				new MultiPackIndexWriter(packs).write(pm, out);
+			}
+			if (!lock.commit()) {
+				throw new IOException(MessageFormat
+						.format(JGitText.get().cannotLock, midxFile));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean shouldWriteMultiPackIndexWhenGc() {
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_MULTI_PACK_INDEX, false);
+	}
+
+	private boolean shouldWriteCommitGraphWhenGc() {
+		return repo.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_COMMIT_GRAPH, false)
+				&& repo.getConfig().getBoolean(
+						ConfigConstants.CONFIG_GC_SECTION,
+						ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false);
+	}
+
+	private static Set<ObjectId> refsToObjectIds(Collection<Ref> refs) {
+		Set<ObjectId> objectIds = new HashSet<>();
+		for (Ref ref : refs) {
+			if (ref.getPeeledObjectId() != null) {
+				objectIds.add(ref.getPeeledObjectId());
+			} else if (ref.getObjectId() != null) {
+				objectIds.add(ref.getObjectId());
+			}
+		}
+		return objectIds;
+	}
+
 	private static boolean isHead(Ref ref) {
 		return ref.getName().startsWith(Constants.R_HEADS);
 	}
@@ -950,8 +1083,8 @@ private void delete(Path d) {
 	/**
 	 * Deletes orphans
 	 * <p>
-	 * A file is considered an orphan if it is either a "bitmap" or an index
-	 * file, and its corresponding pack file is missing in the list.
+	 * A file is considered an orphan if it is either a "bitmap", a "rev" or an
+	 * index file, and its corresponding pack file is missing in the list.
 	 * </p>
 	 */
 	private void deleteOrphans() {
@@ -961,8 +1094,8 @@ private void deleteOrphans() {
 			fileNames = files.map(path -> path.getFileName().toString())
 					.filter(name -> (name.endsWith(PACK_EXT)
 							|| name.endsWith(BITMAP_EXT)
+							|| name.endsWith(REVERSE_INDEX_EXT)
 							|| name.endsWith(INDEX_EXT)))
-					.sorted(Collections.reverseOrder())
 					.collect(Collectors.toList());
 		} catch (IOException e1) {
 			// ignore
@@ -971,17 +1104,17 @@ private void deleteOrphans() {
 			return;
 		}
 
-		String base = null;
+		Set<String> packBases = fileNames.stream()
+				.filter(n -> n.endsWith(PACK_EXT))
+				.map(n -> n.substring(0, n.lastIndexOf('.')))
+				.collect(Collectors.toSet());
 		for (String n : fileNames) {
-			if (n.endsWith(PACK_EXT)) {
-				base = n.substring(0, n.lastIndexOf('.'));
-			} else {
-				if (base == null || !n.startsWith(base)) {
-					try {
-						Files.delete(packDir.resolve(n));
-					} catch (IOException e) {
-						LOG.error(e.getMessage(), e);
-					}
+			if (!n.endsWith(PACK_EXT)
+					&& !packBases.contains(n.substring(0, n.lastIndexOf('.')))) {
+				try {
+					Files.delete(packDir.resolve(n));
+				} catch (IOException e) {
+					LOG.error(e.getMessage(), e);
 				}
 			}
 		}
@@ -1193,6 +1326,24 @@ private PackFile writePack(@NonNull Set<? extends ObjectId> want,
 				idxChannel.force(true);
 			}
 
+			if (pconfig.isWriteReverseIndex()) {
+				File tmpRevIdx = new File(packdir, tmpBase + ".rev_tmp"); //$NON-NLS-1$
+				tmpExts.put(REVERSE_INDEX, tmpRevIdx);
+
+				if (!tmpRevIdx.createNewFile())
+					throw new IOException(MessageFormat.format(
+							JGitText.get().cannotCreateIndexfile,
+							tmpRevIdx.getPath()));
+
+				try (FileOutputStream fos = new FileOutputStream(tmpRevIdx);
+						FileChannel idxChannel = fos.getChannel();
+						OutputStream idxStream = Channels
+								.newOutputStream(idxChannel)) {
+					pw.writeReverseIndex(idxStream);
+					idxChannel.force(true);
+				}
+			}
+
 			if (pw.prepareBitmapIndex(pm)) {
 				File tmpBitmapIdx = new File(packdir, tmpBase + ".bitmap_tmp"); //$NON-NLS-1$
 				tmpExts.put(BITMAP_INDEX, tmpBitmapIdx);
@@ -15,6 +15,7 @@
 import java.io.IOException;
 import java.util.List;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.internal.storage.pack.CachedPack;
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
 import org.eclipse.jgit.internal.storage.pack.PackOutputStream;
@@ -53,6 +54,16 @@ void copyAsIs(PackOutputStream out, WindowCursor wc)
 			pack.copyPackAsIs(out, wc);
 	}
 
+	@Nullable
+	byte[] copyWholeAsIs(PackOutputStream out, long objectCount,
+			WindowCursor wc) throws IOException {
+		PackFile[] p = getPacks();
+		if (p.length != 1) {
+			return null;
+		}
+		return p[0].copyWholePackAsIs(out, objectCount, wc);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean hasObject(ObjectToPack obj, StoredObjectRepresentation rep) {
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.UnsupportedPackIndexVersionException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Support for the pack index v2 format, searched in a memory mapped file.
+ * <p>
+ * Unlike {@link PackIndexV2} nothing but the 256 entry fan-out table is
+ * copied onto the heap. Lookups binary search the object name table of the
+ * mapping directly, so opening an index costs a single {@code mmap} call and
+ * pages are only brought in by the operating system as they are touched.
+ * <p>
+ * The v2 format stores names, CRC-32 and offsets in three parallel tables
+ * sorted by name, so the n-th entry of each table is found without
+ * consulting the fan-out table.
+ * <p>
+ * A single mapping is limited to 2 GiB, larger indexes must be read with
+ * {@link PackIndexV2}. The mapping is released by the garbage collector once
+ * the index is no longer referenced.
+ */
+class MappedPackIndexV2 extends PackIndex {
+	private static final long IS_O64 = 1L << 31;
+
+	private static final int FANOUT = 256;
+
+	private static final int HEADER_LEN = 8;
+
+	private static final int FANOUT_LEN = 4 * FANOUT;
+
+	/** Bytes per object in the name, CRC-32 and 32 bit offset tables. */
+	private static final int ENTRY_LEN = Constants.OBJECT_ID_LENGTH + 4 + 4;
+
+	/** Words of an object name, as read by {@link #nameAt(int, int[])}. */
+	private static final int NAME_INTS = Constants.OBJECT_ID_LENGTH / 4;
+
+	/** Pack checksum and index checksum. */
+	private static final int TRAILER_LEN = 2 * Constants.OBJECT_ID_LENGTH;
+
+	private final MappedByteBuffer buf;
+
+	private final long[] fanoutTable;
+
+	private final int objectCnt;
+
+	private final int namesPos;
+
+	private final int crc32Pos;
+
+	private final int offset32Pos;
+
+	private final int offset64Pos;
+
+	private final int offset64Cnt;
+
+	/**
+	 * Map a pack index file.
+	 *
+	 * @param idxFile
+	 *            existing pack .idx to map.
+	 * @return the mapped index; null if the file is not a v2 index or is too
+	 *         large to be mapped as a single buffer, and must be read by
+	 *         {@link PackIndex#read(java.io.InputStream)} instead.
+	 * @throws IOException
+	 *             the file cannot be mapped or is corrupt.
+	 */
+	static PackIndex map(File idxFile) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel fc = FileChannel.open(idxFile.toPath(),
+				StandardOpenOption.READ)) {
+			long size = fc.size();
+			if (size > Integer.MAX_VALUE || size < HEADER_LEN) {
+				return null;
+			}
+			buf = fc.map(MapMode.READ_ONLY, 0, size);
+		}
+		for (int i = 0; i < PackIndexWriter.TOC.length; i++) {
+			if (buf.get(i) != PackIndexWriter.TOC[i]) {
+				return null;
+			}
+		}
+		return new MappedPackIndexV2(buf);
+	}
+
+	private MappedPackIndexV2(MappedByteBuffer buf) throws IOException {
+		this.buf = buf;
+		int len = buf.capacity();
+		if (len < HEADER_LEN + FANOUT_LEN + TRAILER_LEN) {
+			throw packIndexSizeMismatch(len, 0);
+		}
+		int version = buf.getInt(4);
+		if (version != 2) {
+			throw new UnsupportedPackIndexVersionException(version);
+		}
+
+		fanoutTable = new long[FANOUT];
+		for (int k = 0; k < FANOUT; k++) {
+			fanoutTable[k] = buf.getInt(HEADER_LEN + 4 * k) & 0xffffffffL;
+			long bucketCnt = k == 0 ? fanoutTable[k]
+					: fanoutTable[k] - fanoutTable[k - 1];
+			if (bucketCnt < 0) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().indexFileCorruptedNegativeBucketCount,
+						Long.valueOf(bucketCnt)));
+			}
+		}
+
+		long cnt = fanoutTable[FANOUT - 1];
+		long fixed = HEADER_LEN + FANOUT_LEN + cnt * ENTRY_LEN + TRAILER_LEN;
+		if (len < fixed || (len - fixed) % 8 != 0) {
+			throw packIndexSizeMismatch(len, cnt);
+		}
+		objectCnt = (int) cnt;
+		namesPos = HEADER_LEN + FANOUT_LEN;
+		crc32Pos = namesPos + objectCnt * Constants.OBJECT_ID_LENGTH;
+		offset32Pos = crc32Pos + objectCnt * 4;
+		offset64Pos = offset32Pos + objectCnt * 4;
+		offset64Cnt = (int) ((len - fixed) / 8);
+
+		packChecksum = new byte[Constants.OBJECT_ID_LENGTH];
+		for (int i = 0; i < packChecksum.length; i++) {
+			packChecksum[i] = buf.get(len - TRAILER_LEN + i);
+		}
+	}
+
+	private static IOException packIndexSizeMismatch(long len, long cnt) {
+		return new CorruptObjectException(
+				MessageFormat.format(JGitText.get().packIndexSizeMismatch,
+						Long.valueOf(len), Long.valueOf(cnt)));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getObjectCount() {
+		return objectCnt;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getOffset64Count() {
+		return offset64Cnt;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ObjectId getObjectId(long nthPosition) {
+		return ObjectId.fromRaw(nameAt((int) nthPosition, new int[NAME_INTS]),
+				0);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	long getOffset(long nthPosition) {
+		return offset((int) nthPosition);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long findOffset(AnyObjectId objId) {
+		int p = binarySearch(objId);
+		return p < 0 ? -1 : offset(p);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long findCRC32(AnyObjectId objId) throws MissingObjectException {
+		int p = binarySearch(objId);
+		if (p < 0) {
+			throw new MissingObjectException(objId.copy(), "unknown"); //$NON-NLS-1$
+		}
+		return buf.getInt(crc32Pos + 4 * p) & 0xffffffffL;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean hasCRC32Support() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<MutableEntry> iterator() {
+		return new EntriesIteratorMapped();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void resolve(Set<ObjectId> matches, AbbreviatedObjectId id,
+			int matchLimit) throws IOException {
+		int levelOne = id.getFirstByte();
+		int low = levelOne == 0 ? 0 : (int) fanoutTable[levelOne - 1];
+		int max = (int) fanoutTable[levelOne];
+		int high = max;
+		int[] n = new int[NAME_INTS];
+		while (low < high) {
+			int p = (low + high) >>> 1;
+			int cmp = id.prefixCompare(nameAt(p, n), 0);
+			if (cmp < 0) {
+				high = p;
+			} else if (cmp == 0) {
+				// We may have landed in the middle of the matches. Move
+				// backwards to the start of matches, then walk forwards.
+				//
+				int start = levelOne == 0 ? 0
+						: (int) fanoutTable[levelOne - 1];
+				while (start < p
+						&& id.prefixCompare(nameAt(p - 1, n), 0) == 0) {
+					p--;
+				}
+				for (; p < max; p++) {
+					if (id.prefixCompare(nameAt(p, n), 0) != 0) {
+						break;
+					}
+					matches.add(ObjectId.fromRaw(n, 0));
+					if (matches.size() > matchLimit) {
+						break;
+					}
+				}
+				return;
+			} else {
+				low = p + 1;
+			}
+		}
+	}
+
+	private int binarySearch(AnyObjectId objId) {
+		int levelOne = objId.getFirstByte();
+		int low = levelOne == 0 ? 0 : (int) fanoutTable[levelOne - 1];
+		int high = (int) fanoutTable[levelOne];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(objId, mid);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				return mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	// Compares in place, a lookup probes the mapping without allocating.
+	private int compare(AnyObjectId objId, int p) {
+		int pos = namesPos + p * Constants.OBJECT_ID_LENGTH;
+		for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+			int cmp = objId.getByte(i) - (buf.get(pos + i) & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	private int[] nameAt(int p, int[] n) {
+		int pos = namesPos + p * Constants.OBJECT_ID_LENGTH;
+		for (int i = 0; i < NAME_INTS; i++) {
+			n[i] = buf.getInt(pos + 4 * i);
+		}
+		return n;
+	}
+
+	private long offset(int p) {
+		long o = buf.getInt(offset32Pos + 4 * p) & 0xffffffffL;
+		if ((o & IS_O64) != 0) {
+			return buf.getLong(offset64Pos + 8 * (int) (o & ~IS_O64));
+		}
+		return o;
+	}
+
+	private class EntriesIteratorMapped extends EntriesIterator {
+		private final int[] name = new int[NAME_INTS];
+
+		private int position;
+
+		@Override
+		protected MutableEntry initEntry() {
+			return new MutableEntry() {
+				@Override
+				protected void ensureId() {
+					idBuffer.fromRaw(nameAt(position - 1, name), 0);
+				}
+			};
+		}
+
+		@Override
+		public MutableEntry next() {
+			if (position >= objectCnt) {
+				throw new NoSuchElementException();
+			}
+			entry.offset = offset(position);
+			position++;
+			returnedNumber++;
+			return entry;
+		}
+	}
+}
@@ -14,11 +14,13 @@
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.PACK;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
@@ -32,6 +34,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -39,6 +42,9 @@
 import org.eclipse.jgit.errors.PackInvalidException;
 import org.eclipse.jgit.errors.PackMismatchException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndex;
+import org.eclipse.jgit.internal.storage.midx.MultiPackIndexLoader;
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
 import org.eclipse.jgit.internal.storage.pack.PackExt;
 import org.eclipse.jgit.internal.storage.pack.PackWriter;
@@ -50,6 +56,7 @@
 import org.eclipse.jgit.lib.ObjectDatabase;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.lib.RepositoryCache.FileKey;
 import org.eclipse.jgit.util.FS;
@@ -80,7 +87,7 @@ public class ObjectDirectory extends FileObjectDatabase {
 			.getLogger(ObjectDirectory.class);
 
 	private static final PackList NO_PACKS = new PackList(
-			FileSnapshot.DIRTY, new PackFile[0]);
+			FileSnapshot.DIRTY, new PackFile[0], null, FileSnapshot.DIRTY);
 
 	/** Maximum number of candidates offered as resolutions of abbreviation. */
 	private static final int RESOLVE_ABBREV_LIMIT = 256;
@@ -99,6 +106,8 @@ public class ObjectDirectory extends FileObjectDatabase {
 
 	private final File alternatesFile;
 
+	private final File multiPackIndexFile;
+
 	private final FS fs;
 
 	private final AtomicReference<AlternateHandle[]> alternates;
@@ -107,6 +116,8 @@ public class ObjectDirectory extends FileObjectDatabase {
 
 	private final File shallowFile;
 
+	private final FileCommitGraph fileCommitGraph;
+
 	private FileSnapshot shallowFileSnapshot = FileSnapshot.DIRTY;
 
 	private Set<ObjectId> shallowCommitsIds;
@@ -139,10 +150,13 @@ public ObjectDirectory(final Config cfg, final File dir,
 		packDirectory = new File(objects, "pack"); //$NON-NLS-1$
 		preservedDirectory = new File(packDirectory, "preserved"); //$NON-NLS-1$
 		alternatesFile = new File(objects, Constants.INFO_ALTERNATES);
+		multiPackIndexFile = new File(objects,
+				Constants.PACK_MULTI_PACK_INDEX);
 		packList = new AtomicReference<>(NO_PACKS);
 		unpackedObjectCache = new UnpackedObjectCache();
 		this.fs = fs;
 		this.shallowFile = shallowFile;
+		fileCommitGraph = new FileCommitGraph(objects);
 
 		alternates = new AtomicReference<>();
 		if (alternatePaths != null) {
@@ -318,7 +332,16 @@ boolean hasPackedObject(AnyObjectId objectId) {
 		PackList pList;
 		do {
 			pList = packList.get();
-			for (PackFile p : pList.packs) {
+			PackFile[] search = pList.packs;
+			int pos = pList.findInMultiPackIndex(objectId);
+			if (pos >= 0) {
+				if (pList.getMultiPackIndexPack(pos) != null) {
+					return true;
+				}
+			} else {
+				search = pList.uncovered;
+			}
+			for (PackFile p : search) {
 				try {
 					if (p.hasObject(objectId))
 						return true;
@@ -450,7 +473,29 @@ ObjectLoader openPackedObject(WindowCursor curs, AnyObjectId objectId) {
 		do {
 			SEARCH: for (;;) {
 				pList = packList.get();
-				for (PackFile p : pList.packs) {
+				PackFile[] search = pList.packs;
+				int pos = pList.findInMultiPackIndex(objectId);
+				PackFile midxPack = pos >= 0
+						? pList.getMultiPackIndexPack(pos)
+						: null;
+				if (midxPack != null) {
+					try {
+						ObjectLoader ldr = midxPack.getAt(curs,
+								pList.midx.getOffset(pos));
+						midxPack.resetTransientErrorCount();
+						if (ldr != null)
+							return ldr;
+					} catch (PackMismatchException e) {
+						// Pack was modified; refresh the entire pack list.
+						if (searchPacksAgain(pList))
+							continue SEARCH;
+					} catch (IOException e) {
+						handlePackError(e, midxPack);
+					}
+				} else if (pos < 0) {
+					search = pList.uncovered;
+				}
+				for (PackFile p : search) {
 					try {
 						ObjectLoader ldr = p.get(curs, objectId);
 						p.resetTransientErrorCount();
@@ -543,7 +588,29 @@ private long getPackedObjectSize(WindowCursor curs, AnyObjectId id) {
 		do {
 			SEARCH: for (;;) {
 				pList = packList.get();
-				for (PackFile p : pList.packs) {
+				PackFile[] search = pList.packs;
+				int pos = pList.findInMultiPackIndex(id);
+				PackFile midxPack = pos >= 0
+						? pList.getMultiPackIndexPack(pos)
+						: null;
+				if (midxPack != null) {
+					try {
+						long len = midxPack.getObjectSize(curs,
+								pList.midx.getOffset(pos));
+						midxPack.resetTransientErrorCount();
+						if (0 <= len)
+							return len;
+					} catch (PackMismatchException e) {
+						// Pack was modified; refresh the entire pack list.
+						if (searchPacksAgain(pList))
+							continue SEARCH;
+					} catch (IOException e) {
+						handlePackError(e, midxPack);
+					}
+				} else if (pos < 0) {
+					search = pList.uncovered;
+				}
+				for (PackFile p : search) {
 					try {
 						long len = p.getObjectSize(curs, id);
 						p.resetTransientErrorCount();
@@ -781,6 +848,38 @@ Set<ObjectId> getShallowCommits() throws IOException {
 		return shallowCommitsIds;
 	}
 
+	@Override
+	Optional<CommitGraph> getCommitGraph() {
+		if (config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_COMMIT_GRAPH, false)) {
+			return Optional.ofNullable(fileCommitGraph.get());
+		}
+		return Optional.empty();
+	}
+
+	@Override
+	void updateCommitGraph(Set<? extends ObjectId> commits) {
+		if (commits.isEmpty()
+				|| !config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+						ConfigConstants.CONFIG_COMMIT_GRAPH, false)
+				|| !config.getBoolean(ConfigConstants.CONFIG_RECEIVE_SECTION,
+						ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false)) {
+			return;
+		}
+		try (ObjectReader reader = newReader()) {
+			fileCommitGraph.appendLayer(reader, commits);
+		} catch (IOException e) {
+			// The commit-graph only accelerates walks; the next layer or
+			// the next GC will cover these commits.
+			LOG.warn(MessageFormat.format(
+					JGitText.get().cannotUpdateCommitGraph, objects), e);
+		}
+	}
+
+	FileCommitGraph getFileCommitGraph() {
+		return fileCommitGraph;
+	}
+
 	private void insertPack(PackFile pf) {
 		PackList o, n;
 		do {
@@ -800,7 +899,7 @@ private void insertPack(PackFile pf) {
 			final PackFile[] newList = new PackFile[1 + oldList.length];
 			newList[0] = pf;
 			System.arraycopy(oldList, 0, newList, 1, oldList.length);
-			n = new PackList(o.snapshot, newList);
+			n = new PackList(o.snapshot, newList, o.midx, o.midxSnapshot);
 		} while (!packList.compareAndSet(o, n));
 	}
 
@@ -817,7 +916,7 @@ private void removePack(PackFile deadPack) {
 			final PackFile[] newList = new PackFile[oldList.length - 1];
 			System.arraycopy(oldList, 0, newList, 0, j);
 			System.arraycopy(oldList, j + 1, newList, j, newList.length - j);
-			n = new PackList(o.snapshot, newList);
+			n = new PackList(o.snapshot, newList, o.midx, o.midxSnapshot);
 		} while (!packList.compareAndSet(o, n));
 		deadPack.close();
 	}
@@ -852,6 +951,19 @@ private PackList scanPacks(PackList original) {
 	private PackList scanPacksImpl(PackList old) {
 		final Map<String, PackFile> forReuse = reuseMap(old);
 		final FileSnapshot snapshot = FileSnapshot.save(packDirectory);
+		MultiPackIndex midx = null;
+		FileSnapshot midxSnapshot = FileSnapshot.MISSING_FILE;
+		if (config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_MULTI_PACK_INDEX, false)) {
+			if (old.midx != null
+					&& !old.midxSnapshot.isModified(multiPackIndexFile)) {
+				midx = old.midx;
+				midxSnapshot = old.midxSnapshot;
+			} else {
+				midxSnapshot = FileSnapshot.save(multiPackIndexFile);
+				midx = readMultiPackIndex();
+			}
+		}
 		final Set<String> names = listPackDirectory();
 		final List<PackFile> list = new ArrayList<>(names.size() >> 2);
 		boolean foundNew = false;
@@ -895,7 +1007,8 @@ private PackList scanPacksImpl(PackList old) {
 		// the same as the set we were given. Instead of building a new object
 		// return the same collection.
 		//
-		if (!foundNew && forReuse.isEmpty() && snapshot.equals(old.snapshot)) {
+		if (!foundNew && forReuse.isEmpty() && snapshot.equals(old.snapshot)
+				&& midx == old.midx) {
 			old.snapshot.setClean(snapshot);
 			return old;
 		}
@@ -905,11 +1018,31 @@ private PackList scanPacksImpl(PackList old) {
 		}
 
 		if (list.isEmpty())
-			return new PackList(snapshot, NO_PACKS.packs);
+			return new PackList(snapshot, NO_PACKS.packs, midx, midxSnapshot);
 
 		final PackFile[] r = list.toArray(new PackFile[0]);
 		Arrays.sort(r, PackFile.SORT);
-		return new PackList(snapshot, r);
+		return new PackList(snapshot, r, midx, midxSnapshot);
+	}
+
+	private MultiPackIndex readMultiPackIndex() {
+		try (InputStream in = new BufferedInputStream(
+				new FileInputStream(multiPackIndexFile))) {
+			return MultiPackIndexLoader.read(in);
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			// The multi-pack-index only accelerates lookups; the packs
+			// are searched one by one without it.
+			LOG.warn(MessageFormat.format(
+					JGitText.get().corruptMultiPackIndex, multiPackIndexFile),
+					e);
+			return null;
+		}
+	}
+
+	File getMultiPackIndexFile() {
+		return multiPackIndexFile;
 	}
 
 	private static Map<String, PackFile> reuseMap(PackList old) {
@@ -1045,9 +1178,74 @@ static final class PackList {
 		/** All known packs, sorted by {@link PackFile#SORT}. */
 		final PackFile[] packs;
 
-		PackList(FileSnapshot monitor, PackFile[] packs) {
+		/** Multi-pack-index of the pack directory; null if not used. */
+		final MultiPackIndex midx;
+
+		/** State just before reading the multi-pack-index. */
+		final FileSnapshot midxSnapshot;
+
+		/**
+		 * Known packs by their id in {@link #midx}; null for packs which no
+		 * longer exist.
+		 */
+		private final PackFile[] midxPacks;
+
+		/** Packs not covered by {@link #midx}, sorted like {@link #packs}. */
+		final PackFile[] uncovered;
+
+		PackList(FileSnapshot monitor, PackFile[] packs, MultiPackIndex midx,
+				FileSnapshot midxSnapshot) {
 			this.snapshot = monitor;
 			this.packs = packs;
+			this.midx = midx;
+			this.midxSnapshot = midxSnapshot;
+			if (midx == null) {
+				midxPacks = null;
+				uncovered = packs;
+				return;
+			}
+
+			String[] names = midx.getPackNames();
+			midxPacks = new PackFile[names.length];
+			List<PackFile> rest = new ArrayList<>();
+			for (PackFile p : packs) {
+				int id = Arrays.binarySearch(names,
+						"pack-" + p.getPackName() + '.' //$NON-NLS-1$
+								+ INDEX.getExtension());
+				if (id >= 0) {
+					midxPacks[id] = p;
+				} else {
+					rest.add(p);
+				}
+			}
+			uncovered = rest.toArray(new PackFile[0]);
+		}
+
+		/**
+		 * Find an object in the multi-pack-index.
+		 *
+		 * @param id
+		 *            the object to look for.
+		 * @return position of the object in {@link #midx}; -1 if there is no
+		 *         multi-pack-index or it does not contain the object, which
+		 *         then can only be in one of the {@link #uncovered} packs.
+		 */
+		int findInMultiPackIndex(AnyObjectId id) {
+			return midx != null ? midx.findPosition(id) : -1;
+		}
+
+		/**
+		 * Get the pack recorded for an object of the multi-pack-index.
+		 *
+		 * @param pos
+		 *            position of the object in {@link #midx}.
+		 * @return the pack; null if it was deleted after the multi-pack-index
+		 *         was written. All packs must then be searched, as another
+		 *         copy of the object may be in a covered pack.
+		 */
+		PackFile getMultiPackIndexPack(int pos) {
+			int id = midx.getPackId(pos);
+			return 0 <= id && id < midxPacks.length ? midxPacks[id] : null;
 		}
 	}
 
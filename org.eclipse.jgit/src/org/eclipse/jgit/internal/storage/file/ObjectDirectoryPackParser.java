@@ -17,11 +17,14 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
@@ -32,6 +35,7 @@
 import org.eclipse.jgit.lib.CoreConfig;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
 import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.PackParser;
 import org.eclipse.jgit.transport.PackedObjectInfo;
@@ -100,6 +104,10 @@ public class ObjectDirectoryPackParser extends PackParser {
 		this.tailDigest = Constants.newMessageDigest();
 
 		indexVersion = db.getConfig().get(CoreConfig.KEY).getPackIndexVersion();
+		setThreads(pconfig.getIndexThreads());
+		setExecutor(pconfig.getExecutor());
+		setDeltaBaseCacheLimit(new WindowCacheConfig()
+				.fromConfig(odb.getConfig()).getDeltaBaseCacheLimit());
 	}
 
 	/**
@@ -293,6 +301,19 @@ protected int readDatabase(byte[] dst, int pos, int cnt) throws IOException {
 		return out.read(dst, pos, cnt);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isPositionalReadSupported() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		return out.getChannel().read(ByteBuffer.wrap(dst, pos, cnt), position);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	protected boolean checkCRC(int oldCRC) {
@@ -510,6 +531,19 @@ private PackLock renameAndOpenPack(String lockMessage)
 			}
 		}
 
+		db.updateCommitGraph(receivedCommits());
+
 		return lockMessage != null ? keep : null;
 	}
+
+	private Set<ObjectId> receivedCommits() {
+		Set<ObjectId> commits = new HashSet<>();
+		for (int i = 0; i < getObjectCount(); i++) {
+			PackedObjectInfo oe = getObject(i);
+			if (oe.getType() == Constants.OBJ_COMMIT) {
+				commits.add(oe);
+			}
+		}
+		return commits;
+	}
 }
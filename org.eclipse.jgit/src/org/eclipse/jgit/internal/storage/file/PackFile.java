@@ -15,6 +15,7 @@
 import static org.eclipse.jgit.internal.storage.pack.PackExt.BITMAP_INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.INDEX;
 import static org.eclipse.jgit.internal.storage.pack.PackExt.KEEP;
+import static org.eclipse.jgit.internal.storage.pack.PackExt.REVERSE_INDEX;
 
 import java.io.EOFException;
 import java.io.File;
@@ -22,7 +23,9 @@
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.NoSuchFileException;
@@ -38,6 +41,7 @@
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -160,7 +164,8 @@ private PackIndex idx() throws IOException {
 					}
 					try {
 						long start = System.currentTimeMillis();
-						idx = PackIndex.open(extFile(INDEX));
+						idx = PackIndex.open(extFile(INDEX),
+								WindowCache.isPackedIndexMMAP());
 						if (LOG.isDebugEnabled()) {
 							LOG.debug(String.format(
 									"Opening pack index %s, size %.3f MB took %d ms", //$NON-NLS-1$
@@ -284,6 +289,25 @@ ObjectLoader get(WindowCursor curs, AnyObjectId id)
 		return 0 < offset && !isCorrupt(offset) ? load(curs, offset) : null;
 	}
 
+	/**
+	 * Get an object from this pack by its offset.
+	 * <p>
+	 * Unlike {@link #get(WindowCursor, AnyObjectId)} the pack index is not
+	 * consulted, the offset must come from another index of this pack such as
+	 * the multi-pack-index.
+	 *
+	 * @param curs
+	 *            temporary working space associated with the calling thread.
+	 * @param offset
+	 *            offset of the object's header in this pack.
+	 * @return the object loader; null if the object is known to be corrupt.
+	 * @throws IOException
+	 *             the pack file could not be read.
+	 */
+	ObjectLoader getAt(WindowCursor curs, long offset) throws IOException {
+		return !isCorrupt(offset) ? load(curs, offset) : null;
+	}
+
 	void resolve(Set<ObjectId> matches, AbbreviatedObjectId id, int matchLimit)
 			throws IOException {
 		idx().resolve(matches, id, matchLimit);
@@ -391,6 +415,72 @@ void copyPackAsIs(PackOutputStream out, WindowCursor curs)
 		curs.copyPackAsIs(this, length, out);
 	}
 
+	/**
+	 * Send this pack, header and trailer included, if it holds exactly the
+	 * objects of the pack stream.
+	 * <p>
+	 * The file is read through the channel of its open descriptor rather
+	 * than the window cache, so that sending a large pack does not evict the
+	 * windows of other readers. The descriptor stays open during the copy,
+	 * even if the pack is deleted meanwhile.
+	 *
+	 * @param out
+	 *            stream to send the pack to.
+	 * @param objectCount
+	 *            number of objects the pack stream must hold.
+	 * @param curs
+	 *            cursor used to open the pack.
+	 * @return checksum of the pack; null if its header does not match the
+	 *         pack stream or the pack cannot be opened, in which case nothing
+	 *         was written.
+	 * @throws IOException
+	 *             the pack cannot be read, or the stream did not accept a
+	 *             write.
+	 */
+	@Nullable
+	byte[] copyWholePackAsIs(PackOutputStream out, long objectCount,
+			WindowCursor curs) throws IOException {
+		// Pin the first window, this ensures the length is accurate.
+		curs.pin(this, 0);
+		if (!beginWholeCopy()) {
+			return null;
+		}
+		try {
+			FileChannel ch;
+			synchronized (readLock) {
+				if (invalid || fd == null) {
+					return null;
+				}
+				ch = fd.getChannel();
+			}
+			// PackWriter generates version 2 headers.
+			byte[] hdr = new byte[12];
+			readFully(ch, 0, hdr);
+			if (RawParseUtils.match(hdr, 0, Constants.PACK_SIGNATURE) != 4
+					|| NB.decodeUInt32(hdr, 4) != 2
+					|| NB.decodeUInt32(hdr, 8) != objectCount) {
+				return null;
+			}
+			byte[] csum = new byte[20];
+			readFully(ch, length - 20, csum);
+			out.copyFileRegion(ch, 0, length);
+			return csum;
+		} finally {
+			endCopyAsIs();
+		}
+	}
+
+	private static void readFully(FileChannel ch, long position, byte[] dst)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(dst);
+		while (buf.hasRemaining()) {
+			if (ch.read(buf, position + buf.position()) < 0) {
+				throw new EOFException(
+						JGitText.get().packfileIsTruncatedNoParam);
+			}
+		}
+	}
+
 	final void copyAsIs(PackOutputStream out, LocalObjectToPack src,
 			boolean validate, WindowCursor curs) throws IOException,
 			StoredObjectRepresentationNotAvailableException {
@@ -627,6 +717,18 @@ private synchronized void beginCopyAsIs(ObjectToPack otp)
 		}
 	}
 
+	private synchronized boolean beginWholeCopy() {
+		if (++activeCopyRawData == 1 && activeWindows == 0) {
+			try {
+				doOpen();
+			} catch (IOException thisPackNotValid) {
+				// Counters were reset by openFail.
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private synchronized void endCopyAsIs() {
 		if (--activeCopyRawData == 0 && activeWindows == 0)
 			doClose();
@@ -1156,8 +1258,24 @@ synchronized PackBitmapIndex getBitmapIndex() throws IOException {
 	}
 
 	private synchronized PackReverseIndex getReverseIdx() throws IOException {
-		if (reverseIdx == null)
-			reverseIdx = new PackReverseIndex(idx());
+		if (reverseIdx == null) {
+			if (hasExt(REVERSE_INDEX)) {
+				try {
+					reverseIdx = PackReverseIndex.open(extFile(REVERSE_INDEX),
+							idx());
+				} catch (FileNotFoundException e) {
+					// Removed by an external gc together with the pack,
+					// compute the reverse index below.
+				} catch (IOException e) {
+					LOG.warn(MessageFormat.format(
+							JGitText.get().corruptReverseIndex,
+							extFile(REVERSE_INDEX).getAbsolutePath()), e);
+				}
+			}
+			if (reverseIdx == null) {
+				reverseIdx = new PackReverseIndex(idx());
+			}
+		}
 		return reverseIdx;
 	}
 
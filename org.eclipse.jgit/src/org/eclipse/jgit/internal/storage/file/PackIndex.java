@@ -62,6 +62,48 @@
 	 *             unrecognized data version, or unexpected data corruption.
 	 */
 	public static PackIndex open(File idxFile) throws IOException {
+		return open(idxFile, false);
+	}
+
+	/**
+	 * Open an existing pack <code>.idx</code> file for reading.
+	 * <p>
+	 * The format of the file will be automatically detected and a proper access
+	 * implementation for that format will be constructed and returned to the
+	 * caller.
+	 * <p>
+	 * If {@code mmap} is set a version 2 index is memory mapped and searched
+	 * in place rather than copied onto the heap, making the open nearly free
+	 * and leaving it to the operating system to page in the parts used. The
+	 * file stays mapped until the returned index is garbage collected, which
+	 * on some platforms prevents it from being deleted.
+	 *
+	 * @param idxFile
+	 *            existing pack .idx to read.
+	 * @param mmap
+	 *            whether to memory map the index instead of reading it.
+	 * @return access implementation for the requested file.
+	 * @throws FileNotFoundException
+	 *             the file does not exist.
+	 * @throws java.io.IOException
+	 *             the file exists but could not be read due to security errors,
+	 *             unrecognized data version, or unexpected data corruption.
+	 * @since 5.8
+	 */
+	public static PackIndex open(File idxFile, boolean mmap)
+			throws IOException {
+		if (mmap) {
+			try {
+				PackIndex idx = MappedPackIndexV2.map(idxFile);
+				if (idx != null) {
+					return idx;
+				}
+			} catch (IOException ioe) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().unreadablePackIndex,
+						idxFile.getAbsolutePath()), ioe);
+			}
+		}
 		try (SilentFileInputStream fd = new SilentFileInputStream(
 				idxFile)) {
 				return read(fd);
@@ -10,12 +10,23 @@
 
 package org.eclipse.jgit.internal.storage.file;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
+import java.util.Arrays;
 
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.file.PackIndex.MutableEntry;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.IO;
 
 /**
  * <p>
@@ -23,6 +34,11 @@
  * instead of object id. Such offset-based reverse lookups are performed in
  * O(log n) time.
  * </p>
+ * <p>
+ * The reverse index is either computed from the forward index, which sorts
+ * all offsets of the pack, or loaded from a {@code .rev} file written by
+ * {@link PackReverseIndexWriter}, which is searched in place.
+ * </p>
  *
  * @see PackIndex
  * @see PackFile
@@ -31,6 +47,9 @@ public class PackReverseIndex {
 	/** Index we were created from, and that has our ObjectId data. */
 	private final PackIndex index;
 
+	/** Pack checksum and reverse index checksum. */
+	private static final int TRAILER_LEN = 2 * Constants.OBJECT_ID_LENGTH;
+
 	/** The number of bytes per entry in the offsetIndex. */
 	private final long bucketSize;
 
@@ -41,12 +60,68 @@ public class PackReverseIndex {
 	 * the range nth[offsetIndex[bucket - 1]] inclusive to
 	 * nth[offsetIndex[bucket]] exclusive.
 	 *
-	 * See {@link #binarySearch}
+	 * See {@link #binarySearch}. Null if the reverse index was loaded from a
+	 * file, whose positions are searched as a whole.
 	 */
 	private final int[] offsetIndex;
 
 	/** Mapping from indices in offset order to indices in SHA-1 order. */
-	private final int[] nth;
+	private final IntBuffer nth;
+
+	/**
+	 * Load a reverse index from a {@code .rev} file.
+	 * <p>
+	 * The file is memory mapped and searched in place; nothing is sorted or
+	 * copied onto the heap.
+	 *
+	 * @param revFile
+	 *            existing {@code .rev} file of the pack.
+	 * @param packIndex
+	 *            forward index of the same pack.
+	 * @return the reverse index.
+	 * @throws java.io.IOException
+	 *             the file cannot be read, is corrupt or was not written for
+	 *             the pack of {@code packIndex}.
+	 */
+	public static PackReverseIndex open(File revFile, PackIndex packIndex)
+			throws IOException {
+		ByteBuffer buf;
+		try (FileChannel fc = FileChannel.open(revFile.toPath(),
+				StandardOpenOption.READ)) {
+			long size = fc.size();
+			if (size > Integer.MAX_VALUE) {
+				throw sizeMismatch(size, packIndex.getObjectCount());
+			}
+			buf = fc.map(MapMode.READ_ONLY, 0, size);
+		}
+		return new PackReverseIndex(packIndex, buf);
+	}
+
+	/**
+	 * Read a reverse index in the {@code .rev} format from a stream.
+	 *
+	 * @param in
+	 *            stream to read the reverse index from. The stream is read up
+	 *            to the end of the reverse index but not closed.
+	 * @param packIndex
+	 *            forward index of the same pack.
+	 * @return the reverse index.
+	 * @throws java.io.IOException
+	 *             the stream cannot be read, is corrupt or was not written for
+	 *             the pack of {@code packIndex}.
+	 */
+	public static PackReverseIndex read(InputStream in, PackIndex packIndex)
+			throws IOException {
+		long len = PackReverseIndexWriter.HEADER_LEN
+				+ 4 * packIndex.getObjectCount() + TRAILER_LEN;
+		if (len > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					JGitText.get().hugeIndexesAreNotSupportedByJgitYet);
+		}
+		byte[] data = new byte[(int) len];
+		IO.readFully(in, data, 0, data.length);
+		return new PackReverseIndex(packIndex, ByteBuffer.wrap(data));
+	}
 
 	/**
 	 * Create reverse index from straight/forward pack index, by indexing all
@@ -66,7 +141,7 @@ public PackReverseIndex(PackIndex packIndex) {
 		if (cnt == 0) {
 			bucketSize = Long.MAX_VALUE;
 			offsetIndex = new int[1];
-			nth = new int[0];
+			nth = IntBuffer.allocate(0);
 			return;
 		}
 
@@ -94,7 +169,7 @@ public PackReverseIndex(PackIndex packIndex) {
 		}
 
 		int nthByOffset = 0;
-		nth = new int[offsetsBySha1.length];
+		int[] positions = new int[offsetsBySha1.length];
 		offsetIndex = bucketIndex; // Reuse the allocation
 		for (int bi = 0; bi < bucketIndex.length; bi++) {
 			final int start = nthByOffset;
@@ -104,14 +179,62 @@ public PackReverseIndex(PackIndex packIndex) {
 				final long o = offsetsBySha1[nthBySha1];
 				int insertion = nthByOffset++;
 				for (; start < insertion; insertion--) {
-					if (o > offsetsBySha1[nth[insertion - 1]])
+					if (o > offsetsBySha1[positions[insertion - 1]])
 						break;
-					nth[insertion] = nth[insertion - 1];
+					positions[insertion] = positions[insertion - 1];
 				}
-				nth[insertion] = nthBySha1;
+				positions[insertion] = nthBySha1;
 			}
 			offsetIndex[bi] = nthByOffset;
 		}
+		nth = IntBuffer.wrap(positions);
+	}
+
+	private PackReverseIndex(PackIndex packIndex, ByteBuffer buf)
+			throws IOException {
+		index = packIndex;
+		bucketSize = 0;
+		offsetIndex = null;
+
+		long cnt = index.getObjectCount();
+		int len = buf.capacity();
+		if (len < PackReverseIndexWriter.HEADER_LEN) {
+			throw sizeMismatch(len, cnt);
+		}
+		if (buf.getInt(0) != PackReverseIndexWriter.MAGIC) {
+			throw new IOException(JGitText.get().notAReverseIndex);
+		}
+		int version = buf.getInt(4);
+		if (version != PackReverseIndexWriter.VERSION
+				|| buf.getInt(8) != PackReverseIndexWriter.OID_VERSION) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().unsupportedReverseIndexVersion,
+					Integer.valueOf(version)));
+		}
+		if (len != PackReverseIndexWriter.HEADER_LEN + 4 * cnt
+				+ TRAILER_LEN) {
+			throw sizeMismatch(len, cnt);
+		}
+
+		byte[] packChecksum = new byte[Constants.OBJECT_ID_LENGTH];
+		for (int i = 0; i < packChecksum.length; i++) {
+			packChecksum[i] = buf.get(len - TRAILER_LEN + i);
+		}
+		if (!Arrays.equals(packChecksum, index.packChecksum)) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().reverseIndexDoesNotMatchPack,
+					ObjectId.fromRaw(index.packChecksum).name()));
+		}
+
+		buf.position(PackReverseIndexWriter.HEADER_LEN);
+		buf.limit(len - TRAILER_LEN);
+		nth = buf.slice().asIntBuffer();
+	}
+
+	private static IOException sizeMismatch(long len, long cnt) {
+		return new CorruptObjectException(MessageFormat.format(
+				JGitText.get().reverseIndexSizeMismatch, Long.valueOf(len),
+				Long.valueOf(cnt)));
 	}
 
 	/**
@@ -126,7 +249,7 @@ public ObjectId findObject(long offset) {
 		final int ith = binarySearch(offset);
 		if (ith < 0)
 			return null;
-		return index.getObjectId(nth[ith]);
+		return index.getObjectId(nth.get(ith));
 	}
 
 	/**
@@ -153,9 +276,9 @@ public long findNextOffset(long offset, long maxOffset)
 							JGitText.get().cantFindObjectInReversePackIndexForTheSpecifiedOffset,
 							Long.valueOf(offset)));
 
-		if (ith + 1 == nth.length)
+		if (ith + 1 == nth.capacity())
 			return maxOffset;
-		return index.getOffset(nth[ith + 1]);
+		return index.getOffset(nth.get(ith + 1));
 	}
 
 	int findPostion(long offset) {
@@ -163,12 +286,19 @@ int findPostion(long offset) {
 	}
 
 	private int binarySearch(long offset) {
-		int bucket = (int) (offset / bucketSize);
-		int low = bucket == 0 ? 0 : offsetIndex[bucket - 1];
-		int high = offsetIndex[bucket];
+		int low;
+		int high;
+		if (offsetIndex != null) {
+			int bucket = (int) (offset / bucketSize);
+			low = bucket == 0 ? 0 : offsetIndex[bucket - 1];
+			high = offsetIndex[bucket];
+		} else {
+			low = 0;
+			high = nth.capacity();
+		}
 		while (low < high) {
 			final int mid = (low + high) >>> 1;
-			final long o = index.getOffset(nth[mid]);
+			final long o = index.getOffset(nth.get(mid));
 			if (offset < o)
 				high = mid;
 			else if (offset == o)
@@ -180,6 +310,6 @@ else if (offset == o)
 	}
 
 	ObjectId findObjectByPosition(int nthPosition) {
-		return index.getObjectId(nth[nthPosition]);
+		return index.getObjectId(nth.get(nthPosition));
 	}
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.transport.PackedObjectInfo;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Creates a pack reverse index file ({@code .rev}) in Git's format.
+ * <p>
+ * The file lists, for every object of the pack ordered by its offset in the
+ * pack, the position of the object in the pack index. It starts with a 12
+ * byte header (signature {@code RIDX}, version 1 and hash function id 1 for
+ * SHA-1) and ends with the checksum of the pack followed by the checksum of
+ * the reverse index itself.
+ *
+ * @see PackReverseIndex#open(java.io.File, PackIndex)
+ */
+public class PackReverseIndexWriter {
+	/** Signature of a reverse index file. */
+	static final int MAGIC = 0x52494458; // "RIDX"
+
+	/** Version of the reverse index format written. */
+	static final int VERSION = 1;
+
+	/** Hash function id of SHA-1. */
+	static final int OID_VERSION = 1;
+
+	/** Length of the file header. */
+	static final int HEADER_LEN = 12;
+
+	private final DigestOutputStream out;
+
+	private final byte[] tmp = new byte[4];
+
+	/**
+	 * Create a new writer instance.
+	 *
+	 * @param dst
+	 *            the stream this instance outputs to. If not already buffered
+	 *            it will be automatically wrapped in a buffered stream.
+	 *            Callers are always responsible for closing the stream.
+	 */
+	public PackReverseIndexWriter(OutputStream dst) {
+		out = new DigestOutputStream(dst instanceof BufferedOutputStream ? dst
+				: new BufferedOutputStream(dst),
+				Constants.newMessageDigest());
+	}
+
+	/**
+	 * Write the reverse index of a pack.
+	 * <p>
+	 * After writing the stream passed to the constructor is flushed but
+	 * remains open.
+	 *
+	 * @param toStore
+	 *            objects of the pack, sorted by name in the same order as they
+	 *            appear in the pack index.
+	 * @param packDataChecksum
+	 *            checksum signature of the entire pack data content.
+	 * @throws java.io.IOException
+	 *             an error occurred while writing to the output stream.
+	 */
+	public void write(List<? extends PackedObjectInfo> toStore,
+			byte[] packDataChecksum) throws IOException {
+		int cnt = toStore.size();
+		if (cnt + 1L > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					JGitText.get().hugeIndexesAreNotSupportedByJgitYet);
+		}
+
+		int[] positions = sortByOffset(toStore);
+		writeInt(MAGIC);
+		writeInt(VERSION);
+		writeInt(OID_VERSION);
+		for (int p : positions) {
+			writeInt(p);
+		}
+		out.write(packDataChecksum);
+		out.on(false);
+		out.write(out.getMessageDigest().digest());
+		out.flush();
+	}
+
+	private static int[] sortByOffset(List<? extends PackedObjectInfo> objs) {
+		int cnt = objs.size();
+		long maxOffset = 0;
+		for (PackedObjectInfo o : objs) {
+			maxOffset = Math.max(maxOffset, o.getOffset());
+		}
+		int[] positions = new int[cnt];
+		if (maxOffset < (1L << 32)) {
+			// Pack the offset and the position into one long and sort those,
+			// avoiding boxing for all but the largest packs.
+			long[] byOffset = new long[cnt];
+			for (int i = 0; i < cnt; i++) {
+				byOffset[i] = (objs.get(i).getOffset() << 31) | i;
+			}
+			Arrays.sort(byOffset);
+			for (int i = 0; i < cnt; i++) {
+				positions[i] = (int) (byOffset[i] & Integer.MAX_VALUE);
+			}
+		} else {
+			Integer[] boxed = new Integer[cnt];
+			for (int i = 0; i < cnt; i++) {
+				boxed[i] = Integer.valueOf(i);
+			}
+			Arrays.sort(boxed, (a, b) -> Long.compare(
+					objs.get(a.intValue()).getOffset(),
+					objs.get(b.intValue()).getOffset()));
+			for (int i = 0; i < cnt; i++) {
+				positions[i] = boxed[i].intValue();
+			}
+		}
+		return positions;
+	}
+
+	private void writeInt(int v) throws IOException {
+		NB.encodeInt32(tmp, 0, v);
+		out.write(tmp, 0, 4);
+	}
+}
@@ -30,7 +30,6 @@
 import org.eclipse.jgit.errors.LockFailedException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.internal.JGitText;
-import org.eclipse.jgit.internal.storage.file.RefDirectory.PackedRefList;
 import org.eclipse.jgit.lib.BatchRefUpdate;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectIdRef;
@@ -43,7 +42,6 @@
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.ReceiveCommand;
-import org.eclipse.jgit.util.RefList;
 
 /**
  * Implementation of {@link BatchRefUpdate} that uses the {@code packed-refs}
@@ -77,6 +75,12 @@
  * <li>Delete loose ref lock files.</li>
  * </ol>
  *
+ * Steps 2 to 6 are shared with the atomic batches queued by other threads
+ * while this one waited for the in-process {@code packed-refs} lock; see
+ * {@link PackedRefsGroupCommit}. A group of batches is committed with a single
+ * write of {@code packed-refs}, and each batch still succeeds or fails as a
+ * whole.
+ *
  * Because the packed-refs file format is a sorted list, this algorithm is
  * linear in the total number of refs, regardless of the batch size. This can be
  * a significant slowdown on repositories with large numbers of refs; callers
@@ -142,49 +146,34 @@ public void execute(RevWalk walk, ProgressMonitor monitor,
 		}
 
 		// Pack refs normally, so we can create lock files even in the case where
-		// refs/x is deleted and refs/x/y is created in this batch.
+		// refs/x is deleted and refs/x/y is created in this batch. Refs that are
+		// not loose are skipped, so batches on packed refs do not contend on
+		// packed-refs.lock here; refs loosened meanwhile are packed again while
+		// holding their locks.
 		try {
-			refdb.pack(
-					pending.stream().map(ReceiveCommand::getRefName).collect(toList()));
+			refdb.pack(pending.stream().map(ReceiveCommand::getRefName)
+					.filter(n -> refdb.fileFor(n).isFile()).collect(toList()));
 		} catch (LockFailedException e) {
 			lockFailure(pending.get(0), pending);
 			return;
 		}
 
-		Map<String, LockFile> locks = null;
-		refdb.inProcessPackedRefsLock.lock();
-		try {
-			PackedRefList oldPackedList;
-			if (!refdb.isInClone()) {
-				locks = lockLooseRefs(pending);
-				if (locks == null) {
-					return;
-				}
-				oldPackedList = refdb.pack(locks);
-			} else {
-				// During clone locking isn't needed since no refs exist yet.
-				// This also helps to avoid problems with refs only differing in
-				// case on a case insensitive filesystem (bug 528497)
-				oldPackedList = refdb.getPackedRefs();
-			}
-			RefList<Ref> newRefs = applyUpdates(walk, oldPackedList, pending);
-			if (newRefs == null) {
-				return;
-			}
-			LockFile packedRefsLock = refdb.lockPackedRefs();
-			if (packedRefsLock == null) {
-				lockFailure(pending.get(0), pending);
-				return;
-			}
-			// commitPackedRefs removes lock file (by renaming over real file).
-			refdb.commitPackedRefs(packedRefsLock, newRefs, oldPackedList,
-					true);
-		} finally {
-			try {
-				unlockAll(locks);
-			} finally {
-				refdb.inProcessPackedRefsLock.unlock();
+		Collections.sort(pending,
+				Comparator.comparing(ReceiveCommand::getRefName));
+		Map<String, Ref> newRefs = new HashMap<>();
+		for (ReceiveCommand c : pending) {
+			String name = c.getRefName();
+			if (newRefs.containsKey(name)) {
+				throw new IOException(MessageFormat
+						.format(JGitText.get().duplicateRef, name));
 			}
+			newRefs.put(name, c.getType() != ReceiveCommand.Type.DELETE
+					? peeledRef(walk, c)
+					: null);
+		}
+		if (!refdb.groupCommit
+				.commit(new PackedRefsGroupCommit.Batch(pending, newRefs))) {
+			return;
 		}
 
 		refdb.fireRefsChanged();
@@ -279,123 +268,6 @@ private boolean checkNonFastForwards(RevWalk walk,
 		return true;
 	}
 
-	/**
-	 * Lock loose refs corresponding to a list of commands.
-	 *
-	 * @param commands
-	 *            commands that we intend to execute.
-	 * @return map of ref name in the input commands to lock file. Always contains
-	 *         one entry for each ref in the input list. All locks are acquired
-	 *         before returning. If any lock was not able to be acquired: the
-	 *         return value is null; no locks are held; and all commands that were
-	 *         pending are set to fail with {@code LOCK_FAILURE}.
-	 * @throws IOException
-	 *             an error occurred other than a failure to acquire; no locks are
-	 *             held if this exception is thrown.
-	 */
-	@Nullable
-	private Map<String, LockFile> lockLooseRefs(List<ReceiveCommand> commands)
-			throws IOException {
-		ReceiveCommand failed = null;
-		Map<String, LockFile> locks = new HashMap<>();
-		try {
-			RETRY: for (int ms : refdb.getRetrySleepMs()) {
-				failed = null;
-				// Release all locks before trying again, to prevent deadlock.
-				unlockAll(locks);
-				locks.clear();
-				RefDirectory.sleep(ms);
-
-				for (ReceiveCommand c : commands) {
-					String name = c.getRefName();
-					LockFile lock = new LockFile(refdb.fileFor(name));
-					if (locks.put(name, lock) != null) {
-						throw new IOException(
-								MessageFormat.format(JGitText.get().duplicateRef, name));
-					}
-					if (!lock.lock()) {
-						failed = c;
-						continue RETRY;
-					}
-				}
-				Map<String, LockFile> result = locks;
-				locks = null;
-				return result;
-			}
-		} finally {
-			unlockAll(locks);
-		}
-		lockFailure(failed != null ? failed : commands.get(0), commands);
-		return null;
-	}
-
-	private static RefList<Ref> applyUpdates(RevWalk walk, RefList<Ref> refs,
-			List<ReceiveCommand> commands) throws IOException {
-		// Construct a new RefList by merging the old list with the updates.
-		// This assumes that each ref occurs at most once as a ReceiveCommand.
-		Collections.sort(commands,
-				Comparator.comparing(ReceiveCommand::getRefName));
-
-		int delta = 0;
-		for (ReceiveCommand c : commands) {
-			switch (c.getType()) {
-			case DELETE:
-				delta--;
-				break;
-			case CREATE:
-				delta++;
-				break;
-			default:
-			}
-		}
-
-		RefList.Builder<Ref> b = new RefList.Builder<>(refs.size() + delta);
-		int refIdx = 0;
-		int cmdIdx = 0;
-		while (refIdx < refs.size() || cmdIdx < commands.size()) {
-			Ref ref = (refIdx < refs.size()) ? refs.get(refIdx) : null;
-			ReceiveCommand cmd = (cmdIdx < commands.size())
-					? commands.get(cmdIdx)
-					: null;
-			int cmp = 0;
-			if (ref != null && cmd != null) {
-				cmp = ref.getName().compareTo(cmd.getRefName());
-			} else if (ref == null) {
-				cmp = 1;
-			} else if (cmd == null) {
-				cmp = -1;
-			}
-
-			if (cmp < 0) {
-				b.add(ref);
-				refIdx++;
-			} else if (cmp > 0) {
-				assert cmd != null;
-				if (cmd.getType() != ReceiveCommand.Type.CREATE) {
-					lockFailure(cmd, commands);
-					return null;
-				}
-
-				b.add(peeledRef(walk, cmd));
-				cmdIdx++;
-			} else {
-				assert cmd != null;
-				assert ref != null;
-				if (!cmd.getOldId().equals(ref.getObjectId())) {
-					lockFailure(cmd, commands);
-					return null;
-				}
-
-				if (cmd.getType() != ReceiveCommand.Type.DELETE) {
-					b.add(peeledRef(walk, cmd));
-				}
-				cmdIdx++;
-				refIdx++;
-			}
-		}
-		return b.toRefList();
-	}
-
 	private void writeReflog(List<ReceiveCommand> commands) {
 		PersonIdent ident = getRefLogIdent();
 		if (ident == null) {
@@ -483,13 +355,13 @@ private static Ref peeledRef(RevWalk walk, ReceiveCommand cmd)
 				Ref.Storage.PACKED, cmd.getRefName(), newId);
 	}
 
-	private static void unlockAll(@Nullable Map<?, LockFile> locks) {
+	static void unlockAll(@Nullable Map<?, LockFile> locks) {
 		if (locks != null) {
 			locks.values().forEach(LockFile::unlock);
 		}
 	}
 
-	private static void lockFailure(ReceiveCommand cmd,
+	static void lockFailure(ReceiveCommand cmd,
 			List<ReceiveCommand> commands) {
 		reject(cmd, LOCK_FAILURE, commands);
 	}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.jgit.internal.storage.file.RefDirectory.PackedRefList;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.util.RefList;
+
+/**
+ * Commits atomic batches of ref updates queued by concurrent threads with a
+ * single rewrite of {@code packed-refs}.
+ * <p>
+ * Each thread queues its batch and then waits for
+ * {@link RefDirectory#inProcessPackedRefsLock}. The thread that acquires the
+ * lock commits every batch queued so far, its own and those of the threads
+ * still waiting; those threads find their batch completed when they acquire
+ * the lock in turn. Under contention the cost of locking, reading and writing
+ * {@code packed-refs} is therefore shared by all batches of a group instead of
+ * being paid by each of them.
+ * <p>
+ * Batches stay atomic and independent: a batch whose loose refs cannot be
+ * locked, or whose old values do not match, is rejected without affecting the
+ * other batches of its group. Batches are validated in queue order, so a later
+ * batch sees the updates of the earlier ones.
+ */
+class PackedRefsGroupCommit {
+	/** Atomic batch waiting to be committed. */
+	static final class Batch {
+		final List<ReceiveCommand> commands;
+
+		final Map<String, Ref> newRefs;
+
+		/** Guarded by {@link RefDirectory#inProcessPackedRefsLock}. */
+		boolean done;
+
+		boolean committed;
+
+		IOException error;
+
+		/**
+		 * Create a batch.
+		 *
+		 * @param commands
+		 *            commands of the batch, each naming a different ref.
+		 * @param newRefs
+		 *            peeled packed refs to store, by name, for the commands
+		 *            that do not delete their ref.
+		 */
+		Batch(List<ReceiveCommand> commands, Map<String, Ref> newRefs) {
+			this.commands = commands;
+			this.newRefs = newRefs;
+		}
+	}
+
+	private final RefDirectory refdb;
+
+	private final ConcurrentLinkedQueue<Batch> queue = new ConcurrentLinkedQueue<>();
+
+	/** Guarded by {@code this}. */
+	private final BatchRefUpdateStats.Accumulator stats = new BatchRefUpdateStats.Accumulator();
+
+	PackedRefsGroupCommit(RefDirectory refdb) {
+		this.refdb = refdb;
+	}
+
+	/**
+	 * Get statistics of the batches committed so far.
+	 *
+	 * @return snapshot of the statistics.
+	 */
+	synchronized BatchRefUpdateStats getStats() {
+		return new BatchRefUpdateStats(stats.copy());
+	}
+
+	/**
+	 * Commit a batch, possibly together with batches of other threads.
+	 *
+	 * @param batch
+	 *            the batch to commit.
+	 * @return whether the batch was committed. If not, its commands have
+	 *         been rejected.
+	 * @throws IOException
+	 *             the batch could not be committed.
+	 */
+	boolean commit(Batch batch) throws IOException {
+		queue.add(batch);
+		long start = System.nanoTime();
+		refdb.inProcessPackedRefsLock.lock();
+		try {
+			long locked = System.nanoTime();
+			synchronized (this) {
+				stats.lockWaitNanos += locked - start;
+			}
+			if (!batch.done) {
+				commitQueued();
+			}
+		} finally {
+			refdb.inProcessPackedRefsLock.unlock();
+		}
+		if (batch.error != null) {
+			throw batch.error;
+		}
+		return batch.committed;
+	}
+
+	private void commitQueued() throws IOException {
+		long start = System.nanoTime();
+		List<Batch> group = new ArrayList<>();
+		for (Batch b; (b = queue.poll()) != null;) {
+			group.add(b);
+		}
+
+		Map<String, LockFile> locks = new HashMap<>();
+		boolean wrote = false;
+		try {
+			List<Batch> locked;
+			PackedRefList oldPackedList;
+			if (!refdb.isInClone()) {
+				locked = new ArrayList<>(group.size());
+				for (Batch b : group) {
+					if (lockLooseRefs(b, locks)) {
+						locked.add(b);
+					}
+				}
+				if (locked.isEmpty()) {
+					return;
+				}
+				oldPackedList = refdb.pack(locks);
+			} else {
+				// During clone locking isn't needed since no refs exist yet.
+				// This also helps to avoid problems with refs only differing in
+				// case on a case insensitive filesystem (bug 528497)
+				locked = group;
+				oldPackedList = refdb.getPackedRefs();
+			}
+
+			// Updated refs by name; null values are deletions.
+			TreeMap<String, Ref> updates = new TreeMap<>();
+			List<Batch> valid = new ArrayList<>(locked.size());
+			for (Batch b : locked) {
+				if (validate(b, oldPackedList, updates)) {
+					for (ReceiveCommand c : b.commands) {
+						updates.put(c.getRefName(), b.newRefs.get(c.getRefName()));
+					}
+					valid.add(b);
+				}
+			}
+			if (valid.isEmpty()) {
+				return;
+			}
+
+			LockFile packedRefsLock = refdb.lockPackedRefs();
+			if (packedRefsLock == null) {
+				for (Batch b : valid) {
+					PackedBatchRefUpdate.lockFailure(b.commands.get(0),
+							b.commands);
+				}
+				return;
+			}
+			// commitPackedRefs removes lock file (by renaming over real file).
+			refdb.commitPackedRefs(packedRefsLock,
+					merge(oldPackedList, updates), oldPackedList, true);
+			wrote = true;
+			for (Batch b : valid) {
+				b.committed = true;
+			}
+		} catch (IOException | RuntimeException e) {
+			IOException err = e instanceof IOException ? (IOException) e
+					: new IOException(e.getMessage(), e);
+			for (Batch b : group) {
+				b.error = err;
+			}
+			throw e;
+		} finally {
+			try {
+				PackedBatchRefUpdate.unlockAll(locks);
+			} finally {
+				for (Batch b : group) {
+					b.done = true;
+				}
+				record(group, wrote, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private synchronized void record(List<Batch> group, boolean wrote,
+			long nanos) {
+		stats.groups++;
+		stats.commitNanos += nanos;
+		if (wrote) {
+			stats.packedRefsWrites++;
+		}
+		for (Batch b : group) {
+			if (b.committed) {
+				stats.batches++;
+				stats.updates += b.commands.size();
+			} else {
+				stats.rejectedBatches++;
+			}
+		}
+	}
+
+	/**
+	 * Lock the loose refs of a batch that are not yet locked by the group.
+	 *
+	 * @param batch
+	 *            batch to lock the refs of.
+	 * @param locks
+	 *            locks held by the group, by ref name. The locks of the batch
+	 *            are added if all of them are acquired.
+	 * @return whether all refs of the batch are locked. If not, none of the
+	 *         locks taken for this batch are held, and its commands are set
+	 *         to fail with {@code LOCK_FAILURE}.
+	 * @throws IOException
+	 *             an error occurred other than a failure to acquire; none of
+	 *             the locks taken for this batch are held.
+	 */
+	private boolean lockLooseRefs(Batch batch, Map<String, LockFile> locks)
+			throws IOException {
+		List<ReceiveCommand> commands = batch.commands;
+		ReceiveCommand failed = null;
+		Map<String, LockFile> mine = new HashMap<>();
+		try {
+			RETRY: for (int ms : refdb.getRetrySleepMs()) {
+				failed = null;
+				// Release all locks before trying again, to prevent deadlock.
+				PackedBatchRefUpdate.unlockAll(mine);
+				mine.clear();
+				RefDirectory.sleep(ms);
+
+				for (ReceiveCommand c : commands) {
+					String name = c.getRefName();
+					if (locks.containsKey(name)) {
+						// Locked by an earlier batch of the group.
+						continue;
+					}
+					LockFile lock = new LockFile(refdb.fileFor(name));
+					mine.put(name, lock);
+					if (!lock.lock()) {
+						failed = c;
+						continue RETRY;
+					}
+				}
+				locks.putAll(mine);
+				mine = null;
+				return true;
+			}
+		} finally {
+			PackedBatchRefUpdate.unlockAll(mine);
+		}
+		PackedBatchRefUpdate.lockFailure(
+				failed != null ? failed : commands.get(0), commands);
+		return false;
+	}
+
+	// Check the old values of a batch against the packed refs as updated by
+	// the earlier batches of the group; rejects the batch if any differ.
+	private static boolean validate(Batch batch, RefList<Ref> packed,
+			Map<String, Ref> updates) {
+		for (ReceiveCommand cmd : batch.commands) {
+			String name = cmd.getRefName();
+			Ref cur = updates.containsKey(name) ? updates.get(name)
+					: packed.get(name);
+			boolean ok;
+			if (cur == null) {
+				ok = cmd.getType() == ReceiveCommand.Type.CREATE;
+			} else {
+				ok = cmd.getOldId().equals(cur.getObjectId());
+			}
+			if (!ok) {
+				PackedBatchRefUpdate.lockFailure(cmd, batch.commands);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Construct a new RefList by merging the old list with the updates.
+	private static RefList<Ref> merge(RefList<Ref> refs,
+			TreeMap<String, Ref> updates) {
+		RefList.Builder<Ref> b = new RefList.Builder<>(
+				refs.size() + updates.size());
+		int refIdx = 0;
+		for (Map.Entry<String, Ref> e : updates.entrySet()) {
+			String name = e.getKey();
+			while (refIdx < refs.size()
+					&& refs.get(refIdx).getName().compareTo(name) < 0) {
+				b.add(refs.get(refIdx++));
+			}
+			if (refIdx < refs.size()
+					&& refs.get(refIdx).getName().equals(name)) {
+				refIdx++;
+			}
+			Ref newRef = e.getValue();
+			if (newRef != null) {
+				b.add(newRef);
+			}
+		}
+		while (refIdx < refs.size()) {
+			b.add(refs.get(refIdx++));
+		}
+		return b.toRefList();
+	}
+}
@@ -109,6 +109,9 @@ public class RefDirectory extends RefDatabase {
 	/** If in the header, denotes the file has peeled data. */
 	public static final String PACKED_REFS_PEELED = " peeled"; //$NON-NLS-1$
 
+	/** If in the header, denotes the file is sorted by ref name. */
+	public static final String PACKED_REFS_SORTED = " sorted"; //$NON-NLS-1$
+
 	/** The names of the additional refs supported by this class */
 	private static final String[] additionalRefsNames = new String[] {
 			Constants.MERGE_HEAD, Constants.FETCH_HEAD, Constants.ORIG_HEAD,
@@ -143,6 +146,12 @@ public class RefDirectory extends RefDatabase {
 	/** Immutable sorted list of packed references. */
 	final AtomicReference<PackedRefList> packedRefs = new AtomicReference<>();
 
+	/**
+	 * Sorted {@code packed-refs} file searched in place of {@link #packedRefs}
+	 * while that list is out of date, or null.
+	 */
+	final AtomicReference<SortedPackedRefs> sortedPackedRefs = new AtomicReference<>();
+
 	/**
 	 * Lock for coordinating operations within a single process that may contend
 	 * on the {@code packed-refs} file.
@@ -159,6 +168,9 @@ public class RefDirectory extends RefDatabase {
 	 */
 	final ReentrantLock inProcessPackedRefsLock = new ReentrantLock(true);
 
+	/** Commits atomic batch updates queued by concurrent threads together. */
+	final PackedRefsGroupCommit groupCommit = new PackedRefsGroupCommit(this);
+
 	/**
 	 * Number of modifications made to this database.
 	 * <p>
@@ -232,6 +244,7 @@ public void close() {
 	private void clearReferences() {
 		looseRefs.set(RefList.<LooseRef> emptyList());
 		packedRefs.set(NO_PACKED_REFS);
+		sortedPackedRefs.set(null);
 	}
 
 	/** {@inheritDoc} */
@@ -244,14 +257,17 @@ public void refresh() {
 	/** {@inheritDoc} */
 	@Override
 	public boolean isNameConflicting(String name) throws IOException {
-		RefList<Ref> packed = getPackedRefs();
+		SortedPackedRefs sorted = getSortedPackedRefs();
+		RefList<Ref> packed = sorted == null ? getPackedRefs()
+				: RefList.emptyList();
 		RefList<LooseRef> loose = getLooseRefs();
 
 		// Cannot be nested within an existing reference.
 		int lastSlash = name.lastIndexOf('/');
 		while (0 < lastSlash) {
 			String needle = name.substring(0, lastSlash);
-			if (loose.contains(needle) || packed.contains(needle))
+			if (loose.contains(needle) || packed.contains(needle)
+					|| (sorted != null && sorted.get(needle) != null))
 				return true;
 			lastSlash = name.lastIndexOf('/', lastSlash - 1);
 		}
@@ -263,6 +279,8 @@ public boolean isNameConflicting(String name) throws IOException {
 		idx = -(packed.find(prefix) + 1);
 		if (idx < packed.size() && packed.get(idx).getName().startsWith(prefix))
 			return true;
+		if (sorted != null && sorted.hasPrefix(prefix))
+			return true;
 
 		idx = -(loose.find(prefix) + 1);
 		if (idx < loose.size() && loose.get(idx).getName().startsWith(prefix))
@@ -288,7 +306,8 @@ private RefList<LooseRef> getLooseRefs() {
 	}
 
 	@Nullable
-	private Ref readAndResolve(String name, RefList<Ref> packed) throws IOException {
+	private Ref readAndResolve(String name, PackedLookup packed)
+			throws IOException {
 		try {
 			Ref ref = readRef(name, packed);
 			if (ref != null) {
@@ -312,7 +331,7 @@ private Ref readAndResolve(String name, RefList<Ref> packed) throws IOException
 	@Override
 	public Ref exactRef(String name) throws IOException {
 		try {
-			return readAndResolve(name, getPackedRefs());
+			return readAndResolve(name, getPackedLookup());
 		} finally {
 			fireRefsChanged();
 		}
@@ -323,7 +342,7 @@ public Ref exactRef(String name) throws IOException {
 	@NonNull
 	public Map<String, Ref> exactRef(String... refs) throws IOException {
 		try {
-			RefList<Ref> packed = getPackedRefs();
+			PackedLookup packed = getPackedLookup();
 			Map<String, Ref> result = new HashMap<>(refs.length);
 			for (String name : refs) {
 				Ref ref = readAndResolve(name, packed);
@@ -342,7 +361,7 @@ public Map<String, Ref> exactRef(String... refs) throws IOException {
 	@Nullable
 	public Ref firstExactRef(String... refs) throws IOException {
 		try {
-			RefList<Ref> packed = getPackedRefs();
+			PackedLookup packed = getPackedLookup();
 			for (String name : refs) {
 				Ref ref = readAndResolve(name, packed);
 				if (ref != null) {
@@ -361,7 +380,11 @@ public Map<String, Ref> getRefs(String prefix) throws IOException {
 		final RefList<LooseRef> oldLoose = looseRefs.get();
 		LooseScanner scan = new LooseScanner(oldLoose);
 		scan.scan(prefix);
-		final RefList<Ref> packed = getPackedRefs();
+		SortedPackedRefs sorted = prefix.isEmpty() ? null
+				: getSortedPackedRefs();
+		final RefList<Ref> packed = sorted != null
+				? sorted.getByPrefix(prefix)
+				: getPackedRefs();
 
 		RefList<LooseRef> loose;
 		if (scan.newLoose != null) {
@@ -376,7 +399,8 @@ public Map<String, Ref> getRefs(String prefix) throws IOException {
 		RefList.Builder<Ref> symbolic = scan.symbolic;
 		for (int idx = 0; idx < symbolic.size();) {
 			final Ref symbolicRef = symbolic.get(idx);
-			final Ref resolvedRef = resolve(symbolicRef, 0, prefix, loose, packed);
+			final Ref resolvedRef = resolve(symbolicRef, 0, prefix, loose,
+					packed::get);
 			if (resolvedRef != null && resolvedRef.getObjectId() != null) {
 				symbolic.set(idx, resolvedRef);
 				idx++;
@@ -586,7 +610,7 @@ void storedSymbolicRef(RefDirectoryUpdate u, FileSnapshot snapshot,
 	public RefDirectoryUpdate newUpdate(String name, boolean detach)
 			throws IOException {
 		boolean detachingSymbolicRef = false;
-		final RefList<Ref> packed = getPackedRefs();
+		PackedLookup packed = getPackedLookup();
 		Ref ref = readRef(name, packed);
 		if (ref != null)
 			ref = resolve(ref, 0, null, null, packed);
@@ -616,6 +640,15 @@ public PackedBatchRefUpdate newBatchUpdate() {
 		return new PackedBatchRefUpdate(this);
 	}
 
+	/**
+	 * Get statistics of the atomic batch ref updates committed so far.
+	 *
+	 * @return snapshot of the statistics of atomic batch ref updates.
+	 */
+	public BatchRefUpdateStats getBatchRefUpdateStats() {
+		return groupCommit.getStats();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean performsAtomicTransactions() {
@@ -727,7 +760,7 @@ private PackedRefList pack(Collection<String> refs,
 				// Iterate over all refs to be packed
 				boolean dirty = false;
 				for (String refName : refs) {
-					Ref oldRef = readRef(refName, cur);
+					Ref oldRef = readRef(refName, cur::get);
 					if (oldRef == null) {
 						continue; // A non-existent ref is already correctly packed.
 					}
@@ -871,7 +904,7 @@ void log(boolean force, RefUpdate update, String msg, boolean deref)
 	}
 
 	private Ref resolve(final Ref ref, int depth, String prefix,
-			RefList<LooseRef> loose, RefList<Ref> packed) throws IOException {
+			RefList<LooseRef> loose, PackedLookup packed) throws IOException {
 		if (ref.isSymbolic()) {
 			Ref dst = ref.getTarget();
 
@@ -882,10 +915,11 @@ private Ref resolve(final Ref ref, int depth, String prefix,
 			// recent scan of the loose directory, use it.
 			if (loose != null && dst.getName().startsWith(prefix)) {
 				int idx;
+				Ref p;
 				if (0 <= (idx = loose.find(dst.getName())))
 					dst = loose.get(idx);
-				else if (0 <= (idx = packed.find(dst.getName())))
-					dst = packed.get(idx);
+				else if ((p = packed.get(dst.getName())) != null)
+					dst = p;
 				else
 					return ref;
 			} else {
@@ -903,12 +937,8 @@ else if (0 <= (idx = packed.find(dst.getName())))
 	}
 
 	PackedRefList getPackedRefs() throws IOException {
-		boolean trustFolderStat = getRepository().getConfig().getBoolean(
-				ConfigConstants.CONFIG_CORE_SECTION,
-				ConfigConstants.CONFIG_KEY_TRUSTFOLDERSTAT, true);
-
 		final PackedRefList curList = packedRefs.get();
-		if (trustFolderStat && !curList.snapshot.isModified(packedRefsFile)) {
+		if (trustFolderStat() && !curList.snapshot.isModified(packedRefsFile)) {
 			return curList;
 		}
 
@@ -917,9 +947,68 @@ PackedRefList getPackedRefs() throws IOException {
 				&& !curList.id.equals(newList.id)) {
 			modCnt.incrementAndGet();
 		}
+		sortedPackedRefs.set(null);
 		return newList;
 	}
 
+	private boolean trustFolderStat() {
+		return getRepository().getConfig().getBoolean(
+				ConfigConstants.CONFIG_CORE_SECTION,
+				ConfigConstants.CONFIG_KEY_TRUSTFOLDERSTAT, true);
+	}
+
+	private PackedLookup getPackedLookup() throws IOException {
+		boolean trustFolderStat = trustFolderStat();
+		PackedRefList curList = packedRefs.get();
+		if (trustFolderStat && !curList.snapshot.isModified(packedRefsFile)) {
+			return curList::get;
+		}
+		SortedPackedRefs sorted = openSortedPackedRefs(trustFolderStat);
+		if (sorted != null) {
+			return sorted::get;
+		}
+		return getPackedRefs()::get;
+	}
+
+	/**
+	 * Get the sorted packed-refs file to search instead of parsing it.
+	 * <p>
+	 * Lookups of a few refs can binary search a large sorted packed-refs file
+	 * instead of parsing all of it into a {@link PackedRefList} after every
+	 * change.
+	 *
+	 * @return the file to search, or {@code null} if {@link #getPackedRefs()}
+	 *         is up to date or the file is small or not sorted.
+	 * @throws IOException
+	 *             the file cannot be read.
+	 */
+	@Nullable
+	private SortedPackedRefs getSortedPackedRefs() throws IOException {
+		boolean trustFolderStat = trustFolderStat();
+		if (trustFolderStat
+				&& !packedRefs.get().snapshot.isModified(packedRefsFile)) {
+			return null;
+		}
+		return openSortedPackedRefs(trustFolderStat);
+	}
+
+	@Nullable
+	private SortedPackedRefs openSortedPackedRefs(boolean trustFolderStat)
+			throws IOException {
+		SortedPackedRefs cur = sortedPackedRefs.get();
+		if (cur != null && trustFolderStat
+				&& !cur.getSnapshot().isModified(packedRefsFile)) {
+			return cur;
+		}
+
+		SortedPackedRefs next = SortedPackedRefs.open(packedRefsFile);
+		if (sortedPackedRefs.compareAndSet(cur, next) && next != null
+				&& (cur == null || !cur.getSnapshot().equals(next.getSnapshot()))) {
+			modCnt.incrementAndGet();
+		}
+		return next;
+	}
+
 	private PackedRefList readPackedRefs() throws IOException {
 		int maxStaleRetries = 5;
 		int retries = 0;
@@ -1071,7 +1160,7 @@ protected void writeFile(String name, byte[] content)
 		return result.get();
 	}
 
-	private Ref readRef(String name, RefList<Ref> packed) throws IOException {
+	private Ref readRef(String name, PackedLookup packed) throws IOException {
 		final RefList<LooseRef> curList = looseRefs.get();
 		final int idx = curList.find(name);
 		if (0 <= idx) {
@@ -1347,6 +1436,13 @@ static void sleep(long ms) throws InterruptedIOException {
 		}
 	}
 
+	/** Lookup of a single packed ref. */
+	@FunctionalInterface
+	private interface PackedLookup {
+		@Nullable
+		Ref get(String name) throws IOException;
+	}
+
 	static class PackedRefList extends RefList<Ref> {
 
 		private final FileSnapshot snapshot;
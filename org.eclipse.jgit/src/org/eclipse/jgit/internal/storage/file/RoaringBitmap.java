@@ -0,0 +1,523 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.util.Arrays;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import com.googlecode.javaewah.IteratingRLW;
+
+/**
+ * A mutable bitmap split into Roaring style containers.
+ * <p>
+ * Positions are grouped by their upper 16 bits. Each group of 65536
+ * positions is held by a container that stores up to {@value #ARRAY_MAX}
+ * values as a sorted array and switches to a plain 8 KiB bitmap when it gets
+ * denser. Unlike {@link EWAHCompressedBitmap}, whose logical operations
+ * always allocate a new bitmap covering both operands, operations here modify
+ * the containers in place and only touch the containers the other operand has
+ * bits in.
+ * <p>
+ * Bitmaps are combined with {@link EWAHCompressedBitmap}s 64 bits at a time,
+ * so on-disk bitmaps never have to be expanded into single positions.
+ */
+final class RoaringBitmap {
+	/** Most values held by an array container. */
+	static final int ARRAY_MAX = 4096;
+
+	/** Number of 64 bit words covering the positions of one container. */
+	private static final int WORDS = 1 << 10;
+
+	private static final int OR = 0;
+
+	private static final int AND_NOT = 1;
+
+	private static final int XOR = 2;
+
+	private char[] keys = new char[4];
+
+	private Container[] containers = new Container[4];
+
+	private int size;
+
+	/**
+	 * Create a bitmap holding the bits of an EWAH bitmap.
+	 *
+	 * @param bitmap
+	 *            bits to copy.
+	 * @return the new bitmap.
+	 */
+	static RoaringBitmap of(EWAHCompressedBitmap bitmap) {
+		RoaringBitmap r = new RoaringBitmap();
+		r.or(bitmap);
+		return r;
+	}
+
+	boolean contains(int position) {
+		int i = find(high(position));
+		return i >= 0 && containers[i].contains(low(position));
+	}
+
+	void add(int position) {
+		int i = findOrCreate(high(position));
+		containers[i] = containers[i].add(low(position));
+	}
+
+	void remove(int position) {
+		int i = find(high(position));
+		if (i >= 0) {
+			containers[i] = containers[i].remove(low(position));
+			if (containers[i].cardinality() == 0) {
+				delete(i);
+			}
+		}
+	}
+
+	int cardinality() {
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			n += containers[i].cardinality();
+		}
+		return n;
+	}
+
+	void or(EWAHCompressedBitmap other) {
+		apply(OR, other);
+	}
+
+	void andNot(EWAHCompressedBitmap other) {
+		apply(AND_NOT, other);
+	}
+
+	void xor(EWAHCompressedBitmap other) {
+		apply(XOR, other);
+	}
+
+	void or(RoaringBitmap other) {
+		apply(OR, other);
+	}
+
+	void andNot(RoaringBitmap other) {
+		apply(AND_NOT, other);
+	}
+
+	void xor(RoaringBitmap other) {
+		apply(XOR, other);
+	}
+
+	/**
+	 * Convert to an EWAH bitmap.
+	 * <p>
+	 * The result has the same layout as
+	 * {@link BitSet#toEWAHCompressedBitmap()}, its size ends at the highest
+	 * position set.
+	 *
+	 * @return the compressed bitmap.
+	 */
+	EWAHCompressedBitmap toEWAHCompressedBitmap() {
+		EWAHCompressedBitmap compressed = new EWAHCompressedBitmap();
+		int[] idx = new int[WORDS];
+		long[] words = new long[WORDS];
+		long next = 0;
+		long last = 0;
+		for (int c = 0; c < size; c++) {
+			long base = (long) keys[c] * WORDS;
+			int n = containers[c].words(idx, words);
+			for (int k = 0; k < n; k++) {
+				long w = base + idx[k];
+				if (last != 0) {
+					compressed.addWord(last);
+				}
+				if (w > next) {
+					compressed.addStreamOfEmptyWords(false, w - next);
+				}
+				last = words[k];
+				next = w + 1;
+			}
+		}
+		int bitsThatMatter = 64 - Long.numberOfLeadingZeros(last);
+		if (bitsThatMatter > 0) {
+			compressed.addWord(last, bitsThatMatter);
+		}
+		return compressed;
+	}
+
+	private void apply(int op, EWAHCompressedBitmap other) {
+		IteratingRLW it = other.getIteratingRLW();
+		long w = 0;
+		int key = -1;
+		int c = -1;
+		do {
+			long run = it.getRunningLength();
+			if (it.getRunningBit()) {
+				for (long end = w + run; w < end; w++) {
+					int k = (int) (w / WORDS);
+					if (k != key) {
+						key = k;
+						c = op == AND_NOT ? find((char) k) : findOrCreate((char) k);
+					}
+					if (c >= 0) {
+						containers[c] = containers[c].apply(op,
+								(int) (w % WORDS), -1L);
+					}
+				}
+			} else {
+				w += run;
+			}
+			int lits = it.getNumberOfLiteralWords();
+			for (int i = 0; i < lits; i++, w++) {
+				long word = it.getLiteralWordAt(i);
+				if (word == 0) {
+					continue;
+				}
+				int k = (int) (w / WORDS);
+				if (k != key) {
+					key = k;
+					c = op == AND_NOT ? find((char) k) : findOrCreate((char) k);
+				}
+				if (c >= 0) {
+					containers[c] = containers[c].apply(op, (int) (w % WORDS),
+							word);
+				}
+			}
+		} while (it.next());
+		compact();
+	}
+
+	private void apply(int op, RoaringBitmap other) {
+		if (other == this) {
+			if (op != OR) {
+				Arrays.fill(containers, 0, size, null);
+				size = 0;
+			}
+			return;
+		}
+		int[] idx = new int[WORDS];
+		long[] words = new long[WORDS];
+		for (int j = 0; j < other.size; j++) {
+			int c = op == AND_NOT ? find(other.keys[j])
+					: findOrCreate(other.keys[j]);
+			if (c < 0) {
+				continue;
+			}
+			int n = other.containers[j].words(idx, words);
+			Container target = containers[c];
+			for (int k = 0; k < n; k++) {
+				target = target.apply(op, idx[k], words[k]);
+			}
+			containers[c] = target;
+		}
+		compact();
+	}
+
+	// Shrink sparse containers back to arrays and drop empty ones after a
+	// bulk operation.
+	private void compact() {
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			Container c = containers[i].optimize();
+			if (c.cardinality() > 0) {
+				keys[n] = keys[i];
+				containers[n++] = c;
+			}
+		}
+		Arrays.fill(containers, n, size, null);
+		size = n;
+	}
+
+	private int find(char key) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			char k = keys[mid];
+			if (k < key) {
+				low = mid + 1;
+			} else if (k > key) {
+				high = mid;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private int findOrCreate(char key) {
+		int i = find(key);
+		if (i >= 0) {
+			return i;
+		}
+		i = -(i + 1);
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * size);
+			containers = Arrays.copyOf(containers, 2 * size);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(containers, i, containers, i + 1, size - i);
+		keys[i] = key;
+		containers[i] = new ArrayContainer();
+		size++;
+		return i;
+	}
+
+	private void delete(int i) {
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+		containers[--size] = null;
+	}
+
+	private static char high(int position) {
+		return (char) (position >>> 16);
+	}
+
+	private static char low(int position) {
+		return (char) position;
+	}
+
+	private static long combine(int op, long current, long word) {
+		switch (op) {
+		case OR:
+			return current | word;
+		case AND_NOT:
+			return current & ~word;
+		default:
+			return current ^ word;
+		}
+	}
+
+	private abstract static class Container {
+		abstract int cardinality();
+
+		abstract boolean contains(char v);
+
+		abstract Container add(char v);
+
+		abstract Container remove(char v);
+
+		/**
+		 * Combine 64 values with the container.
+		 *
+		 * @param op
+		 *            OR, AND_NOT or XOR.
+		 * @param i
+		 *            index of the word, covering values {@code 64 * i} to
+		 *            {@code 64 * i + 63}.
+		 * @param word
+		 *            bits of the word.
+		 * @return the container now holding the values, this one or a
+		 *         replacement in a different format.
+		 */
+		abstract Container apply(int op, int i, long word);
+
+		/**
+		 * Get the non-zero words of the container in ascending order.
+		 *
+		 * @param idx
+		 *            receives the word indexes.
+		 * @param words
+		 *            receives the words.
+		 * @return number of words stored.
+		 */
+		abstract int words(int[] idx, long[] words);
+
+		abstract Container optimize();
+	}
+
+	private static final class ArrayContainer extends Container {
+		private char[] values = new char[4];
+
+		private int card;
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		boolean contains(char v) {
+			return Arrays.binarySearch(values, 0, card, v) >= 0;
+		}
+
+		@Override
+		Container add(char v) {
+			int i = Arrays.binarySearch(values, 0, card, v);
+			if (i >= 0) {
+				return this;
+			}
+			if (card == ARRAY_MAX) {
+				return toBitmap().add(v);
+			}
+			i = -(i + 1);
+			ensureCapacity(card + 1);
+			System.arraycopy(values, i, values, i + 1, card - i);
+			values[i] = v;
+			card++;
+			return this;
+		}
+
+		@Override
+		Container remove(char v) {
+			int i = Arrays.binarySearch(values, 0, card, v);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, card - i - 1);
+				card--;
+			}
+			return this;
+		}
+
+		@Override
+		Container apply(int op, int i, long word) {
+			int start = lowerBound(i << 6);
+			int end = lowerBound((i + 1) << 6);
+			long current = 0;
+			for (int k = start; k < end; k++) {
+				current |= 1L << values[k];
+			}
+			long result = combine(op, current, word);
+			if (result == current) {
+				return this;
+			}
+			int n = Long.bitCount(result);
+			int newCard = card - (end - start) + n;
+			if (newCard > ARRAY_MAX) {
+				return toBitmap().apply(op, i, word);
+			}
+			ensureCapacity(newCard);
+			System.arraycopy(values, end, values, start + n, card - end);
+			for (int k = start; result != 0; k++) {
+				values[k] = (char) ((i << 6) + Long.numberOfTrailingZeros(result));
+				result &= result - 1;
+			}
+			card = newCard;
+			return this;
+		}
+
+		@Override
+		int words(int[] idx, long[] words) {
+			int n = -1;
+			int last = -1;
+			for (int k = 0; k < card; k++) {
+				int w = values[k] >>> 6;
+				if (w != last) {
+					idx[++n] = w;
+					words[n] = 0;
+					last = w;
+				}
+				words[n] |= 1L << values[k];
+			}
+			return n + 1;
+		}
+
+		@Override
+		Container optimize() {
+			return this;
+		}
+
+		private int lowerBound(int v) {
+			if (v > Character.MAX_VALUE) {
+				return card;
+			}
+			int i = Arrays.binarySearch(values, 0, card, (char) v);
+			return i >= 0 ? i : -(i + 1);
+		}
+
+		private void ensureCapacity(int n) {
+			if (values.length < n) {
+				values = Arrays.copyOf(values,
+						Math.min(ARRAY_MAX, Math.max(n, 2 * values.length)));
+			}
+		}
+
+		private BitmapContainer toBitmap() {
+			BitmapContainer b = new BitmapContainer();
+			for (int k = 0; k < card; k++) {
+				b.bits[values[k] >>> 6] |= 1L << values[k];
+			}
+			b.card = card;
+			return b;
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		final long[] bits = new long[WORDS];
+
+		int card;
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		boolean contains(char v) {
+			return (bits[v >>> 6] & (1L << v)) != 0;
+		}
+
+		@Override
+		Container add(char v) {
+			long old = bits[v >>> 6];
+			long m = 1L << v;
+			if ((old & m) == 0) {
+				bits[v >>> 6] = old | m;
+				card++;
+			}
+			return this;
+		}
+
+		@Override
+		Container remove(char v) {
+			long old = bits[v >>> 6];
+			long m = 1L << v;
+			if ((old & m) != 0) {
+				bits[v >>> 6] = old & ~m;
+				card--;
+			}
+			return this;
+		}
+
+		@Override
+		Container apply(int op, int i, long word) {
+			long old = bits[i];
+			long result = combine(op, old, word);
+			bits[i] = result;
+			card += Long.bitCount(result) - Long.bitCount(old);
+			return this;
+		}
+
+		@Override
+		int words(int[] idx, long[] words) {
+			int n = 0;
+			for (int i = 0; i < WORDS; i++) {
+				if (bits[i] != 0) {
+					idx[n] = i;
+					words[n++] = bits[i];
+				}
+			}
+			return n;
+		}
+
+		@Override
+		Container optimize() {
+			if (card > ARRAY_MAX) {
+				return this;
+			}
+			ArrayContainer a = new ArrayContainer();
+			a.values = new char[Math.max(card, 4)];
+			for (int i = 0; i < WORDS; i++) {
+				for (long w = bits[i]; w != 0; w &= w - 1) {
+					a.values[a.card++] = (char) ((i << 6)
+							+ Long.numberOfTrailingZeros(w));
+				}
+			}
+			return a;
+		}
+	}
+}
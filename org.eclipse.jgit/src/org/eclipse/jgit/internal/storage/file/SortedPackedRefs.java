@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lib.Constants.OBJECT_ID_STRING_LENGTH;
+import static org.eclipse.jgit.lib.Ref.Storage.PACKED;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.util.RefList;
+import org.eclipse.jgit.util.SystemReader;
+
+/**
+ * A packed-refs file searched in place.
+ * <p>
+ * When the header of a packed-refs file declares the {@code sorted} trait its
+ * records are ordered by name, so a single ref or the refs below a prefix can
+ * be found by binary search without parsing the whole file into a
+ * {@link RefList}. The file is memory mapped, except on Windows where a mapped
+ * file cannot be replaced by the rename that commits a new packed-refs file;
+ * there it is read into the heap, which still avoids creating a {@link Ref}
+ * for every record.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+final class SortedPackedRefs {
+	/** Files smaller than this are cheap enough to parse completely. */
+	static final long MIN_SIZE = 64 * 1024;
+
+	private final File file;
+
+	private final FileSnapshot snapshot;
+
+	/** Content of the file; only absolute reads are used. */
+	private final ByteBuffer buf;
+
+	/** Offset of the first record, after the header. */
+	private final int start;
+
+	private final int end;
+
+	private final boolean peeled;
+
+	/**
+	 * Open a packed-refs file for searching, if it is large enough to benefit.
+	 *
+	 * @param file
+	 *            the packed-refs file.
+	 * @return the searchable file, or {@code null} if the file does not exist,
+	 *         is smaller than {@link #MIN_SIZE} or is not declared sorted.
+	 * @throws IOException
+	 *             the file cannot be read.
+	 */
+	@Nullable
+	static SortedPackedRefs open(File file) throws IOException {
+		return open(file, MIN_SIZE);
+	}
+
+	/**
+	 * Open a packed-refs file for searching.
+	 *
+	 * @param file
+	 *            the packed-refs file.
+	 * @param minSize
+	 *            smallest file size to open.
+	 * @return the searchable file, or {@code null} if the file does not exist,
+	 *         is smaller than {@code minSize} or is not declared sorted.
+	 * @throws IOException
+	 *             the file cannot be read.
+	 */
+	@Nullable
+	static SortedPackedRefs open(File file, long minSize) throws IOException {
+		FileSnapshot snapshot = FileSnapshot.save(file);
+		try (FileChannel ch = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long size = ch.size();
+			if (size < minSize || size > Integer.MAX_VALUE) {
+				return null;
+			}
+			ByteBuffer buf;
+			if (SystemReader.getInstance().isWindows()) {
+				buf = ByteBuffer.allocate((int) size);
+				while (buf.hasRemaining() && ch.read(buf) >= 0) {
+					// Read until the buffer is full or the file ends.
+				}
+				buf.flip();
+			} else {
+				buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			return parseHeader(file, snapshot, buf);
+		} catch (NoSuchFileException noPackedRefs) {
+			return null;
+		}
+	}
+
+	@Nullable
+	private static SortedPackedRefs parseHeader(File file,
+			FileSnapshot snapshot, ByteBuffer buf) {
+		int end = buf.limit();
+		if (end == 0 || buf.get(0) != '#') {
+			return null;
+		}
+		int eol = nextLine(buf, 0, end);
+		byte[] line = new byte[buf.get(eol - 1) == '\n' ? eol - 1 : eol];
+		for (int i = 0; i < line.length; i++) {
+			line[i] = buf.get(i);
+		}
+		String header = new String(line, UTF_8);
+		if (!header.startsWith(RefDirectory.PACKED_REFS_HEADER)) {
+			return null;
+		}
+		String traits = header
+				.substring(RefDirectory.PACKED_REFS_HEADER.length()) + ' ';
+		if (!traits.contains(RefDirectory.PACKED_REFS_SORTED + ' ')) {
+			return null;
+		}
+		boolean peeled = traits.contains(RefDirectory.PACKED_REFS_PEELED + ' ');
+		return new SortedPackedRefs(file, snapshot, buf, eol, end, peeled);
+	}
+
+	private SortedPackedRefs(File file, FileSnapshot snapshot, ByteBuffer buf,
+			int start, int end, boolean peeled) {
+		this.file = file;
+		this.snapshot = snapshot;
+		this.buf = buf;
+		this.start = start;
+		this.end = end;
+		this.peeled = peeled;
+	}
+
+	/**
+	 * Get the snapshot of the file taken before it was opened.
+	 *
+	 * @return the snapshot of the file taken before it was opened.
+	 */
+	FileSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Look up a ref by name.
+	 *
+	 * @param name
+	 *            full name of the ref.
+	 * @return the ref, or {@code null} if the file does not contain it.
+	 * @throws IOException
+	 *             the file is corrupt.
+	 */
+	@Nullable
+	Ref get(String name) throws IOException {
+		int pos = find(name.getBytes(UTF_8));
+		return pos >= 0 ? parseRecord(pos) : null;
+	}
+
+	/**
+	 * Get the refs whose names start with a prefix.
+	 *
+	 * @param prefix
+	 *            prefix of the ref names.
+	 * @return refs starting with {@code prefix}, sorted by name.
+	 * @throws IOException
+	 *             the file is corrupt.
+	 */
+	RefList<Ref> getByPrefix(String prefix) throws IOException {
+		byte[] p = prefix.getBytes(UTF_8);
+		int pos = find(p);
+		if (pos < 0) {
+			pos = -(pos + 1);
+		}
+		RefList.Builder<Ref> refs = new RefList.Builder<>();
+		while (pos < end && startsWith(pos, p)) {
+			refs.add(parseRecord(pos));
+			pos = nextRecord(pos);
+		}
+		return refs.toRefList();
+	}
+
+	/**
+	 * Check whether any ref name starts with a prefix.
+	 *
+	 * @param prefix
+	 *            prefix of the ref names.
+	 * @return whether the file contains a ref starting with {@code prefix}.
+	 * @throws IOException
+	 *             the file is corrupt.
+	 */
+	boolean hasPrefix(String prefix) throws IOException {
+		byte[] p = prefix.getBytes(UTF_8);
+		int pos = find(p);
+		if (pos >= 0) {
+			return true;
+		}
+		pos = -(pos + 1);
+		return pos < end && startsWith(pos, p);
+	}
+
+	// Binary search for the record named name; returns its offset, or
+	// -(insertion offset + 1) if there is no such record.
+	private int find(byte[] name) throws IOException {
+		int lo = start;
+		int hi = end;
+		while (lo < hi) {
+			int rec = recordStart(lo, lo + (hi - lo) / 2);
+			int cmp = compareName(rec, name);
+			if (cmp == 0) {
+				return rec;
+			} else if (cmp < 0) {
+				lo = nextRecord(rec);
+			} else {
+				hi = rec;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	// Offset of the record containing pos; lo is the start of a record.
+	private int recordStart(int lo, int pos) {
+		int p = lineStart(lo, pos);
+		if (p > lo && buf.get(p) == '^') {
+			p = lineStart(lo, p - 1);
+		}
+		return p;
+	}
+
+	private int lineStart(int lo, int pos) {
+		int p = pos;
+		while (p > lo && buf.get(p - 1) != '\n') {
+			p--;
+		}
+		return p;
+	}
+
+	// Offset of the record after rec, skipping its peeled line.
+	private int nextRecord(int rec) {
+		int p = nextLine(buf, rec, end);
+		if (p < end && buf.get(p) == '^') {
+			p = nextLine(buf, p, end);
+		}
+		return p;
+	}
+
+	private static int nextLine(ByteBuffer buf, int pos, int end) {
+		int p = pos;
+		while (p < end && buf.get(p++) != '\n') {
+			// Skip to the byte after the end of the line.
+		}
+		return p;
+	}
+
+	private int nameStart(int rec) throws IOException {
+		int p = rec + OBJECT_ID_STRING_LENGTH;
+		if (p >= end || buf.get(p) != ' ') {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().packedRefsCorruptionDetected,
+					file.getAbsolutePath()));
+		}
+		return p + 1;
+	}
+
+	private int compareName(int rec, byte[] name) throws IOException {
+		int p = nameStart(rec);
+		for (int i = 0; i < name.length; i++, p++) {
+			if (p == end || buf.get(p) == '\n') {
+				return -1;
+			}
+			int cmp = (buf.get(p) & 0xff) - (name[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return p == end || buf.get(p) == '\n' ? 0 : 1;
+	}
+
+	private boolean startsWith(int rec, byte[] prefix) throws IOException {
+		int p = nameStart(rec);
+		if (end - p < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buf.get(p + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Ref parseRecord(int rec) throws IOException {
+		int p = nameStart(rec);
+		int eol = nextLine(buf, p, end);
+		int nameEnd = eol > p && buf.get(eol - 1) == '\n' ? eol - 1 : eol;
+		ObjectId id = parseId(rec);
+		String name = new String(copy(p, nameEnd - p), UTF_8);
+		if (eol < end && buf.get(eol) == '^') {
+			return new ObjectIdRef.PeeledTag(PACKED, name, id,
+					parseId(eol + 1));
+		} else if (peeled) {
+			return new ObjectIdRef.PeeledNonTag(PACKED, name, id);
+		}
+		return new ObjectIdRef.Unpeeled(PACKED, name, id);
+	}
+
+	private ObjectId parseId(int pos) throws IOException {
+		if (end - pos < OBJECT_ID_STRING_LENGTH) {
+			throw new IOException(MessageFormat.format(
+					JGitText.get().packedRefsCorruptionDetected,
+					file.getAbsolutePath()));
+		}
+		return ObjectId.fromString(copy(pos, OBJECT_ID_STRING_LENGTH), 0);
+	}
+
+	private byte[] copy(int pos, int len) {
+		byte[] b = new byte[len];
+		for (int i = 0; i < len; i++) {
+			b[i] = buf.get(pos + i);
+		}
+		return b;
+	}
+}
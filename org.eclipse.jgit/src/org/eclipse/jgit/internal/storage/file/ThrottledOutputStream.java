@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.file;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Output stream limiting the rate at which bytes are written.
+ * <p>
+ * Used by background reftable compaction so that rewriting large tables does
+ * not compete for disk bandwidth with the writers of new tables. The limit is
+ * lifted while {@code unthrottled} returns true, letting the compaction catch
+ * up when the stack has grown too tall.
+ */
+class ThrottledOutputStream extends FilterOutputStream {
+	private final long bytesPerSecond;
+
+	private final BooleanSupplier unthrottled;
+
+	/** Largest chunk written without checking the rate. */
+	private final int chunk;
+
+	private final long start;
+
+	/** Bytes written subject to the limit since {@link #start}. */
+	private long throttled;
+
+	/** Nanoseconds spent unthrottled since {@link #start}. */
+	private long skipped;
+
+	/**
+	 * Create a throttled stream.
+	 *
+	 * @param out
+	 *            stream to write to.
+	 * @param bytesPerSecond
+	 *            maximum rate; 0 or less disables the limit.
+	 * @param unthrottled
+	 *            checked before each chunk; if true the chunk is written
+	 *            without delay.
+	 */
+	ThrottledOutputStream(OutputStream out, long bytesPerSecond,
+			BooleanSupplier unthrottled) {
+		super(out);
+		this.bytesPerSecond = bytesPerSecond;
+		this.unthrottled = unthrottled;
+		this.chunk = bytesPerSecond > 0
+				? (int) Math.max(1, Math.min(64 * 1024, bytesPerSecond / 10))
+				: Integer.MAX_VALUE;
+		this.start = System.nanoTime();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		throttle(1);
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		int pos = off;
+		int end = off + len;
+		while (pos < end) {
+			int n = Math.min(chunk, end - pos);
+			throttle(n);
+			out.write(b, pos, n);
+			pos += n;
+		}
+	}
+
+	private void throttle(int len) throws IOException {
+		if (bytesPerSecond <= 0) {
+			return;
+		}
+		if (unthrottled.getAsBoolean()) {
+			// Time spent unthrottled must not become credit for later writes.
+			skipped = System.nanoTime() - start - nanosFor(throttled);
+			return;
+		}
+		throttled += len;
+		long due = start + skipped + nanosFor(throttled);
+		long wait = due - System.nanoTime();
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	private long nanosFor(long bytes) {
+		return (long) (bytes * 1e9 / bytesPerSecond);
+	}
+}
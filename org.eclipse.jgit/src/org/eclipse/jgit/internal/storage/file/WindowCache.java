@@ -28,6 +28,7 @@
 import org.eclipse.jgit.annotations.NonNull;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheConfig.EvictionPolicy;
 import org.eclipse.jgit.storage.file.WindowCacheStats;
 import org.eclipse.jgit.util.Monitoring;
 
@@ -57,6 +58,13 @@
  * comprised of roughly 10% of the cache, and evicting the oldest accessed entry
  * within that window.
  * <p>
+ * Alternatively {@link EvictionPolicy#TINY_LFU} selects a
+ * W-TinyLFU policy: new entries enter a small LRU window, and an entry leaving
+ * the window only replaces an entry of the main segmented LRU if a
+ * {@link FrequencySketch} estimates it is used more often. Lookups and loads
+ * are recorded in buffers replayed by the eviction thread, so readers do not
+ * contend on the policy. This policy always uses strong references.
+ * <p>
  * Entities created by the cache are held under SoftReferences if option
  * {@code core.packedGitUseStrongRefs} is set to {@code false} in the git config
  * (this is the default) or by calling
@@ -152,6 +160,22 @@ static interface StatsRecorder {
 		 */
 		void recordEvictions(int count);
 
+		/**
+		 * Record entries admitted to the main cache by the admission policy
+		 *
+		 * @param count
+		 *            number of admissions to record
+		 */
+		void recordAdmissions(int count);
+
+		/**
+		 * Record entries rejected by the admission policy
+		 *
+		 * @param count
+		 *            number of rejections to record
+		 */
+		void recordRejections(int count);
+
 		/**
 		 * Record files opened by cache
 		 *
@@ -189,6 +213,8 @@ static interface StatsRecorder {
 		private final LongAdder loadFailureCount;
 		private final LongAdder totalLoadTime;
 		private final LongAdder evictionCount;
+		private final LongAdder admissionCount;
+		private final LongAdder rejectionCount;
 		private final LongAdder openFileCount;
 		private final LongAdder openByteCount;
 		private final Map<String, LongAdder> openByteCountPerRepository;
@@ -203,6 +229,8 @@ public StatsRecorderImpl() {
 			loadFailureCount = new LongAdder();
 			totalLoadTime = new LongAdder();
 			evictionCount = new LongAdder();
+			admissionCount = new LongAdder();
+			rejectionCount = new LongAdder();
 			openFileCount = new LongAdder();
 			openByteCount = new LongAdder();
 			openByteCountPerRepository = new ConcurrentHashMap<>();
@@ -235,6 +263,16 @@ public void recordEvictions(int count) {
 			evictionCount.add(count);
 		}
 
+		@Override
+		public void recordAdmissions(int count) {
+			admissionCount.add(count);
+		}
+
+		@Override
+		public void recordRejections(int count) {
+			rejectionCount.add(count);
+		}
+
 		@Override
 		public void recordOpenFiles(int delta) {
 			openFileCount.add(delta);
@@ -290,6 +328,16 @@ public long getEvictionCount() {
 			return evictionCount.sum();
 		}
 
+		@Override
+		public long getAdmissionCount() {
+			return admissionCount.sum();
+		}
+
+		@Override
+		public long getRejectionCount() {
+			return rejectionCount.sum();
+		}
+
 		@Override
 		public long getTotalLoadTime() {
 			return totalLoadTime.sum();
@@ -313,6 +361,8 @@ public void resetCounters() {
 			loadFailureCount.reset();
 			totalLoadTime.reset();
 			evictionCount.reset();
+			admissionCount.reset();
+			rejectionCount.reset();
 		}
 
 		@Override
@@ -339,6 +389,8 @@ private static final int bits(int newSize) {
 
 	private static volatile int streamFileThreshold;
 
+	private static volatile boolean packedIndexMMAP;
+
 	static {
 		reconfigure(new WindowCacheConfig());
 	}
@@ -365,6 +417,7 @@ public static void reconfigure(WindowCacheConfig cfg) {
 			oc.removeAll();
 		cache = nc;
 		streamFileThreshold = cfg.getStreamFileThreshold();
+		packedIndexMMAP = cfg.isPackedIndexMMAP();
 		DeltaBaseCache.reconfigure(cfg);
 	}
 
@@ -372,6 +425,10 @@ static int getStreamFileThreshold() {
 		return streamFileThreshold;
 	}
 
+	static boolean isPackedIndexMMAP() {
+		return packedIndexMMAP;
+	}
+
 	/**
 	 * @return the cached instance.
 	 */
@@ -435,6 +492,9 @@ static final void purge(PackFile pack) {
 
 	private boolean useStrongRefs;
 
+	/** Admission policy; null when using the sampled LRU policy. */
+	private final TinyLfu lfu;
+
 	private WindowCache(WindowCacheConfig cfg) {
 		tableSize = tableSize(cfg);
 		final int lockCount = lockCount(cfg);
@@ -464,9 +524,14 @@ else if (eb < 4)
 		mmap = cfg.isPackedGitMMAP();
 		windowSizeShift = bits(cfg.getPackedGitWindowSize());
 		windowSize = 1 << windowSizeShift;
-		useStrongRefs = cfg.isPackedGitUseStrongRefs();
+		boolean tinyLfu = cfg
+				.getPackedGitEvictionPolicy() == EvictionPolicy.TINY_LFU;
+		useStrongRefs = tinyLfu || cfg.isPackedGitUseStrongRefs();
 		queue = useStrongRefs ? new StrongCleanupQueue(this)
 				: new SoftCleanupQueue(this);
+		lfu = tinyLfu && maxBytes >= windowSize
+				? new TinyLfu(maxBytes, windowSize)
+				: null;
 
 		mbean = new StatsRecorderImpl();
 		statsRecorder = mbean;
@@ -516,14 +581,22 @@ private ByteWindow load(PackFile pack, long offset) throws IOException {
 	}
 
 	private PageRef<ByteWindow> createRef(PackFile p, long o, ByteWindow v) {
-		final PageRef<ByteWindow> ref = useStrongRefs
-				? new StrongRef(p, o, v, queue)
-				: new SoftRef(p, o, v, (SoftCleanupQueue) queue);
+		final PageRef<ByteWindow> ref;
+		if (lfu != null) {
+			ref = new LfuRef(p, o, v, queue, hash(p.hash, o));
+		} else if (useStrongRefs) {
+			ref = new StrongRef(p, o, v, queue);
+		} else {
+			ref = new SoftRef(p, o, v, (SoftCleanupQueue) queue);
+		}
 		statsRecorder.recordOpenBytes(ref.getPack(), ref.getSize());
 		return ref;
 	}
 
 	private void clear(PageRef<ByteWindow> ref) {
+		if (lfu != null) {
+			lfu.removed((LfuRef) ref);
+		}
 		statsRecorder.recordOpenBytes(ref.getPack(), -ref.getSize());
 		statsRecorder.recordEvictions(1);
 		close(ref.getPack());
@@ -592,7 +665,11 @@ private ByteWindow getOrLoad(PackFile pack, long position)
 
 			v = load(pack, position);
 			final PageRef<ByteWindow> ref = createRef(pack, position, v);
-			hit(ref);
+			if (lfu != null) {
+				lfu.added((LfuRef) ref);
+			} else {
+				hit(ref);
+			}
 			for (;;) {
 				final Entry n = new Entry(clean(e2), ref);
 				if (table.compareAndSet(slot, e2, n))
@@ -640,9 +717,26 @@ private void hit(PageRef r) {
 		final long c = clock.get();
 		clock.compareAndSet(c, c + 1);
 		r.setLastAccess(c);
+
+		if (lfu != null && lfu.accessed((LfuRef) r) && evictLock.tryLock()) {
+			try {
+				gc();
+				evict();
+			} finally {
+				evictLock.unlock();
+			}
+		}
 	}
 
 	private void evict() {
+		if (lfu != null) {
+			lfu.drain();
+			gc();
+			while (isFull() && lfu.evictOne()) {
+				gc();
+			}
+			return;
+		}
 		while (isFull()) {
 			int ptr = rng.nextInt(tableSize);
 			Entry old = null;
@@ -954,6 +1048,251 @@ public boolean isStrongRef() {
 		}
 	}
 
+	/** A strong reference linked into the {@link TinyLfu} queues. */
+	private static class LfuRef extends StrongRef {
+		static final byte NONE = 0;
+
+		static final byte WINDOW = 1;
+
+		static final byte PROBATION = 2;
+
+		static final byte PROTECTED = 3;
+
+		final int keyHash;
+
+		byte segment;
+
+		LfuRef prev;
+
+		LfuRef next;
+
+		LfuRef(PackFile pack, long position, ByteWindow v,
+				CleanupQueue queue, int keyHash) {
+			super(pack, position, v, queue);
+			this.keyHash = keyHash;
+		}
+	}
+
+	/** Doubly linked LRU list of {@link LfuRef}, least recent first. */
+	private static final class LfuList {
+		private final byte segment;
+
+		private LfuRef head;
+
+		private LfuRef tail;
+
+		long bytes;
+
+		LfuList(byte segment) {
+			this.segment = segment;
+		}
+
+		LfuRef first() {
+			return head;
+		}
+
+		boolean isEmpty() {
+			return head == null;
+		}
+
+		void addLast(LfuRef r) {
+			r.segment = segment;
+			r.prev = tail;
+			r.next = null;
+			if (tail == null) {
+				head = r;
+			} else {
+				tail.next = r;
+			}
+			tail = r;
+			bytes += r.getSize();
+		}
+
+		void remove(LfuRef r) {
+			if (r.prev == null) {
+				head = r.next;
+			} else {
+				r.prev.next = r.next;
+			}
+			if (r.next == null) {
+				tail = r.prev;
+			} else {
+				r.next.prev = r.prev;
+			}
+			r.prev = null;
+			r.next = null;
+			r.segment = LfuRef.NONE;
+			bytes -= r.getSize();
+		}
+
+		void moveToLast(LfuRef r) {
+			if (r != tail) {
+				remove(r);
+				addLast(r);
+			}
+		}
+	}
+
+	/**
+	 * W-TinyLFU policy for {@link EvictionPolicy#TINY_LFU}.
+	 * <p>
+	 * The hash table remains the index used by readers; this class only
+	 * decides which entries to kill. About 1% of the capacity is an LRU
+	 * window for new entries. The rest is a segmented LRU whose protected
+	 * segment (80%) holds entries used again after admission. An entry
+	 * leaving the window is admitted only if it is estimated to be used more
+	 * often than the probation entry it would displace.
+	 * <p>
+	 * New entries are queued and lookups are written to a lossy ring buffer.
+	 * Both are replayed under {@link WindowCache#evictLock} by
+	 * {@link #drain()}, so recording an access never blocks a reader.
+	 */
+	private final class TinyLfu {
+		private static final int READ_BUFFER_SIZE = 128;
+
+		private final FrequencySketch sketch;
+
+		private final long maxWindow;
+
+		private final long maxMain;
+
+		private final long maxProtected;
+
+		private final LfuList window = new LfuList(LfuRef.WINDOW);
+
+		private final LfuList probation = new LfuList(LfuRef.PROBATION);
+
+		private final LfuList protect = new LfuList(LfuRef.PROTECTED);
+
+		private final ConcurrentLinkedQueue<LfuRef> addBuffer = new ConcurrentLinkedQueue<>();
+
+		private final AtomicReferenceArray<LfuRef> readBuffer = new AtomicReferenceArray<>(
+				READ_BUFFER_SIZE);
+
+		private final AtomicLong readCount = new AtomicLong();
+
+		TinyLfu(long maxBytes, int windowSize) {
+			sketch = new FrequencySketch(maxBytes / windowSize);
+			maxWindow = Math.max(maxBytes / 100, windowSize);
+			maxMain = maxBytes - maxWindow;
+			maxProtected = maxMain * 4 / 5;
+		}
+
+		void added(LfuRef r) {
+			addBuffer.add(r);
+		}
+
+		/**
+		 * Record a lookup.
+		 *
+		 * @param r
+		 *            the entry found.
+		 * @return true if the read buffer is full and should be drained.
+		 */
+		boolean accessed(LfuRef r) {
+			long n = readCount.getAndIncrement();
+			int i = (int) (n & (READ_BUFFER_SIZE - 1));
+			readBuffer.lazySet(i, r);
+			return i == READ_BUFFER_SIZE - 1;
+		}
+
+		synchronized void drain() {
+			for (LfuRef r; (r = addBuffer.poll()) != null;) {
+				if (r.get() != null) {
+					sketch.increment(r.keyHash);
+					window.addLast(r);
+				}
+			}
+			for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+				LfuRef r = readBuffer.getAndSet(i, null);
+				if (r != null && r.get() != null) {
+					onHit(r);
+				}
+			}
+			while (window.bytes > maxWindow) {
+				LfuRef candidate = window.first();
+				window.remove(candidate);
+				admit(candidate);
+			}
+		}
+
+		private void onHit(LfuRef r) {
+			sketch.increment(r.keyHash);
+			switch (r.segment) {
+			case LfuRef.WINDOW:
+				window.moveToLast(r);
+				break;
+			case LfuRef.PROBATION:
+				probation.remove(r);
+				protect.addLast(r);
+				while (protect.bytes > maxProtected) {
+					LfuRef demoted = protect.first();
+					protect.remove(demoted);
+					probation.addLast(demoted);
+				}
+				break;
+			case LfuRef.PROTECTED:
+				protect.moveToLast(r);
+				break;
+			default:
+				// Not yet drained from addBuffer; the sketch is enough.
+				break;
+			}
+		}
+
+		private void admit(LfuRef candidate) {
+			int freq = sketch.frequency(candidate.keyHash);
+			while (probation.bytes + protect.bytes
+					+ candidate.getSize() > maxMain) {
+				LfuList from = probation.isEmpty() ? protect : probation;
+				LfuRef victim = from.first();
+				if (victim == null
+						|| freq <= sketch.frequency(victim.keyHash)) {
+					candidate.kill();
+					statsRecorder.recordRejections(1);
+					return;
+				}
+				from.remove(victim);
+				victim.kill();
+			}
+			probation.addLast(candidate);
+			statsRecorder.recordAdmissions(1);
+		}
+
+		/**
+		 * Kill one entry to reduce the number of open files.
+		 *
+		 * @return false if no entry is left to evict.
+		 */
+		synchronized boolean evictOne() {
+			LfuList from = !probation.isEmpty() ? probation
+					: !window.isEmpty() ? window : protect;
+			LfuRef victim = from.first();
+			if (victim == null) {
+				return false;
+			}
+			from.remove(victim);
+			victim.kill();
+			return true;
+		}
+
+		synchronized void removed(LfuRef r) {
+			switch (r.segment) {
+			case LfuRef.WINDOW:
+				window.remove(r);
+				break;
+			case LfuRef.PROBATION:
+				probation.remove(r);
+				break;
+			case LfuRef.PROTECTED:
+				protect.remove(r);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
 	private static interface CleanupQueue {
 		boolean enqueue(PageRef<ByteWindow> r);
 		void gc();
@@ -16,6 +16,7 @@
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
@@ -25,6 +26,7 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.internal.storage.pack.CachedPack;
 import org.eclipse.jgit.internal.storage.pack.ObjectReuseAsIs;
 import org.eclipse.jgit.internal.storage.pack.ObjectToPack;
@@ -147,6 +149,12 @@ public Set<ObjectId> getShallowCommits() throws IOException {
 		return db.getShallowCommits();
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Optional<CommitGraph> getCommitGraph() {
+		return db.getCommitGraph();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public long getObjectSize(AnyObjectId objectId, int typeHint)
@@ -239,6 +247,13 @@ public void copyPackAsIs(PackOutputStream out, CachedPack pack)
 		((LocalCachedPack) pack).copyAsIs(out, this);
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public byte[] copyWholePackAsIs(PackOutputStream out, CachedPack pack,
+			long objectCount) throws IOException {
+		return ((LocalCachedPack) pack).copyWholeAsIs(out, objectCount, this);
+	}
+
 	void copyPackAsIs(final PackFile pack, final long length,
 			final PackOutputStream out) throws IOException {
 		long position = 12;
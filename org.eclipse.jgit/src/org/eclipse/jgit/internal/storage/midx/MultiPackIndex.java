@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import java.util.Set;
+
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The multi-pack-index maps every object of a set of packs to the pack
+ * containing it and its offset in that pack.
+ * <p>
+ * Objects are sorted by name in a single table, so locating an object costs
+ * one binary search no matter how many packs are covered, instead of one
+ * search in each pack's own index. If an object is stored in more than one
+ * pack only one of them is recorded.
+ * <p>
+ * Packs are identified by the name of their index file (for example
+ * {@code pack-1234...abcd.idx}) and referred to by their position in
+ * {@link #getPackNames()}, which is sorted.
+ */
+public interface MultiPackIndex {
+
+	/**
+	 * Get the names of the index files of the covered packs.
+	 *
+	 * @return the names, sorted; the position of a name is its pack id. The
+	 *         caller must not modify the array.
+	 */
+	String[] getPackNames();
+
+	/**
+	 * Get the number of objects in the multi-pack-index.
+	 *
+	 * @return number of distinct objects in the covered packs.
+	 */
+	long getObjectCount();
+
+	/**
+	 * Find the position of an object.
+	 *
+	 * @param objId
+	 *            the object to look for.
+	 * @return position of the object; -1 if it is not in any covered pack.
+	 */
+	int findPosition(AnyObjectId objId);
+
+	/**
+	 * Get the name of the object at a position.
+	 *
+	 * @param position
+	 *            position of the object, between 0 and
+	 *            {@link #getObjectCount()}.
+	 * @return the object name.
+	 */
+	ObjectId getObjectId(int position);
+
+	/**
+	 * Get the pack containing the object at a position.
+	 *
+	 * @param position
+	 *            position of the object.
+	 * @return index into {@link #getPackNames()}.
+	 */
+	int getPackId(int position);
+
+	/**
+	 * Get the offset of the object at a position within its pack.
+	 *
+	 * @param position
+	 *            position of the object.
+	 * @return offset of the object's header in the pack
+	 *         {@link #getPackId(int)}.
+	 */
+	long getOffset(int position);
+
+	/**
+	 * Find objects matching the prefix abbreviation.
+	 *
+	 * @param matches
+	 *            set to add any located ObjectIds to. This is an output
+	 *            parameter.
+	 * @param id
+	 *            prefix to search for.
+	 * @param matchLimit
+	 *            maximum number of results to return. At most this many
+	 *            ObjectIds should be added to matches before returning.
+	 */
+	void resolve(Set<ObjectId> matches, AbbreviatedObjectId id,
+			int matchLimit);
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+/**
+ * Constants relating to multi-pack-index.
+ */
+class MultiPackIndexConstants {
+
+	static final int MIDX_MAGIC = 0x4d494458; /* "MIDX" */
+
+	static final int CHUNK_ID_PACK_NAMES = 0x504e414d; /* "PNAM" */
+
+	static final int CHUNK_ID_OID_FANOUT = 0x4f494446; /* "OIDF" */
+
+	static final int CHUNK_ID_OID_LOOKUP = 0x4f49444c; /* "OIDL" */
+
+	static final int CHUNK_ID_OBJECT_OFFSETS = 0x4f4f4646; /* "OOFF" */
+
+	static final int CHUNK_ID_LARGE_OFFSETS = 0x4c4f4646; /* "LOFF" */
+
+	/**
+	 * First 4 bytes describe the chunk id. Value 0 is a terminating label.
+	 * Other 8 bytes provide the byte-offset in current file for chunk to
+	 * start.
+	 */
+	static final int CHUNK_LOOKUP_WIDTH = 12;
+
+	/**
+	 * "MIDX", version, hash version, number of chunks, number of base files,
+	 * number of packs.
+	 */
+	static final int MIDX_HEADER_SIZE = 12;
+
+	static final int MIDX_VERSION = 1;
+
+	static final int OID_HASH_VERSION = 1; /* SHA-1 */
+
+	static final int FANOUT_SIZE = 4 * 256;
+
+	/** Pack-int-id and 32 bit offset of each object. */
+	static final int OBJECT_OFFSET_WIDTH = 8;
+
+	/** Set on a 32 bit offset which is an index into the LOFF chunk. */
+	static final int LARGE_OFFSET_NEEDED = 0x80000000;
+
+	private MultiPackIndexConstants() {
+	}
+}
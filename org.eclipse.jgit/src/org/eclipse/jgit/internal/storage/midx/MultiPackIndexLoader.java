@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_LARGE_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OBJECT_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_PACK_NAMES;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.FANOUT_SIZE;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_HEADER_SIZE;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_MAGIC;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_VERSION;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OID_HASH_VERSION;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * The loader returns the representation of the multi-pack-index file
+ * content.
+ */
+public class MultiPackIndexLoader {
+
+	/**
+	 * Read a multi-pack-index from the stream.
+	 * <p>
+	 * The stream is read to the end of the file's trailing checksum. The
+	 * caller is responsible for closing the stream.
+	 *
+	 * @param fd
+	 *            stream to read the multi-pack-index file from. The stream
+	 *            must be buffered as some small IOs are performed against the
+	 *            stream.
+	 * @return a copy of the multi-pack-index file in memory
+	 * @throws MultiPackIndexFormatException
+	 *             the stream does not contain a valid multi-pack-index.
+	 * @throws java.io.IOException
+	 *             the stream cannot be read.
+	 */
+	public static MultiPackIndex read(InputStream fd)
+			throws MultiPackIndexFormatException, IOException {
+		byte[] hdr = new byte[MIDX_HEADER_SIZE];
+		IO.readFully(fd, hdr, 0, hdr.length);
+
+		int magic = NB.decodeInt32(hdr, 0);
+		if (magic != MIDX_MAGIC) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().notAMultiPackIndex);
+		}
+
+		int v = hdr[4];
+		if (v != MIDX_VERSION) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().unsupportedMultiPackIndexVersion,
+					Integer.valueOf(v)));
+		}
+
+		int hashVersion = hdr[5];
+		if (hashVersion != OID_HASH_VERSION) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().unsupportedMultiPackIndexHashVersion,
+					Integer.valueOf(hashVersion)));
+		}
+
+		int numberOfChunks = hdr[6] & 0xff;
+		int numberOfBaseFiles = hdr[7] & 0xff;
+		if (numberOfBaseFiles != 0) {
+			// Incremental multi-pack-index chains are not supported.
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkCorrupt,
+					"BASE")); //$NON-NLS-1$
+		}
+		int numberOfPacks = NB.decodeInt32(hdr, 8);
+
+		byte[] lookupBuffer = new byte[CHUNK_LOOKUP_WIDTH
+				* (numberOfChunks + 1)];
+		IO.readFully(fd, lookupBuffer, 0, lookupBuffer.length);
+
+		int[] chunkIds = new int[numberOfChunks + 1];
+		long[] chunkOffsets = new long[numberOfChunks + 1];
+		for (int i = 0; i <= numberOfChunks; i++) {
+			int p = i * CHUNK_LOOKUP_WIDTH;
+			chunkIds[i] = NB.decodeInt32(lookupBuffer, p);
+			chunkOffsets[i] = NB.decodeInt64(lookupBuffer, p + 4);
+		}
+		if (chunkIds[numberOfChunks] != 0) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().multiPackIndexChunkLookupTableCorrupt);
+		}
+
+		long pos = MIDX_HEADER_SIZE + lookupBuffer.length;
+		byte[] packNames = null;
+		byte[] fanout = null;
+		byte[] oidLookup = null;
+		byte[] objectOffsets = null;
+		byte[] largeOffsets = null;
+		for (int i = 0; i < numberOfChunks; i++) {
+			long chunkOffset = chunkOffsets[i];
+			long nextOffset = chunkOffsets[i + 1];
+			if (chunkOffset != pos || nextOffset < chunkOffset) {
+				throw new MultiPackIndexFormatException(
+						JGitText.get().multiPackIndexChunkLookupTableCorrupt);
+			}
+			long len = nextOffset - chunkOffset;
+			if (len > Integer.MAX_VALUE - 8) { // http://stackoverflow.com/a/8381338
+				throw new MultiPackIndexFormatException(
+						JGitText.get().multiPackIndexFileIsTooLargeForJgit);
+			}
+
+			byte[] buffer = new byte[(int) len];
+			IO.readFully(fd, buffer, 0, buffer.length);
+			pos = nextOffset;
+
+			int chunkId = chunkIds[i];
+			switch (chunkId) {
+			case CHUNK_ID_PACK_NAMES:
+				packNames = checkNotRepeated(packNames, buffer, chunkId);
+				break;
+			case CHUNK_ID_OID_FANOUT:
+				fanout = checkNotRepeated(fanout, buffer, chunkId);
+				break;
+			case CHUNK_ID_OID_LOOKUP:
+				oidLookup = checkNotRepeated(oidLookup, buffer, chunkId);
+				break;
+			case CHUNK_ID_OBJECT_OFFSETS:
+				objectOffsets = checkNotRepeated(objectOffsets, buffer,
+						chunkId);
+				break;
+			case CHUNK_ID_LARGE_OFFSETS:
+				largeOffsets = checkNotRepeated(largeOffsets, buffer,
+						chunkId);
+				break;
+			default:
+				// Optional chunks (e.g. reverse index, bitmapped packs)
+				// which this implementation does not use.
+				break;
+			}
+		}
+
+		packNames = checkNeeded(packNames, CHUNK_ID_PACK_NAMES);
+		fanout = checkNeeded(fanout, CHUNK_ID_OID_FANOUT);
+		oidLookup = checkNeeded(oidLookup, CHUNK_ID_OID_LOOKUP);
+		objectOffsets = checkNeeded(objectOffsets, CHUNK_ID_OBJECT_OFFSETS);
+		if (fanout.length != FANOUT_SIZE) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkCorrupt,
+					chunkName(CHUNK_ID_OID_FANOUT)));
+		}
+
+		IO.skipFully(fd, Constants.OBJECT_ID_LENGTH);
+
+		return new MultiPackIndexV1(parsePackNames(packNames, numberOfPacks),
+				fanout, oidLookup, objectOffsets, largeOffsets);
+	}
+
+	private static String[] parsePackNames(byte[] buffer, int numberOfPacks)
+			throws MultiPackIndexFormatException {
+		if (numberOfPacks < 0) {
+			throw packNamesCorrupt();
+		}
+		String[] names = new String[numberOfPacks];
+		int ptr = 0;
+		for (int i = 0; i < numberOfPacks; i++) {
+			int end = ptr;
+			while (end < buffer.length && buffer[end] != 0) {
+				end++;
+			}
+			if (end == ptr || end == buffer.length) {
+				throw packNamesCorrupt();
+			}
+			names[i] = new String(buffer, ptr, end - ptr, UTF_8);
+			if (i > 0 && names[i - 1].compareTo(names[i]) >= 0) {
+				throw packNamesCorrupt();
+			}
+			ptr = end + 1;
+		}
+		return names;
+	}
+
+	private static MultiPackIndexFormatException packNamesCorrupt() {
+		return new MultiPackIndexFormatException(MessageFormat.format(
+				JGitText.get().multiPackIndexChunkCorrupt,
+				chunkName(CHUNK_ID_PACK_NAMES)));
+	}
+
+	private static byte[] checkNotRepeated(byte[] old, byte[] buffer,
+			int chunkId) throws MultiPackIndexFormatException {
+		if (old != null) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkRepeated,
+					chunkName(chunkId)));
+		}
+		return buffer;
+	}
+
+	private static byte[] checkNeeded(byte[] buffer, int chunkId)
+			throws MultiPackIndexFormatException {
+		if (buffer == null) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkNeeded,
+					chunkName(chunkId)));
+		}
+		return buffer;
+	}
+
+	private static String chunkName(int chunkId) {
+		byte[] b = new byte[4];
+		NB.encodeInt32(b, 0, chunkId);
+		return new String(b, 0, 4, US_ASCII);
+	}
+
+	private MultiPackIndexLoader() {
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.LARGE_OFFSET_NEEDED;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OBJECT_OFFSET_WIDTH;
+
+import java.text.MessageFormat;
+import java.util.Set;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * A multi-pack-index held in memory.
+ */
+class MultiPackIndexV1 implements MultiPackIndex {
+	private final String[] packNames;
+
+	private final int[] fanoutTable;
+
+	private final byte[] oidLookup;
+
+	private final byte[] objectOffsets;
+
+	private final byte[] largeOffsets;
+
+	private final int objectCnt;
+
+	MultiPackIndexV1(String[] packNames, byte[] fanout, byte[] oidLookup,
+			byte[] objectOffsets, byte[] largeOffsets)
+			throws MultiPackIndexFormatException {
+		this.packNames = packNames;
+		this.fanoutTable = new int[256];
+		for (int k = 0; k < fanoutTable.length; k++) {
+			fanoutTable[k] = NB.decodeInt32(fanout, k * 4);
+		}
+		this.oidLookup = oidLookup;
+		this.objectOffsets = objectOffsets;
+		this.largeOffsets = largeOffsets;
+		this.objectCnt = fanoutTable[255];
+
+		if (objectCnt < 0 || (long) objectCnt
+				* Constants.OBJECT_ID_LENGTH != oidLookup.length) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkCorrupt, "OIDL")); //$NON-NLS-1$
+		}
+		if ((long) objectCnt * OBJECT_OFFSET_WIDTH != objectOffsets.length) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkCorrupt, "OOFF")); //$NON-NLS-1$
+		}
+		if (largeOffsets != null && largeOffsets.length % 8 != 0) {
+			throw new MultiPackIndexFormatException(MessageFormat.format(
+					JGitText.get().multiPackIndexChunkCorrupt, "LOFF")); //$NON-NLS-1$
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String[] getPackNames() {
+		return packNames;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getObjectCount() {
+		return objectCnt;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int findPosition(AnyObjectId objId) {
+		int levelOne = objId.getFirstByte();
+		int high = fanoutTable[levelOne];
+		int low = levelOne == 0 ? 0 : fanoutTable[levelOne - 1];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = objId.compareTo(oidLookup,
+					mid * Constants.OBJECT_ID_LENGTH);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				return mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ObjectId getObjectId(int position) {
+		return ObjectId.fromRaw(oidLookup,
+				position * Constants.OBJECT_ID_LENGTH);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int getPackId(int position) {
+		return NB.decodeInt32(objectOffsets, position * OBJECT_OFFSET_WIDTH);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getOffset(int position) {
+		int offset = NB.decodeInt32(objectOffsets,
+				position * OBJECT_OFFSET_WIDTH + 4);
+		if ((offset & LARGE_OFFSET_NEEDED) != 0 && largeOffsets != null) {
+			return NB.decodeInt64(largeOffsets,
+					(offset & ~LARGE_OFFSET_NEEDED) * 8);
+		}
+		return offset & 0xffffffffL;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void resolve(Set<ObjectId> matches, AbbreviatedObjectId id,
+			int matchLimit) {
+		int levelOne = id.getFirstByte();
+		int low = levelOne == 0 ? 0 : fanoutTable[levelOne - 1];
+		int max = fanoutTable[levelOne];
+		int high = max;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = id.prefixCompare(oidLookup,
+					mid * Constants.OBJECT_ID_LENGTH);
+			if (cmp < 0) {
+				high = mid;
+			} else if (cmp == 0) {
+				// Back up to the first match, then walk forwards.
+				while (mid > low && id.prefixCompare(oidLookup,
+						(mid - 1) * Constants.OBJECT_ID_LENGTH) == 0) {
+					mid--;
+				}
+				for (; mid < max; mid++) {
+					int p = mid * Constants.OBJECT_ID_LENGTH;
+					if (id.prefixCompare(oidLookup, p) != 0) {
+						break;
+					}
+					matches.add(ObjectId.fromRaw(oidLookup, p));
+					if (matches.size() > matchLimit) {
+						break;
+					}
+				}
+				return;
+			} else {
+				low = mid + 1;
+			}
+		}
+	}
+}
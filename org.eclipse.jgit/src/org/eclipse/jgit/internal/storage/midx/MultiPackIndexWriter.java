@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.midx;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_LARGE_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OBJECT_OFFSETS;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_FANOUT;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_OID_LOOKUP;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_ID_PACK_NAMES;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.CHUNK_LOOKUP_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.FANOUT_SIZE;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.LARGE_OFFSET_NEEDED;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_HEADER_SIZE;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_MAGIC;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.MIDX_VERSION;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OBJECT_OFFSET_WIDTH;
+import static org.eclipse.jgit.internal.storage.midx.MultiPackIndexConstants.OID_HASH_VERSION;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.util.NB;
+
+/**
+ * Writes a multi-pack-index formatted file.
+ * <p>
+ * The file layout follows Git's {@code multi-pack-index.txt}: a header, the
+ * chunk lookup table, the PNAM, OIDF, OIDL and OOFF chunks, the optional LOFF
+ * chunk, and a trailing SHA-1 checksum of everything before it.
+ */
+public class MultiPackIndexWriter {
+
+	private final String[] packNames;
+
+	private final String[] sortedPackNames;
+
+	private final PackIndex[] indexes;
+
+	/** Pack id of each index, in the order of {@link #indexes}. */
+	private final int[] packIds;
+
+	private int objectCnt;
+
+	private byte[] oids;
+
+	private int[] objectPacks;
+
+	private long[] offsets;
+
+	private int largeOffsetCnt;
+
+	private boolean largeOffsetsNeeded;
+
+	/**
+	 * Create a multi-pack-index writer for these packs.
+	 *
+	 * @param packs
+	 *            index of each pack, keyed by the name of the index file
+	 *            (for example {@code pack-1234...abcd.idx}). If an object is
+	 *            stored in several packs, the pack which comes first in the
+	 *            map's iteration order is recorded.
+	 */
+	public MultiPackIndexWriter(Map<String, PackIndex> packs) {
+		packNames = packs.keySet().toArray(new String[0]);
+		indexes = packs.values().toArray(new PackIndex[0]);
+		sortedPackNames = packNames.clone();
+		Arrays.sort(sortedPackNames);
+		packIds = new int[packNames.length];
+		for (int i = 0; i < packNames.length; i++) {
+			packIds[i] = Arrays.binarySearch(sortedPackNames, packNames[i]);
+		}
+	}
+
+	/**
+	 * Write the multi-pack-index to the supplied stream.
+	 *
+	 * @param monitor
+	 *            progress monitor to report the number of objects written.
+	 * @param midxStream
+	 *            output stream of multi-pack-index data. The stream should be
+	 *            buffered by the caller. The caller is responsible for
+	 *            closing the stream.
+	 * @return the trailing checksum of the written file.
+	 * @throws IOException
+	 *             if an error occurred
+	 */
+	public ObjectId write(ProgressMonitor monitor, OutputStream midxStream)
+			throws IOException {
+		if (monitor == null) {
+			monitor = NullProgressMonitor.INSTANCE;
+		}
+
+		long total = 0;
+		for (PackIndex idx : indexes) {
+			total += idx.getObjectCount();
+		}
+		if (total > Integer.MAX_VALUE / Constants.OBJECT_ID_LENGTH) {
+			throw new MultiPackIndexFormatException(
+					JGitText.get().multiPackIndexFileIsTooLargeForJgit);
+		}
+		monitor.beginTask(JGitText.get().writingOutMultiPackIndex,
+				(int) total);
+		try {
+			merge((int) total, monitor);
+
+			List<ChunkHeader> chunks = createChunks();
+			MessageDigest md = Constants.newMessageDigest();
+			DigestOutputStream out = new DigestOutputStream(
+					new BufferedOutputStream(midxStream), md);
+			writeHeader(out, chunks.size());
+			writeChunkLookup(out, chunks);
+			for (ChunkHeader c : chunks) {
+				c.writer.write(out);
+			}
+			out.on(false);
+			byte[] checksum = md.digest();
+			out.write(checksum);
+			out.flush();
+			return ObjectId.fromRaw(checksum);
+		} finally {
+			monitor.endTask();
+		}
+	}
+
+	// Merge the sorted indexes into one table, keeping the first
+	// occurrence of each object in preference order.
+	private void merge(int total, ProgressMonitor monitor) {
+		oids = new byte[total * Constants.OBJECT_ID_LENGTH];
+		objectPacks = new int[total];
+		offsets = new long[total];
+
+		PriorityQueue<Cursor> queue = new PriorityQueue<>(
+				Math.max(indexes.length, 1), (a, b) -> {
+					int cmp = a.id.compareTo(b.id);
+					return cmp != 0 ? cmp : Integer.compare(a.rank, b.rank);
+				});
+		for (int i = 0; i < indexes.length; i++) {
+			Cursor c = new Cursor(indexes[i].iterator(), i);
+			if (c.next()) {
+				queue.add(c);
+			}
+		}
+
+		int n = 0;
+		ObjectId last = null;
+		for (Cursor c; (c = queue.poll()) != null;) {
+			if (last == null || !last.equals(c.id)) {
+				last = c.id;
+				last.copyRawTo(oids, n * Constants.OBJECT_ID_LENGTH);
+				objectPacks[n] = packIds[c.rank];
+				offsets[n] = c.offset;
+				if (c.offset > 0xffffffffL) {
+					largeOffsetsNeeded = true;
+				}
+				n++;
+			}
+			monitor.update(1);
+			if (c.next()) {
+				queue.add(c);
+			}
+		}
+		objectCnt = n;
+		if (largeOffsetsNeeded) {
+			for (int i = 0; i < n; i++) {
+				if ((offsets[i] >>> 31) != 0) {
+					largeOffsetCnt++;
+				}
+			}
+		}
+	}
+
+	private List<ChunkHeader> createChunks() {
+		List<ChunkHeader> chunks = new ArrayList<>(5);
+		chunks.add(new ChunkHeader(CHUNK_ID_PACK_NAMES, packNamesSize(),
+				this::writePackNames));
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_FANOUT, FANOUT_SIZE,
+				this::writeFanoutTable));
+		chunks.add(new ChunkHeader(CHUNK_ID_OID_LOOKUP,
+				(long) objectCnt * Constants.OBJECT_ID_LENGTH,
+				this::writeOidLookUp));
+		chunks.add(new ChunkHeader(CHUNK_ID_OBJECT_OFFSETS,
+				(long) objectCnt * OBJECT_OFFSET_WIDTH,
+				this::writeObjectOffsets));
+		if (largeOffsetCnt > 0) {
+			chunks.add(new ChunkHeader(CHUNK_ID_LARGE_OFFSETS,
+					(long) largeOffsetCnt * 8, this::writeLargeOffsets));
+		}
+		return chunks;
+	}
+
+	private void writeHeader(OutputStream out, int numChunks)
+			throws IOException {
+		byte[] headerBuffer = new byte[MIDX_HEADER_SIZE];
+		NB.encodeInt32(headerBuffer, 0, MIDX_MAGIC);
+		headerBuffer[4] = (byte) MIDX_VERSION;
+		headerBuffer[5] = (byte) OID_HASH_VERSION;
+		headerBuffer[6] = (byte) numChunks;
+		headerBuffer[7] = 0; // Number of base multi-pack-index files.
+		NB.encodeInt32(headerBuffer, 8, packNames.length);
+		out.write(headerBuffer);
+	}
+
+	private void writeChunkLookup(OutputStream out, List<ChunkHeader> chunks)
+			throws IOException {
+		int numChunks = chunks.size();
+		long chunkOffset = MIDX_HEADER_SIZE
+				+ (numChunks + 1) * CHUNK_LOOKUP_WIDTH;
+		byte[] buffer = new byte[CHUNK_LOOKUP_WIDTH];
+		for (ChunkHeader chunk : chunks) {
+			NB.encodeInt32(buffer, 0, chunk.id);
+			NB.encodeInt64(buffer, 4, chunkOffset);
+			out.write(buffer);
+			chunkOffset += chunk.size;
+		}
+		NB.encodeInt32(buffer, 0, 0);
+		NB.encodeInt64(buffer, 4, chunkOffset);
+		out.write(buffer);
+	}
+
+	private long packNamesSize() {
+		long size = 0;
+		for (String name : packNames) {
+			size += name.getBytes(UTF_8).length + 1;
+		}
+		return (size + 3) & ~3L;
+	}
+
+	private void writePackNames(OutputStream out) throws IOException {
+		long size = 0;
+		for (String name : sortedPackNames) {
+			byte[] raw = name.getBytes(UTF_8);
+			out.write(raw);
+			out.write(0);
+			size += raw.length + 1;
+		}
+		for (; (size & 3) != 0; size++) {
+			out.write(0);
+		}
+	}
+
+	private void writeFanoutTable(OutputStream out) throws IOException {
+		byte[] tmp = new byte[4];
+		int[] fanout = new int[256];
+		for (int i = 0; i < objectCnt; i++) {
+			fanout[oids[i * Constants.OBJECT_ID_LENGTH] & 0xff]++;
+		}
+		for (int i = 1; i < fanout.length; i++) {
+			fanout[i] += fanout[i - 1];
+		}
+		for (int n : fanout) {
+			NB.encodeInt32(tmp, 0, n);
+			out.write(tmp, 0, 4);
+		}
+	}
+
+	private void writeOidLookUp(OutputStream out) throws IOException {
+		out.write(oids, 0, objectCnt * Constants.OBJECT_ID_LENGTH);
+	}
+
+	private void writeObjectOffsets(OutputStream out) throws IOException {
+		byte[] buffer = new byte[OBJECT_OFFSET_WIDTH];
+		int large = 0;
+		for (int i = 0; i < objectCnt; i++) {
+			NB.encodeInt32(buffer, 0, objectPacks[i]);
+			long offset = offsets[i];
+			if (largeOffsetsNeeded && (offset >>> 31) != 0) {
+				NB.encodeInt32(buffer, 4, LARGE_OFFSET_NEEDED | large++);
+			} else {
+				NB.encodeInt32(buffer, 4, (int) offset);
+			}
+			out.write(buffer);
+		}
+	}
+
+	private void writeLargeOffsets(OutputStream out) throws IOException {
+		byte[] buffer = new byte[8];
+		for (int i = 0; i < objectCnt; i++) {
+			long offset = offsets[i];
+			if ((offset >>> 31) != 0) {
+				NB.encodeInt64(buffer, 0, offset);
+				out.write(buffer);
+			}
+		}
+	}
+
+	private static class Cursor {
+		final Iterator<PackIndex.MutableEntry> entries;
+
+		final int rank;
+
+		ObjectId id;
+
+		long offset;
+
+		Cursor(Iterator<PackIndex.MutableEntry> entries, int rank) {
+			this.entries = entries;
+			this.rank = rank;
+		}
+
+		boolean next() {
+			if (!entries.hasNext()) {
+				return false;
+			}
+			PackIndex.MutableEntry e = entries.next();
+			id = e.toObjectId();
+			offset = e.getOffset();
+			return true;
+		}
+	}
+
+	@FunctionalInterface
+	private interface ChunkWriter {
+		void write(OutputStream out) throws IOException;
+	}
+
+	private static class ChunkHeader {
+		final int id;
+
+		final long size;
+
+		final ChunkWriter writer;
+
+		ChunkHeader(int id, long size, ChunkWriter writer) {
+			this.id = id;
+			this.size = size;
+			this.writer = writer;
+		}
+	}
+}
@@ -14,6 +14,7 @@
 import java.util.Collection;
 import java.util.List;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
 import org.eclipse.jgit.lib.AnyObjectId;
@@ -186,6 +187,33 @@ void copyObjectAsIs(PackOutputStream out, ObjectToPack otp,
 	void copyPackAsIs(PackOutputStream out, CachedPack pack)
 			throws IOException;
 
+	/**
+	 * Send an entire pack, header and trailer included, as the whole pack
+	 * stream.
+	 * <p>
+	 * Called instead of writing a header, {@link #copyPackAsIs} and a trailer
+	 * when the stream consists of this pack only. The stored header and
+	 * trailer are then those the writer would produce, so the pack can be
+	 * sent unchanged without computing its checksum again.
+	 *
+	 * @param out
+	 *            stream to send the pack to; nothing has been written to it
+	 *            yet.
+	 * @param pack
+	 *            the cached pack to send.
+	 * @param objectCount
+	 *            number of objects the pack stream must hold.
+	 * @return the checksum of the pack sent; null if the pack cannot be sent
+	 *         this way, in which case nothing was written to {@code out}.
+	 * @throws java.io.IOException
+	 *             the pack cannot be read, or stream did not accept a write.
+	 */
+	@Nullable
+	default byte[] copyWholePackAsIs(PackOutputStream out, CachedPack pack,
+			long objectCount) throws IOException {
+		return null;
+	}
+
 	/**
 	 * Obtain the available cached packs that match the bitmap and update
 	 * the bitmap by removing the items that are in the CachedPack.
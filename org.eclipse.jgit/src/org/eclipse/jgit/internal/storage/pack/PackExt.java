@@ -31,6 +31,27 @@ public class PackExt {
 	/** A reftable file. */
 	public static final PackExt REFTABLE = newPackExt("ref"); //$NON-NLS-1$
 
+	/**
+	 * A commit-graph file.
+	 *
+	 * @since 5.8
+	 */
+	public static final PackExt COMMIT_GRAPH = newPackExt("graph"); //$NON-NLS-1$
+
+	/**
+	 * A multi-pack-index file.
+	 *
+	 * @since 5.8
+	 */
+	public static final PackExt MULTI_PACK_INDEX = newPackExt("midx"); //$NON-NLS-1$
+
+	/**
+	 * A pack reverse index file extension.
+	 *
+	 * @since 5.8
+	 */
+	public static final PackExt REVERSE_INDEX = newPackExt("rev"); //$NON-NLS-1$
+
 	/**
 	 * Get all of the PackExt values.
 	 *
@@ -15,8 +15,12 @@
 import static org.eclipse.jgit.lib.Constants.OBJ_REF_DELTA;
 import static org.eclipse.jgit.lib.Constants.PACK_SIGNATURE;
 
+import java.io.EOFException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 
 import org.eclipse.jgit.internal.JGitText;
@@ -31,6 +35,12 @@
 public final class PackOutputStream extends OutputStream {
 	private static final int BYTES_TO_WRITE_BEFORE_CANCEL_CHECK = 128 * 1024;
 
+	/** Buffer size to copy file regions with when they cannot be transferred. */
+	private static final int TRANSFER_BUFFER_SIZE = 1 << 20;
+
+	/** Largest chunk of a file region transferred at once. */
+	private static final int TRANSFER_CHUNK = 8 << 20;
+
 	private final ProgressMonitor writeMonitor;
 
 	private final OutputStream out;
@@ -87,14 +97,7 @@ public final void write(byte[] b, int off, int len)
 		while (0 < len) {
 			final int n = Math.min(len, BYTES_TO_WRITE_BEFORE_CANCEL_CHECK);
 			count += n;
-
-			if (checkCancelAt <= count) {
-				if (writeMonitor.isCancelled()) {
-					throw new IOException(
-							JGitText.get().packingCancelledDuringObjectsWriting);
-				}
-				checkCancelAt = count + BYTES_TO_WRITE_BEFORE_CANCEL_CHECK;
-			}
+			checkCancel();
 
 			out.write(b, off, n);
 			md.update(b, off, n);
@@ -104,6 +107,71 @@ public final void write(byte[] b, int off, int len)
 		}
 	}
 
+	private void checkCancel() throws IOException {
+		if (checkCancelAt <= count) {
+			if (writeMonitor.isCancelled()) {
+				throw new IOException(
+						JGitText.get().packingCancelledDuringObjectsWriting);
+			}
+			checkCancelAt = count + BYTES_TO_WRITE_BEFORE_CANCEL_CHECK;
+		}
+	}
+
+	/**
+	 * Copy a region of a file to the stream without updating the digest.
+	 * <p>
+	 * Used to send a pack file as the whole pack stream, its trailer already
+	 * being the checksum of its content. If the target stream is a
+	 * {@link FileOutputStream} the bytes are passed with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * letting the operating system copy them without going through the Java
+	 * heap; otherwise they are read with large buffers.
+	 *
+	 * @param src
+	 *            file to copy from.
+	 * @param position
+	 *            position of the region in the file.
+	 * @param length
+	 *            length of the region.
+	 * @throws IOException
+	 *             the file cannot be read, is shorter than expected, or the
+	 *             stream did not accept a write.
+	 */
+	public final void copyFileRegion(FileChannel src, long position,
+			long length) throws IOException {
+		FileChannel dst = out instanceof FileOutputStream
+				? ((FileOutputStream) out).getChannel()
+				: null;
+		ByteBuffer buf = null;
+		long pos = position;
+		long end = position + length;
+		while (pos < end) {
+			int want = (int) Math.min(end - pos, TRANSFER_CHUNK);
+			long n;
+			if (dst != null) {
+				n = src.transferTo(pos, want, dst);
+			} else {
+				if (buf == null) {
+					buf = ByteBuffer.allocate(
+							(int) Math.min(length, TRANSFER_BUFFER_SIZE));
+				}
+				buf.clear();
+				buf.limit(Math.min(want, buf.capacity()));
+				n = src.read(buf, pos);
+				if (n > 0) {
+					out.write(buf.array(), 0, (int) n);
+				}
+			}
+			if (n <= 0) {
+				throw new EOFException(
+						JGitText.get().packfileIsTruncatedNoParam);
+			}
+			pos += n;
+			count += n;
+			checkCancel();
+		}
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void flush() throws IOException {
@@ -212,6 +280,10 @@ void endObject() {
 		writeMonitor.update(1);
 	}
 
+	void endObjects(long objectCount) {
+		writeMonitor.update((int) Math.min(objectCount, Integer.MAX_VALUE));
+	}
+
 	/**
 	 * Get total number of bytes written since stream start.
 	 *
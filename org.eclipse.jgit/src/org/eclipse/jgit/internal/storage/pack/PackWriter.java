@@ -35,14 +35,19 @@
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
@@ -56,9 +61,13 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.StoredObjectRepresentationNotAvailableException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl;
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl.Representation;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndexBuilder;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndexWriterV1;
 import org.eclipse.jgit.internal.storage.file.PackIndexWriter;
+import org.eclipse.jgit.internal.storage.file.PackReverseIndexWriter;
+import org.eclipse.jgit.internal.storage.pack.ParallelObjectEnumerator.Found;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.AsyncObjectSizeQueue;
 import org.eclipse.jgit.lib.BatchingProgressMonitor;
@@ -79,12 +88,14 @@
 import org.eclipse.jgit.revwalk.BitmapWalker;
 import org.eclipse.jgit.revwalk.DepthWalk;
 import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevBlob;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.filter.ObjectFilter;
 import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.storage.pack.PackStatistics;
 import org.eclipse.jgit.transport.FilterSpec;
@@ -117,7 +128,8 @@
  * pack is being stored as a file the matching index can be written out after
  * writing the pack by {@link #writeIndex(OutputStream)}. An optional bitmap
  * index can be made by calling {@link #prepareBitmapIndex(ProgressMonitor)}
- * followed by {@link #writeBitmapIndex(OutputStream)}.
+ * followed by {@link #writeBitmapIndex(OutputStream)}, and a reverse index
+ * by {@link #writeReverseIndex(OutputStream)}.
  * </p>
  * <p>
  * Class provide set of configurable options and
@@ -1035,6 +1047,33 @@ public void writeIndex(OutputStream indexStream) throws IOException {
 		stats.timeWriting += System.currentTimeMillis() - writeStart;
 	}
 
+	/**
+	 * Create a reverse index file to match the pack file just written.
+	 * <p>
+	 * Called after
+	 * {@link #writePack(ProgressMonitor, ProgressMonitor, OutputStream)}. The
+	 * reverse index lets readers map offsets in the pack to objects without
+	 * sorting all offsets of the index first.
+	 *
+	 * @param reverseIndexStream
+	 *            output for the reverse index data. Caller is responsible for
+	 *            closing this stream.
+	 * @throws java.io.IOException
+	 *             the reverse index data could not be written to the supplied
+	 *             stream.
+	 * @since 5.8
+	 */
+	public void writeReverseIndex(OutputStream reverseIndexStream)
+			throws IOException {
+		if (isIndexDisabled())
+			throw new IOException(JGitText.get().cachedPacksPreventsIndexCreation);
+
+		long writeStart = System.currentTimeMillis();
+		new PackReverseIndexWriter(reverseIndexStream).write(sortByName(),
+				packcsum);
+		stats.timeWriting += System.currentTimeMillis() - writeStart;
+	}
+
 	/**
 	 * Create a bitmap index file to match the pack file just written.
 	 * <p>
@@ -1208,28 +1247,30 @@ public void writePack(ProgressMonitor compressMonitor,
 				unwrittenCachedPacks = cachedPacks;
 			}
 
-			out.writeFileHeader(PACK_VERSION_GENERATED, objCnt);
-			out.flush();
+			if (!writeWholePack(out, unwrittenCachedPacks, objCnt)) {
+				out.writeFileHeader(PACK_VERSION_GENERATED, objCnt);
+				out.flush();
 
-			writeObjects(out);
-			if (!edgeObjects.isEmpty() || !cachedPacks.isEmpty()) {
-				for (PackStatistics.ObjectType.Accumulator typeStat : stats.objectTypes) {
-					if (typeStat == null)
-						continue;
-					stats.thinPackBytes += typeStat.bytes;
+				writeObjects(out);
+				if (!edgeObjects.isEmpty() || !cachedPacks.isEmpty()) {
+					for (PackStatistics.ObjectType.Accumulator typeStat : stats.objectTypes) {
+						if (typeStat == null)
+							continue;
+						stats.thinPackBytes += typeStat.bytes;
+					}
 				}
-			}
 
-			stats.reusedPacks = Collections.unmodifiableList(cachedPacks);
-			for (CachedPack pack : unwrittenCachedPacks) {
-				long deltaCnt = pack.getDeltaCount();
-				stats.reusedObjects += pack.getObjectCount();
-				stats.reusedDeltas += deltaCnt;
-				stats.totalDeltas += deltaCnt;
-				reuseSupport.copyPackAsIs(out, pack);
+				stats.reusedPacks = Collections.unmodifiableList(cachedPacks);
+				for (CachedPack pack : unwrittenCachedPacks) {
+					long deltaCnt = pack.getDeltaCount();
+					stats.reusedObjects += pack.getObjectCount();
+					stats.reusedDeltas += deltaCnt;
+					stats.totalDeltas += deltaCnt;
+					reuseSupport.copyPackAsIs(out, pack);
+				}
+				writeChecksum(out);
+				out.flush();
 			}
-			writeChecksum(out);
-			out.flush();
 		} finally {
 			stats.timeWriting = System.currentTimeMillis() - writeStart;
 			stats.depth = depth;
@@ -1826,6 +1867,51 @@ private Deflater deflater() {
 		return myDeflater;
 	}
 
+	/**
+	 * Send the only cached pack of the stream as it is stored.
+	 * <p>
+	 * If the pack stream consists of a single cached pack, without other
+	 * objects, its stored header and trailer are those this writer would
+	 * generate. The reader can then send the pack file unchanged, skipping the
+	 * checksum computation and, for local packs, the window cache.
+	 *
+	 * @param out
+	 *            stream to write the pack to; nothing has been written yet.
+	 * @param packs
+	 *            cached packs to write.
+	 * @param objCnt
+	 *            number of objects of the pack stream.
+	 * @return whether the whole pack stream was written.
+	 * @throws IOException
+	 *             the pack cannot be read, or the stream did not accept a
+	 *             write.
+	 */
+	private boolean writeWholePack(PackOutputStream out,
+			List<CachedPack> packs, long objCnt) throws IOException {
+		if (packs.size() != 1 || !isIndexDisabled()
+				|| packfileUriConfig != null) {
+			return false;
+		}
+		CachedPack pack = packs.get(0);
+		if (pack.getObjectCount() != objCnt) {
+			return false;
+		}
+		byte[] csum = reuseSupport.copyWholePackAsIs(out, pack, objCnt);
+		if (csum == null) {
+			return false;
+		}
+		packcsum = csum;
+		out.endObjects(objCnt);
+		out.flush();
+
+		long deltaCnt = pack.getDeltaCount();
+		stats.reusedPacks = Collections.unmodifiableList(cachedPacks);
+		stats.reusedObjects += objCnt;
+		stats.reusedDeltas += deltaCnt;
+		stats.totalDeltas += deltaCnt;
+		return true;
+	}
+
 	private void writeChecksum(PackOutputStream out) throws IOException {
 		packcsum = out.getDigest();
 		out.write(packcsum);
@@ -1848,6 +1934,12 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 				&& (excludeInPacks == null || excludeInPacks.length == 0);
 		if (!shallowPack && useBitmaps) {
 			BitmapIndex bitmapIndex = reader.getBitmapIndex();
+			if (bitmapIndex instanceof BitmapIndexImpl) {
+				// Readers build EWAH bitmaps; use the representation this
+				// writer is configured with.
+				bitmapIndex = ((BitmapIndexImpl) bitmapIndex)
+						.withRepresentation(Representation.of(config));
+			}
 			if (bitmapIndex != null) {
 				BitmapWalker bitmapWalker = new BitmapWalker(
 						walker, bitmapIndex, countingMonitor);
@@ -1952,12 +2044,25 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 		for (RevObject obj : haveObjs)
 			walker.markUninteresting(obj);
 
+		// Without haves there are no uninteresting trees to subtract, and the
+		// trees of the commits can be walked independently of each other.
+		int countingThreads = countingThreads();
+		List<RevTree> commitTrees = null;
+		if (countingThreads > 1 && have.isEmpty()
+				&& !(walker instanceof DepthWalk.ObjectWalk)
+				&& filterSpec.getTreeDepthLimit() < 0
+				&& walker.getObjectFilter() == ObjectFilter.ALL) {
+			commitTrees = new ArrayList<>();
+		}
+
 		final int maxBases = config.getDeltaSearchWindowSize();
 		Set<RevTree> baseTrees = new HashSet<>();
 		BlockList<RevCommit> commits = new BlockList<>();
 		Set<ObjectId> roots = new HashSet<>();
 		RevCommit c;
 		while ((c = walker.next()) != null) {
+			if (commitTrees != null && !c.has(RevFlag.UNINTERESTING))
+				commitTrees.add(c.getTree());
 			if (exclude(c))
 				continue;
 			if (c.has(RevFlag.UNINTERESTING)) {
@@ -2034,6 +2139,9 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 				}
 				countingMonitor.update(1);
 			}
+		} else if (commitTrees != null) {
+			findObjectsInParallel(countingMonitor, wantObjs, commitTrees, want,
+					countingThreads);
 		} else {
 			RevObject o;
 			while ((o = walker.nextObject()) != null) {
@@ -2056,6 +2164,140 @@ private void findObjectsToPack(@NonNull ProgressMonitor countingMonitor,
 		stats.bitmapIndexMisses = -1;
 	}
 
+	private int countingThreads() {
+		int threads = config.getCountingThreads();
+		if (threads == 0)
+			threads = Runtime.getRuntime().availableProcessors();
+		return threads;
+	}
+
+	/**
+	 * Enumerate the objects reachable from the wants on several threads,
+	 * instead of with {@link ObjectWalk#nextObject()}.
+	 *
+	 * @param countingMonitor
+	 *            progress of the counting phase.
+	 * @param wantObjs
+	 *            the wanted objects, as marked to start the walk.
+	 * @param commitTrees
+	 *            trees of the commits to pack, in walk order.
+	 * @param want
+	 *            the wanted objects.
+	 * @param threads
+	 *            number of threads to use.
+	 * @throws IOException
+	 *             an object could not be read.
+	 */
+	private void findObjectsInParallel(ProgressMonitor countingMonitor,
+			List<RevObject> wantObjs, List<RevTree> commitTrees,
+			Set<? extends ObjectId> want, int threads) throws IOException {
+		ParallelObjectEnumerator objects = new ParallelObjectEnumerator(
+				reader, filterSpec.getBlobLimit(), want);
+
+		// ObjectWalk produces the non-commit starting points first.
+		List<RevTree> trees = new ArrayList<>(commitTrees.size());
+		for (RevObject o : wantObjs) {
+			while (o instanceof RevTag) {
+				if (objects.claim(o, OBJ_TAG) && !exclude(o)) {
+					addObject(o, 0);
+					countingMonitor.update(1);
+				}
+				o = ((RevTag) o).getObject();
+			}
+			if (o instanceof RevTree) {
+				trees.add((RevTree) o);
+			} else if (o instanceof RevBlob && objects.claim(o, OBJ_BLOB)
+					&& !exclude(o)) {
+				filterAndAddObject(o, OBJ_BLOB, 0, want);
+				countingMonitor.update(1);
+			}
+		}
+		trees.addAll(commitTrees);
+
+		Executor executor = config.getExecutor();
+		if (executor == null) {
+			executor = SharedPool.EXECUTOR;
+		}
+		// More batches than threads, as the first trees cost the most.
+		List<FutureTask<List<Found>>> tasks = objects.start(trees,
+				threads * 4, new LimitedExecutor(executor, threads));
+		try {
+			for (FutureTask<List<Found>> task : tasks) {
+				for (Found obj : ParallelObjectEnumerator.get(task)) {
+					if (exclude(obj))
+						continue;
+					if (obj.include)
+						addObject(obj, obj.type, obj.pathHash);
+					countingMonitor.update(1);
+				}
+			}
+		} finally {
+			for (FutureTask<List<Found>> task : tasks)
+				task.cancel(true);
+		}
+	}
+
+	// Loaded on first use, so that writers which do not enumerate objects in
+	// parallel do not start it.
+	private static final class SharedPool {
+		static final ExecutorService EXECUTOR = Executors
+				.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger cnt = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "JGit-PackWriter-" //$NON-NLS-1$
+								+ cnt.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/** Runs tasks on another executor, at most a given number at a time. */
+	private static final class LimitedExecutor implements Executor {
+		private final Executor executor;
+
+		private final int limit;
+
+		private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger running = new AtomicInteger();
+
+		LimitedExecutor(Executor executor, int limit) {
+			this.executor = executor;
+			this.limit = limit;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			queue.add(task);
+			if (running.incrementAndGet() <= limit) {
+				executor.execute(this::drain);
+			} else {
+				running.decrementAndGet();
+			}
+		}
+
+		private void drain() {
+			for (;;) {
+				Runnable task;
+				while ((task = queue.poll()) != null) {
+					task.run();
+				}
+				running.decrementAndGet();
+				// A task queued meanwhile may have found all runners busy.
+				if (queue.isEmpty()) {
+					return;
+				}
+				if (running.incrementAndGet() > limit) {
+					running.decrementAndGet();
+					return;
+				}
+			}
+		}
+	}
+
 	private void findObjectsToPackUsingBitmaps(
 			BitmapWalker bitmapWalker, Set<? extends ObjectId> want,
 			Set<? extends ObjectId> have)
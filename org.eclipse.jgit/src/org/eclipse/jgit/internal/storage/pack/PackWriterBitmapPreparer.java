@@ -29,6 +29,7 @@
 import org.eclipse.jgit.internal.revwalk.AddUnseenToBitmapFilter;
 import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl;
 import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl.CompressedBitmap;
+import org.eclipse.jgit.internal.storage.file.BitmapIndexImpl.Representation;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndex;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndexBuilder;
 import org.eclipse.jgit.internal.storage.file.PackBitmapIndexRemapper;
@@ -85,10 +86,12 @@ class PackWriterBitmapPreparer {
 		this.writeBitmaps = writeBitmaps;
 		this.pm = pm;
 		this.want = want;
-		this.commitBitmapIndex = new BitmapIndexImpl(writeBitmaps);
+		Representation representation = Representation.of(config);
+		this.commitBitmapIndex = new BitmapIndexImpl(writeBitmaps,
+				representation);
 		this.bitmapRemapper = PackBitmapIndexRemapper.newPackBitmapIndex(
 				reader.getBitmapIndex(), writeBitmaps);
-		this.bitmapIndex = new BitmapIndexImpl(bitmapRemapper);
+		this.bitmapIndex = new BitmapIndexImpl(bitmapRemapper, representation);
 		this.contiguousCommitCount = config.getBitmapContiguousCommitCount();
 		this.recentCommitCount = config.getBitmapRecentCommitCount();
 		this.recentCommitSpan = config.getBitmapRecentCommitSpan();
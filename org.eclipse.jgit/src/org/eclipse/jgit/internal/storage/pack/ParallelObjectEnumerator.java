@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.internal.storage.pack;
+
+import static org.eclipse.jgit.lib.Constants.OBJ_BLOB;
+import static org.eclipse.jgit.lib.Constants.OBJ_COMMIT;
+import static org.eclipse.jgit.lib.Constants.OBJ_TREE;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.eclipse.jgit.errors.CorruptObjectException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+
+/**
+ * Enumerates the trees and blobs reachable from many root trees on several
+ * threads.
+ * <p>
+ * Roots are split into batches, each walked by a task with its own
+ * {@link ObjectReader}. The tasks share a concurrent set of the objects found
+ * so far, striped over several {@link ObjectIdOwnerMap}s: the task that first
+ * claims a tree is the only one to walk it, so work on trees common to many
+ * roots is divided between the tasks instead of repeated by each of them.
+ * <p>
+ * The objects of each batch are returned in the order a
+ * {@link org.eclipse.jgit.revwalk.ObjectWalk} would produce them, a tree
+ * before its entries. Which batch returns an object shared by several roots
+ * depends on the timing of the tasks.
+ */
+class ParallelObjectEnumerator {
+	/** Object found by the enumeration. */
+	static final class Found extends ObjectIdOwnerMap.Entry {
+		final int type;
+
+		final int pathHash;
+
+		/** Whether the object passed the blob size filter. */
+		boolean include = true;
+
+		Found(AnyObjectId id, int type, int pathHash) {
+			super(id);
+			this.type = type;
+			this.pathHash = pathHash;
+		}
+	}
+
+	/** Number of stripes of the seen set; a power of 2. */
+	private static final int STRIPES = 64;
+
+	private final ObjectReader reader;
+
+	private final long blobLimit;
+
+	private final Set<? extends AnyObjectId> want;
+
+	private final List<ObjectIdOwnerMap<Found>> seen;
+
+	/**
+	 * Create an enumerator.
+	 *
+	 * @param reader
+	 *            reader to create the readers of the tasks from.
+	 * @param blobLimit
+	 *            blobs larger than this are found but not included, unless
+	 *            wanted; negative to include all blobs.
+	 * @param want
+	 *            objects wanted by the client.
+	 */
+	ParallelObjectEnumerator(ObjectReader reader, long blobLimit,
+			Set<? extends AnyObjectId> want) {
+		this.reader = reader;
+		this.blobLimit = blobLimit;
+		this.want = want;
+		seen = new ArrayList<>(STRIPES);
+		for (int i = 0; i < STRIPES; i++) {
+			seen.add(new ObjectIdOwnerMap<>());
+		}
+	}
+
+	/**
+	 * Claim an object found outside of the enumeration.
+	 * <p>
+	 * A claimed object is not returned by the enumeration, and if it is a
+	 * tree, its entries are not walked unless it is also passed as a root.
+	 *
+	 * @param id
+	 *            the object.
+	 * @param type
+	 *            type of the object.
+	 * @return whether the object was not claimed before.
+	 */
+	boolean claim(AnyObjectId id, int type) {
+		return claim(new Found(id, type, 0));
+	}
+
+	private boolean claim(Found obj) {
+		ObjectIdOwnerMap<Found> stripe = seen
+				.get(obj.getByte(1) & (STRIPES - 1));
+		synchronized (stripe) {
+			return stripe.addIfAbsent(obj) == obj;
+		}
+	}
+
+	/**
+	 * Enumerate the objects reachable from root trees.
+	 *
+	 * @param roots
+	 *            the root trees.
+	 * @param batches
+	 *            number of batches to split the roots into.
+	 * @param executor
+	 *            executor to run the tasks on.
+	 * @return the tasks in the order of their roots. Each returns the objects
+	 *         it found, roots included.
+	 */
+	List<FutureTask<List<Found>>> start(List<? extends AnyObjectId> roots,
+			int batches, Executor executor) {
+		int size = Math.max(1, (roots.size() + batches - 1) / batches);
+		List<FutureTask<List<Found>>> tasks = new ArrayList<>(batches);
+		for (int start = 0; start < roots.size(); start += size) {
+			List<? extends AnyObjectId> batch = roots.subList(start,
+					Math.min(start + size, roots.size()));
+			tasks.add(new FutureTask<>(() -> walk(batch)));
+		}
+		for (FutureTask<List<Found>> t : tasks) {
+			executor.execute(t);
+		}
+		return tasks;
+	}
+
+	/**
+	 * Wait for a task and get its objects.
+	 *
+	 * @param task
+	 *            task returned by {@link #start}.
+	 * @return the objects found by the task.
+	 * @throws IOException
+	 *             the task failed, or the thread was interrupted.
+	 */
+	static List<Found> get(FutureTask<List<Found>> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(
+					JGitText.get().packingCancelledDuringObjectsWriting, e);
+		} catch (ExecutionException e) {
+			Throwable err = e.getCause();
+			if (err instanceof IOException) {
+				throw (IOException) err;
+			} else if (err instanceof RuntimeException) {
+				throw (RuntimeException) err;
+			} else if (err instanceof Error) {
+				throw (Error) err;
+			}
+			throw new IOException(err.getMessage(), err);
+		}
+	}
+
+	private List<Found> walk(List<? extends AnyObjectId> roots)
+			throws IOException {
+		List<Found> found = new ArrayList<>();
+		MutableObjectId idBuf = new MutableObjectId();
+		try (ObjectReader or = reader.newReader()) {
+			for (AnyObjectId root : roots) {
+				Found tree = new Found(root, OBJ_TREE, 0);
+				if (claim(tree)) {
+					found.add(tree);
+					CanonicalTreeParser p = new CanonicalTreeParser();
+					p.reset(or, root);
+					walk(or, tree, p, idBuf, found);
+				}
+			}
+		}
+		return found;
+	}
+
+	private void walk(ObjectReader or, AnyObjectId tree,
+			CanonicalTreeParser p, MutableObjectId idBuf, List<Found> found)
+			throws IOException {
+		for (; !p.eof(); p.next(1)) {
+			int type = p.getEntryFileMode().getObjectType();
+			if (type == OBJ_COMMIT) {
+				// Gitlinks are not part of this repository.
+				continue;
+			} else if (type != OBJ_TREE && type != OBJ_BLOB) {
+				throw new CorruptObjectException(MessageFormat.format(
+						JGitText.get().corruptObjectInvalidMode3,
+						String.format("%o", //$NON-NLS-1$
+								Integer.valueOf(p.getEntryRawMode())),
+						p.getEntryObjectId().name(), p.getEntryPathString(),
+						tree.name()));
+			}
+			p.getEntryObjectId(idBuf);
+			Found obj = new Found(idBuf, type,
+					pathHash(p.getEntryPathBuffer(), p.getEntryPathLength()));
+			if (!claim(obj)) {
+				continue;
+			}
+			found.add(obj);
+			if (type == OBJ_TREE) {
+				walk(or, obj, p.createSubtreeIterator(or, idBuf), idBuf,
+						found);
+			} else if (blobLimit >= 0 && !want.contains(obj)
+					&& or.getObjectSize(obj, OBJ_BLOB) > blobLimit) {
+				obj.include = false;
+			}
+		}
+	}
+
+	/**
+	 * Compute the path hash used to group delta candidates, as
+	 * {@link org.eclipse.jgit.revwalk.ObjectWalk#getPathHashCode()} does.
+	 *
+	 * @param path
+	 *            buffer holding the path.
+	 * @param len
+	 *            length of the path.
+	 * @return hash of the last 16 bytes of the path, ignoring spaces.
+	 */
+	static int pathHash(byte[] path, int len) {
+		int hash = 0;
+		for (int ptr = Math.max(0, len - 16); ptr < len; ptr++) {
+			byte c = path[ptr];
+			if (c != ' ') {
+				hash = (hash >>> 2) + (c << 24);
+			}
+		}
+		return hash;
+	}
+}
@@ -130,6 +130,18 @@ public RefCursor seekRefsWithPrefix(String prefix) throws IOException {
 		return m;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public RefCursor seekRefsWithPrefix(String prefix, String after)
+			throws IOException {
+		MergedRefCursor m = new MergedRefCursor();
+		for (int i = 0; i < tables.length; i++) {
+			m.add(new RefQueueEntry(tables[i].seekRefsWithPrefix(prefix, after),
+					i));
+		}
+		return m;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public RefCursor byObjectId(AnyObjectId name) throws IOException {
@@ -126,6 +126,25 @@ public void setIncludeDeletes(boolean deletes) {
 	 */
 	public abstract RefCursor seekRefsWithPrefix(String prefix) throws IOException;
 
+	/**
+	 * Seek references with prefix, resuming after a reference.
+	 * <p>
+	 * Returns the references of {@link #seekRefsWithPrefix(String)} whose
+	 * names sort after {@code after}, allowing a caller to read a large
+	 * namespace in several batches.
+	 *
+	 * @param prefix
+	 *            prefix to find.
+	 * @param after
+	 *            name of the last reference already read; must start with
+	 *            {@code prefix}.
+	 * @return cursor to iterate; empty cursor if no references match.
+	 * @throws java.io.IOException
+	 *             if references cannot be read.
+	 */
+	public abstract RefCursor seekRefsWithPrefix(String prefix, String after)
+			throws IOException;
+
 	/**
 	 * Match references pointing to a specific object.
 	 *
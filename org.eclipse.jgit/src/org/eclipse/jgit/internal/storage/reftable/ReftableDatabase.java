@@ -11,10 +11,13 @@
 package org.eclipse.jgit.internal.storage.reftable;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.locks.ReentrantLock;
@@ -33,6 +36,9 @@
  * example.
  */
 public abstract class ReftableDatabase {
+	/** Refs read per lock acquisition by {@link #iterateRefsByPrefix}. */
+	private static final int ITERATOR_BATCH = 4096;
+
 	// Protects mergedTables.
 	private final ReentrantLock lock = new ReentrantLock(true);
 
@@ -72,12 +78,7 @@ public long nextUpdateIndex() throws IOException {
 	 *             on I/O problems
 	 */
 	public ReflogReader getReflogReader(String refname) throws IOException {
-		lock.lock();
-		try {
-			return new ReftableReflogReader(lock, reader(), refname);
-		} finally {
-			lock.unlock();
-		}
+		return new ReftableReflogReader(lock, this::reader, refname);
 	}
 
 	/**
@@ -265,6 +266,79 @@ public List<Ref> getRefsByPrefix(String prefix) throws IOException {
 		return Collections.unmodifiableList(all);
 	}
 
+	/**
+	 * Iterates refs whose names start with a given prefix, in name order.
+	 * <p>
+	 * Refs are read from the reftable stack in batches, so the caller can
+	 * process the first refs before the namespace is read completely, and the
+	 * lock is not held while the caller processes them. Each batch is read
+	 * from the current stack: a ref updated while iterating may be returned
+	 * at its new value, but no name is returned twice.
+	 *
+	 * @param prefix
+	 *            string that names of refs should start with; may be empty (to
+	 *            return all refs).
+	 * @return iterator over the refs. Reading a batch may throw
+	 *         {@link UncheckedIOException}.
+	 */
+	public Iterator<Ref> iterateRefsByPrefix(String prefix) {
+		return new Iterator<Ref>() {
+			private List<Ref> batch = Collections.emptyList();
+
+			private int idx;
+
+			private String last;
+
+			private boolean done;
+
+			@Override
+			public boolean hasNext() {
+				while (idx == batch.size() && !done) {
+					try {
+						readBatch();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return idx < batch.size();
+			}
+
+			@Override
+			public Ref next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return batch.get(idx++);
+			}
+
+			private void readBatch() throws IOException {
+				List<Ref> refs = new ArrayList<>();
+				int n = 0;
+				lock.lock();
+				try {
+					Reftable table = reader();
+					try (RefCursor rc = last == null
+							? table.seekRefsWithPrefix(prefix)
+							: table.seekRefsWithPrefix(prefix, last)) {
+						while (n < ITERATOR_BATCH && rc.next()) {
+							n++;
+							last = rc.getRef().getName();
+							Ref ref = table.resolve(rc.getRef());
+							if (ref != null && ref.getObjectId() != null) {
+								refs.add(ref);
+							}
+						}
+					}
+				} finally {
+					lock.unlock();
+				}
+				batch = refs;
+				idx = 0;
+				done = n < ITERATOR_BATCH;
+			}
+		};
+	}
+
 	/**
 	 * @return whether there is a fast SHA1 to ref map.
 	 * @throws IOException in case of I/O problems.
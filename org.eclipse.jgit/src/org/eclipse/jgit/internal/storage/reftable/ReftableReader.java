@@ -166,6 +166,20 @@ public RefCursor seekRefsWithPrefix(String prefix) throws IOException {
 		return i;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public RefCursor seekRefsWithPrefix(String prefix, String after)
+			throws IOException {
+		initRefIndex();
+
+		byte[] key = after.getBytes(UTF_8);
+		RefCursorImpl i = new RefCursorImpl(refEnd, prefix.getBytes(UTF_8),
+				true);
+		i.skip = key;
+		i.block = seek(REF_BLOCK_TYPE, key, refIndex, 0, refEnd);
+		return i;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public RefCursor byObjectId(AnyObjectId id) throws IOException {
@@ -474,6 +488,9 @@ private class RefCursorImpl extends RefCursor {
 		private Ref ref;
 		BlockReader block;
 
+		/** Key to skip if it is the first one, when resuming a scan. */
+		byte[] skip;
+
 		RefCursorImpl(long scanEnd, byte[] match, boolean prefix) {
 			this.scanEnd = scanEnd;
 			this.match = match;
@@ -499,6 +516,14 @@ public boolean next() throws IOException {
 					block.skipValue();
 					return false;
 				}
+				if (skip != null) {
+					boolean resumeKey = block.match(skip, false);
+					skip = null;
+					if (resumeKey) {
+						block.skipValue();
+						continue;
+					}
+				}
 
 				ref = block.readRef(minUpdateIndex);
 				if (!includeDeletes && wasDeleted()) {
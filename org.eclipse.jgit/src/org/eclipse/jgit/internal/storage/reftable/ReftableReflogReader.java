@@ -22,15 +22,27 @@
  * Implement the ReflogReader interface for a reflog stored in reftable.
  */
 public class ReftableReflogReader implements ReflogReader {
+	/** Supplies the table to read, called with the lock held. */
+	@FunctionalInterface
+	interface TableSupplier {
+		Reftable get() throws IOException;
+	}
+
 	private final Lock lock;
 
-	private final Reftable reftable;
+	private final TableSupplier reftable;
 
 	private final String refname;
 
 	ReftableReflogReader(Lock lock, Reftable merged, String refname) {
+		this(lock, () -> merged, refname);
+	}
+
+	// The table is asked for on each read, so the reader outlives reloads of
+	// the database, which close the tables they replace.
+	ReftableReflogReader(Lock lock, TableSupplier reftable, String refname) {
 		this.lock = lock;
-		this.reftable = merged;
+		this.reftable = reftable;
 		this.refname = refname;
 	}
 
@@ -39,7 +51,7 @@ public class ReftableReflogReader implements ReflogReader {
 	public ReflogEntry getLastEntry() throws IOException {
 		lock.lock();
 		try {
-			LogCursor cursor = reftable.seekLog(refname);
+			LogCursor cursor = reftable.get().seekLog(refname);
 			return cursor.next() ? cursor.getReflogEntry() : null;
 		} finally {
 			lock.unlock();
@@ -57,7 +69,7 @@ public List<ReflogEntry> getReverseEntries() throws IOException {
 	public ReflogEntry getReverseEntry(int number) throws IOException {
 		lock.lock();
 		try {
-			LogCursor cursor = reftable.seekLog(refname);
+			LogCursor cursor = reftable.get().seekLog(refname);
 			while (true) {
 				if (!cursor.next() || number < 0) {
 					return null;
@@ -77,7 +89,7 @@ public ReflogEntry getReverseEntry(int number) throws IOException {
 	public List<ReflogEntry> getReverseEntries(int max) throws IOException {
 		lock.lock();
 		try {
-			LogCursor cursor = reftable.seekLog(refname);
+			LogCursor cursor = reftable.get().seekLog(refname);
 
 			List<ReflogEntry> result = new ArrayList<>();
 			while (cursor.next() && result.size() < max) {
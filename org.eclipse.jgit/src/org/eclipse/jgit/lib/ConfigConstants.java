@@ -197,6 +197,20 @@ public final class ConfigConstants {
 	 */
 	public static final String CONFIG_KEY_CONCURRENCY_LEVEL = "concurrencyLevel";
 
+	/**
+	 * The "cacheShards" key
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_CACHE_SHARDS = "cacheShards";
+
+	/**
+	 * The "directMemory" key
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_DIRECT_MEMORY = "directMemory";
+
 	/** The "deltaBaseCacheLimit" key */
 	public static final String CONFIG_KEY_DELTA_BASE_CACHE_LIMIT = "deltaBaseCacheLimit";
 
@@ -239,6 +253,18 @@ public final class ConfigConstants {
 	 */
 	public static final String CONFIG_KEY_PACKED_GIT_USE_STRONGREFS = "packedgitusestrongrefs";
 
+	/**
+	 * The "packedGitEvictionPolicy" key
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_PACKED_GIT_EVICTION_POLICY = "packedgitevictionpolicy";
+
+	/**
+	 * The "packedIndexMmap" key
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_PACKED_INDEX_MMAP = "packedindexmmap";
+
 	/** The "remote" key */
 	public static final String CONFIG_KEY_REMOTE = "remote";
 
@@ -542,4 +568,144 @@ public final class ConfigConstants {
 	 * @since 5.1.13
 	 */
 	public static final String CONFIG_JMX_SECTION = "jmx";
+
+	/**
+	 * The "commitGraph" key in the "core" section, enabling the use of the
+	 * commit-graph when walking history
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_COMMIT_GRAPH = "commitGraph";
+
+	/**
+	 * The "writeCommitGraph" key. In the "gc" section it enables writing of
+	 * the commit-graph during garbage collection; in the "receive" section it
+	 * enables adding received commits to the commit-graph chain
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_WRITE_COMMIT_GRAPH = "writeCommitGraph";
+
+	/**
+	 * The "multiPackIndex" key in the "core" section, enabling the use of the
+	 * multi-pack-index to locate objects, and its writing during garbage
+	 * collection
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_MULTI_PACK_INDEX = "multiPackIndex";
+
+	/**
+	 * The "reftable" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_REFTABLE_SECTION = "reftable";
+
+	/**
+	 * The "backgroundCompaction" key in the "reftable" section, moving the
+	 * automatic compaction of the reftable stack off the writing threads
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_BACKGROUND_COMPACTION = "backgroundCompaction";
+
+	/**
+	 * The "compactionFactor" key in the "reftable" section: tables whose sizes
+	 * are within this factor of each other are merged by automatic compaction
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_COMPACTION_FACTOR = "compactionFactor";
+
+	/**
+	 * The "compactionBytesPerSecond" key in the "reftable" section, limiting
+	 * the rate at which background compaction writes
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_COMPACTION_BYTES_PER_SECOND = "compactionBytesPerSecond";
+
+	/**
+	 * The "maxTables" key in the "reftable" section: above this number of
+	 * tables background compaction ignores its rate limit
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_MAX_TABLES = "maxTables";
+
+	/**
+	 * The "checkout" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_CHECKOUT_SECTION = "checkout";
+
+	/**
+	 * The "workers" key in the "checkout" and "status" sections: number of
+	 * threads writing files to the working tree, or scanning it; a value less
+	 * than 1 uses one thread per processor
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_WORKERS = "workers";
+
+	/**
+	 * The "thresholdForParallelism" key in the "checkout" section: minimum
+	 * number of files to check out for checkout to use several threads
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_THRESHOLD_FOR_PARALLELISM = "thresholdForParallelism";
+
+	/**
+	 * The "status" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_STATUS_SECTION = "status";
+
+	/**
+	 * The "untrackedCache" key in the "core" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_UNTRACKED_CACHE = "untrackedCache";
+
+	/**
+	 * The "splitIndex" key in the "core" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_SPLIT_INDEX = "splitIndex";
+
+	/**
+	 * The "fsmonitor" key in the "core" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_FSMONITOR = "fsmonitor";
+
+	/**
+	 * The "splitIndex" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_SPLIT_INDEX_SECTION = "splitIndex";
+
+	/**
+	 * The "maxPercentChange" key in the "splitIndex" section: largest share,
+	 * in percent, of the index entries written to the index file rather than
+	 * to the shared index before a new shared index is written
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_MAX_PERCENT_CHANGE = "maxPercentChange";
+
+	/**
+	 * The "sharedIndexExpire" key in the "splitIndex" section
+	 *
+	 * @since 5.8
+	 */
+	public static final String CONFIG_KEY_SHARED_INDEX_EXPIRE = "sharedIndexExpire";
 }
@@ -194,6 +194,25 @@ public final class Constants {
 	 */
 	public static final byte[] PACK_SIGNATURE = { 'P', 'A', 'C', 'K' };
 
+	/**
+	 * Generation number of a commit that is not contained in a commit-graph,
+	 * or whose commit-graph could not be read.
+	 * <p>
+	 * Such a commit must be assumed to be reachable from (and to reach) any
+	 * commit, so walks cannot prune it by generation number.
+	 *
+	 * @since 5.8
+	 */
+	public static final int COMMIT_GENERATION_UNKNOWN = Integer.MAX_VALUE;
+
+	/**
+	 * Generation number stored for a commit in a commit-graph written by an
+	 * implementation that did not compute generation numbers.
+	 *
+	 * @since 5.8
+	 */
+	public static final int COMMIT_GENERATION_NOT_COMPUTED = 0;
+
 	/**
 	 * Native character encoding for commit messages, file names...
 	 *
@@ -292,6 +311,28 @@ public final class Constants {
 	 */
 	public static final String INFO_ATTRIBUTES = "info/attributes";
 
+	/**
+	 * The commit-graph file, relative to the objects directory.
+	 *
+	 * @since 5.8
+	 */
+	public static final String INFO_COMMIT_GRAPH = "info/commit-graph";
+
+	/**
+	 * The directory holding a chain of incremental commit-graph files,
+	 * relative to the objects directory.
+	 *
+	 * @since 5.8
+	 */
+	public static final String INFO_COMMIT_GRAPHS = "info/commit-graphs";
+
+	/**
+	 * The multi-pack-index file, relative to the objects directory.
+	 *
+	 * @since 5.8
+	 */
+	public static final String PACK_MULTI_PACK_INDEX = "pack/multi-pack-index";
+
 	/**
 	 * The system property that contains the system user name
 	 *
@@ -15,7 +15,9 @@
 package org.eclipse.jgit.lib;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
@@ -25,12 +27,19 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -42,6 +51,7 @@
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator.FileModeStrategy;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
@@ -49,6 +59,7 @@
 import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
 import org.eclipse.jgit.treewalk.filter.SkipWorkTreeFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FS;
 
 /**
  * Compares the index, a tree, and the working directory Ignored files are not
@@ -210,6 +221,45 @@ public TreeFilter clone() {
 		}
 	}
 
+	/**
+	 * Includes the top level entries whose name hashes to one partition, and
+	 * everything below them.
+	 */
+	private static final class PartitionFilter extends TreeFilter {
+
+		private final int partitions;
+
+		private final int partition;
+
+		private final AtomicBoolean stop;
+
+		private PartitionFilter(int partitions, int partition,
+				AtomicBoolean stop) {
+			this.partitions = partitions;
+			this.partition = partition;
+			this.stop = stop;
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return false;
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) {
+			if (stop.get()) {
+				throw StopWalkException.INSTANCE;
+			}
+			return walker.getDepth() > 0 || Math.floorMod(
+					walker.getNameString().hashCode(), partitions) == partition;
+		}
+
+		@Override
+		public TreeFilter clone() {
+			return this;
+		}
+	}
+
 	private static final int TREE = 0;
 
 	private static final int INDEX = 1;
@@ -246,8 +296,14 @@ public TreeFilter clone() {
 
 	private DirCache dirCache;
 
+	private boolean writeFileSystemMonitorState;
+
+	private UntrackedCache.Builder untrackedCacheBuilder;
+
 	private IndexDiffFilter indexDiffFilter;
 
+	private List<String> untrackedFolders;
+
 	private Map<String, IndexDiff> submoduleIndexDiffs = new HashMap<>();
 
 	private IgnoreSubmoduleMode ignoreSubmoduleMode = null;
@@ -295,6 +351,26 @@ public IndexDiff(Repository repository, ObjectId objectId,
 		this.initialWorkingTreeIterator = workingTreeIterator;
 	}
 
+	/**
+	 * Construct an IndexDiff scanning a partition of the working tree for a
+	 * parallel {@link #diff}.
+	 *
+	 * @param parent
+	 *            the IndexDiff computing the whole diff
+	 * @param workingTreeIterator
+	 *            iterator for working directory
+	 */
+	private IndexDiff(IndexDiff parent,
+			WorkingTreeIterator workingTreeIterator) {
+		this.repository = parent.repository;
+		this.tree = parent.tree;
+		this.initialWorkingTreeIterator = workingTreeIterator;
+		this.filter = parent.filter != null ? parent.filter.clone() : null;
+		this.ignoreSubmoduleMode = parent.ignoreSubmoduleMode;
+		this.dirCache = parent.dirCache;
+		this.untrackedCacheBuilder = parent.untrackedCacheBuilder;
+	}
+
 	/**
 	 * Defines how modifications in submodules are treated
 	 *
@@ -306,6 +382,24 @@ public void setIgnoreSubmoduleMode(IgnoreSubmoduleMode mode) {
 		this.ignoreSubmoduleMode = mode;
 	}
 
+	/**
+	 * Whether to record the files found unchanged in the index.
+	 * <p>
+	 * If the index is watched by a file system monitor, the entries whose
+	 * files were found unchanged can be written to the index, so that the
+	 * next diff skips these files unless the monitor reports them changed.
+	 * This takes the lock of the index and rewrites it; it is skipped if the
+	 * index is locked or changed meanwhile.
+	 *
+	 * @param write
+	 *            whether to write the index after the diff. Defaults to
+	 *            {@code false}.
+	 * @since 5.8
+	 */
+	public void setWriteFileSystemMonitorState(boolean write) {
+		this.writeFileSystemMonitorState = write;
+	}
+
 	/**
 	 * A factory to producing WorkingTreeIterators
 	 * @since 3.6
@@ -442,7 +536,137 @@ public boolean diff(ProgressMonitor monitor, int estWorkTreeSize,
 			int estIndexSize, String title, RepositoryBuilderFactory factory)
 			throws IOException {
 		dirCache = repository.readDirCache();
+		if (filter == null && isParallelizable()
+				&& UntrackedCache.isUpdateEnabled(repository)) {
+			untrackedCacheBuilder = newUntrackedCacheBuilder();
+		}
 
+		int workers = scanWorkers();
+		if (workers > 1 && isParallelizable()) {
+			scanInParallel(monitor, title, workers);
+		} else {
+			scan(monitor, estWorkTreeSize, estIndexSize, title, null);
+			untrackedFolders = indexDiffFilter.getUntrackedFolders();
+			ignored = indexDiffFilter.getIgnoredPaths();
+		}
+		if (writeFileSystemMonitorState) {
+			// Keep the entries found unchanged, so that the next diff need
+			// not compare their files again.
+			dirCache.writeFileSystemMonitorState();
+		}
+		if (untrackedCacheBuilder != null
+				&& (monitor == null || !monitor.isCancelled())) {
+			UntrackedCache cache = untrackedCacheBuilder.build(dirCache);
+			if (cache != null) {
+				dirCache.writeUntrackedCache(cache);
+			}
+		}
+
+		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
+			try (SubmoduleWalk smw = new SubmoduleWalk(repository)) {
+				smw.setTree(new DirCacheIterator(dirCache));
+				smw.setBuilderFactory(factory);
+				while (smw.next()) {
+					IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
+					try {
+						if (localIgnoreSubmoduleMode == null)
+							localIgnoreSubmoduleMode = smw.getModulesIgnore();
+						if (IgnoreSubmoduleMode.ALL
+								.equals(localIgnoreSubmoduleMode))
+							continue;
+					} catch (ConfigInvalidException e) {
+						throw new IOException(MessageFormat.format(
+								JGitText.get().invalidIgnoreParamSubmodule,
+								smw.getPath()), e);
+					}
+					try (Repository subRepo = smw.getRepository()) {
+						String subRepoPath = smw.getPath();
+						if (subRepo != null) {
+							ObjectId subHead = subRepo.resolve("HEAD"); //$NON-NLS-1$
+							if (subHead != null
+									&& !subHead.equals(smw.getObjectId())) {
+								modified.add(subRepoPath);
+								recordFileMode(subRepoPath, FileMode.GITLINK);
+							} else if (localIgnoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY) {
+								IndexDiff smid = submoduleIndexDiffs
+										.get(smw.getPath());
+								if (smid == null) {
+									smid = new IndexDiff(subRepo,
+											smw.getObjectId(),
+											wTreeIt.getWorkingTreeIterator(
+													subRepo));
+									submoduleIndexDiffs.put(subRepoPath, smid);
+								}
+								if (smid.diff(factory)) {
+									if (localIgnoreSubmoduleMode == IgnoreSubmoduleMode.UNTRACKED
+											&& smid.getAdded().isEmpty()
+											&& smid.getChanged().isEmpty()
+											&& smid.getConflicting().isEmpty()
+											&& smid.getMissing().isEmpty()
+											&& smid.getModified().isEmpty()
+											&& smid.getRemoved().isEmpty()) {
+										continue;
+									}
+									modified.add(subRepoPath);
+									recordFileMode(subRepoPath,
+											FileMode.GITLINK);
+								}
+							}
+						} else if (missingSubmodules.remove(subRepoPath)) {
+							// If the directory is there and empty but the
+							// submodule repository in .git/modules doesn't
+							// exist yet it isn't "missing".
+							File gitDir = new File(
+									new File(repository.getDirectory(),
+											Constants.MODULES),
+									subRepoPath);
+							if (!gitDir.isDirectory()) {
+								File dir = SubmoduleWalk.getSubmoduleDirectory(
+										repository, subRepoPath);
+								if (dir.isDirectory() && !hasFiles(dir)) {
+									missing.remove(subRepoPath);
+								}
+							}
+						}
+					}
+				}
+			}
+
+		}
+
+		// consume the remaining work
+		if (monitor != null) {
+			monitor.endTask();
+		}
+
+		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()
+				&& missing.isEmpty() && modified.isEmpty()
+				&& untracked.isEmpty()) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Walk the tree, the index and the working tree, adding the differences
+	 * found to the result sets.
+	 *
+	 * @param monitor
+	 *            for reporting progress, may be null
+	 * @param estWorkTreeSize
+	 *            number or estimated files in the working tree
+	 * @param estIndexSize
+	 *            number of estimated entries in the cache
+	 * @param title
+	 *            title of the progress task
+	 * @param partition
+	 *            filter restricting the walk to a part of the top level
+	 *            entries; null to walk all of them
+	 * @throws IOException
+	 */
+	private void scan(ProgressMonitor monitor, int estWorkTreeSize,
+			int estIndexSize, String title, TreeFilter partition)
+			throws IOException {
 		try (TreeWalk treeWalk = new TreeWalk(repository)) {
 			treeWalk.setOperationType(OperationType.CHECKIN_OP);
 			treeWalk.setRecursive(true);
@@ -451,10 +675,24 @@ public boolean diff(ProgressMonitor monitor, int estWorkTreeSize,
 				treeWalk.addTree(tree);
 			else
 				treeWalk.addTree(new EmptyTreeIterator());
-			treeWalk.addTree(new DirCacheIterator(dirCache));
+			// Building the cache tree of the shared DirCache is not thread
+			// safe.
+			synchronized (dirCache) {
+				treeWalk.addTree(new DirCacheIterator(dirCache));
+			}
 			treeWalk.addTree(initialWorkingTreeIterator);
 			initialWorkingTreeIterator.setDirCacheIterator(treeWalk, 1);
-			Collection<TreeFilter> filters = new ArrayList<>(4);
+			UntrackedCache untrackedCache = dirCache.getUntrackedCache();
+			if (untrackedCache != null
+					&& UntrackedCache.isEnabled(repository)) {
+				initialWorkingTreeIterator.setUntrackedCache(untrackedCache);
+			}
+			initialWorkingTreeIterator
+					.setUntrackedCacheBuilder(untrackedCacheBuilder);
+			Collection<TreeFilter> filters = new ArrayList<>(5);
+			if (partition != null) {
+				filters.add(partition);
+			}
 
 			if (monitor != null) {
 				// Get the maximum size of the work tree and index
@@ -512,8 +750,14 @@ public boolean diff(ProgressMonitor monitor, int estWorkTreeSize,
 						if (!isEntryGitLink(treeIterator)
 								|| ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL)
 							removed.add(treeWalk.getPathString());
-						if (workingTreeIterator != null)
+						if (workingTreeIterator != null) {
 							untracked.add(treeWalk.getPathString());
+							if (untrackedCacheBuilder != null
+									&& !workingTreeIterator.isEntryIgnored()) {
+								untrackedCacheBuilder
+										.addUntracked(treeWalk.getPathString());
+							}
+						}
 					}
 				} else {
 					if (dirCacheIterator != null) {
@@ -526,6 +770,10 @@ public boolean diff(ProgressMonitor monitor, int estWorkTreeSize,
 						if (workingTreeIterator != null
 								&& !workingTreeIterator.isEntryIgnored()) {
 							untracked.add(treeWalk.getPathString());
+							if (untrackedCacheBuilder != null) {
+								untrackedCacheBuilder
+										.addUntracked(treeWalk.getPathString());
+							}
 						}
 					}
 				}
@@ -565,90 +813,156 @@ public boolean diff(ProgressMonitor monitor, int estWorkTreeSize,
 			}
 		}
 
-		if (ignoreSubmoduleMode != IgnoreSubmoduleMode.ALL) {
-			try (SubmoduleWalk smw = new SubmoduleWalk(repository)) {
-				smw.setTree(new DirCacheIterator(dirCache));
-				smw.setBuilderFactory(factory);
-				while (smw.next()) {
-					IgnoreSubmoduleMode localIgnoreSubmoduleMode = ignoreSubmoduleMode;
-					try {
-						if (localIgnoreSubmoduleMode == null)
-							localIgnoreSubmoduleMode = smw.getModulesIgnore();
-						if (IgnoreSubmoduleMode.ALL
-								.equals(localIgnoreSubmoduleMode))
-							continue;
-					} catch (ConfigInvalidException e) {
-						throw new IOException(MessageFormat.format(
-								JGitText.get().invalidIgnoreParamSubmodule,
-								smw.getPath()), e);
+	}
+
+	/**
+	 * Scan the working tree on several threads.
+	 * <p>
+	 * The top level entries are split into partitions by the hash of their
+	 * name, each scanned by an IndexDiff of its own with its own working tree
+	 * iterator. Their results are then merged into this IndexDiff. The
+	 * partitions only share the {@link DirCache}, of which each entry is
+	 * looked at, and possibly updated with its length, by one partition only.
+	 *
+	 * @param monitor
+	 *            for reporting progress, may be null
+	 * @param title
+	 *            title of the progress task
+	 * @param workers
+	 *            number of threads
+	 * @throws IOException
+	 */
+	private void scanInParallel(ProgressMonitor monitor, String title,
+			int workers) throws IOException {
+		FileModeStrategy modes = ((FileTreeIterator) initialWorkingTreeIterator)
+				.getFileModeStrategy();
+		int partitions = workers * 4;
+		AtomicBoolean stop = new AtomicBoolean();
+		List<IndexDiff> parts = new ArrayList<>(partitions);
+		List<FutureTask<Void>> tasks = new ArrayList<>(partitions);
+		for (int i = 0; i < partitions; i++) {
+			IndexDiff part = new IndexDiff(this,
+					new FileTreeIterator(repository, modes));
+			TreeFilter partition = new PartitionFilter(partitions, i, stop);
+			parts.add(part);
+			tasks.add(new FutureTask<>(() -> {
+				part.scan(null, 0, 0, title, partition);
+				return null;
+			}));
+		}
+
+		if (monitor != null) {
+			monitor.beginTask(title, partitions);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		Throwable failure = null;
+		boolean interrupted = false;
+		try {
+			for (FutureTask<Void> t : tasks) {
+				pool.execute(t);
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					tasks.get(i).get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
 					}
-					try (Repository subRepo = smw.getRepository()) {
-						String subRepoPath = smw.getPath();
-						if (subRepo != null) {
-							ObjectId subHead = subRepo.resolve("HEAD"); //$NON-NLS-1$
-							if (subHead != null
-									&& !subHead.equals(smw.getObjectId())) {
-								modified.add(subRepoPath);
-								recordFileMode(subRepoPath, FileMode.GITLINK);
-							} else if (localIgnoreSubmoduleMode != IgnoreSubmoduleMode.DIRTY) {
-								IndexDiff smid = submoduleIndexDiffs
-										.get(smw.getPath());
-								if (smid == null) {
-									smid = new IndexDiff(subRepo,
-											smw.getObjectId(),
-											wTreeIt.getWorkingTreeIterator(
-													subRepo));
-									submoduleIndexDiffs.put(subRepoPath, smid);
-								}
-								if (smid.diff(factory)) {
-									if (localIgnoreSubmoduleMode == IgnoreSubmoduleMode.UNTRACKED
-											&& smid.getAdded().isEmpty()
-											&& smid.getChanged().isEmpty()
-											&& smid.getConflicting().isEmpty()
-											&& smid.getMissing().isEmpty()
-											&& smid.getModified().isEmpty()
-											&& smid.getRemoved().isEmpty()) {
-										continue;
-									}
-									modified.add(subRepoPath);
-									recordFileMode(subRepoPath,
-											FileMode.GITLINK);
-								}
-							}
-						} else if (missingSubmodules.remove(subRepoPath)) {
-							// If the directory is there and empty but the
-							// submodule repository in .git/modules doesn't
-							// exist yet it isn't "missing".
-							File gitDir = new File(
-									new File(repository.getDirectory(),
-											Constants.MODULES),
-									subRepoPath);
-							if (!gitDir.isDirectory()) {
-								File dir = SubmoduleWalk.getSubmoduleDirectory(
-										repository, subRepoPath);
-								if (dir.isDirectory() && !hasFiles(dir)) {
-									missing.remove(subRepoPath);
-								}
-							}
-						}
+					stop.set(true);
+					continue;
+				} catch (InterruptedException e) {
+					interrupted = true;
+					stop.set(true);
+					// Wait again; the tasks stop at their next entry.
+					i--;
+					continue;
+				}
+				if (monitor != null) {
+					monitor.update(1);
+					if (monitor.isCancelled()) {
+						stop.set(true);
 					}
 				}
 			}
+		} finally {
+			pool.shutdown();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure.getMessage(), failure);
 		}
 
-		// consume the remaining work
-		if (monitor != null) {
-			monitor.endTask();
+		fileModes.clear();
+		ignored = new HashSet<>();
+		untrackedFolders = new ArrayList<>();
+		for (IndexDiff part : parts) {
+			added.addAll(part.added);
+			changed.addAll(part.changed);
+			removed.addAll(part.removed);
+			missing.addAll(part.missing);
+			missingSubmodules.addAll(part.missingSubmodules);
+			modified.addAll(part.modified);
+			untracked.addAll(part.untracked);
+			conflicts.putAll(part.conflicts);
+			for (Map.Entry<FileMode, Set<String>> e : part.fileModes
+					.entrySet()) {
+				fileModes.computeIfAbsent(e.getKey(), m -> new HashSet<>())
+						.addAll(e.getValue());
+			}
+			ignored.addAll(part.indexDiffFilter.getIgnoredPaths());
+			untrackedFolders.addAll(part.indexDiffFilter.getUntrackedFolders());
 		}
+	}
 
-		ignored = indexDiffFilter.getIgnoredPaths();
-		if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()
-				&& missing.isEmpty() && modified.isEmpty()
-				&& untracked.isEmpty()) {
-			return false;
+	// The walk records the subdirectories it lists; the top level directory
+	// is recorded as it is before the walk lists it.
+	private UntrackedCache.Builder newUntrackedCacheBuilder()
+			throws IOException {
+		UntrackedCache.Builder builder = new UntrackedCache.Builder(
+				repository);
+		FS fs = repository.getFS();
+		File workTree = repository.getWorkTree();
+		FS.Attributes dir = fs.getAttributes(workTree);
+		File gitignore = new File(workTree, Constants.DOT_GIT_IGNORE);
+		String top = ""; //$NON-NLS-1$
+		if (fs.isFile(gitignore)) {
+			try (InputStream in = new FileInputStream(gitignore)) {
+				builder.addDirectory(top, dir.getLastModifiedInstant(),
+						dir.getLength(), in, gitignore.length());
+			}
+		} else {
+			builder.addDirectory(top, dir.getLastModifiedInstant(),
+					dir.getLength(), null, 0);
 		}
-		return true;
+		return builder;
+	}
+
+	// Partitions iterate the working tree with new iterators, which only
+	// behave like the initial one if it is a plain FileTreeIterator over the
+	// working tree of the repository.
+	private boolean isParallelizable() {
+		return initialWorkingTreeIterator.getClass() == FileTreeIterator.class
+				&& ((FileTreeIterator) initialWorkingTreeIterator).getDirectory()
+						.equals(repository.getWorkTree());
+	}
+
+	private int scanWorkers() {
+		int workers = repository.getConfig().getInt(
+				ConfigConstants.CONFIG_STATUS_SECTION,
+				ConfigConstants.CONFIG_KEY_WORKERS, 1);
+		if (workers < 1) {
+			workers = Runtime.getRuntime().availableProcessors();
+		}
+		return workers;
 	}
 
 	private boolean hasFiles(File directory) {
@@ -801,8 +1115,8 @@ public Set<String> getAssumeUnchanged() {
 	 * @return list of folders containing only untracked files/folders
 	 */
 	public Set<String> getUntrackedFolders() {
-		return ((indexDiffFilter == null) ? Collections.<String> emptySet()
-				: new HashSet<>(indexDiffFilter.getUntrackedFolders()));
+		return ((untrackedFolders == null) ? Collections.<String> emptySet()
+				: new HashSet<>(untrackedFolders));
 	}
 
 	/**
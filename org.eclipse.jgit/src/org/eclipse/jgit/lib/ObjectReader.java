@@ -15,11 +15,13 @@
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 
 /**
  * Reads an {@link org.eclipse.jgit.lib.ObjectDatabase} for a single thread.
@@ -407,6 +409,22 @@ public BitmapIndex getBitmapIndex() throws IOException {
 		return null;
 	}
 
+	/**
+	 * Get the commit-graph for this repository if available.
+	 * <p>
+	 * The commit-graph can be used to obtain the parents, root tree and
+	 * commit time of commits without inflating and parsing them.
+	 *
+	 * @return the commit-graph or empty if the commit-graph does not exist,
+	 *         is disabled by {@code core.commitGraph}, or is invalid.
+	 * @throws java.io.IOException
+	 *             when the commit-graph fails to load.
+	 * @since 5.8
+	 */
+	public Optional<CommitGraph> getCommitGraph() throws IOException {
+		return Optional.empty();
+	}
+
 	/**
 	 * Get the {@link org.eclipse.jgit.lib.ObjectInserter} from which this
 	 * reader was created using {@code inserter.newReader()}
@@ -549,6 +567,11 @@ public BitmapIndex getBitmapIndex() throws IOException {
 			return delegate().getBitmapIndex();
 		}
 
+		@Override
+		public Optional<CommitGraph> getCommitGraph() throws IOException {
+			return delegate().getCommitGraph();
+		}
+
 		@Override
 		@Nullable
 		public ObjectInserter getCreatedFromInserter() {
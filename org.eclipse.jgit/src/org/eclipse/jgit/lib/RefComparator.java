@@ -46,6 +46,28 @@ public static Collection<Ref> sort(Collection<Ref> refs) {
 		return r;
 	}
 
+	/**
+	 * Sorts the collection of refs, unless it is sorted already.
+	 * <p>
+	 * Ref databases usually return refs in name order, so checking first
+	 * avoids copying and sorting large collections.
+	 *
+	 * @param refs
+	 *            collection to be sorted
+	 * @return {@code refs} if it was sorted already; otherwise a sorted copy
+	 * @since 5.8
+	 */
+	public static Collection<Ref> sortIfNeeded(Collection<Ref> refs) {
+		Ref prev = null;
+		for (Ref ref : refs) {
+			if (prev != null && compareTo(prev, ref) > 0) {
+				return sort(refs);
+			}
+			prev = ref;
+		}
+		return refs;
+	}
+
 	/**
 	 * Compare a reference to a name.
 	 *
@@ -15,11 +15,14 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import org.eclipse.jgit.annotations.NonNull;
 import org.eclipse.jgit.annotations.Nullable;
@@ -438,6 +441,89 @@ public List<Ref> getRefsByPrefix(String... prefixes) throws IOException {
 		return Collections.unmodifiableList(result);
 	}
 
+	/**
+	 * Iterates refs whose names start with a given prefix, in name order.
+	 * <p>
+	 * Unlike {@link #getRefsByPrefix(String)}, implementations may read the
+	 * refs incrementally, so that a caller such as a ref advertisement can
+	 * start processing them before the whole namespace has been read. The
+	 * iteration is not necessarily a consistent snapshot of the database.
+	 * <p>
+	 * The default implementation sorts the result of
+	 * {@link #getRefsByPrefix(String)} if necessary. Implementors of
+	 * {@link RefDatabase} should override this method if a better
+	 * implementation is possible.
+	 *
+	 * @param prefix
+	 *            string that names of refs should start with; may be empty (to
+	 *            return all refs).
+	 * @return iterator over the refs, sorted by name. Implementations reading
+	 *         refs incrementally throw {@link java.io.UncheckedIOException}
+	 *         from the iterator if the refs cannot be read.
+	 * @throws java.io.IOException
+	 *             the reference space cannot be accessed.
+	 * @since 5.8
+	 */
+	@NonNull
+	public Iterator<Ref> iterateRefsByPrefix(String prefix)
+			throws IOException {
+		return RefComparator.sortIfNeeded(getRefsByPrefix(prefix)).iterator();
+	}
+
+	/**
+	 * Iterates refs whose names start with one of the given prefixes, in name
+	 * order.
+	 * <p>
+	 * Unlike {@link #getRefsByPrefix(String...)}, overlapping prefixes do not
+	 * produce duplicates.
+	 *
+	 * @param prefixes
+	 *            strings that names of refs should start with.
+	 * @return iterator over the refs, sorted by name.
+	 * @throws java.io.IOException
+	 *             the reference space cannot be accessed.
+	 * @see #iterateRefsByPrefix(String)
+	 * @since 5.8
+	 */
+	@NonNull
+	public Iterator<Ref> iterateRefsByPrefix(String... prefixes)
+			throws IOException {
+		// Drop prefixes covered by a shorter one. The ranges of the remaining
+		// prefixes do not overlap and sort in the order of the prefixes.
+		String[] sorted = prefixes.clone();
+		Arrays.sort(sorted);
+		List<Iterator<Ref>> parts = new ArrayList<>(sorted.length);
+		String last = null;
+		for (String p : sorted) {
+			if (last == null || !p.startsWith(last)) {
+				parts.add(iterateRefsByPrefix(p));
+				last = p;
+			}
+		}
+		if (parts.size() == 1) {
+			return parts.get(0);
+		}
+		return new Iterator<Ref>() {
+			private int part;
+
+			@Override
+			public boolean hasNext() {
+				while (part < parts.size() && !parts.get(part).hasNext()) {
+					part++;
+				}
+				return part < parts.size();
+			}
+
+			@Override
+			public Ref next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return parts.get(part).next();
+			}
+		};
+	}
+
 
 	/**
 	 * Returns all refs that resolve directly to the given {@link ObjectId}.
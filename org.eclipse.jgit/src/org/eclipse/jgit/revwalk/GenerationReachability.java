@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+
+/**
+ * Reachability test which prunes the walk by generation number.
+ * <p>
+ * A commit can only reach commits of a strictly lower generation number, so
+ * once the walk descends below the lowest generation of the targets the rest
+ * of that history can be skipped. The work done is proportional to the
+ * number of commits between the starters and the targets rather than to the
+ * size of the history, and is not affected by clock skew.
+ * <p>
+ * Generation numbers come from the commit-graph. Commits it does not cover
+ * report {@link org.eclipse.jgit.lib.Constants#COMMIT_GENERATION_UNKNOWN}
+ * and are never pruned, so the result is correct (if not faster) for a
+ * commit-graph that is stale.
+ */
+final class GenerationReachability {
+
+	/**
+	 * Whether the walk has a commit-graph, so generation numbers are worth
+	 * using.
+	 *
+	 * @param walk
+	 *            the walk.
+	 * @return true if generation numbers are available for at least part of
+	 *         the history.
+	 */
+	static boolean isAvailable(RevWalk walk) {
+		return walk.commitGraph().getCommitCnt() > 0;
+	}
+
+	/**
+	 * Find a target not reachable from any of the starters.
+	 * <p>
+	 * The commits may belong to another walk; they are looked up again in
+	 * {@code walk} so its commit-graph supplies their generation numbers. The
+	 * caller must reset the walk before using it for another traversal.
+	 *
+	 * @param walk
+	 *            the walk owning all commits.
+	 * @param targets
+	 *            commits which must be reached.
+	 * @param starters
+	 *            commits the walk starts from.
+	 * @return the first target, in iteration order, which none of the
+	 *         starters reach; null if all targets are reachable.
+	 * @throws MissingObjectException
+	 *             a commit is missing.
+	 * @throws IncorrectObjectTypeException
+	 *             a parent is not a commit.
+	 * @throws IOException
+	 *             a pack file or loose object could not be read.
+	 */
+	static RevCommit findUnreachable(RevWalk walk,
+			Collection<RevCommit> targets, Iterator<RevCommit> starters)
+			throws MissingObjectException, IncorrectObjectTypeException,
+			IOException {
+		int target = walk.allocFlag();
+		int seen = walk.allocFlag();
+		List<RevCommit> touched = new ArrayList<>();
+		try {
+			int remaining = 0;
+			int minGeneration = Integer.MAX_VALUE;
+			List<RevCommit> own = new ArrayList<>(targets.size());
+			for (RevCommit original : targets) {
+				RevCommit t = walk.parseCommit(original);
+				own.add(t);
+				if ((t.flags & target) == 0) {
+					t.flags |= target;
+					touched.add(t);
+					remaining++;
+				}
+				minGeneration = Math.min(minGeneration, t.getGeneration());
+			}
+
+			GenerationRevQueue pending = new GenerationRevQueue(
+					walk.isFirstParent());
+			while (starters.hasNext()) {
+				RevCommit s = walk.parseCommit(starters.next());
+				if ((s.flags & seen) == 0) {
+					s.flags |= seen;
+					touched.add(s);
+					pending.add(s);
+				}
+			}
+
+			RevCommit c;
+			while (remaining > 0 && (c = pending.next()) != null) {
+				if ((c.flags & target) != 0) {
+					c.flags &= ~target;
+					remaining--;
+				}
+				for (RevCommit p : c.getParents()) {
+					if ((p.flags & seen) == 0) {
+						p.flags |= seen;
+						touched.add(p);
+						walk.parseHeaders(p);
+						if (p.getGeneration() >= minGeneration) {
+							pending.add(p);
+						}
+					}
+					if (walk.isFirstParent()) {
+						break;
+					}
+				}
+			}
+
+			Iterator<RevCommit> originals = targets.iterator();
+			for (RevCommit t : own) {
+				RevCommit original = originals.next();
+				if ((t.flags & target) != 0) {
+					return original;
+				}
+			}
+			return null;
+		} finally {
+			for (RevCommit c : touched) {
+				c.flags &= ~(target | seen);
+			}
+			walk.freeFlag(target | seen);
+		}
+	}
+
+	private GenerationReachability() {
+	}
+}
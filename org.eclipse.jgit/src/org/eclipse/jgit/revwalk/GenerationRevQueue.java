@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import java.util.PriorityQueue;
+
+/**
+ * A queue of commits sorted by generation number, highest first.
+ * <p>
+ * Commits with the same generation number are sorted by commit time, most
+ * recent first. Commits not covered by the commit-graph have
+ * {@link org.eclipse.jgit.lib.Constants#COMMIT_GENERATION_UNKNOWN} and so
+ * sort before all commits that are covered, which is consistent with the
+ * commit-graph being closed under reachability.
+ * <p>
+ * Unlike {@link DateRevQueue} the order is immune to clock skew: a commit is
+ * never popped before one of its descendants which is also in the queue.
+ */
+class GenerationRevQueue extends AbstractRevQueue {
+	private final PriorityQueue<RevCommit> queue;
+
+	GenerationRevQueue(boolean firstParent) {
+		super(firstParent);
+		queue = new PriorityQueue<>((a, b) -> {
+			int cmp = Integer.compare(b.getGeneration(), a.getGeneration());
+			if (cmp != 0) {
+				return cmp;
+			}
+			return Integer.compare(b.commitTime, a.commitTime);
+		});
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void add(RevCommit c) {
+		queue.add(c);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public RevCommit next() {
+		return queue.poll();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		queue.clear();
+	}
+
+	@Override
+	boolean everbodyHasFlag(int f) {
+		for (RevCommit c : queue) {
+			if ((c.flags & f) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	boolean anybodyHasFlag(int f) {
+		for (RevCommit c : queue) {
+			if ((c.flags & f) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	int outputType() {
+		return outputType;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		final StringBuilder s = new StringBuilder();
+		for (RevCommit c : queue) {
+			describe(s, c);
+		}
+		return s.toString();
+	}
+}
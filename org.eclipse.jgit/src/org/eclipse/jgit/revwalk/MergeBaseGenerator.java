@@ -10,9 +10,13 @@
 
 package org.eclipse.jgit.revwalk;
 
+import static org.eclipse.jgit.lib.Constants.COMMIT_GENERATION_UNKNOWN;
+
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -33,6 +37,11 @@
  * Several internal flags are reused here for a different purpose, but this
  * should not have any impact as this generator should be run alone, and without
  * any other generators wrapped around it.
+ * <p>
+ * If all starting commits are covered by the commit-graph, pending commits are
+ * ordered by generation number instead of commit time. A commit is then never
+ * popped before one of its pending descendants, so clock skew cannot cause
+ * merge bases to be discovered late or the walk to run past them.
  */
 class MergeBaseGenerator extends Generator {
 	private static final int PARSED = RevWalk.PARSED;
@@ -41,7 +50,7 @@ class MergeBaseGenerator extends Generator {
 	private static final int MERGE_BASE = RevWalk.REWRITE;
 
 	private final RevWalk walker;
-	private final DateRevQueue pending;
+	private AbstractRevQueue pending;
 
 	private int branchMask;
 	private int recarryTest;
@@ -54,15 +63,25 @@ class MergeBaseGenerator extends Generator {
 	MergeBaseGenerator(RevWalk w) {
 		super(w.isFirstParent());
 		walker = w;
-		pending = new DateRevQueue(firstParent);
 	}
 
 	void init(AbstractRevQueue p) throws IOException {
 		try {
+			List<RevCommit> starts = new ArrayList<>();
+			boolean useGeneration = true;
 			for (;;) {
 				final RevCommit c = p.next();
 				if (c == null)
 					break;
+				starts.add(c);
+				useGeneration &= c.getGeneration() != COMMIT_GENERATION_UNKNOWN;
+			}
+			if (useGeneration) {
+				pending = new GenerationRevQueue(firstParent);
+			} else {
+				pending = new DateRevQueue(firstParent);
+			}
+			for (RevCommit c : starts) {
 				add(c);
 			}
 			// Setup the condition used by carryOntoOne to detect a late
@@ -21,6 +21,9 @@
 /**
  * Checks the reachability walking the graph from the starters towards the
  * target.
+ * <p>
+ * If the repository has a commit-graph the walk is pruned by generation
+ * number: it never descends below the lowest generation of the targets.
  */
 class PedestrianReachabilityChecker implements ReachabilityChecker {
 
@@ -48,6 +51,10 @@ public Optional<RevCommit> areAllReachable(Collection<RevCommit> targets,
 					throws MissingObjectException, IncorrectObjectTypeException,
 					IOException {
 		walk.reset();
+		if (GenerationReachability.isAvailable(walk)) {
+			return Optional.ofNullable(GenerationReachability
+					.findUnreachable(walk, targets, starters.iterator()));
+		}
 		if (topoSort) {
 			walk.sort(RevSort.TOPO);
 		}
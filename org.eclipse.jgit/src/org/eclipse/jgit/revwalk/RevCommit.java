@@ -100,7 +100,7 @@ public static RevCommit parse(RevWalk rw, byte[] raw) throws IOException {
 
 	static final RevCommit[] NO_PARENTS = {};
 
-	private RevTree tree;
+	RevTree tree;
 
 	RevCommit[] parents;
 
@@ -203,6 +203,25 @@ public final int getType() {
 		return Constants.OBJ_COMMIT;
 	}
 
+	/**
+	 * Get the generation number of this commit.
+	 * <p>
+	 * The generation number is the length of the longest path from this
+	 * commit to a root commit, plus one, as recorded in the repository's
+	 * commit-graph. If commit A can reach commit B then the generation of A is
+	 * greater than the generation of B, so a walk looking for B can stop at
+	 * commits whose generation is less than B's.
+	 *
+	 * @return the generation number, or
+	 *         {@link org.eclipse.jgit.lib.Constants#COMMIT_GENERATION_UNKNOWN}
+	 *         if the commit is not described by a commit-graph or its
+	 *         headers have not been parsed yet.
+	 * @since 5.8
+	 */
+	public int getGeneration() {
+		return Constants.COMMIT_GENERATION_UNKNOWN;
+	}
+
 	static void carryFlags(RevCommit c, int carry) {
 		FIFORevQueue q = carryFlags1(c, carry, 0);
 		if (q != null)
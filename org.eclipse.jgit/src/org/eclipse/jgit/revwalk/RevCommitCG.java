@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.revwalk;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * RevCommit parsed from
+ * {@link org.eclipse.jgit.internal.storage.commitgraph.CommitGraph}.
+ * <p>
+ * If the walk does not retain bodies the headers (tree, parents and commit
+ * time) are taken from the commit-graph and the commit object itself is never
+ * read. Otherwise the commit is parsed from its canonical form as usual and
+ * only its generation number comes from the commit-graph.
+ */
+class RevCommitCG extends RevCommit {
+
+	private final int graphPosition;
+
+	private int generation = Constants.COMMIT_GENERATION_UNKNOWN;
+
+	/**
+	 * Create a new commit reference.
+	 *
+	 * @param id
+	 *            object name for the commit.
+	 * @param graphPosition
+	 *            the position in the commit-graph of the object.
+	 */
+	RevCommitCG(AnyObjectId id, int graphPosition) {
+		super(id);
+		this.graphPosition = graphPosition;
+	}
+
+	@Override
+	void parseCanonical(RevWalk walk, byte[] raw) throws IOException {
+		super.parseCanonical(walk, raw);
+		CommitGraph.CommitData data = walk.commitGraph()
+				.getCommitData(graphPosition);
+		if (data != null) {
+			generation = data.getGeneration();
+		}
+	}
+
+	@Override
+	void parseHeaders(RevWalk walk) throws MissingObjectException,
+			IncorrectObjectTypeException, IOException {
+		if (walk.isRetainBody()) {
+			super.parseHeaders(walk);
+			return;
+		}
+
+		CommitGraph graph = walk.commitGraph();
+		CommitGraph.CommitData data = graph.getCommitData(graphPosition);
+		if (data == null) {
+			super.parseHeaders(walk);
+			return;
+		}
+
+		if (!walk.shallowCommitsInitialized) {
+			walk.initializeShallowCommits(this);
+		}
+
+		if (parents == null) {
+			int[] graphParents = data.getParents();
+			RevCommit[] pList = new RevCommit[graphParents.length];
+			for (int i = 0; i < graphParents.length; i++) {
+				AnyObjectId p = graph.getObjectId(graphParents[i]);
+				if (p == null) {
+					// Parent position outside of the graph; the graph is
+					// damaged, so read the commit itself.
+					super.parseHeaders(walk);
+					return;
+				}
+				pList[i] = walk.lookupCommit(p);
+			}
+			parents = pList.length == 0 ? RevCommit.NO_PARENTS : pList;
+		}
+		tree = walk.lookupTree(data.getTree());
+		commitTime = (int) data.getCommitTime();
+		generation = data.getGeneration();
+		flags |= PARSED;
+	}
+
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+}
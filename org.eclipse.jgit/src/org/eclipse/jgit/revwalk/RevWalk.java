@@ -16,6 +16,7 @@
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
@@ -28,6 +29,7 @@
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.RevWalkException;
 import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.AsyncObjectLoaderQueue;
 import org.eclipse.jgit.lib.Constants;
@@ -181,6 +183,8 @@ public class RevWalk implements Iterable<RevCommit>, AutoCloseable {
 
 	boolean shallowCommitsInitialized;
 
+	private CommitGraph commitGraph;
+
 	/**
 	 * Create a new revision walker for a given repository.
 	 *
@@ -380,6 +384,9 @@ public void markUninteresting(RevCommit c)
 	 * commits, and then executes a walk until an answer can be obtained.
 	 * Currently allocated RevFlags that have been added to RevCommit instances
 	 * will be retained through the reset.
+	 * <p>
+	 * If the repository has a commit-graph the walk does not descend below
+	 * the generation number of <code>base</code>.
 	 *
 	 * @param base
 	 *            commit the caller thinks is reachable from <code>tip</code>.
@@ -407,6 +414,11 @@ public boolean isMergedInto(RevCommit base, RevCommit tip)
 		try {
 			finishDelayedFreeFlags();
 			reset(~freeFlags & APP_FLAGS);
+			if (GenerationReachability.isAvailable(this)) {
+				return GenerationReachability.findUnreachable(this,
+						Collections.singletonList(base),
+						Collections.singletonList(tip).iterator()) == null;
+			}
 			filter = RevFilter.MERGE_BASE;
 			treeFilter = TreeFilter.ALL;
 			markStart(tip);
@@ -913,9 +925,17 @@ public RevTag parseTag(AnyObjectId id) throws MissingObjectException,
 	public RevObject parseAny(AnyObjectId id)
 			throws MissingObjectException, IOException {
 		RevObject r = objects.get(id);
-		if (r == null)
+		if (r == null) {
+			if (!retainBody && commitGraph().findGraphPosition(id) >= 0) {
+				// The commit-graph proves the type and supplies the
+				// headers; avoid opening the object.
+				RevCommit c = createCommit(id);
+				objects.add(c);
+				parseHeaders(c);
+				return c;
+			}
 			r = parseNew(id, reader.open(id));
-		else
+		} else
 			parseHeaders(r);
 		return r;
 	}
@@ -1480,9 +1500,42 @@ public ObjectWalk toObjectWalkWithSameObjects() {
 	 * @return a new unparsed reference for the object.
 	 */
 	protected RevCommit createCommit(AnyObjectId id) {
+		int graphPos = commitGraph().findGraphPosition(id);
+		if (graphPos >= 0) {
+			return new RevCommitCG(id, graphPos);
+		}
 		return new RevCommit(id);
 	}
 
+	/**
+	 * Get the commit-graph of the repository this walk reads from.
+	 * <p>
+	 * The commit-graph is loaded on first use and kept for the lifetime of
+	 * the walk. Commits are immutable, so a graph that is replaced on disk
+	 * while this walk runs still describes its commits correctly.
+	 *
+	 * @return the commit-graph, or {@link CommitGraph#EMPTY} if there is none.
+	 */
+	CommitGraph commitGraph() {
+		if (commitGraph == null) {
+			commitGraph = loadCommitGraph();
+		}
+		return commitGraph;
+	}
+
+	private CommitGraph loadCommitGraph() {
+		if (reader == null) {
+			return CommitGraph.EMPTY;
+		}
+		try {
+			return reader.getCommitGraph().orElse(CommitGraph.EMPTY);
+		} catch (IOException e) {
+			// The commit-graph is only an accelerator; a graph that cannot
+			// be read just means commits are parsed from the objects.
+			return CommitGraph.EMPTY;
+		}
+	}
+
 	void carryFlagsImpl(RevCommit c) {
 		final int carry = c.flags & carryFlags;
 		if (carry != 0)
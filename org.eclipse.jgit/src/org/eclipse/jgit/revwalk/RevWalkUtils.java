@@ -10,6 +10,9 @@
 
 package org.eclipse.jgit.revwalk;
 
+import static org.eclipse.jgit.lib.Constants.COMMIT_GENERATION_NOT_COMPUTED;
+import static org.eclipse.jgit.lib.Constants.COMMIT_GENERATION_UNKNOWN;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -21,6 +24,7 @@
 import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.util.References;
 
 /**
  * Utility methods for {@link org.eclipse.jgit.revwalk.RevWalk}.
@@ -135,7 +139,9 @@ public static List<Ref> findBranchesReachableFrom(RevCommit commit,
 	 * {@link org.eclipse.jgit.revwalk.RevWalk#reset()} at the beginning.
 	 * <p>
 	 * In order to improve performance this method assumes clock skew among
-	 * committers is never larger than 24 hours.
+	 * committers is never larger than 24 hours. If the repository has a
+	 * commit-graph, generation numbers are used instead and no assumption
+	 * about clock skew is made.
 	 *
 	 * @param commit
 	 *            the commit we are looking at
@@ -173,11 +179,18 @@ public static List<Ref> findBranchesReachableFrom(RevCommit commit,
 				continue;
 			RevCommit headCommit = (RevCommit) maybehead;
 
-			// if commit is in the ref branch, then the tip of ref should be
-			// newer than the commit we are looking for. Allow for a large
-			// clock skew.
-			if (headCommit.getCommitTime() + SKEW < commit.getCommitTime())
+			if (hasGeneration(commit) && hasGeneration(headCommit)) {
+				// A commit only reaches commits of a lower generation.
+				if (headCommit.getGeneration() <= commit.getGeneration()
+						&& !References.isSameObject(headCommit, commit))
+					continue;
+			} else if (headCommit.getCommitTime() + SKEW < commit
+					.getCommitTime()) {
+				// if commit is in the ref branch, then the tip of ref should
+				// be newer than the commit we are looking for. Allow for a
+				// large clock skew.
 				continue;
+			}
 
 			if (revWalk.isMergedInto(commit, headCommit))
 				result.add(ref);
@@ -186,4 +199,11 @@ public static List<Ref> findBranchesReachableFrom(RevCommit commit,
 		return result;
 	}
 
+	// Graphs written without generation numbers store zero for every commit.
+	private static boolean hasGeneration(RevCommit c) {
+		int generation = c.getGeneration();
+		return generation > COMMIT_GENERATION_NOT_COMPUTED
+				&& generation != COMMIT_GENERATION_UNKNOWN;
+	}
+
 }
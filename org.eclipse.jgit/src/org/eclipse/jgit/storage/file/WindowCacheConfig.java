@@ -12,10 +12,12 @@
 
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_CORE_SECTION;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_DELTA_BASE_CACHE_LIMIT;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_GIT_EVICTION_POLICY;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_GIT_LIMIT;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_GIT_MMAP;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_GIT_OPENFILES;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_GIT_WINDOWSIZE;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_INDEX_MMAP;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_STREAM_FILE_TRESHOLD;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_PACKED_GIT_USE_STRONGREFS;
 
@@ -39,10 +41,14 @@ public class WindowCacheConfig {
 
 	private boolean useStrongRefs;
 
+	private EvictionPolicy evictionPolicy;
+
 	private int packedGitWindowSize;
 
 	private boolean packedGitMMAP;
 
+	private boolean packedIndexMMAP;
+
 	private int deltaBaseCacheLimit;
 
 	private int streamFileThreshold;
@@ -54,6 +60,7 @@ public WindowCacheConfig() {
 		packedGitOpenFiles = 128;
 		packedGitLimit = 10 * MB;
 		useStrongRefs = false;
+		evictionPolicy = EvictionPolicy.LRU;
 		packedGitWindowSize = 8 * KB;
 		packedGitMMAP = false;
 		deltaBaseCacheLimit = 10 * MB;
@@ -129,6 +136,33 @@ public void setPackedGitUseStrongRefs(boolean useStrongRefs) {
 		this.useStrongRefs = useStrongRefs;
 	}
 
+	/**
+	 * Get the policy used to choose which windows stay in the cache.
+	 *
+	 * @return the eviction policy. <b>Default is
+	 *         {@link EvictionPolicy#LRU}.</b>
+	 * @since 5.8
+	 */
+	public EvictionPolicy getPackedGitEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	/**
+	 * Set the policy used to choose which windows stay in the cache.
+	 * <p>
+	 * {@link EvictionPolicy#TINY_LFU} always holds windows under strong
+	 * references, regardless of {@link #isPackedGitUseStrongRefs()}, as
+	 * windows cleared by the garbage collector would defeat its frequency
+	 * tracking.
+	 *
+	 * @param policy
+	 *            the eviction policy.
+	 * @since 5.8
+	 */
+	public void setPackedGitEvictionPolicy(EvictionPolicy policy) {
+		evictionPolicy = policy;
+	}
+
 	/**
 	 * Get size in bytes of a single window mapped or read in from the pack
 	 * file.
@@ -173,6 +207,34 @@ public void setPackedGitMMAP(boolean usemmap) {
 		packedGitMMAP = usemmap;
 	}
 
+	/**
+	 * Whether pack index files are memory mapped rather than read onto the
+	 * heap.
+	 *
+	 * @return {@code true} if version 2 pack indexes are memory mapped and
+	 *         searched in place. <b>Default false.</b>
+	 * @since 5.8
+	 */
+	public boolean isPackedIndexMMAP() {
+		return packedIndexMMAP;
+	}
+
+	/**
+	 * Set whether pack index files are memory mapped rather than read onto
+	 * the heap.
+	 * <p>
+	 * Mapping makes opening a pack almost free and keeps large indexes off the
+	 * heap, but on some platforms a mapped file cannot be deleted until the
+	 * mapping is garbage collected.
+	 *
+	 * @param usemmap
+	 *            {@code true} to memory map version 2 pack indexes.
+	 * @since 5.8
+	 */
+	public void setPackedIndexMMAP(boolean usemmap) {
+		packedIndexMMAP = usemmap;
+	}
+
 	/**
 	 * Get maximum number of bytes to cache in delta base cache for inflated,
 	 * recently accessed objects, without delta chains.
@@ -234,6 +296,9 @@ public WindowCacheConfig fromConfig(Config rc) {
 		setPackedGitUseStrongRefs(rc.getBoolean(CONFIG_CORE_SECTION,
 				CONFIG_KEY_PACKED_GIT_USE_STRONGREFS,
 				isPackedGitUseStrongRefs()));
+		setPackedGitEvictionPolicy(rc.getEnum(CONFIG_CORE_SECTION, null,
+				CONFIG_KEY_PACKED_GIT_EVICTION_POLICY,
+				getPackedGitEvictionPolicy()));
 		setPackedGitOpenFiles(rc.getInt(CONFIG_CORE_SECTION, null,
 				CONFIG_KEY_PACKED_GIT_OPENFILES, getPackedGitOpenFiles()));
 		setPackedGitLimit(rc.getLong(CONFIG_CORE_SECTION, null,
@@ -242,6 +307,8 @@ public WindowCacheConfig fromConfig(Config rc) {
 				CONFIG_KEY_PACKED_GIT_WINDOWSIZE, getPackedGitWindowSize()));
 		setPackedGitMMAP(rc.getBoolean(CONFIG_CORE_SECTION, null,
 				CONFIG_KEY_PACKED_GIT_MMAP, isPackedGitMMAP()));
+		setPackedIndexMMAP(rc.getBoolean(CONFIG_CORE_SECTION, null,
+				CONFIG_KEY_PACKED_INDEX_MMAP, isPackedIndexMMAP()));
 		setDeltaBaseCacheLimit(rc.getInt(CONFIG_CORE_SECTION, null,
 				CONFIG_KEY_DELTA_BASE_CACHE_LIMIT, getDeltaBaseCacheLimit()));
 
@@ -267,4 +334,27 @@ public WindowCacheConfig fromConfig(Config rc) {
 	public void install() {
 		WindowCache.reconfigure(this);
 	}
+
+	/**
+	 * Policy deciding which windows the cache keeps.
+	 *
+	 * @since 5.8
+	 */
+	public enum EvictionPolicy {
+		/**
+		 * Evict the least recently used window of a random sample of roughly
+		 * 10% of the cache.
+		 */
+		LRU,
+
+		/**
+		 * Admit a window to the main cache only if it is used more often than
+		 * the window it would replace. Access frequency is estimated by a
+		 * compact sketch that ages over time. Recently loaded windows are held
+		 * in a small LRU window first, so bursts of new data are not rejected
+		 * outright; the main cache is a segmented LRU which protects windows
+		 * that have been used more than once.
+		 */
+		TINY_LFU;
+	}
 }
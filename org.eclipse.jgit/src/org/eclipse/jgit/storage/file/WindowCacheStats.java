@@ -150,6 +150,30 @@ default double getEvictionRatio() {
 				: (double) evictionCount / requestCount;
 	}
 
+	/**
+	 * Number of loaded windows admitted to the main cache by the
+	 * {@link WindowCacheConfig.EvictionPolicy#TINY_LFU} policy.
+	 *
+	 * @return number of admissions; always {@code 0} for other policies
+	 * @since 5.8
+	 */
+	default long getAdmissionCount() {
+		return 0;
+	}
+
+	/**
+	 * Number of loaded windows the
+	 * {@link WindowCacheConfig.EvictionPolicy#TINY_LFU} policy dropped
+	 * because they were used less often than the window they would have
+	 * replaced. Rejections are also counted as evictions.
+	 *
+	 * @return number of rejections; always {@code 0} for other policies
+	 * @since 5.8
+	 */
+	default long getRejectionCount() {
+		return 0;
+	}
+
 	/**
 	 * Number of times the cache returned either a cached or uncached value.
 	 * This is defined as {@code hitCount + missCount}.
@@ -137,6 +137,38 @@ public class PackConfig {
 	 */
 	public static final boolean DEFAULT_BUILD_BITMAPS = true;
 
+	/**
+	 * Default value of the write reverse index option: {@value}
+	 *
+	 * @see #setWriteReverseIndex(boolean)
+	 * @since 5.8
+	 */
+	public static final boolean DEFAULT_WRITE_REVERSE_INDEX = false;
+
+	/**
+	 * Default value of the Roaring bitmaps option: {@value}
+	 *
+	 * @see #setRoaringBitmaps(boolean)
+	 * @since 5.8
+	 */
+	public static final boolean DEFAULT_ROARING_BITMAPS = false;
+
+	/**
+	 * Default number of threads enumerating objects: {@value}
+	 *
+	 * @see #setCountingThreads(int)
+	 * @since 5.8
+	 */
+	public static final int DEFAULT_COUNTING_THREADS = 1;
+
+	/**
+	 * Default number of threads resolving deltas of received packs: {@value}
+	 *
+	 * @see #setIndexThreads(int)
+	 * @since 5.8
+	 */
+	public static final int DEFAULT_INDEX_THREADS = 1;
+
 	/**
 	 * Default count of most recent commits to select for bitmaps. Only applies
 	 * when bitmaps are enabled: {@value}
@@ -235,6 +267,14 @@ public class PackConfig {
 
 	private boolean buildBitmaps = DEFAULT_BUILD_BITMAPS;
 
+	private boolean writeReverseIndex = DEFAULT_WRITE_REVERSE_INDEX;
+
+	private boolean roaringBitmaps = DEFAULT_ROARING_BITMAPS;
+
+	private int countingThreads = DEFAULT_COUNTING_THREADS;
+
+	private int indexThreads = DEFAULT_INDEX_THREADS;
+
 	private int bitmapContiguousCommitCount = DEFAULT_BITMAP_CONTIGUOUS_COMMIT_COUNT;
 
 	private int bitmapRecentCommitCount = DEFAULT_BITMAP_RECENT_COMMIT_COUNT;
@@ -309,6 +349,10 @@ public PackConfig(PackConfig cfg) {
 		this.executor = cfg.executor;
 		this.indexVersion = cfg.indexVersion;
 		this.buildBitmaps = cfg.buildBitmaps;
+		this.writeReverseIndex = cfg.writeReverseIndex;
+		this.roaringBitmaps = cfg.roaringBitmaps;
+		this.countingThreads = cfg.countingThreads;
+		this.indexThreads = cfg.indexThreads;
 		this.bitmapContiguousCommitCount = cfg.bitmapContiguousCommitCount;
 		this.bitmapRecentCommitCount = cfg.bitmapRecentCommitCount;
 		this.bitmapRecentCommitSpan = cfg.bitmapRecentCommitSpan;
@@ -854,6 +898,79 @@ public void setThreads(int threads) {
 		this.threads = threads;
 	}
 
+	/**
+	 * Get the number of threads enumerating objects without bitmaps.
+	 *
+	 * Default setting: {@value #DEFAULT_COUNTING_THREADS}
+	 *
+	 * @return number of threads walking trees during the counting phase. 0
+	 *         will auto-detect the threads to the number of available
+	 *         processors.
+	 * @since 5.8
+	 */
+	public int getCountingThreads() {
+		return countingThreads;
+	}
+
+	/**
+	 * Set the number of threads enumerating objects without bitmaps.
+	 *
+	 * When a pack is built for a client with no objects, such as a clone,
+	 * and no bitmap index can be used, the trees of the commits to pack are
+	 * walked by this many threads, each with its own reader. Objects shared
+	 * by several commits are enumerated only once.
+	 *
+	 * Tasks run on the executor set by {@link #setExecutor(Executor)}, or on
+	 * a pool of daemon threads shared by all writers, at most this many at a
+	 * time.
+	 *
+	 * Default setting: {@value #DEFAULT_COUNTING_THREADS}
+	 *
+	 * @param threads
+	 *            number of threads to use. If 0 the number of available
+	 *            processors for this JVM is used; 1 walks trees on the
+	 *            calling thread.
+	 * @since 5.8
+	 */
+	public void setCountingThreads(int threads) {
+		this.countingThreads = threads;
+	}
+
+	/**
+	 * Get the number of threads resolving the deltas of received packs.
+	 *
+	 * Default setting: {@value #DEFAULT_INDEX_THREADS}
+	 *
+	 * @return number of threads resolving deltas while indexing a received
+	 *         pack. 0 will auto-detect the threads to the number of available
+	 *         processors.
+	 * @since 5.8
+	 */
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
+	/**
+	 * Set the number of threads resolving the deltas of received packs.
+	 *
+	 * When a pack received by a fetch or a push is indexed, delta chains
+	 * rooted at different base objects are resolved by this many threads.
+	 *
+	 * Tasks run on the executor set by {@link #setExecutor(Executor)}, or on
+	 * a pool shared by all parsers.
+	 *
+	 * Default setting: {@value #DEFAULT_INDEX_THREADS}
+	 *
+	 * @param threads
+	 *            number of threads to use. If 0 the number of available
+	 *            processors for this JVM is used; 1 resolves deltas on the
+	 *            calling thread.
+	 * @since 5.8
+	 */
+	public void setIndexThreads(int threads) {
+		this.indexThreads = threads;
+	}
+
 	/**
 	 * Get the preferred thread pool to execute delta search on.
 	 *
@@ -935,6 +1052,68 @@ public void setBuildBitmaps(boolean buildBitmaps) {
 		this.buildBitmaps = buildBitmaps;
 	}
 
+	/**
+	 * True if a reverse index ({@code .rev}) is written next to the index of
+	 * packs created by garbage collection.
+	 *
+	 * Default setting: {@value #DEFAULT_WRITE_REVERSE_INDEX}
+	 *
+	 * @return true if reverse index files are written.
+	 * @since 5.8
+	 */
+	public boolean isWriteReverseIndex() {
+		return writeReverseIndex;
+	}
+
+	/**
+	 * Set whether to write a reverse index ({@code .rev}) for new packs.
+	 *
+	 * Reverse indexes map pack offsets to objects and save readers from
+	 * sorting all offsets of a pack's index when it is first needed.
+	 *
+	 * Default setting: {@value #DEFAULT_WRITE_REVERSE_INDEX}
+	 *
+	 * @param writeReverseIndex
+	 *            boolean indicating whether reverse index files are written.
+	 * @since 5.8
+	 */
+	public void setWriteReverseIndex(boolean writeReverseIndex) {
+		this.writeReverseIndex = writeReverseIndex;
+	}
+
+	/**
+	 * True if bitmaps are combined in the Roaring representation while they
+	 * are built.
+	 *
+	 * Default setting: {@value #DEFAULT_ROARING_BITMAPS}
+	 *
+	 * @return true if bitmap builders use Roaring bitmaps.
+	 * @since 5.8
+	 */
+	public boolean isRoaringBitmaps() {
+		return roaringBitmaps;
+	}
+
+	/**
+	 * Set whether bitmaps are combined in the Roaring representation.
+	 *
+	 * Roaring bitmaps are updated in place and are faster when large bitmaps
+	 * are combined repeatedly, as when counting objects of repositories with
+	 * many refs. Otherwise compressed EWAH bitmaps are used, which are
+	 * replaced on every operation. Bitmaps are stored in the EWAH format
+	 * either way.
+	 *
+	 * Default setting: {@value #DEFAULT_ROARING_BITMAPS}
+	 *
+	 * @param roaringBitmaps
+	 *            boolean indicating whether bitmap builders use Roaring
+	 *            bitmaps.
+	 * @since 5.8
+	 */
+	public void setRoaringBitmaps(boolean roaringBitmaps) {
+		this.roaringBitmaps = roaringBitmaps;
+	}
+
 	/**
 	 * Get the count of most recent commits for which to build bitmaps.
 	 *
@@ -1116,6 +1295,10 @@ public void fromConfig(Config rc) {
 		setBigFileThreshold(rc.getInt(
 				"core", "bigfilethreshold", getBigFileThreshold())); //$NON-NLS-1$ //$NON-NLS-2$
 		setThreads(rc.getInt("pack", "threads", getThreads())); //$NON-NLS-1$ //$NON-NLS-2$
+		setCountingThreads(rc.getInt("pack", "countingthreads", //$NON-NLS-1$ //$NON-NLS-2$
+				getCountingThreads()));
+		setIndexThreads(rc.getInt("pack", "indexthreads", //$NON-NLS-1$ //$NON-NLS-2$
+				getIndexThreads()));
 
 		// These variables aren't standardized
 		//
@@ -1130,6 +1313,10 @@ public void fromConfig(Config rc) {
 				rc.getBoolean("pack", "singlepack", getSinglePack())); //$NON-NLS-1$ //$NON-NLS-2$
 		setBuildBitmaps(
 				rc.getBoolean("pack", "buildbitmaps", isBuildBitmaps())); //$NON-NLS-1$ //$NON-NLS-2$
+		setWriteReverseIndex(rc.getBoolean("pack", "writereverseindex", //$NON-NLS-1$ //$NON-NLS-2$
+				isWriteReverseIndex()));
+		setRoaringBitmaps(rc.getBoolean("pack", "roaringbitmaps", //$NON-NLS-1$ //$NON-NLS-2$
+				isRoaringBitmaps()));
 		setBitmapContiguousCommitCount(
 				rc.getInt("pack", "bitmapcontiguouscommitcount", //$NON-NLS-1$ //$NON-NLS-2$
 						getBitmapContiguousCommitCount()));
@@ -1164,10 +1351,14 @@ public String toString() {
 		b.append(", indexVersion=").append(getIndexVersion()); //$NON-NLS-1$
 		b.append(", bigFileThreshold=").append(getBigFileThreshold()); //$NON-NLS-1$
 		b.append(", threads=").append(getThreads()); //$NON-NLS-1$
+		b.append(", countingThreads=").append(getCountingThreads()); //$NON-NLS-1$
+		b.append(", indexThreads=").append(getIndexThreads()); //$NON-NLS-1$
 		b.append(", reuseDeltas=").append(isReuseDeltas()); //$NON-NLS-1$
 		b.append(", reuseObjects=").append(isReuseObjects()); //$NON-NLS-1$
 		b.append(", deltaCompress=").append(isDeltaCompress()); //$NON-NLS-1$
 		b.append(", buildBitmaps=").append(isBuildBitmaps()); //$NON-NLS-1$
+		b.append(", writeReverseIndex=").append(isWriteReverseIndex()); //$NON-NLS-1$
+		b.append(", roaringBitmaps=").append(isRoaringBitmaps()); //$NON-NLS-1$
 		b.append(", bitmapContiguousCommitCount=") //$NON-NLS-1$
 				.append(getBitmapContiguousCommitCount());
 		b.append(", bitmapRecentCommitCount=") //$NON-NLS-1$
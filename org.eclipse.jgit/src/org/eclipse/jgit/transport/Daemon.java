@@ -19,8 +19,20 @@
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.text.MessageFormat;
 import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
@@ -61,6 +73,14 @@ public class Daemon {
 
 	volatile ReceivePackFactory<DaemonClient> receivePackFactory;
 
+	private volatile Executor executor;
+
+	private final AtomicInteger queuedConnections = new AtomicInteger();
+
+	private final AtomicInteger activeConnections = new AtomicInteger();
+
+	private final AtomicLong rejectedConnections = new AtomicLong();
+
 	/**
 	 * Configure a daemon to listen on any available network port.
 	 */
@@ -262,6 +282,135 @@ public void setReceivePackFactory(ReceivePackFactory<DaemonClient> factory) {
 			receivePackFactory = (ReceivePackFactory<DaemonClient>) ReceivePackFactory.DISABLED;
 	}
 
+	/**
+	 * Get the executor running client connections.
+	 *
+	 * @return the executor, or {@code null} if every connection is handled by
+	 *         a new thread.
+	 * @since 5.8
+	 */
+	@Nullable
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Set the executor running client connections.
+	 * <p>
+	 * By default every accepted connection is handled by a new thread, without
+	 * any limit. A bounded executor, such as one created by
+	 * {@link #newBoundedExecutor(int, int)}, caps the number of threads; a
+	 * connection the executor rejects is closed immediately and counted by
+	 * {@link #getRejectedConnections()}.
+	 * <p>
+	 * The daemon does not shut the executor down when it is stopped.
+	 *
+	 * @param executor
+	 *            the executor; {@code null} to use a new thread per
+	 *            connection.
+	 * @since 5.8
+	 */
+	public void setExecutor(@Nullable Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Create an executor serving at most {@code threads} connections at once.
+	 * <p>
+	 * Up to {@code queueSize} further connections wait for a thread; any
+	 * connection beyond that is rejected.
+	 *
+	 * @param threads
+	 *            maximum number of connections served concurrently.
+	 * @param queueSize
+	 *            maximum number of connections waiting for a thread.
+	 * @return the executor. The caller must shut it down.
+	 * @since 5.8
+	 */
+	public static ExecutorService newBoundedExecutor(int threads,
+			int queueSize) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException(MessageFormat
+					.format(JGitText.get().daemonInvalidThreads,
+							Integer.valueOf(threads)));
+		}
+		AtomicInteger n = new AtomicInteger();
+		ThreadFactory factory = r -> {
+			Thread t = new Thread(r,
+					"Git-Daemon-Client-" + n.incrementAndGet()); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		};
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60,
+				TimeUnit.SECONDS,
+				queueSize > 0 ? new ArrayBlockingQueue<>(queueSize)
+						: new SynchronousQueue<>(),
+				factory, new ThreadPoolExecutor.AbortPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Create an executor starting a virtual thread per connection.
+	 * <p>
+	 * Virtual threads are cheap enough to serve every connection without a
+	 * pool; combine this with
+	 * {@link DaemonService#setMaxConnections(int)} to bound the work done.
+	 *
+	 * @return the executor. The caller must shut it down.
+	 * @throws UnsupportedOperationException
+	 *             the Java runtime does not support virtual threads.
+	 * @since 5.8
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			// Looked up reflectively as JGit still runs on Java 8.
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor") //$NON-NLS-1$
+					.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException(
+					JGitText.get().virtualThreadsNotSupported, e);
+		}
+	}
+
+	/**
+	 * Get the number of accepted connections waiting for a thread.
+	 *
+	 * @return the number of accepted connections waiting for a thread.
+	 * @since 5.8
+	 */
+	public int getQueuedConnections() {
+		return queuedConnections.get();
+	}
+
+	/**
+	 * Get the number of connections being served.
+	 *
+	 * @return the number of connections being served.
+	 * @since 5.8
+	 */
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	/**
+	 * Get the number of connections refused since the daemon was created.
+	 * <p>
+	 * Counts connections rejected by the executor and requests exceeding a
+	 * service's {@link DaemonService#setMaxConnections(int) limit}.
+	 *
+	 * @return the number of refused connections.
+	 * @since 5.8
+	 */
+	public long getRejectedConnections() {
+		return rejectedConnections.get();
+	}
+
+	void connectionRejected() {
+		rejectedConnections.incrementAndGet();
+	}
+
 	private class Acceptor extends Thread {
 
 		private final ServerSocket listenSocket;
@@ -384,31 +533,61 @@ void startClient(Socket s) {
 		if (peer instanceof InetSocketAddress)
 			dc.setRemoteAddress(((InetSocketAddress) peer).getAddress());
 
-		new Thread(processors, "Git-Daemon-Client " + peer.toString()) { //$NON-NLS-1$
-			@Override
-			public void run() {
-				try {
-					dc.execute(s);
-				} catch (ServiceNotEnabledException e) {
-					// Ignored. Client cannot use this repository.
-				} catch (ServiceNotAuthorizedException e) {
-					// Ignored. Client cannot use this repository.
-				} catch (IOException e) {
-					// Ignore unexpected IO exceptions from clients
-				} finally {
-					try {
-						s.getInputStream().close();
-					} catch (IOException e) {
-						// Ignore close exceptions
-					}
-					try {
-						s.getOutputStream().close();
-					} catch (IOException e) {
-						// Ignore close exceptions
-					}
-				}
+		Runnable client = () -> {
+			queuedConnections.decrementAndGet();
+			activeConnections.incrementAndGet();
+			try {
+				serve(dc, s);
+			} finally {
+				activeConnections.decrementAndGet();
+			}
+		};
+
+		queuedConnections.incrementAndGet();
+		Executor e = executor;
+		if (e == null) {
+			new Thread(processors, client,
+					"Git-Daemon-Client " + peer.toString()).start(); //$NON-NLS-1$
+			return;
+		}
+		try {
+			e.execute(client);
+		} catch (RejectedExecutionException err) {
+			queuedConnections.decrementAndGet();
+			connectionRejected();
+			close(s);
+		}
+	}
+
+	private static void serve(DaemonClient dc, Socket s) {
+		try {
+			dc.execute(s);
+		} catch (ServiceNotEnabledException e) {
+			// Ignored. Client cannot use this repository.
+		} catch (ServiceNotAuthorizedException e) {
+			// Ignored. Client cannot use this repository.
+		} catch (IOException e) {
+			// Ignore unexpected IO exceptions from clients
+		} finally {
+			try {
+				s.getInputStream().close();
+			} catch (IOException e) {
+				// Ignore close exceptions
 			}
-		}.start();
+			try {
+				s.getOutputStream().close();
+			} catch (IOException e) {
+				// Ignore close exceptions
+			}
+		}
+	}
+
+	private static void close(Socket s) {
+		try {
+			s.close();
+		} catch (IOException e) {
+			// Ignore close exceptions
+		}
 	}
 
 	synchronized DaemonService matchService(String cmd) {
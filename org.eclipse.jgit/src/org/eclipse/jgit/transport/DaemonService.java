@@ -12,9 +12,12 @@
 package org.eclipse.jgit.transport;
 
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Config.SectionParser;
 import org.eclipse.jgit.lib.Repository;
@@ -34,6 +37,10 @@ public abstract class DaemonService {
 
 	private boolean overridable;
 
+	private volatile int maxConnections;
+
+	private final AtomicInteger activeConnections = new AtomicInteger();
+
 	DaemonService(String cmdName, String cfgName) {
 		command = cmdName.startsWith("git-") ? cmdName : "git-" + cmdName; //$NON-NLS-1$ //$NON-NLS-2$
 		configKey = cfg -> new ServiceConfig(DaemonService.this, cfg, cfgName);
@@ -93,6 +100,42 @@ public void setOverridable(boolean on) {
 		overridable = on;
 	}
 
+	/**
+	 * Get the maximum number of concurrent requests of this service.
+	 *
+	 * @return the maximum number of concurrent requests; 0 if unlimited.
+	 * @since 5.8
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Limit the number of concurrent requests of this service.
+	 * <p>
+	 * Requests beyond the limit receive an error and are counted by
+	 * {@link Daemon#getRejectedConnections()}. This allows, for example, to
+	 * keep expensive receive-pack requests from using all threads of the
+	 * daemon's executor.
+	 *
+	 * @param max
+	 *            maximum number of concurrent requests; 0 for no limit.
+	 * @since 5.8
+	 */
+	public void setMaxConnections(int max) {
+		maxConnections = max;
+	}
+
+	/**
+	 * Get the number of requests of this service being served.
+	 *
+	 * @return the number of requests of this service being served.
+	 * @since 5.8
+	 */
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
 	/**
 	 * Get name of the command requested by clients.
 	 *
@@ -120,6 +163,16 @@ void execute(DaemonClient client, String commandLine,
 			throws IOException, ServiceNotEnabledException,
 			ServiceNotAuthorizedException {
 		final String name = commandLine.substring(command.length() + 1);
+		int max = maxConnections;
+		if (activeConnections.incrementAndGet() > max && max > 0) {
+			activeConnections.decrementAndGet();
+			client.getDaemon().connectionRejected();
+			PacketLineOut pktOut = new PacketLineOut(client.getOutputStream());
+			pktOut.writeString("ERR " + MessageFormat.format( //$NON-NLS-1$
+					JGitText.get().daemonServiceBusy, command) + "\n"); //$NON-NLS-1$
+			pktOut.flush();
+			return;
+		}
 		try (Repository db = client.getDaemon().openRepository(client, name)) {
 			if (isEnabledFor(db)) {
 				execute(client, db, extraParameters);
@@ -129,6 +182,8 @@ void execute(DaemonClient client, String commandLine,
 			// advertisement, so use that style of error.
 			PacketLineOut pktOut = new PacketLineOut(client.getOutputStream());
 			pktOut.writeString("ERR " + e.getMessage() + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			activeConnections.decrementAndGet();
 		}
 	}
 
@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.transport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.util.FileUtils;
+
+/**
+ * A {@link PackResponseCache} storing responses as files in a local directory.
+ * <p>
+ * The total size of the completed responses is kept below a limit by
+ * discarding the least recently used ones. A response larger than the limit
+ * is still shared with the requests that joined it while it was written, but
+ * discarded as soon as it completes. Files of discarded responses that are
+ * still being read are deleted when the last reader closes them.
+ * <p>
+ * Requests joining a response still being written read it at the pace it is
+ * written, which is the pace of the client of the request generating it. A
+ * read waiting longer than the {@link #setReadTimeout(int) read timeout} for
+ * more data fails; if nothing was received yet, {@link UploadPack} then
+ * generates the pack itself.
+ * <p>
+ * The directory is owned by the cache; responses left behind by a previous
+ * instance are deleted when the cache is created.
+ *
+ * @since 5.8
+ */
+public class LocalPackResponseCache implements PackResponseCache {
+	private static final String PREFIX = "response-"; //$NON-NLS-1$
+
+	private static final String SUFFIX = ".pack"; //$NON-NLS-1$
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	/** Entries in access order, guarded by {@code this}. */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16,
+			0.75f, true);
+
+	/** Bytes of the completed entries in {@link #entries}. */
+	private long totalBytes;
+
+	private long fileCounter;
+
+	private volatile int readTimeout = 60;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param directory
+	 *            directory to store responses in. It is created if it does
+	 *            not exist.
+	 * @param maxBytes
+	 *            maximum number of bytes of completed responses to retain.
+	 * @throws IOException
+	 *             the directory cannot be created or cleaned.
+	 */
+	public LocalPackResponseCache(File directory, long maxBytes)
+			throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		FileUtils.mkdirs(directory, true);
+		File[] stale = directory.listFiles((dir, name) -> name
+				.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		if (stale != null) {
+			for (File f : stale) {
+				FileUtils.delete(f, FileUtils.SKIP_MISSING);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of bytes of the completed responses.
+	 *
+	 * @return bytes of the retained responses.
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Set the time to wait for more data of a response being written.
+	 *
+	 * @param seconds
+	 *            number of seconds a read of a response waits for the request
+	 *            writing it. 0 waits forever. Defaults to 60.
+	 */
+	public void setReadTimeout(int seconds) {
+		readTimeout = seconds;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public InputStream open(Key key) throws IOException {
+		Entry e;
+		synchronized (this) {
+			e = entries.get(key);
+			if (e == null) {
+				return null;
+			}
+			e.openReader();
+		}
+		try {
+			return new EntryInputStream(e,
+					TimeUnit.SECONDS.toMillis(readTimeout));
+		} catch (IOException err) {
+			e.closeReader();
+			throw err;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public PendingResponse create(Key key) throws IOException {
+		File file;
+		Entry e;
+		synchronized (this) {
+			if (entries.containsKey(key)) {
+				return null;
+			}
+			file = new File(directory,
+					PREFIX + key.getName() + '-' + (fileCounter++) + SUFFIX);
+			e = new Entry(key, file);
+			entries.put(key, e);
+		}
+		try {
+			return new Pending(e, new FileOutputStream(file));
+		} catch (IOException err) {
+			synchronized (this) {
+				entries.remove(key);
+			}
+			e.finish(Entry.FAILED);
+			throw err;
+		}
+	}
+
+	private synchronized void completed(Entry e) {
+		if (entries.get(e.key) != e) {
+			e.discard();
+			return;
+		}
+		if (e.length > maxBytes) {
+			entries.remove(e.key);
+			e.discard();
+			return;
+		}
+		totalBytes += e.length;
+		Iterator<Entry> i = entries.values().iterator();
+		while (totalBytes > maxBytes && i.hasNext()) {
+			Entry old = i.next();
+			if (old != e && old.isComplete()) {
+				i.remove();
+				totalBytes -= old.length;
+				old.discard();
+			}
+		}
+	}
+
+	private synchronized void aborted(Entry e) {
+		if (entries.get(e.key) == e) {
+			entries.remove(e.key);
+		}
+	}
+
+	private static final class Entry {
+		static final int WRITING = 0;
+
+		static final int COMPLETE = 1;
+
+		static final int FAILED = 2;
+
+		final Key key;
+
+		final File file;
+
+		/** Bytes written so far, guarded by {@code this}. */
+		long length;
+
+		private int state = WRITING;
+
+		private int readers;
+
+		private boolean discarded;
+
+		Entry(Key key, File file) {
+			this.key = key;
+			this.file = file;
+		}
+
+		synchronized boolean isComplete() {
+			return state == COMPLETE;
+		}
+
+		synchronized void openReader() {
+			readers++;
+		}
+
+		synchronized void closeReader() {
+			if (--readers == 0 && discarded) {
+				delete();
+			}
+		}
+
+		synchronized void written(int n) {
+			length += n;
+			notifyAll();
+		}
+
+		synchronized void finish(int newState) {
+			state = newState;
+			notifyAll();
+			if (newState == FAILED) {
+				discard();
+			}
+		}
+
+		// Wait until data past pos is available; returns the bytes that can
+		// be read, or -1 at the end of a complete response.
+		synchronized long available(long pos, long timeoutMillis)
+				throws IOException {
+			long deadline = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			try {
+				while (pos >= length && state == WRITING) {
+					if (timeoutMillis <= 0) {
+						wait();
+						continue;
+					}
+					long wait = deadline - System.nanoTime();
+					if (wait <= 0) {
+						throw new InterruptedIOException(MessageFormat.format(
+								JGitText.get().packResponseStalled,
+								key.getName(), Long.valueOf(timeoutMillis)));
+					}
+					wait(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+				}
+			} catch (InterruptedException err) {
+				throw new InterruptedIOException();
+			}
+			if (state == FAILED) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().packResponseAborted, key.getName()));
+			}
+			return pos < length ? length - pos : -1;
+		}
+
+		synchronized void discard() {
+			discarded = true;
+			if (readers == 0) {
+				delete();
+			}
+		}
+
+		private void delete() {
+			try {
+				FileUtils.delete(file, FileUtils.SKIP_MISSING);
+			} catch (IOException e) {
+				// Left for the next instance to clean up.
+			}
+		}
+	}
+
+	private final class Pending implements PendingResponse {
+		private final Entry entry;
+
+		private final FileOutputStream fos;
+
+		private final OutputStream out;
+
+		Pending(Entry entry, FileOutputStream fos) {
+			this.entry = entry;
+			this.fos = fos;
+			this.out = new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					fos.write(b);
+					entry.written(1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					fos.write(b, off, len);
+					entry.written(len);
+				}
+			};
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public void commit() throws IOException {
+			try {
+				fos.close();
+			} catch (IOException e) {
+				abort();
+				throw e;
+			}
+			entry.finish(Entry.COMPLETE);
+			completed(entry);
+		}
+
+		@Override
+		public void abort() {
+			try {
+				fos.close();
+			} catch (IOException e) {
+				// The entry is discarded anyway.
+			}
+			aborted(entry);
+			entry.finish(Entry.FAILED);
+		}
+	}
+
+	private static final class EntryInputStream extends InputStream {
+		private final Entry entry;
+
+		private final FileChannel channel;
+
+		private final long timeoutMillis;
+
+		private long pos;
+
+		private boolean closed;
+
+		EntryInputStream(Entry entry, long timeoutMillis) throws IOException {
+			this.entry = entry;
+			this.timeoutMillis = timeoutMillis;
+			this.channel = FileChannel.open(entry.file.toPath(),
+					StandardOpenOption.READ);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			long avail = entry.available(pos, timeoutMillis);
+			if (avail < 0) {
+				return -1;
+			}
+			int n = channel.read(
+					ByteBuffer.wrap(b, off, (int) Math.min(len, avail)), pos);
+			if (n > 0) {
+				pos += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				try {
+					channel.close();
+				} finally {
+					entry.closeReader();
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append("LocalPackResponseCache[directory=").append(directory); //$NON-NLS-1$
+		synchronized (this) {
+			b.append(", entries=").append(entries.size()); //$NON-NLS-1$
+			b.append(", totalBytes=").append(totalBytes); //$NON-NLS-1$
+		}
+		b.append(']');
+		return b.toString();
+	}
+}
@@ -17,14 +17,31 @@
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import org.eclipse.jgit.annotations.Nullable;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.TooLargeObjectInPackException;
@@ -47,6 +64,7 @@
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.ObjectStream;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.ThreadSafeProgressMonitor;
 import org.eclipse.jgit.util.BlockList;
 import org.eclipse.jgit.util.IO;
 import org.eclipse.jgit.util.LongMap;
@@ -69,6 +87,12 @@ public abstract class PackParser {
 	/** Size of the internal stream buffer. */
 	private static final int BUFFER_SIZE = 8192;
 
+	/** Fewer deltas than this are always resolved on the calling thread. */
+	private static final int MIN_DELTAS_PER_THREAD = 64;
+
+	/** Default size of the delta base cache of each resolving thread. */
+	private static final long DEFAULT_DELTA_BASE_CACHE_LIMIT = 10 << 20;
+
 	/** Location data is being obtained from. */
 	public enum Source {
 		/** Data is read from the incoming stream. */
@@ -156,6 +180,15 @@ public enum Source {
 	/** Git object size limit */
 	private long maxObjectSizeLimit;
 
+	/** Number of threads resolving deltas; 0 for one per processor. */
+	private int threads = 1;
+
+	/** Runs the delta resolving workers; null for the shared pool. */
+	private Executor executor;
+
+	/** Bytes of resolved bases each delta resolving worker may keep. */
+	private long deltaBaseCacheLimit = DEFAULT_DELTA_BASE_CACHE_LIMIT;
+
 	private final ReceivedPackStatistics.Builder stats =
 			new ReceivedPackStatistics.Builder();
 
@@ -403,6 +436,74 @@ public void setMaxObjectSizeLimit(long limit) {
 		maxObjectSizeLimit = limit;
 	}
 
+	/**
+	 * Get the number of threads used to resolve deltas.
+	 *
+	 * @return number of threads used to resolve deltas. 0 means one thread
+	 *         per available processor.
+	 * @since 5.8
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads used to resolve deltas.
+	 * <p>
+	 * Delta chains rooted at different base objects are independent of each
+	 * other and can be resolved concurrently, each worker thread using its
+	 * own {@link java.util.zip.Inflater}, delta base cache and
+	 * {@link org.eclipse.jgit.lib.ObjectReader}. Deltas are only resolved
+	 * concurrently if the pack contains enough deltas to make it worthwhile;
+	 * otherwise they are resolved on the thread calling
+	 * {@link #parse(ProgressMonitor)}. They are also resolved on that thread
+	 * if the subclass does not support positional reads, see
+	 * {@link #isPositionalReadSupported()}.
+	 * <p>
+	 * The object checker and {@link #verifySafeObject(AnyObjectId, int, byte[])}
+	 * are not thread-safe, so the workers check the objects they resolved one
+	 * at a time. With an object checker set, checking may limit the speedup.
+	 *
+	 * @param threads
+	 *            number of threads to use. 1 (the default) resolves deltas on
+	 *            the calling thread, 0 uses one thread per available
+	 *            processor.
+	 * @since 5.8
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the executor running the threads resolving deltas.
+	 *
+	 * @param executor
+	 *            executor to run the workers resolving deltas on; null to use
+	 *            a pool shared by all parsers, whose idle threads exit after
+	 *            a minute.
+	 * @since 5.8
+	 */
+	public void setExecutor(@Nullable Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the size of the delta base cache of each thread resolving deltas.
+	 * <p>
+	 * A thread keeps the objects on the path from the base of the chain it
+	 * resolves, to apply the deltas of their remaining children. Beyond this
+	 * limit the oldest of them are dropped, and read back from the pack when
+	 * they are needed again.
+	 *
+	 * @param limit
+	 *            maximum number of bytes of resolved objects each thread
+	 *            keeps. Defaults to 10 MiB.
+	 * @since 5.8
+	 */
+	public void setDeltaBaseCacheLimit(long limit) {
+		this.deltaBaseCacheLimit = limit;
+	}
+
 	/**
 	 * Get the number of objects in the stream.
 	 * <p>
@@ -598,6 +699,16 @@ private void processDeltas(ProgressMonitor resolving) throws IOException {
 
 	private void resolveDeltas(ProgressMonitor progress)
 			throws IOException {
+		int threadCnt = threads;
+		if (threadCnt == 0) {
+			threadCnt = Runtime.getRuntime().availableProcessors();
+		}
+		threadCnt = Math.min(threadCnt, deltaCount / MIN_DELTAS_PER_THREAD);
+		if (threadCnt > 1 && isPositionalReadSupported()) {
+			resolveDeltasInParallel(progress, threadCnt);
+			return;
+		}
+
 		final int last = entryCount;
 		for (int i = 0; i < last; i++) {
 			resolveDeltas(entries[i], progress);
@@ -695,6 +806,106 @@ private void resolveDeltas(DeltaVisit visit, final int type,
 		} while (visit != null);
 	}
 
+	private void resolveDeltasInParallel(ProgressMonitor progress,
+			int threadCnt) throws IOException {
+		// Detach the children of every base up front, so the workers only
+		// share the maps to look up deltas on objects they resolved.
+		List<DeltaVisit> roots = new ArrayList<>();
+		for (int i = 0; i < entryCount; i++) {
+			PackedObjectInfo oe = entries[i];
+			UnresolvedDelta children = firstChildOf(oe);
+			if (children != null) {
+				DeltaVisit visit = new DeltaVisit();
+				visit.id = oe;
+				visit.nextChild = children;
+				roots.add(visit);
+			}
+		}
+		if (roots.isEmpty()) {
+			return;
+		}
+
+		int workerCnt = Math.min(threadCnt, roots.size());
+		ThreadSafeProgressMonitor pm = new ThreadSafeProgressMonitor(progress);
+		DeltaResolverState state = new DeltaResolverState(roots);
+		List<DeltaResolver> workers = new ArrayList<>(workerCnt);
+		List<FutureTask<Object>> futures = new ArrayList<>(workerCnt);
+		List<Throwable> errors = new ArrayList<>(workerCnt);
+		Executor pool = executor != null ? executor : SharedPool.EXECUTOR;
+		for (int i = 0; i < workerCnt; i++) {
+			DeltaResolver w = new DeltaResolver(state, pm,
+					new DeltaBaseCache(deltaBaseCacheLimit));
+			workers.add(w);
+			futures.add(new FutureTask<>(w));
+		}
+		pm.startWorkers(workerCnt);
+		try {
+			for (FutureTask<Object> f : futures) {
+				pool.execute(f);
+			}
+			pm.waitForCompletion();
+		} catch (InterruptedException ie) {
+			abandon(state, pm, workers, futures);
+			throw new IOException(
+					JGitText.get().downloadCancelledDuringIndexing, ie);
+		} catch (RejectedExecutionException e) {
+			abandon(state, pm, workers, futures);
+			throw e;
+		}
+		try {
+			// All workers ended, their results are about to be set.
+			for (FutureTask<Object> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException failed) {
+					errors.add(failed.getCause());
+				}
+			}
+		} catch (InterruptedException ie) {
+			throw new IOException(
+					JGitText.get().downloadCancelledDuringIndexing, ie);
+		}
+
+		// Report a failure as though the deltas were resolved on this thread.
+		if (!errors.isEmpty()) {
+			Throwable err = errors.get(0);
+			if (err instanceof Error)
+				throw (Error) err;
+			if (err instanceof RuntimeException)
+				throw (RuntimeException) err;
+			if (err instanceof IOException)
+				throw (IOException) err;
+			throw new IOException(err.getMessage(), err);
+		}
+	}
+
+	// Stop the workers and wait for the ones which started, so that none of
+	// them reads the pack or reports progress after the parser gave up.
+	private static void abandon(DeltaResolverState state,
+			ThreadSafeProgressMonitor pm, List<DeltaResolver> workers,
+			List<FutureTask<Object>> futures) {
+		state.abort();
+		for (int i = 0; i < workers.size(); i++) {
+			if (workers.get(i).claim()) {
+				// Never started, and never will.
+				futures.get(i).cancel(false);
+				pm.endWorker();
+			}
+		}
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				pm.waitForCompletion();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	private final void checkIfTooLarge(int typeCode, long size)
 			throws IOException {
 		if (0 < maxObjectSizeLimit && maxObjectSizeLimit < size) {
@@ -1157,8 +1368,13 @@ private void checkObjectCollision(PackedObjectInfo obj)
 
 	private void checkObjectCollision(AnyObjectId obj, int type, byte[] data)
 			throws IOException {
+		checkObjectCollision(readCurs, obj, type, data);
+	}
+
+	private static void checkObjectCollision(ObjectReader reader,
+			AnyObjectId obj, int type, byte[] data) throws IOException {
 		try {
-			final ObjectLoader ldr = readCurs.open(obj, type);
+			final ObjectLoader ldr = reader.open(obj, type);
 			final byte[] existingData = ldr.getCachedBytes(data.length);
 			if (!Arrays.equals(data, existingData)) {
 				throw new IOException(MessageFormat.format(
@@ -1496,6 +1712,62 @@ protected abstract ObjectTypeAndSize seekDatabase(UnresolvedDelta delta,
 	protected abstract int readDatabase(byte[] dst, int pos, int cnt)
 			throws IOException;
 
+	/**
+	 * Whether the subclass implements
+	 * {@link #readDatabase(long, byte[], int, int)}.
+	 * <p>
+	 * Deltas are only resolved on several threads if this returns true;
+	 * otherwise {@link #setThreads(int)} has no effect.
+	 *
+	 * @return whether positional reads of the stored pack are supported. The
+	 *         default implementation returns false.
+	 * @since 5.8
+	 */
+	protected boolean isPositionalReadSupported() {
+		return false;
+	}
+
+	/**
+	 * Read stored pack data at the given position.
+	 * <p>
+	 * Unlike {@link #readDatabase(byte[], int, int)} this method does not
+	 * depend on, nor change, the database's current position. It is invoked
+	 * concurrently from several threads while deltas are being resolved, see
+	 * {@link #setThreads(int)}, and only if
+	 * {@link #isPositionalReadSupported()} returns true.
+	 * <p>
+	 * Resolving deltas in parallel bypasses the {@code seekDatabase} and
+	 * {@link #checkCRC(int)} hooks: worker threads read objects back through
+	 * this method only, and verify the data against the CRC-32 recorded for
+	 * each object themselves. The values set through
+	 * {@link PackedObjectInfo#setCRC(int)} and
+	 * {@link UnresolvedDelta#setCRC(int)} must therefore be the CRC-32
+	 * checksum of the object's header and deflated data as stored in the
+	 * pack.
+	 *
+	 * @param position
+	 *            offset within the stored pack to start reading from.
+	 * @param dst
+	 *            the buffer to copy read data into.
+	 * @param pos
+	 *            position within {@code dst} to start copying data into.
+	 * @param cnt
+	 *            ideal target number of bytes to read. Actual read length may
+	 *            be shorter.
+	 * @return number of bytes stored, or -1 if {@code position} is at the end
+	 *         of the stored data.
+	 * @throws java.io.IOException
+	 *             the database cannot be accessed.
+	 * @throws java.lang.UnsupportedOperationException
+	 *             the subclass does not support positional reads; the default
+	 *             implementation always throws.
+	 * @since 5.8
+	 */
+	protected int readDatabase(long position, byte[] dst, int pos, int cnt)
+			throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
 	/**
 	 * Check the current CRC matches the expected value.
 	 * <p>
@@ -1717,6 +1989,410 @@ private void addObjectAndTrack(PackedObjectInfo oe) {
 			newObjectIds.add(oe);
 	}
 
+	/** Pool running the {@link DeltaResolver}s of parsers without executor. */
+	private static final class SharedPool {
+		static final ExecutorService EXECUTOR = Executors
+				.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger cnt = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "JGit-PackParser-" //$NON-NLS-1$
+								+ cnt.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/** Work shared by the {@link DeltaResolver} threads. */
+	private static class DeltaResolverState {
+		final List<DeltaVisit> roots;
+
+		final AtomicInteger next = new AtomicInteger();
+
+		volatile boolean aborted;
+
+		DeltaResolverState(List<DeltaVisit> roots) {
+			this.roots = roots;
+		}
+
+		DeltaVisit nextRoot() {
+			if (aborted) {
+				return null;
+			}
+			int i = next.getAndIncrement();
+			return i < roots.size() ? roots.get(i) : null;
+		}
+
+		void abort() {
+			aborted = true;
+		}
+	}
+
+	/**
+	 * Resolves the delta chains of a share of the base objects.
+	 * <p>
+	 * Each worker reads the stored pack through
+	 * {@link #readDatabase(long, byte[], int, int)} with its own buffer,
+	 * inflater, delta base cache, CRC and hasher. Updates to the parser's
+	 * object table and delta maps, and calls to subclass hooks which may not be thread-safe, are
+	 * made while holding the lock of the shared state. This includes
+	 * {@link #verifySafeObject(AnyObjectId, int, byte[])}: objects are checked
+	 * one at a time, while inflating, applying deltas and hashing run
+	 * concurrently.
+	 */
+	private class DeltaResolver implements Callable<Object> {
+		private final DeltaResolverState state;
+
+		private final ThreadSafeProgressMonitor pm;
+
+		private final DeltaBaseCache baseCache;
+
+		/** Set by the first of this worker starting and the parser abandoning it. */
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private final byte[] dbBuf = new byte[BUFFER_SIZE];
+
+		private final byte[] skipBuf = new byte[64];
+
+		private final CRC32 crc = new CRC32();
+
+		private final SHA1 hasher = SHA1.newInstance();
+
+		private final MutableObjectId idBuf = new MutableObjectId();
+
+		private final ObjectTypeAndSize info = new ObjectTypeAndSize();
+
+		private Inflater inf;
+
+		private ObjectReader reader;
+
+		/** Position of {@code dbBuf[0]} within the stored pack. */
+		private long dbBase;
+
+		private int dbPtr;
+
+		private int dbCnt;
+
+		DeltaResolver(DeltaResolverState state, ThreadSafeProgressMonitor pm,
+				DeltaBaseCache baseCache) {
+			this.state = state;
+			this.pm = pm;
+			this.baseCache = baseCache;
+		}
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		@Override
+		public Object call() throws IOException {
+			if (!claim()) {
+				return null;
+			}
+			inf = InflaterCache.get();
+			try {
+				for (DeltaVisit root; (root = state.nextRoot()) != null;) {
+					if (pm.isCancelled()) {
+						throw new IOException(
+								JGitText.get().downloadCancelledDuringIndexing);
+					}
+					resolve(root);
+				}
+			} catch (IOException | RuntimeException | Error e) {
+				state.abort();
+				throw e;
+			} finally {
+				InflaterCache.release(inf);
+				inf = null;
+				if (reader != null) {
+					reader.close();
+				}
+				pm.endWorker();
+			}
+			return null;
+		}
+
+		private void resolve(DeltaVisit root) throws IOException {
+			PackedObjectInfo oe = (PackedObjectInfo) root.id;
+			seek(oe.getOffset());
+			int type = readObjectHeader();
+			switch (type) {
+			case Constants.OBJ_COMMIT:
+			case Constants.OBJ_TREE:
+			case Constants.OBJ_BLOB:
+			case Constants.OBJ_TAG:
+				baseCache.store(root, inflate(info.size));
+				break;
+			default:
+				throw new IOException(MessageFormat.format(
+						JGitText.get().unknownObjectType,
+						Integer.valueOf(type)));
+			}
+			if (oe.getCRC() != (int) crc.getValue()) {
+				throw new IOException(MessageFormat.format(
+						JGitText.get().corruptionDetectedReReadingAt,
+						Long.valueOf(oe.getOffset())));
+			}
+
+			synchronized (state) {
+				stats.addDeltaObject(type);
+			}
+			for (DeltaVisit visit = next(root); visit != null;) {
+				pm.update(1);
+				byte[] base = visit.parent.data;
+				if (base == null) {
+					base = reload(visit.parent);
+				}
+				seek(visit.delta.position);
+				int deltaType = readObjectHeader();
+				switch (deltaType) {
+				case Constants.OBJ_OFS_DELTA:
+				case Constants.OBJ_REF_DELTA:
+					break;
+				default:
+					throw new IOException(MessageFormat.format(
+							JGitText.get().unknownObjectType,
+							Integer.valueOf(deltaType)));
+				}
+
+				byte[] delta = inflate(info.size);
+				checkIfTooLarge(type, BinaryDelta.getResultSize(delta));
+				baseCache.store(visit, BinaryDelta.apply(base, delta));
+				base = null;
+				delta = null;
+
+				if (visit.delta.crc != (int) crc.getValue()) {
+					throw new IOException(MessageFormat.format(
+							JGitText.get().corruptionDetectedReReadingAt,
+							Long.valueOf(visit.delta.position)));
+				}
+
+				SHA1 objectDigest = hasher.reset();
+				objectDigest.update(Constants.encodedTypeString(type));
+				objectDigest.update((byte) ' ');
+				objectDigest.update(Constants.encodeASCII(visit.data.length));
+				objectDigest.update((byte) 0);
+				objectDigest.update(visit.data);
+				objectDigest.digest(idBuf);
+
+				if (isCheckObjectCollisions()) {
+					if (reader == null) {
+						reader = objectDatabase.newReader();
+					}
+					if (reader.has(idBuf)) {
+						checkObjectCollision(reader, idBuf, type, visit.data);
+					}
+				}
+
+				synchronized (state) {
+					verifySafeObject(idBuf, type, visit.data);
+					PackedObjectInfo obj = newInfo(idBuf, visit.delta,
+							visit.parent.id);
+					obj.setOffset(visit.delta.position);
+					obj.setType(type);
+					onInflatedObjectData(obj, type, visit.data);
+					addObjectAndTrack(obj);
+					visit.id = obj;
+					visit.nextChild = firstChildOf(obj);
+				}
+				visit = next(visit);
+			}
+		}
+
+		// Drop the data DeltaVisit.next() is about to discard from the cache.
+		private DeltaVisit next(DeltaVisit visit) {
+			if (visit.nextChild == null) {
+				baseCache.release(visit);
+			}
+			DeltaVisit parent = visit.parent;
+			if (parent != null && parent.nextChild == null) {
+				baseCache.release(parent);
+			}
+			return visit.next();
+		}
+
+		// Rebuild the data of an object the base cache dropped, from the
+		// nearest ancestor still cached or else from the base of the chain.
+		private byte[] reload(DeltaVisit visit) throws IOException {
+			Deque<DeltaVisit> path = new ArrayDeque<>();
+			DeltaVisit v = visit;
+			byte[] data = v.data;
+			while (data == null) {
+				path.push(v);
+				if (v.delta == null) {
+					break;
+				}
+				v = v.parent;
+				data = v.data;
+			}
+			while (!path.isEmpty()) {
+				v = path.pop();
+				if (v.delta == null) {
+					seek(((PackedObjectInfo) v.id).getOffset());
+					readObjectHeader();
+					data = inflate(info.size);
+				} else {
+					seek(v.delta.position);
+					readObjectHeader();
+					data = BinaryDelta.apply(data, inflate(info.size));
+				}
+				baseCache.store(v, data);
+			}
+			return data;
+		}
+
+		private void seek(long position) throws IOException {
+			crc.reset();
+			load(position);
+		}
+
+		private void load(long position) throws IOException {
+			int n = readDatabase(position, dbBuf, 0, dbBuf.length);
+			if (n <= 0) {
+				throw new EOFException(
+						JGitText.get().packfileIsTruncatedNoParam);
+			}
+			dbBase = position;
+			dbPtr = 0;
+			dbCnt = n;
+		}
+
+		private int readByte() throws IOException {
+			if (dbPtr == dbCnt) {
+				load(dbBase + dbCnt);
+			}
+			int c = dbBuf[dbPtr++] & 0xff;
+			crc.update(c);
+			return c;
+		}
+
+		private int readObjectHeader() throws IOException {
+			int c = readByte();
+			int type = (c >> 4) & 7;
+			long sz = c & 15;
+			int shift = 4;
+			while ((c & 0x80) != 0) {
+				c = readByte();
+				sz += ((long) (c & 0x7f)) << shift;
+				shift += 7;
+			}
+			info.type = type;
+			info.size = sz;
+
+			switch (type) {
+			case Constants.OBJ_OFS_DELTA:
+				do {
+					c = readByte();
+				} while ((c & 128) != 0);
+				break;
+			case Constants.OBJ_REF_DELTA:
+				for (int i = 0; i < Constants.OBJECT_ID_LENGTH; i++) {
+					readByte();
+				}
+				break;
+			default:
+				break;
+			}
+			return type;
+		}
+
+		private byte[] inflate(long inflatedSize) throws IOException {
+			byte[] dst = new byte[(int) inflatedSize];
+			int n = 0;
+			inf.reset();
+			try {
+				for (;;) {
+					if (dbPtr == dbCnt) {
+						load(dbBase + dbCnt);
+					}
+					int avail = dbCnt - dbPtr;
+					inf.setInput(dbBuf, dbPtr, avail);
+
+					// Once the object is complete keep inflating into a scratch
+					// buffer, to consume the end of the stream or detect an
+					// object longer than its header claims.
+					int r;
+					if (n < dst.length) {
+						r = inf.inflate(dst, n, dst.length - n);
+						n += r;
+					} else {
+						r = inf.inflate(skipBuf, 0, skipBuf.length);
+						if (r > 0) {
+							throw new CorruptObjectException(
+									MessageFormat.format(
+											JGitText.get().packfileCorruptionDetected,
+											JGitText.get().wrongDecompressedLength));
+						}
+					}
+
+					int used = avail - inf.getRemaining();
+					crc.update(dbBuf, dbPtr, used);
+					dbPtr += used;
+					if (inf.finished()) {
+						break;
+					}
+					if (r == 0 && !inf.needsInput()) {
+						throw new CorruptObjectException(MessageFormat.format(
+								JGitText.get().packfileCorruptionDetected,
+								JGitText.get().unknownZlibError));
+					}
+				}
+			} catch (DataFormatException dfe) {
+				throw new CorruptObjectException(MessageFormat.format(JGitText
+						.get().packfileCorruptionDetected, dfe.getMessage()));
+			}
+			if (n != dst.length) {
+				throw new CorruptObjectException(MessageFormat.format(
+						JGitText.get().packfileCorruptionDetected,
+						JGitText.get().wrongDecompressedLength));
+			}
+			return dst;
+		}
+	}
+
+	/**
+	 * Resolved objects kept by one {@link DeltaResolver}.
+	 * <p>
+	 * Only objects with children still to resolve are cached. Once the cache
+	 * holds more than its limit, the oldest are dropped, except for the
+	 * newest object and its parent which the next delta will be applied to.
+	 */
+	private static class DeltaBaseCache {
+		private final long limit;
+
+		private final Set<DeltaVisit> cached = new LinkedHashSet<>();
+
+		private long openBytes;
+
+		DeltaBaseCache(long limit) {
+			this.limit = limit;
+		}
+
+		void store(DeltaVisit visit, byte[] data) {
+			visit.data = data;
+			cached.add(visit);
+			openBytes += data.length;
+
+			Iterator<DeltaVisit> itr = cached.iterator();
+			while (openBytes > limit && itr.hasNext()) {
+				DeltaVisit old = itr.next();
+				if (old != visit && old != visit.parent) {
+					openBytes -= old.data.length;
+					old.data = null;
+					itr.remove();
+				}
+			}
+		}
+
+		void release(DeltaVisit visit) {
+			if (cached.remove(visit)) {
+				openBytes -= visit.data.length;
+			}
+		}
+	}
+
 	private class InflaterStream extends InputStream {
 		private final Inflater inf;
 
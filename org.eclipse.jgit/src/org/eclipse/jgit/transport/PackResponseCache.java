@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2020, Google LLC and others
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Distribution License v. 1.0 which is available at
+ * https://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+
+package org.eclipse.jgit.transport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.annotations.Nullable;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Cache of pack streams sent by {@link UploadPack}.
+ * <p>
+ * Requests to a repository that negotiate the same wants, haves,
+ * capabilities and filter receive interchangeable packs. When many clients fetch the same tip at the
+ * same time, for example a fleet of build machines right after a push, the
+ * first request generates the pack while writing a copy into the cache, and
+ * the other requests stream that copy, joining the generation while it is
+ * still in progress.
+ * <p>
+ * Only the pack data is cached; the protocol framing, side band and progress
+ * messages are written by each {@link UploadPack} separately. Shallow fetches
+ * and fetches using packfile URIs are never cached.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see LocalPackResponseCache
+ * @since 5.8
+ */
+public interface PackResponseCache {
+	/**
+	 * Open the response for a key.
+	 * <p>
+	 * If the response is still being written by another request the returned
+	 * stream blocks until more data is available, and fails if that request
+	 * aborts.
+	 *
+	 * @param key
+	 *            the negotiated request.
+	 * @return stream of the pack, or {@code null} if the cache does not hold
+	 *         the response.
+	 * @throws IOException
+	 *             the response cannot be read.
+	 */
+	@Nullable
+	InputStream open(Key key) throws IOException;
+
+	/**
+	 * Reserve a key to write its response.
+	 *
+	 * @param key
+	 *            the negotiated request.
+	 * @return destination of the response, or {@code null} if the response
+	 *         cannot be cached, for example because another request reserved
+	 *         the key first.
+	 * @throws IOException
+	 *             the cache entry cannot be created.
+	 */
+	@Nullable
+	PendingResponse create(Key key) throws IOException;
+
+	/**
+	 * A response being written into the cache.
+	 * <p>
+	 * Exactly one of {@link #commit()} or {@link #abort()} must be called.
+	 */
+	interface PendingResponse {
+		/**
+		 * Get the stream receiving the pack.
+		 *
+		 * @return the stream receiving the pack.
+		 */
+		OutputStream getOutputStream();
+
+		/**
+		 * Publish the complete response.
+		 *
+		 * @throws IOException
+		 *             the response cannot be stored.
+		 */
+		void commit() throws IOException;
+
+		/**
+		 * Discard the response.
+		 * <p>
+		 * Requests that joined it fail.
+		 */
+		void abort();
+	}
+
+	/**
+	 * Identity of a negotiated fetch.
+	 * <p>
+	 * Two requests with equal keys can be sent the same pack. The key is a
+	 * SHA-1 of the canonical form of its parts, so its name can be used to
+	 * store the response.
+	 */
+	final class Key {
+		private final ObjectId id;
+
+		/**
+		 * Create the key of a fetch.
+		 *
+		 * @param repository
+		 *            identifier of the repository serving the fetch, see
+		 *            {@link org.eclipse.jgit.lib.Repository#getIdentifier()}.
+		 *            Keeps a cache shared by several repositories from
+		 *            serving the pack of one to another.
+		 * @param wants
+		 *            objects the client wants.
+		 * @param haves
+		 *            objects both sides have in common.
+		 * @param options
+		 *            client capabilities that change the pack and any other
+		 *            input the pack depends on, such as the tags considered
+		 *            for {@code include-tag}.
+		 * @param filter
+		 *            object filter requested by the client.
+		 * @return the key.
+		 */
+		public static Key create(String repository,
+				Collection<? extends AnyObjectId> wants,
+				Collection<? extends AnyObjectId> haves,
+				Collection<String> options, FilterSpec filter) {
+			MessageDigest md = Constants.newMessageDigest();
+			update(md, "repository", //$NON-NLS-1$
+					Collections.singletonList(repository));
+			update(md, "want", sorted(wants)); //$NON-NLS-1$
+			update(md, "have", sorted(haves)); //$NON-NLS-1$
+			List<String> opts = new ArrayList<>(options);
+			Collections.sort(opts);
+			update(md, "option", opts); //$NON-NLS-1$
+			if (!filter.isNoOp()) {
+				update(md, "filter", Collections //$NON-NLS-1$
+						.singletonList(filter.filterLine()));
+			}
+			return new Key(ObjectId.fromRaw(md.digest()));
+		}
+
+		private static List<String> sorted(
+				Collection<? extends AnyObjectId> ids) {
+			List<String> names = new ArrayList<>(ids.size());
+			for (AnyObjectId id : ids) {
+				names.add(id.name());
+			}
+			Collections.sort(names);
+			return names;
+		}
+
+		private static void update(MessageDigest md, String type,
+				List<String> values) {
+			for (String v : values) {
+				md.update((type + ' ' + v + '\n').getBytes(UTF_8));
+			}
+			md.update((type + "s end\n").getBytes(UTF_8)); //$NON-NLS-1$
+		}
+
+		private Key(ObjectId id) {
+			this.id = id;
+		}
+
+		/**
+		 * Get the name of the key.
+		 *
+		 * @return 40 hex digits identifying the key.
+		 */
+		public String getName() {
+			return id.name();
+		}
+
+		@Override
+		public int hashCode() {
+			return id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && id.equals(((Key) o).id);
+		}
+
+		@Override
+		public String toString() {
+			return "PackResponseCache.Key[" + id.name() + ']'; //$NON-NLS-1$
+		}
+	}
+}
@@ -15,6 +15,7 @@
 import static org.eclipse.jgit.transport.GitProtocolConstants.OPTION_SYMREF;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
@@ -23,6 +24,7 @@
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -277,48 +279,80 @@ public Set<ObjectId> send(Map<String, Ref> refs) throws IOException {
 	 * @since 5.0
 	 */
 	public Set<ObjectId> send(Collection<Ref> refs) throws IOException {
-		for (Ref ref : RefComparator.sort(refs)) {
-			// TODO(jrn) revive the SortedMap optimization e.g. by introducing
-			// SortedList
-			ObjectId objectId = ref.getObjectId();
-			if (objectId == null) {
-				continue;
+		// Ref databases usually return sorted refs already.
+		for (Ref ref : RefComparator.sortIfNeeded(refs)) {
+			sendRef(ref);
+		}
+		return sent;
+	}
+
+	/**
+	 * Format an advertisement for refs supplied in name order.
+	 * <p>
+	 * The refs are formatted as they are read from the iterator, so the
+	 * advertisement can be streamed from
+	 * {@link org.eclipse.jgit.lib.RefDatabase#iterateRefsByPrefix(String)}
+	 * without collecting all refs first.
+	 *
+	 * @param refs
+	 *            zero or more refs to format for the client, sorted by name.
+	 *            An {@link UncheckedIOException} thrown by the iterator is
+	 *            rethrown as its cause.
+	 * @return set of ObjectIds that were advertised to the client.
+	 * @throws java.io.IOException
+	 *             the refs cannot be read, or the underlying output stream
+	 *             failed to write out an advertisement record.
+	 * @since 5.8
+	 */
+	public Set<ObjectId> sendSorted(Iterator<Ref> refs) throws IOException {
+		try {
+			while (refs.hasNext()) {
+				sendRef(refs.next());
 			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return sent;
+	}
 
-			if (useProtocolV2) {
-				String symrefPart = symrefs.containsKey(ref.getName())
-						? (" symref-target:" + symrefs.get(ref.getName())) //$NON-NLS-1$
-						: ""; //$NON-NLS-1$
-				String peelPart = ""; //$NON-NLS-1$
-				if (derefTags) {
-					if (!ref.isPeeled() && repository != null) {
-						ref = repository.getRefDatabase().peel(ref);
-					}
-					ObjectId peeledObjectId = ref.getPeeledObjectId();
-					if (peeledObjectId != null) {
-						peelPart = " peeled:" + peeledObjectId.getName(); //$NON-NLS-1$
-					}
+	private void sendRef(Ref ref) throws IOException {
+		ObjectId objectId = ref.getObjectId();
+		if (objectId == null) {
+			return;
+		}
+
+		if (useProtocolV2) {
+			String symrefPart = symrefs.containsKey(ref.getName())
+					? (" symref-target:" + symrefs.get(ref.getName())) //$NON-NLS-1$
+					: ""; //$NON-NLS-1$
+			String peelPart = ""; //$NON-NLS-1$
+			if (derefTags) {
+				if (!ref.isPeeled() && repository != null) {
+					ref = repository.getRefDatabase().peel(ref);
+				}
+				ObjectId peeledObjectId = ref.getPeeledObjectId();
+				if (peeledObjectId != null) {
+					peelPart = " peeled:" + peeledObjectId.getName(); //$NON-NLS-1$
 				}
-				writeOne(objectId.getName() + " " + ref.getName() + symrefPart //$NON-NLS-1$
-						+ peelPart + "\n"); //$NON-NLS-1$
-				continue;
 			}
+			writeOne(objectId.getName() + " " + ref.getName() + symrefPart //$NON-NLS-1$
+					+ peelPart + "\n"); //$NON-NLS-1$
+			return;
+		}
 
-			advertiseAny(objectId, ref.getName());
-
-			if (!derefTags)
-				continue;
+		advertiseAny(objectId, ref.getName());
 
-			if (!ref.isPeeled()) {
-				if (repository == null)
-					continue;
-				ref = repository.getRefDatabase().peel(ref);
-			}
+		if (!derefTags)
+			return;
 
-			if (ref.getPeeledObjectId() != null)
-				advertiseAny(ref.getPeeledObjectId(), ref.getName() + "^{}"); //$NON-NLS-1$
+		if (!ref.isPeeled()) {
+			if (repository == null)
+				return;
+			ref = repository.getRefDatabase().peel(ref);
 		}
-		return sent;
+
+		if (ref.getPeeledObjectId() != null)
+			advertiseAny(ref.getPeeledObjectId(), ref.getName() + "^{}"); //$NON-NLS-1$
 	}
 
 	/**
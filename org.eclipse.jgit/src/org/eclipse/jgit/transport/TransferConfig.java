@@ -298,23 +298,35 @@ public RefFilter getRefFilter() {
 			public Map<String, Ref> filter(Map<String, Ref> refs) {
 				Map<String, Ref> result = new HashMap<>();
 				for (Map.Entry<String, Ref> e : refs.entrySet()) {
-					boolean add = true;
-					for (String hide : hideRefs) {
-						if (e.getKey().equals(hide) || prefixMatch(hide, e.getKey())) {
-							add = false;
-							break;
-						}
-					}
-					if (add)
+					if (!isHidden(e.getKey()))
 						result.put(e.getKey(), e.getValue());
 				}
 				return result;
 			}
+		};
+	}
 
-			private boolean prefixMatch(String p, String s) {
-				return p.charAt(p.length() - 1) == '/' && s.startsWith(p);
+	/**
+	 * Whether a ref is hidden by the {@code transfer.hideRefs} settings.
+	 * <p>
+	 * Allows filtering refs one at a time, as {@link #getRefFilter()} does for
+	 * a map of refs.
+	 *
+	 * @param refName
+	 *            name of the ref.
+	 * @return {@code true} if the ref must not be advertised.
+	 */
+	boolean isHidden(String refName) {
+		for (String hide : hideRefs) {
+			if (refName.equals(hide) || prefixMatch(hide, refName)) {
+				return true;
 			}
-		};
+		}
+		return false;
+	}
+
+	private static boolean prefixMatch(String p, String s) {
+		return p.charAt(p.length() - 1) == '/' && s.startsWith(p);
 	}
 
 	/**
@@ -46,8 +46,10 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -98,11 +100,15 @@
 import org.eclipse.jgit.util.io.NullOutputStream;
 import org.eclipse.jgit.util.io.TimeoutInputStream;
 import org.eclipse.jgit.util.io.TimeoutOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Implements the server side of a fetch connection, transmitting objects.
  */
 public class UploadPack {
+	private static final Logger LOG = LoggerFactory.getLogger(UploadPack.class);
+
 	/** Policy the server uses to validate client requests */
 	public enum RequestPolicy {
 		/** Client may only ask for objects the server advertised a reference for. */
@@ -334,6 +340,9 @@ public Set<String> getOptions() {
 
 	private CachedPackUriProvider cachedPackUriProvider;
 
+	@Nullable
+	private PackResponseCache packResponseCache;
+
 	/**
 	 * Create a new pack upload for an open repository.
 	 *
@@ -720,6 +729,24 @@ public void setCachedPackUriProvider(@Nullable CachedPackUriProvider p) {
 		cachedPackUriProvider = p;
 	}
 
+	/**
+	 * Set the cache to share generated packs between identical requests.
+	 * <p>
+	 * When a pack is served from the cache no
+	 * {@link org.eclipse.jgit.internal.storage.pack.PackWriter} runs. The
+	 * {@link #getStatistics() statistics} passed to the
+	 * {@link PostUploadHook} then only describe the negotiation, the bytes
+	 * sent and the time spent writing them. If the cache fails, the pack is
+	 * generated instead, or still sent if it already was being generated.
+	 *
+	 * @param cache
+	 *            the cache; {@code null} to always generate packs.
+	 * @since 5.8
+	 */
+	public void setPackResponseCache(@Nullable PackResponseCache cache) {
+		packResponseCache = cache;
+	}
+
 	private boolean useProtocolV2() {
 		return ProtocolVersion.V2.equals(transferConfig.protocolVersion)
 				&& clientRequestedV2;
@@ -1091,13 +1118,74 @@ private void lsRefsV2(PacketLineOut pckOut) throws IOException {
 		if (req.getPeel()) {
 			adv.setDerefTags(true);
 		}
-		Map<String, Ref> refsToSend = getFilteredRefs(req.getRefPrefixes());
+		if (refs == null && !advertiseRefsHookCalled) {
+			advertiseRefsHook.advertiseRefs(this);
+			advertiseRefsHookCalled = true;
+		}
+		if (refs == null && refFilter == RefFilter.DEFAULT) {
+			// Stream the refs in name order straight from the ref database,
+			// without collecting them into a map first.
+			sendStreamedRefs(adv, req);
+		} else {
+			Map<String, Ref> refsToSend = getFilteredRefs(
+					req.getRefPrefixes());
+			if (req.getSymrefs()) {
+				findSymrefs(adv, refsToSend);
+			}
+			adv.send(refsToSend.values());
+		}
+		adv.end();
+	}
+
+	private void sendStreamedRefs(RefAdvertiser adv, LsRefsV2Request req)
+			throws IOException {
+		List<String> prefixes = req.getRefPrefixes();
+		String[] p = prefixes.isEmpty() ? new String[] { RefDatabase.ALL }
+				: prefixes.toArray(new String[0]);
+		RefDatabase refdb = db.getRefDatabase();
 		if (req.getSymrefs()) {
-			findSymrefs(adv, refsToSend);
+			for (String prefix : p) {
+				if (Constants.HEAD.startsWith(prefix)) {
+					Ref head = refdb.exactRef(Constants.HEAD);
+					if (head != null
+							&& !transferConfig.isHidden(Constants.HEAD)) {
+						findSymrefs(adv,
+								Collections.singletonMap(Constants.HEAD, head));
+					}
+					break;
+				}
+			}
 		}
 
-		adv.send(refsToSend.values());
-		adv.end();
+		Iterator<Ref> all = refdb.iterateRefsByPrefix(p);
+		if (transferConfig.hasDefaultRefFilter()) {
+			adv.sendSorted(all);
+			return;
+		}
+		adv.sendSorted(new Iterator<Ref>() {
+			private Ref next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && all.hasNext()) {
+					Ref r = all.next();
+					if (!transferConfig.isHidden(r.getName())) {
+						next = r;
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public Ref next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Ref r = next;
+				next = null;
+				return r;
+			}
+		});
 	}
 
 	// Resolves ref names from the request's want-ref lines to
@@ -2205,6 +2293,41 @@ private void sendPack(ProgressMonitor pm, PacketLineOut pckOut,
 		}
 		msgOut.flush();
 
+		PackResponseCache cache = packResponseCache;
+		PackResponseCache.Key cacheKey = cache != null
+				? packResponseCacheKey(req, allTags, unshallowCommits,
+						deepenNots)
+				: null;
+		PackResponseCache.PendingResponse pending = null;
+		if (cache != null && cacheKey != null) {
+			InputStream cached = null;
+			try {
+				cached = cache.open(cacheKey);
+				if (cached == null) {
+					pending = cache.create(cacheKey);
+					if (pending == null) {
+						// Another request started generating the same pack.
+						cached = cache.open(cacheKey);
+					}
+				}
+			} catch (IOException e) {
+				// The pack can still be generated.
+				LOG.warn(e.getMessage(), e);
+			}
+			if (cached != null) {
+				long writeStart = System.currentTimeMillis();
+				long sent = sendCachedPack(cached, pckOut, packOut);
+				if (sent > 0) {
+					accumulator.totalBytes = sent;
+					accumulator.timeWriting = System.currentTimeMillis()
+							- writeStart;
+					statistics = new PackStatistics(accumulator);
+					postUploadHook.onPostUpload(statistics);
+					return;
+				}
+			}
+		}
+
 		PackConfig cfg = packConfig;
 		if (cfg == null)
 			cfg = new PackConfig(db);
@@ -2212,6 +2335,7 @@ private void sendPack(ProgressMonitor pm, PacketLineOut pckOut,
 										// block, and is closed there
 		final PackWriter pw = new PackWriter(cfg, walk.getObjectReader(),
 				accumulator);
+		CachingOutputStream caching = null;
 		try {
 			pw.setIndexDisabled(true);
 			if (req.getFilterSpec().isNoOp()) {
@@ -2325,7 +2449,14 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 					pckOut.writeString("packfile\n"); //$NON-NLS-1$
 				}
 			}
-			pw.writePack(pm, NullProgressMonitor.INSTANCE, packOut);
+			if (pending != null) {
+				caching = new CachingOutputStream(packOut, pending);
+				pending = null;
+				pw.writePack(pm, NullProgressMonitor.INSTANCE, caching);
+				caching.commit();
+			} else {
+				pw.writePack(pm, NullProgressMonitor.INSTANCE, packOut);
+			}
 
 			if (msgOut != NullOutputStream.INSTANCE) {
 				String msg = pw.getStatistics().getMessage() + '\n';
@@ -2334,6 +2465,12 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 			}
 
 		} finally {
+			if (pending != null) {
+				pending.abort();
+			}
+			if (caching != null) {
+				caching.abortIfPending();
+			}
 			statistics = pw.getStatistics();
 			if (statistics != null) {
 				postUploadHook.onPostUpload(statistics);
@@ -2342,6 +2479,102 @@ else if (ref.getName().startsWith(Constants.R_HEADS))
 		}
 	}
 
+	/**
+	 * Copy a response of the pack response cache to the client.
+	 * <p>
+	 * A response still being generated by another request may stall or be
+	 * aborted. If that happens before anything was sent, the caller generates
+	 * the pack itself instead.
+	 *
+	 * @param cached
+	 *            stream of the cached response; closed by this method.
+	 * @param pckOut
+	 *            output writer
+	 * @param packOut
+	 *            packfile output
+	 * @return number of bytes of the pack sent; 0 if no data could be read
+	 *         from the cache and nothing was sent.
+	 * @throws IOException
+	 *             if an error occurred after the response started.
+	 */
+	private static long sendCachedPack(InputStream cached,
+			PacketLineOut pckOut, OutputStream packOut) throws IOException {
+		try (InputStream in = cached) {
+			byte[] buf = new byte[8192];
+			int n;
+			try {
+				n = in.read(buf);
+			} catch (IOException e) {
+				LOG.warn(e.getMessage(), e);
+				return 0;
+			}
+			if (n <= 0) {
+				return 0;
+			}
+			if (pckOut.isUsingSideband()) {
+				pckOut.writeString("packfile\n"); //$NON-NLS-1$
+			}
+			long sent = 0;
+			do {
+				packOut.write(buf, 0, n);
+				sent += n;
+			} while ((n = in.read(buf)) > 0);
+			packOut.flush();
+			return sent;
+		}
+	}
+
+	/**
+	 * Compute the key of the response in the pack response cache.
+	 *
+	 * @param req
+	 *            request being processed
+	 * @param allTags
+	 *            refs considered for {@link #OPTION_INCLUDE_TAG}.
+	 * @param unshallowCommits
+	 *            shallow commits on the client that are now becoming unshallow
+	 * @param deepenNots
+	 *            objects that the client specified using --shallow-exclude
+	 * @return the key, or {@code null} if the response must not be cached.
+	 */
+	@Nullable
+	private PackResponseCache.Key packResponseCacheKey(FetchRequest req,
+			@Nullable Collection<Ref> allTags, List<ObjectId> unshallowCommits,
+			List<ObjectId> deepenNots) {
+		if (req.getDepth() > 0
+				|| req.getDeepenSince() != 0 || !deepenNots.isEmpty()
+				|| !req.getClientShallowCommits().isEmpty()
+				|| !unshallowCommits.isEmpty()) {
+			return null;
+		}
+		if (req instanceof FetchV2Request && cachedPackUriProvider != null
+				&& !((FetchV2Request) req).getPackfileUriProtocols()
+						.isEmpty()) {
+			return null;
+		}
+
+		Set<String> caps = req.getClientCapabilities();
+		List<String> options = new ArrayList<>();
+		for (String opt : new String[] { OPTION_OFS_DELTA, OPTION_THIN_PACK,
+				OPTION_INCLUDE_TAG }) {
+			if (caps.contains(opt)) {
+				options.add(opt);
+			}
+		}
+		if (caps.contains(OPTION_INCLUDE_TAG) && allTags != null) {
+			// The pack includes tags pointing into it, so it depends on the
+			// tags present right now. An annotated tag names its target, so
+			// the tags need not be peeled.
+			for (Ref ref : allTags) {
+				options.add("tag " + ref.getName() + ' ' //$NON-NLS-1$
+						+ ObjectId.toString(ref.getObjectId()));
+			}
+		}
+		return PackResponseCache.Key.create(db.getIdentifier(),
+				wantAll.isEmpty() ? wantIds : wantAll, commonBase, options,
+				req.getFilterSpec());
+	}
+
 	private static void findSymrefs(
 			final RefAdvertiser adv, final Map<String, Ref> refs) {
 		Ref head = refs.get(Constants.HEAD);
@@ -2405,6 +2638,114 @@ void stopBuffering() throws IOException {
 		}
 	}
 
+	/**
+	 * Writes the pack to the client and the pack response cache.
+	 * <p>
+	 * If the client goes away the pack is still completed for the cache, as
+	 * other requests may be waiting for it; the client's error is rethrown by
+	 * {@link #commit()}. If the cache fails, its response is aborted and the
+	 * pack is still sent to the client.
+	 */
+	private static class CachingOutputStream extends OutputStream {
+		private final OutputStream client;
+
+		private PackResponseCache.PendingResponse pending;
+
+		private IOException clientError;
+
+		CachingOutputStream(OutputStream client,
+				PackResponseCache.PendingResponse pending) {
+			this.client = client;
+			this.pending = pending;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (pending != null) {
+				try {
+					pending.getOutputStream().write(b, off, len);
+				} catch (IOException e) {
+					abort(e);
+				}
+			}
+			if (clientError == null) {
+				try {
+					client.write(b, off, len);
+				} catch (IOException e) {
+					clientError = e;
+					if (pending == null) {
+						throw e;
+					}
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (pending != null) {
+				try {
+					pending.getOutputStream().flush();
+				} catch (IOException e) {
+					abort(e);
+				}
+			}
+			if (clientError == null) {
+				try {
+					client.flush();
+				} catch (IOException e) {
+					clientError = e;
+					if (pending == null) {
+						throw e;
+					}
+				}
+			}
+		}
+
+		private void abort(IOException e) throws IOException {
+			pending.abort();
+			pending = null;
+			LOG.warn(e.getMessage(), e);
+			if (clientError != null) {
+				throw clientError;
+			}
+		}
+
+		/**
+		 * Complete the cached response once the pack was written.
+		 *
+		 * @throws IOException
+		 *             the pack could not be sent to the client.
+		 */
+		void commit() throws IOException {
+			if (pending != null) {
+				PackResponseCache.PendingResponse p = pending;
+				pending = null;
+				try {
+					p.commit();
+				} catch (IOException e) {
+					// The client has its pack; only the cache lost it.
+					LOG.warn(e.getMessage(), e);
+				}
+			}
+			if (clientError != null) {
+				throw clientError;
+			}
+		}
+
+		/** Abort the cached response if it was not completed. */
+		void abortIfPending() {
+			if (pending != null) {
+				pending.abort();
+				pending = null;
+			}
+		}
+	}
+
 	private interface ErrorWriter {
 		void writeError(String message) throws IOException;
 	}
@@ -414,6 +414,16 @@ public File getDirectory() {
 		return directory;
 	}
 
+	/**
+	 * Get the strategy used to determine the file modes of entries.
+	 *
+	 * @return the strategy used to determine the file modes of entries
+	 * @since 5.8
+	 */
+	public FileModeStrategy getFileModeStrategy() {
+		return fileModeStrategy;
+	}
+
 	/**
 	 * Get the location of the working file.
 	 *
@@ -41,6 +41,7 @@
 import org.eclipse.jgit.diff.RawText;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.dircache.UntrackedCache;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
@@ -120,6 +121,18 @@ public abstract class WorkingTreeIterator extends AbstractTreeIterator {
 	/** If there is a .gitignore file present, the parsed rules from it. */
 	private IgnoreNode ignoreNode;
 
+	/** The .gitignore file of this directory; null if there is none. */
+	private Entry ignoreEntry;
+
+	/** This directory in its parent, if the untracked cache is used. */
+	private Entry untrackedEntry;
+
+	/** Untracked cache of this directory; null if it cannot be used. */
+	private UntrackedCache.Directory untrackedDir;
+
+	/** Whether {@link #untrackedDir} was looked up. */
+	private boolean untrackedDirChecked;
+
 	/**
 	 * cached clean filter command. Use a Ref in order to distinguish between
 	 * the ref not cached yet and the value null
@@ -188,6 +201,11 @@ protected WorkingTreeIterator(WorkingTreeIterator p) {
 		super(p);
 		state = p.state;
 		repository = p.repository;
+		if ((state.untrackedCache != null
+				|| state.untrackedCacheBuilder != null)
+				&& p.ptr < p.entryCnt) {
+			untrackedEntry = p.current();
+		}
 	}
 
 	/**
@@ -245,6 +263,45 @@ protected DirCacheIterator getDirCacheIterator() {
 		return null;
 	}
 
+	/**
+	 * Use the untracked cache of the index to decide whether untracked files
+	 * are ignored.
+	 * <p>
+	 * In directories where the cache is up to date, a file that is not in the
+	 * index is ignored if and only if it is not one of the cached untracked
+	 * files, and the ignore rules are not evaluated. The cache is only used if
+	 * {@link #setDirCacheIterator(TreeWalk, int)} was called with a
+	 * {@link DirCacheIterator} over the index the cache was read from, and
+	 * this iterator walks the whole working tree of a repository.
+	 * <p>
+	 * Directories are still listed; see {@link UntrackedCache}. To update
+	 * the cache, see {@link #setUntrackedCacheBuilder}.
+	 *
+	 * @param cache
+	 *            the untracked cache of the index; null to not use a cache.
+	 * @since 5.8
+	 */
+	public void setUntrackedCache(UntrackedCache cache) {
+		state.untrackedCache = cache;
+	}
+
+	/**
+	 * Record the subdirectories this iterator lists in a builder of a new
+	 * untracked cache.
+	 * <p>
+	 * Each subdirectory is recorded with the modification time and size it
+	 * had when it was found in its parent, and its {@code .gitignore}. The
+	 * top level directory and the untracked files must be recorded by the
+	 * caller.
+	 *
+	 * @param builder
+	 *            the builder; null to not record directories.
+	 * @since 5.8
+	 */
+	public void setUntrackedCacheBuilder(UntrackedCache.Builder builder) {
+		state.untrackedCacheBuilder = builder;
+	}
+
 	/**
 	 * Defines whether this {@link WorkingTreeIterator} walks ignored
 	 * directories.
@@ -666,9 +723,70 @@ && getEolStreamType() == EolStreamType.DIRECT) {
 	 *             a relevant ignore rule file exists but cannot be read.
 	 */
 	public boolean isEntryIgnored() throws IOException {
+		if (state.untrackedCache != null && state.dirCacheTree >= 0
+				&& !FileMode.TREE.equals(mode)
+				&& !FileMode.GITLINK.equals(mode)
+				&& getDirCacheIterator() == null) {
+			UntrackedCache.Directory dir = getUntrackedDirectory();
+			if (dir != null) {
+				return !dir.isUntracked(current().getName());
+			}
+		}
 		return isEntryIgnored(pathLen);
 	}
 
+	/**
+	 * Get the untracked cache of this directory, if it is up to date.
+	 *
+	 * @return the cache of this directory; null if there is none, or it
+	 *         cannot be used.
+	 * @throws IOException
+	 *             a .gitignore or global ignore file cannot be read.
+	 */
+	private UntrackedCache.Directory getUntrackedDirectory()
+			throws IOException {
+		if (untrackedDirChecked) {
+			return untrackedDir;
+		}
+		untrackedDirChecked = true;
+		UntrackedCache.Directory dir = null;
+		Instant lastModified = null;
+		long length = 0;
+		if (parent instanceof WorkingTreeIterator) {
+			UntrackedCache.Directory p = ((WorkingTreeIterator) parent)
+					.getUntrackedDirectory();
+			if (p != null && untrackedEntry != null) {
+				dir = p.getSubdirectory(untrackedEntry.getName());
+				lastModified = untrackedEntry.getLastModifiedInstant();
+				length = untrackedEntry.getLength();
+			}
+		} else if (parent == null && pathOffset == 0 && repository != null
+				&& state.untrackedCache != null) {
+			dir = state.untrackedCache.getRoot(repository);
+			if (dir != null) {
+				FS.Attributes a = repository.getFS()
+						.getAttributes(repository.getWorkTree());
+				lastModified = a.getLastModifiedInstant();
+				length = a.getLength();
+			}
+		}
+		if (dir != null && lastModified != null) {
+			boolean upToDate;
+			if (ignoreEntry != null) {
+				try (InputStream in = ignoreEntry.openInputStream()) {
+					upToDate = dir.isUpToDate(lastModified, length, in,
+							ignoreEntry.getLength());
+				}
+			} else {
+				upToDate = dir.isUpToDate(lastModified, length, null, 0);
+			}
+			if (upToDate) {
+				untrackedDir = dir;
+			}
+		}
+		return untrackedDir;
+	}
+
 	/**
 	 * Determine if the entry path is ignored by an ignore rule.
 	 *
@@ -761,6 +879,26 @@ public AttributesNode getEntryAttributesNode() throws IOException {
 					a.getMode().getBits(), b.encodedName, 0, b.encodedNameLen,
 					b.getMode().getBits());
 
+	private void addToUntrackedCache() {
+		String dir = RawParseUtils.decode(path, 0, pathOffset - 1);
+		try {
+			if (ignoreEntry != null) {
+				try (InputStream in = ignoreEntry.openInputStream()) {
+					state.untrackedCacheBuilder.addDirectory(dir,
+							untrackedEntry.getLastModifiedInstant(),
+							untrackedEntry.getLength(), in,
+							ignoreEntry.getLength());
+				}
+			} else {
+				state.untrackedCacheBuilder.addDirectory(dir,
+						untrackedEntry.getLastModifiedInstant(),
+						untrackedEntry.getLength(), null, 0);
+			}
+		} catch (IOException e) {
+			// Leave the directory out; it is then not cached.
+		}
+	}
+
 	/**
 	 * Constructor helper.
 	 *
@@ -786,8 +924,10 @@ protected void init(Entry[] list) {
 				continue;
 			if (Constants.DOT_GIT.equals(name))
 				continue;
-			if (Constants.DOT_GIT_IGNORE.equals(name))
+			if (Constants.DOT_GIT_IGNORE.equals(name)) {
 				ignoreNode = new PerDirectoryIgnoreNode(e);
+				ignoreEntry = e;
+			}
 			if (Constants.DOT_GIT_ATTRIBUTES.equals(name))
 				attributesNode = new PerDirectoryAttributesNode(e);
 			if (i != o)
@@ -797,6 +937,9 @@ protected void init(Entry[] list) {
 		}
 		entryCnt = o;
 		Arrays.sort(entries, 0, entryCnt, ENTRY_CMP);
+		if (state.untrackedCacheBuilder != null && untrackedEntry != null) {
+			addToUntrackedCache();
+		}
 
 		contentIdFromPtr = -1;
 		ptr = 0;
@@ -890,6 +1033,9 @@ public MetadataDiff compareMetadata(DirCacheEntry entry) {
 		if (entry.isUpdateNeeded())
 			return MetadataDiff.DIFFER_BY_METADATA;
 
+		if (entry.isFileSystemMonitorValid())
+			return MetadataDiff.EQUAL;
+
 		if (isModeDifferent(entry.getRawMode()))
 			return MetadataDiff.DIFFER_BY_METADATA;
 
@@ -943,7 +1089,23 @@ public boolean isModified(DirCacheEntry entry, boolean forceContentCheck,
 			ObjectReader reader) throws IOException {
 		if (entry == null)
 			return !FileMode.MISSING.equals(getEntryFileMode());
-		MetadataDiff diff = compareMetadata(entry);
+		if (entry.isFileSystemMonitorValid() && !entry.isUpdateNeeded()) {
+			// The file did not change since it last matched the entry.
+			return false;
+		}
+		boolean modified = isModified(entry, compareMetadata(entry),
+				forceContentCheck, reader);
+		if (!modified && !FileMode.GITLINK.equals(entry.getRawMode())) {
+			// Changes to the file from now on are reported by the file
+			// system monitor, if there is one.
+			entry.setFileSystemMonitorValid(true);
+		}
+		return modified;
+	}
+
+	private boolean isModified(DirCacheEntry entry, MetadataDiff diff,
+			boolean forceContentCheck, ObjectReader reader)
+			throws IOException {
 		switch (diff) {
 		case DIFFER_BY_TIMESTAMP:
 			if (forceContentCheck) {
@@ -1363,6 +1525,12 @@ private static final class IteratorState {
 		/** Whether the iterator shall walk ignored directories. */
 		boolean walkIgnored = false;
 
+		/** Untracked cache of the index; null if not used. */
+		UntrackedCache untrackedCache;
+
+		/** Builder of a new untracked cache; null if not updated. */
+		UntrackedCache.Builder untrackedCacheBuilder;
+
 		final Map<String, Boolean> directoryToIgnored = new HashMap<>();
 
 		IteratorState(WorkingTreeOptions options) {